@@ -1337,6 +1337,10 @@ public abstract class DataSerializer {
         return;
       } else {
         object = ((CachedDeserializable) obj).getSerializedValue();
+        if (object instanceof byte[]) {
+          InternalDataSerializer.writeImmutableByteArray((byte[]) object, out);
+          return;
+        }
       }
     }
     if (logger.isTraceEnabled(LogMarker.SERIALIZER)) {
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.geode.annotations.Experimental;
+import org.apache.geode.internal.cache.AsyncRegionImpl;
+
+/**
+ * Asynchronous access to the entries of a {@link Region}. Each operation returns a future that is
+ * completed with its result, or exceptionally with the exception the corresponding operation of the
+ * region would have thrown.
+ * <p>
+ * An operation is only done without blocking the calling thread when the region can do it with a
+ * single request whose response nobody else waits for:
+ * <ul>
+ * <li>on a client region with the {@link DataPolicy#EMPTY EMPTY} data policy and no cache listener,
+ * loader or writer, whose pool multiplexes its connections; the future is then completed by the
+ * thread reading the responses of the connection</li>
+ * <li>for gets of a partitioned region that read a bucket hosted by another member; the future is
+ * then completed by a thread of the distribution manager</li>
+ * </ul>
+ * Other operations, and all operations done in a transaction, are done like the operations of the
+ * region before the method returns, which then returns a completed future. The actions that depend
+ * on a future should not block, or should be run by an executor of their own.
+ *
+ * @param <K> the type of the keys of the region
+ * @param <V> the type of the values of the region
+ */
+@Experimental
+public interface AsyncRegion<K, V> {
+
+  /**
+   * Returns asynchronous access to the given region.
+   */
+  public static <K, V> AsyncRegion<K, V> of(Region<K, V> region) {
+    return new AsyncRegionImpl<K, V>(region);
+  }
+
+  /**
+   * Returns the region the operations are done on.
+   */
+  public Region<K, V> getRegion();
+
+  /**
+   * Gets the value of the key like {@link Region#get(Object)}.
+   *
+   * @return a future completed with the value, or null if there is none
+   */
+  public CompletableFuture<V> getAsync(Object key);
+
+  /**
+   * Puts the value of the key like {@link Region#put(Object, Object)}. Unlike the put of the
+   * region, the previous value is never returned.
+   *
+   * @return a future completed once the value has been put
+   */
+  public CompletableFuture<Void> putAsync(K key, V value);
+
+  /**
+   * Gets the values of the keys like {@link Region#getAll(Collection)}.
+   *
+   * @return a future completed with a map from each key to its value, or to null if there is none
+   */
+  public CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys);
+}
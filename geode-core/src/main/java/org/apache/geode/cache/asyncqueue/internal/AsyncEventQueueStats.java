@@ -94,6 +94,31 @@ public class AsyncEventQueueStats extends GatewaySenderStats {
             f.createIntGauge(LOAD_BALANCES_IN_PROGRESS, "Number of load balances in progress",
                 "operations"),
             f.createLongCounter(LOAD_BALANCE_TIME, "Total time spent load balancing this sender",
+                "nanoseconds"),
+            f.createIntGauge(BATCHES_IN_FLIGHT,
+                "Number of batches sent to the listener and not acknowledged yet.", "operations"),
+            f.createIntCounter(BATCHES_ACKNOWLEDGED, "Number of batches acknowledged.",
+                "operations"),
+            f.createLongCounter(BATCH_ACKNOWLEDGEMENT_TIME,
+                "Total time between sending batches and receiving their acknowledgement.",
+                "nanoseconds"),
+            f.createIntCounter(BATCHES_COMPRESSED, "Number of batches compressed.", "operations"),
+            f.createLongCounter(BATCH_BYTES_BEFORE_COMPRESSION,
+                "Total size of the events of the batches compressed, before compression.", "bytes"),
+            f.createLongCounter(BATCH_BYTES_AFTER_COMPRESSION,
+                "Total size of the events of the batches compressed, after compression.", "bytes"),
+            f.createLongCounter(BATCH_COMPRESSION_TIME, "Total time spent compressing batches.",
+                "nanoseconds"),
+            f.createIntCounter(SUB_BATCHES_DISPATCHED,
+                "Number of sub-batches of keys dispatched to the listeners in parallel.",
+                "operations"),
+            f.createLongCounter(BATCH_SPLIT_TIME, "Total time spent splitting batches by key.",
+                "nanoseconds"),
+            f.createLongCounter(SUB_BATCH_DISPATCH_TIME,
+                "Total time the listeners spent processing sub-batches, summed over the threads.",
+                "nanoseconds"),
+            f.createLongCounter(SUB_BATCH_WAIT_TIME,
+                "Total time the dispatchers waited for the other sub-batches of their batches.",
                 "nanoseconds"),});
 
     // Initialize id fields
@@ -123,6 +148,17 @@ public class AsyncEventQueueStats extends GatewaySenderStats {
     loadBalancesCompletedId = type.nameToId(LOAD_BALANCES_COMPLETED);
     loadBalancesInProgressId = type.nameToId(LOAD_BALANCES_IN_PROGRESS);
     loadBalanceTimeId = type.nameToId(LOAD_BALANCE_TIME);
+    batchesInFlightId = type.nameToId(BATCHES_IN_FLIGHT);
+    batchesAcknowledgedId = type.nameToId(BATCHES_ACKNOWLEDGED);
+    batchAcknowledgementTimeId = type.nameToId(BATCH_ACKNOWLEDGEMENT_TIME);
+    batchesCompressedId = type.nameToId(BATCHES_COMPRESSED);
+    batchBytesBeforeCompressionId = type.nameToId(BATCH_BYTES_BEFORE_COMPRESSION);
+    batchBytesAfterCompressionId = type.nameToId(BATCH_BYTES_AFTER_COMPRESSION);
+    batchCompressionTimeId = type.nameToId(BATCH_COMPRESSION_TIME);
+    subBatchesDispatchedId = type.nameToId(SUB_BATCHES_DISPATCHED);
+    batchSplitTimeId = type.nameToId(BATCH_SPLIT_TIME);
+    subBatchDispatchTimeId = type.nameToId(SUB_BATCH_DISPATCH_TIME);
+    subBatchWaitTimeId = type.nameToId(SUB_BATCH_WAIT_TIME);
   }
 
   /**
@@ -0,0 +1,460 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.asyncqueue.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.apache.logging.log4j.Logger;
+
+import org.apache.geode.StatisticsFactory;
+import org.apache.geode.cache.Declarable;
+import org.apache.geode.cache.Operation;
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.asyncqueue.AsyncEvent;
+import org.apache.geode.cache.asyncqueue.AsyncEventListener;
+import org.apache.geode.distributed.internal.InternalDistributedSystem;
+import org.apache.geode.internal.jndi.JNDIInvoker;
+import org.apache.geode.internal.logging.LogService;
+import org.apache.geode.internal.statistics.DummyStatisticsFactory;
+import org.apache.geode.pdx.PdxInstance;
+
+/**
+ * An {@link AsyncEventListener} which writes the entries of the regions of its queue behind to the
+ * tables of a database, through a data source bound with a <code>jndi-binding</code>.
+ * <p>
+ * Every region is written to a table, with a row per entry. The key of the entry is written to the
+ * key column, and every field of its value to the column of the same name. The value is either a
+ * {@link PdxInstance}, so the cache should read PDX serialized values, or a {@link Map} of column
+ * names. Invalidated entries are not written.
+ * <p>
+ * A batch of events is written in a single transaction. Only the last event of every entry is
+ * written, and the events of a table are grouped into a JDBC batch of deletes, then a batch of
+ * updates, then a batch of inserts of the rows the updates did not find. A batch which fails is
+ * rolled back and written again, and is left in the queue once all the retries failed.
+ * <p>
+ * The listener is configured with the following parameters:
+ * <ul>
+ * <li>{@value #JNDI_NAME}: the JNDI name of the data source
+ * <li>{@value #TABLE_PREFIX}<i>region</i>: the table of the region of that name, the name of the
+ * region by default
+ * <li>{@value #KEY_COLUMN}: the column the keys are written to, {@value #DEFAULT_KEY_COLUMN} by
+ * default
+ * <li>{@value #FIELD_PREFIX}<i>field</i>: the column the field of that name is written to
+ * <li>{@value #MAX_RETRIES}: the number of times a failed batch is written again,
+ * {@value #DEFAULT_MAX_RETRIES} by default
+ * <li>{@value #RETRY_INTERVAL}: the milliseconds to wait before writing a failed batch again,
+ * {@value #DEFAULT_RETRY_INTERVAL} by default
+ * </ul>
+ */
+public class JdbcWriteBehindListener implements AsyncEventListener, Declarable {
+
+  private static final Logger logger = LogService.getLogger();
+
+  public static final String JNDI_NAME = "jndi-name";
+
+  public static final String TABLE_PREFIX = "table.";
+
+  public static final String KEY_COLUMN = "key-column";
+
+  public static final String FIELD_PREFIX = "field.";
+
+  public static final String MAX_RETRIES = "max-retries";
+
+  public static final String RETRY_INTERVAL = "retry-interval";
+
+  public static final String DEFAULT_KEY_COLUMN = "id";
+
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  public static final long DEFAULT_RETRY_INTERVAL = 1000;
+
+  private DataSource dataSource;
+
+  private JdbcWriteBehindStats stats;
+
+  private final Map<String, String> tables = new HashMap<>();
+
+  private final Map<String, String> columns = new HashMap<>();
+
+  private String keyColumn = DEFAULT_KEY_COLUMN;
+
+  private int maxRetries = DEFAULT_MAX_RETRIES;
+
+  private long retryInterval = DEFAULT_RETRY_INTERVAL;
+
+  public JdbcWriteBehindListener() {}
+
+  JdbcWriteBehindListener(DataSource dataSource, JdbcWriteBehindStats stats) {
+    this.dataSource = dataSource;
+    this.stats = stats;
+  }
+
+  @Override
+  public void init(Properties props) {
+    for (String name : props.stringPropertyNames()) {
+      String value = props.getProperty(name);
+      if (name.startsWith(TABLE_PREFIX)) {
+        this.tables.put(name.substring(TABLE_PREFIX.length()), value);
+      } else if (name.startsWith(FIELD_PREFIX)) {
+        this.columns.put(name.substring(FIELD_PREFIX.length()), value);
+      }
+    }
+    String prop = null;
+    if ((prop = props.getProperty(KEY_COLUMN)) != null) {
+      this.keyColumn = prop;
+    }
+    if ((prop = props.getProperty(MAX_RETRIES)) != null) {
+      this.maxRetries = Integer.parseInt(prop);
+    }
+    if ((prop = props.getProperty(RETRY_INTERVAL)) != null) {
+      this.retryInterval = Long.parseLong(prop);
+    }
+
+    String jndiName = props.getProperty(JNDI_NAME);
+    if (jndiName != null) {
+      try {
+        this.dataSource = (DataSource) JNDIInvoker.getJNDIContext().lookup("java:/" + jndiName);
+      } catch (NamingException e) {
+        throw new IllegalArgumentException("No data source is bound to " + jndiName, e);
+      }
+    } else if (this.dataSource == null) {
+      throw new IllegalArgumentException("The " + JNDI_NAME + " parameter is required");
+    }
+    if (this.stats == null) {
+      InternalDistributedSystem system = InternalDistributedSystem.getAnyInstance();
+      StatisticsFactory factory = system != null ? system : new DummyStatisticsFactory();
+      this.stats = new JdbcWriteBehindStats(factory, jndiName);
+    }
+  }
+
+  @Override
+  public boolean processEvents(List<AsyncEvent> events) {
+    long start = this.stats.startTime();
+    Map<String, Map<Object, Map<String, Object>>> rows = coalesce(events);
+    for (int attempt = 0;; attempt++) {
+      try {
+        int[] counts = write(rows);
+        this.stats.endBatchWritten(start, counts[0], counts[1], counts[2]);
+        return true;
+      } catch (SQLException e) {
+        if (attempt >= this.maxRetries) {
+          logger.warn("Failed to write a batch of {} events to the database after {} attempts",
+              events.size(), attempt + 1, e);
+          this.stats.endBatchFailed(start);
+          return false;
+        }
+        logger.info("Failed to write a batch of {} events to the database, retrying: {}",
+            events.size(), e.getMessage());
+        this.stats.incBatchRetries();
+        try {
+          Thread.sleep(this.retryInterval);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          this.stats.endBatchFailed(start);
+          return false;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    if (this.stats != null) {
+      this.stats.close();
+    }
+  }
+
+  /**
+   * Returns the rows to write by table and key, in the order of their events, with a null row for
+   * the keys to delete. A row is written with the value of the last event of its key.
+   */
+  private Map<String, Map<Object, Map<String, Object>>> coalesce(List<AsyncEvent> events) {
+    Map<String, Map<Object, Map<String, Object>>> rows = new LinkedHashMap<>();
+    int coalesced = 0;
+    for (AsyncEvent event : events) {
+      Region region = event.getRegion();
+      Operation operation = event.getOperation();
+      Map<String, Object> row = null;
+      if (region == null
+          || !(operation.isDestroy() || operation.isCreate() || operation.isUpdate())) {
+        this.stats.incEventsSkipped();
+        continue;
+      }
+      if (!operation.isDestroy()) {
+        row = toRow(event.getDeserializedValue());
+        if (row == null) {
+          logger.warn(
+              "Not writing key {} of region {} as its value is neither a PdxInstance nor a Map",
+              event.getKey(), region.getFullPath());
+          this.stats.incEventsSkipped();
+          continue;
+        }
+      }
+      String table = this.tables.get(region.getName());
+      if (table == null) {
+        table = region.getName();
+      }
+      Map<Object, Map<String, Object>> tableRows = rows.get(table);
+      if (tableRows == null) {
+        tableRows = new LinkedHashMap<>();
+        rows.put(table, tableRows);
+      }
+      if (tableRows.containsKey(event.getKey())) {
+        // keep the order of the last event of the key
+        tableRows.remove(event.getKey());
+        coalesced++;
+      }
+      tableRows.put(event.getKey(), row);
+    }
+    if (coalesced > 0) {
+      this.stats.incEventsCoalesced(coalesced);
+    }
+    return rows;
+  }
+
+  /**
+   * Returns the columns of the value, without the key column, or null if it is not a
+   * {@link PdxInstance} or a {@link Map}.
+   */
+  private Map<String, Object> toRow(Object value) {
+    Map<String, Object> row = new LinkedHashMap<>();
+    if (value instanceof PdxInstance) {
+      PdxInstance instance = (PdxInstance) value;
+      for (String field : instance.getFieldNames()) {
+        putColumn(row, field, instance.getField(field));
+      }
+    } else if (value instanceof Map) {
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        putColumn(row, String.valueOf(entry.getKey()), entry.getValue());
+      }
+    } else {
+      return null;
+    }
+    return row;
+  }
+
+  private void putColumn(Map<String, Object> row, String field, Object value) {
+    String column = this.columns.get(field);
+    if (column == null) {
+      column = field;
+    }
+    if (!column.equalsIgnoreCase(this.keyColumn)) {
+      row.put(column, value);
+    }
+  }
+
+  /**
+   * Writes the rows in a single transaction, and returns the number of rows inserted, updated and
+   * deleted.
+   */
+  private int[] write(Map<String, Map<Object, Map<String, Object>>> rows) throws SQLException {
+    int[] counts = new int[3];
+    Connection connection = this.dataSource.getConnection();
+    try {
+      connection.setAutoCommit(false);
+      for (Map.Entry<String, Map<Object, Map<String, Object>>> entry : rows.entrySet()) {
+        writeTable(connection, entry.getKey(), entry.getValue(), counts);
+      }
+      connection.commit();
+      return counts;
+    } catch (SQLException e) {
+      try {
+        connection.rollback();
+      } catch (SQLException ignore) {
+        // the connection is closed below
+      }
+      throw e;
+    } finally {
+      connection.close();
+    }
+  }
+
+  private void writeTable(Connection connection, String table,
+      Map<Object, Map<String, Object>> rows, int[] counts) throws SQLException {
+    List<Object> deletes = new ArrayList<>();
+    // the rows of the same columns are written by the same statements
+    Map<List<String>, Map<Object, Map<String, Object>>> upserts = new LinkedHashMap<>();
+    for (Map.Entry<Object, Map<String, Object>> entry : rows.entrySet()) {
+      Map<String, Object> row = entry.getValue();
+      if (row == null) {
+        deletes.add(entry.getKey());
+        continue;
+      }
+      List<String> rowColumns = new ArrayList<>(row.keySet());
+      Map<Object, Map<String, Object>> group = upserts.get(rowColumns);
+      if (group == null) {
+        group = new LinkedHashMap<>();
+        upserts.put(rowColumns, group);
+      }
+      group.put(entry.getKey(), row);
+    }
+
+    if (!deletes.isEmpty()) {
+      PreparedStatement delete =
+          connection.prepareStatement("DELETE FROM " + table + " WHERE " + this.keyColumn + " = ?");
+      try {
+        for (Object key : deletes) {
+          delete.setObject(1, key);
+          delete.addBatch();
+        }
+        for (int count : delete.executeBatch()) {
+          counts[2] += affectedRows(count);
+        }
+      } finally {
+        delete.close();
+      }
+    }
+    for (Map.Entry<List<String>, Map<Object, Map<String, Object>>> group : upserts.entrySet()) {
+      upsert(connection, table, group.getKey(), group.getValue(), counts);
+    }
+  }
+
+  /**
+   * Updates the rows in a batch, then inserts the ones the update did not find in another.
+   */
+  private void upsert(Connection connection, String table, List<String> rowColumns,
+      Map<Object, Map<String, Object>> rows, int[] counts) throws SQLException {
+    List<Object> inserts;
+    if (rowColumns.isEmpty()) {
+      // there is nothing to update, so only insert the rows that do not exist yet
+      inserts = new ArrayList<>();
+      PreparedStatement select = connection.prepareStatement(
+          "SELECT " + this.keyColumn + " FROM " + table + " WHERE " + this.keyColumn + " = ?");
+      try {
+        for (Object key : rows.keySet()) {
+          select.setObject(1, key);
+          ResultSet resultSet = select.executeQuery();
+          try {
+            if (!resultSet.next()) {
+              inserts.add(key);
+            }
+          } finally {
+            resultSet.close();
+          }
+        }
+      } finally {
+        select.close();
+      }
+    } else {
+      StringBuilder sql = new StringBuilder("UPDATE ").append(table).append(" SET ");
+      for (int i = 0; i < rowColumns.size(); i++) {
+        sql.append(i == 0 ? "" : ", ").append(rowColumns.get(i)).append(" = ?");
+      }
+      sql.append(" WHERE ").append(this.keyColumn).append(" = ?");
+      List<Object> keys = new ArrayList<>(rows.keySet());
+      int[] updated;
+      PreparedStatement update = connection.prepareStatement(sql.toString());
+      try {
+        for (Object key : keys) {
+          setUpdateParameters(update, rowColumns, key, rows.get(key));
+          update.addBatch();
+        }
+        updated = update.executeBatch();
+        if (!allRowCountsKnown(updated)) {
+          // the driver does not tell which rows the batch found, so update them again one at a
+          // time, which sets the same values, to know which rows to insert
+          for (int i = 0; i < keys.size(); i++) {
+            setUpdateParameters(update, rowColumns, keys.get(i), rows.get(keys.get(i)));
+            updated[i] = update.executeUpdate();
+          }
+        }
+      } finally {
+        update.close();
+      }
+      inserts = new ArrayList<>();
+      for (int i = 0; i < updated.length; i++) {
+        if (updated[i] == 0) {
+          inserts.add(keys.get(i));
+        } else {
+          counts[1] += affectedRows(updated[i]);
+        }
+      }
+    }
+
+    if (!inserts.isEmpty()) {
+      StringBuilder sql =
+          new StringBuilder("INSERT INTO ").append(table).append(" (").append(this.keyColumn);
+      for (String column : rowColumns) {
+        sql.append(", ").append(column);
+      }
+      sql.append(") VALUES (?");
+      for (int i = 0; i < rowColumns.size(); i++) {
+        sql.append(", ?");
+      }
+      sql.append(")");
+      PreparedStatement insert = connection.prepareStatement(sql.toString());
+      try {
+        for (Object key : inserts) {
+          Map<String, Object> row = rows.get(key);
+          insert.setObject(1, key);
+          for (int i = 0; i < rowColumns.size(); i++) {
+            insert.setObject(i + 2, row.get(rowColumns.get(i)));
+          }
+          insert.addBatch();
+        }
+        for (int count : insert.executeBatch()) {
+          counts[0] += affectedRows(count);
+        }
+      } finally {
+        insert.close();
+      }
+    }
+  }
+
+  private static void setUpdateParameters(PreparedStatement update, List<String> rowColumns,
+      Object key, Map<String, Object> row) throws SQLException {
+    for (int i = 0; i < rowColumns.size(); i++) {
+      update.setObject(i + 1, row.get(rowColumns.get(i)));
+    }
+    update.setObject(rowColumns.size() + 1, key);
+  }
+
+  /**
+   * Returns whether the driver returned the number of rows each statement of a batch changed,
+   * rather than {@link Statement#SUCCESS_NO_INFO} or {@link Statement#EXECUTE_FAILED}.
+   */
+  private static boolean allRowCountsKnown(int[] counts) {
+    for (int count : counts) {
+      if (count < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the rows a statement of a batch changed, counting one when the driver does not tell.
+   */
+  private static int affectedRows(int count) {
+    return count == Statement.SUCCESS_NO_INFO ? 1 : count;
+  }
+
+  JdbcWriteBehindStats getStats() {
+    return this.stats;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.asyncqueue.internal;
+
+import org.apache.geode.StatisticDescriptor;
+import org.apache.geode.Statistics;
+import org.apache.geode.StatisticsFactory;
+import org.apache.geode.StatisticsType;
+import org.apache.geode.StatisticsTypeFactory;
+import org.apache.geode.distributed.internal.DistributionStats;
+import org.apache.geode.internal.statistics.StatisticsTypeFactoryImpl;
+
+/**
+ * Statistics of a {@link JdbcWriteBehindListener}.
+ */
+public class JdbcWriteBehindStats {
+
+  private static final StatisticsType type;
+
+  private static final int batchesWrittenId;
+  private static final int batchesFailedId;
+  private static final int batchRetriesId;
+  private static final int batchWriteTimeId;
+  private static final int rowsInsertedId;
+  private static final int rowsUpdatedId;
+  private static final int rowsDeletedId;
+  private static final int eventsCoalescedId;
+  private static final int eventsSkippedId;
+
+  static {
+    StatisticsTypeFactory f = StatisticsTypeFactoryImpl.singleton();
+
+    type = f.createType("JdbcWriteBehindStatistics",
+        "Statistics about the batches of events an async event listener writes to a database",
+        new StatisticDescriptor[] {
+            f.createLongCounter("batchesWritten",
+                "Number of batches of events written and committed to the database.", "operations"),
+            f.createLongCounter("batchesFailed",
+                "Number of batches of events not written once all retries failed.", "operations"),
+            f.createLongCounter("batchRetries",
+                "Number of times writing a batch of events was retried.", "operations"),
+            f.createLongCounter("batchWriteTime",
+                "Total time spent writing the batches of events, retries included.", "nanoseconds"),
+            f.createLongCounter("rowsInserted", "Number of rows inserted.", "rows"),
+            f.createLongCounter("rowsUpdated", "Number of rows updated.", "rows"),
+            f.createLongCounter("rowsDeleted", "Number of rows deleted.", "rows"),
+            f.createLongCounter("eventsCoalesced",
+                "Number of events not written because a later event of the same batch replaced them.",
+                "operations"),
+            f.createLongCounter("eventsSkipped",
+                "Number of events not written because they have no row to write.", "operations")});
+
+    batchesWrittenId = type.nameToId("batchesWritten");
+    batchesFailedId = type.nameToId("batchesFailed");
+    batchRetriesId = type.nameToId("batchRetries");
+    batchWriteTimeId = type.nameToId("batchWriteTime");
+    rowsInsertedId = type.nameToId("rowsInserted");
+    rowsUpdatedId = type.nameToId("rowsUpdated");
+    rowsDeletedId = type.nameToId("rowsDeleted");
+    eventsCoalescedId = type.nameToId("eventsCoalesced");
+    eventsSkippedId = type.nameToId("eventsSkipped");
+  }
+
+  /** The Statistics object that we delegate most behavior to */
+  private final Statistics stats;
+
+  public JdbcWriteBehindStats(StatisticsFactory f, String name) {
+    this.stats = f.createAtomicStatistics(type, name);
+  }
+
+  public void close() {
+    this.stats.close();
+  }
+
+  public long startTime() {
+    return DistributionStats.getStatTime();
+  }
+
+  /**
+   * Increments the "batchesWritten", "rowsInserted", "rowsUpdated", "rowsDeleted" and
+   * "batchWriteTime" stats.
+   */
+  public void endBatchWritten(long start, int rowsInserted, int rowsUpdated, int rowsDeleted) {
+    this.stats.incLong(batchesWrittenId, 1);
+    this.stats.incLong(rowsInsertedId, rowsInserted);
+    this.stats.incLong(rowsUpdatedId, rowsUpdated);
+    this.stats.incLong(rowsDeletedId, rowsDeleted);
+    this.stats.incLong(batchWriteTimeId, DistributionStats.getStatTime() - start);
+  }
+
+  /**
+   * Increments the "batchesFailed" and "batchWriteTime" stats.
+   */
+  public void endBatchFailed(long start) {
+    this.stats.incLong(batchesFailedId, 1);
+    this.stats.incLong(batchWriteTimeId, DistributionStats.getStatTime() - start);
+  }
+
+  public void incBatchRetries() {
+    this.stats.incLong(batchRetriesId, 1);
+  }
+
+  public void incEventsCoalesced(int events) {
+    this.stats.incLong(eventsCoalescedId, events);
+  }
+
+  public void incEventsSkipped() {
+    this.stats.incLong(eventsSkippedId, 1);
+  }
+
+  public long getBatchesWritten() {
+    return this.stats.getLong(batchesWrittenId);
+  }
+
+  public long getBatchesFailed() {
+    return this.stats.getLong(batchesFailedId);
+  }
+
+  public long getBatchRetries() {
+    return this.stats.getLong(batchRetriesId);
+  }
+
+  public long getBatchWriteTime() {
+    return this.stats.getLong(batchWriteTimeId);
+  }
+
+  public long getRowsInserted() {
+    return this.stats.getLong(rowsInsertedId);
+  }
+
+  public long getRowsUpdated() {
+    return this.stats.getLong(rowsUpdatedId);
+  }
+
+  public long getRowsDeleted() {
+    return this.stats.getLong(rowsDeletedId);
+  }
+
+  public long getEventsCoalesced() {
+    return this.stats.getLong(eventsCoalescedId);
+  }
+
+  public long getEventsSkipped() {
+    return this.stats.getLong(eventsSkippedId);
+  }
+
+  public Statistics getStats() {
+    return this.stats;
+  }
+}
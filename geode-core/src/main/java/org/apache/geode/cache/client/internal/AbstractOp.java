@@ -367,26 +367,51 @@ public abstract class AbstractOp implements Op {
    * Connection)
    */
   public Object attempt(Connection cnx) throws Exception {
+    long start = sendAttempt(cnx);
+    return readAttempt(cnx, start);
+  }
+
+  /**
+   * Sends this operation's message on the given connection as the first half of an attempt. The
+   * attempt is ended by {@link #readAttempt}, which may be called by another thread once the
+   * responses to the messages sent before this one have been read.
+   * 
+   * @return the start time of the attempt
+   * @throws Exception if the send fails, in which case the attempt has ended
+   */
+  long sendAttempt(Connection cnx) throws Exception {
     this.failed = true;
     this.timedOut = false;
     long start = startAttempt(cnx.getStats());
+    boolean sent = false;
     try {
-      try {
-        attemptSend(cnx);
-        this.failed = false;
-      } finally {
-        endSendAttempt(cnx.getStats(), start);
-      }
-      this.failed = true;
-      try {
-        Object result = attemptReadResponse(cnx);
-        this.failed = false;
-        return result;
-      } catch (SocketTimeoutException ste) {
-        this.failed = false;
-        this.timedOut = true;
-        throw ste;
+      attemptSend(cnx);
+      this.failed = false;
+      sent = true;
+    } finally {
+      endSendAttempt(cnx.getStats(), start);
+      if (!sent) {
+        endAttempt(cnx.getStats(), start);
       }
+    }
+    return start;
+  }
+
+  /**
+   * Reads the response to the message sent by {@link #sendAttempt} and ends the attempt.
+   * 
+   * @param start the start time of the attempt
+   */
+  Object readAttempt(Connection cnx, long start) throws Exception {
+    this.failed = true;
+    try {
+      Object result = attemptReadResponse(cnx);
+      this.failed = false;
+      return result;
+    } catch (SocketTimeoutException ste) {
+      this.failed = false;
+      this.timedOut = true;
+      throw ste;
     } finally {
       endAttempt(cnx.getStats(), start);
     }
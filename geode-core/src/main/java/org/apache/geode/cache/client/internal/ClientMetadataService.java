@@ -231,6 +231,51 @@ public final class ClientMetadataService {
     return serverToKeysMap;
   }
 
+  /**
+   * Groups the keys of a bulk operation (getAll, putAll or removeAll) by the server hosting the
+   * primary of their bucket. Unlike {@link #getServerToFilterMap}, the keys of the buckets whose
+   * primary is not known yet do not make the whole operation give up on single-hop: they are sent
+   * to a random server, which routes them itself, and the metadata is refreshed in the background.
+   * 
+   * @return the keys of each server, or null if there is no metadata for the region yet
+   */
+  public Map<ServerLocation, HashSet> getServerToFilterMapForBulkOp(final Collection keys,
+      final Region region) {
+    ClientPartitionAdvisor prAdvisor = this.getClientPartitionAdvisor(region.getFullPath());
+    ServerLocation randomServer = prAdvisor == null ? null : prAdvisor.adviseRandomServerLocation();
+    if (randomServer == null) {
+      scheduleGetPRMetaData((LocalRegion) region, false);
+      return null;
+    }
+    HashMap<Integer, HashSet> bucketToKeysMap =
+        groupByBucketOnClientSide(region, prAdvisor, keys, false);
+
+    HashMap<ServerLocation, HashSet> serverToKeysMap = new HashMap<ServerLocation, HashSet>();
+    boolean isMetadataMissing = false;
+    for (Map.Entry<Integer, HashSet> entry : bucketToKeysMap.entrySet()) {
+      ServerLocation server = prAdvisor.advisePrimaryServerLocation(entry.getKey());
+      if (server == null) {
+        server = randomServer;
+        isMetadataMissing = true;
+      }
+      // use LinkedHashSet to maintain the order of keys
+      // the keys will be iterated several times
+      HashSet serverKeys = serverToKeysMap.get(server);
+      if (serverKeys == null) {
+        serverKeys = new LinkedHashSet();
+        serverToKeysMap.put(server, serverKeys);
+      }
+      serverKeys.addAll(entry.getValue());
+    }
+    if (isMetadataMissing) {
+      scheduleGetPRMetaData((LocalRegion) region, false);
+    }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Returning server to keys map for bulk op : {}", serverToKeysMap);
+    }
+    return serverToKeysMap;
+  }
+
   public HashMap<ServerLocation, HashSet<Integer>> groupByServerToAllBuckets(Region region,
       boolean primaryOnly) {
     final String regionFullPath = region.getFullPath();
@@ -507,6 +552,11 @@ public final class ClientMetadataService {
       }
     } else {
       synchronized (fetchTaskCountLock) {
+        // a refresh already scheduled fetches the latest metadata, so don't
+        // queue one more task per operation while it is being fetched
+        if (!regionsBeingRefreshed.add(region.getFullPath())) {
+          return;
+        }
         refreshTaskCount++;
       }
       Runnable fetchTask = new Runnable() {
@@ -524,6 +574,7 @@ public final class ClientMetadataService {
             }
           } finally {
             synchronized (fetchTaskCountLock) {
+              regionsBeingRefreshed.remove(region.getFullPath());
               refreshTaskCount--;
             }
           }
@@ -30,6 +30,7 @@ import org.apache.geode.internal.cache.tier.Acceptor;
 import org.apache.geode.internal.cache.tier.sockets.CacheClientUpdater;
 import org.apache.geode.internal.cache.tier.sockets.ClientProxyMembershipID;
 import org.apache.geode.internal.cache.tier.sockets.HandShake;
+import org.apache.geode.internal.cache.wan.AbstractGatewaySender;
 import org.apache.geode.internal.i18n.LocalizedStrings;
 import org.apache.geode.internal.logging.LogService;
 import org.apache.geode.internal.logging.log4j.LocalizedMessage;
@@ -98,6 +99,8 @@ public class ConnectionFactoryImpl implements ConnectionFactory {
       if (sender != null && !sender.getGatewayTransportFilters().isEmpty()) {
         this.socketCreator.initializeTransportFilterClientSocketFactory(sender);
       }
+      this.handshake
+          .setBatchCompressionRequested(sender != null && AbstractGatewaySender.BATCH_COMPRESSION);
     } else {
       // If configured use SSL properties for cache-server
       this.socketCreator =
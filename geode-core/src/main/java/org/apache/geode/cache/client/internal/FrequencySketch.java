@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.client.internal;
+
+/**
+ * Estimates how often each key has been accessed recently, in a fixed amount of memory. The counts
+ * are kept in a count-min sketch of four rows of 4-bit counters, packed sixteen to a long, so that
+ * the estimate of a key is the smallest of its four counters. All counters are halved once as many
+ * accesses as ten times the expected number of keys have been counted, so that the estimates favor
+ * the keys accessed lately.
+ *
+ * Not thread safe; the users of a sketch synchronize its use.
+ */
+class FrequencySketch {
+
+  private static final long[] SEEDS =
+      {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  /** Clears the highest bit of each counter after the counters are shifted right */
+  private static final long HALF_MASK = 0x7777777777777777L;
+
+  private static final int MAX_COUNT = 15;
+
+  private final long[] table;
+
+  private final int tableMask;
+
+  private final int sampleSize;
+
+  /** The number of increments since the counters were last halved */
+  private int increments;
+
+  /**
+   * @param expectedKeys the number of keys whose frequency needs to be told apart
+   */
+  FrequencySketch(int expectedKeys) {
+    int size = Math.max(1, Math.min(expectedKeys, 1 << 30));
+    int length = Integer.highestOneBit(size);
+    if (length < size) {
+      length <<= 1;
+    }
+    this.table = new long[length];
+    this.tableMask = length - 1;
+    this.sampleSize = size <= Integer.MAX_VALUE / 10 ? size * 10 : Integer.MAX_VALUE;
+  }
+
+  /** Returns the estimated number of recent accesses of the key, at most 15 */
+  int frequency(Object key) {
+    final int hash = spread(key.hashCode());
+    final int start = (hash & 3) << 2;
+    int frequency = MAX_COUNT;
+    for (int i = 0; i < 4; i++) {
+      long word = this.table[indexOf(hash, i)];
+      int count = (int) ((word >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /** Counts an access of the key */
+  void increment(Object key) {
+    final int hash = spread(key.hashCode());
+    final int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && ++this.increments == this.sampleSize) {
+      halve();
+    }
+  }
+
+  private boolean incrementAt(int index, int counter) {
+    final int offset = counter << 2;
+    final long mask = 0xfL << offset;
+    if ((this.table[index] & mask) != mask) {
+      this.table[index] += 1L << offset;
+      return true;
+    }
+    return false;
+  }
+
+  private void halve() {
+    for (int i = 0; i < this.table.length; i++) {
+      this.table[i] = (this.table[i] >>> 1) & HALF_MASK;
+    }
+    this.increments /= 2;
+  }
+
+  private int indexOf(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[row];
+    h += h >>> 32;
+    return ((int) h) & this.tableMask;
+  }
+
+  private static int spread(int hash) {
+    int h = hash * 0x9e3779b9;
+    return h ^ (h >>> 16);
+  }
+}
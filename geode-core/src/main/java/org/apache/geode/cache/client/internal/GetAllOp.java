@@ -19,6 +19,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.Logger;
 
@@ -65,7 +66,8 @@ public class GetAllOp {
     AbstractOp op = new GetAllOpImpl(region.getFullPath(), keys, callback);
     ClientMetadataService cms = ((LocalRegion) region).getCache().getClientMetadataService();
 
-    Map<ServerLocation, HashSet> serverToFilterMap = cms.getServerToFilterMap(keys, region, true);
+    Map<ServerLocation, HashSet> serverToFilterMap =
+        cms.getServerToFilterMapForBulkOp(keys, region);
 
     if (serverToFilterMap == null || serverToFilterMap.isEmpty()) {
       op.initMessagePart();
@@ -110,6 +112,56 @@ public class GetAllOp {
     }
   }
 
+  /**
+   * Does a region getAll on the servers without waiting for the responses when the pool multiplexes
+   * its connections. With single-hop, the keys are sent to the servers hosting them, one op per
+   * server, and the returned future is completed once all of them are; a server that cannot be
+   * reached fails the getAll, the ops are not retried.
+   * 
+   * @param pool the pool to use to communicate with the servers.
+   * @param region the region to do the getAll on
+   * @param keys list of keys to get
+   * @return a future completed with the values found by the getAll if any
+   * @see PoolImpl#executeAsync(Op)
+   */
+  public static CompletableFuture<VersionedObjectList> executeAsync(PoolImpl pool, Region region,
+      final List keys, Object callback, boolean prSingleHopEnabled) {
+    Map<ServerLocation, HashSet> serverToFilterMap = null;
+    if (prSingleHopEnabled) {
+      ClientMetadataService cms = ((LocalRegion) region).getCache().getClientMetadataService();
+      serverToFilterMap = cms.getServerToFilterMapForBulkOp(keys, region);
+    }
+    if (serverToFilterMap == null || serverToFilterMap.isEmpty()) {
+      AbstractOp op = new GetAllOpImpl(region.getFullPath(), keys, callback);
+      op.initMessagePart();
+      return pool.executeAsync(op)
+          .thenApply(result -> ((VersionedObjectList) result).setKeys(keys));
+    }
+    final List<CompletableFuture<Object>> serverResults =
+        new ArrayList<CompletableFuture<Object>>(serverToFilterMap.size());
+    for (Map.Entry<ServerLocation, HashSet> entry : serverToFilterMap.entrySet()) {
+      ServerLocation server = entry.getKey();
+      AbstractOp op =
+          new GetAllOpImpl(region.getFullPath(), new ArrayList(entry.getValue()), callback);
+      op.initMessagePart();
+      serverResults
+          .add(pool.executeOnAsync(new ServerLocation(server.getHostName(), server.getPort()), op));
+    }
+    return CompletableFuture
+        .allOf(serverResults.toArray(new CompletableFuture[serverResults.size()]))
+        .thenApply(ignored -> {
+          VersionedObjectList result = null;
+          for (CompletableFuture<Object> serverResult : serverResults) {
+            if (result == null) {
+              result = (VersionedObjectList) serverResult.join();
+            } else {
+              result.addAll((VersionedObjectList) serverResult.join());
+            }
+          }
+          return result;
+        });
+  }
+
   private GetAllOp() {
     // no instances allowed
   }
@@ -0,0 +1,348 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.client.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.logging.log4j.Logger;
+
+import org.apache.geode.SystemFailure;
+import org.apache.geode.cache.client.ServerConnectivityException;
+import org.apache.geode.distributed.internal.ServerLocation;
+import org.apache.geode.internal.cache.tier.sockets.ServerConnection;
+import org.apache.geode.internal.cache.tier.sockets.ServerQueueStatus;
+import org.apache.geode.internal.logging.LogService;
+
+/**
+ * A client to server connection that has several operations outstanding at once. The messages of
+ * the operations are written to the connection as they are executed, without waiting for the
+ * responses to the ones sent before them, and a reader thread reads the responses and completes the
+ * futures of the operations.
+ * 
+ * A server processes the messages it reads from a connection one at a time and writes their
+ * responses in the same order, so the responses are matched to the operations by the order their
+ * messages were sent in. Each operation is given a sequence number on the connection to log it by.
+ * 
+ * The messages are written from the connection's comm buffer, under a lock that keeps them whole,
+ * while the responses are read into a buffer of their own. Operations whose response is read with a
+ * timeout other than the pool's read timeout, or which carry credentials, should not be executed on
+ * a multiplexed connection.
+ */
+class MultiplexedConnection implements Runnable {
+
+  private static final Logger logger = LogService.getLogger();
+
+  private final Connection connection;
+
+  /** The view of the connection the responses are read from */
+  private final ResponseConnection responseConnection;
+
+  private final OpExecutorImpl executor;
+
+  /** The operations whose message has been sent, in the order their responses will be read */
+  private final LinkedBlockingQueue<PendingOp> pendingOps = new LinkedBlockingQueue<PendingOp>();
+
+  /** Limits the number of operations outstanding on the connection */
+  private final Semaphore permits;
+
+  /** Held while a message is written, so that it is written whole and enqueued in order */
+  private final Object sendLock = new Object();
+
+  /** The sequence number of the last operation sent; guarded by sendLock */
+  private long lastSequence;
+
+  /** Guarded by sendLock */
+  private boolean closed;
+
+  private final Thread reader;
+
+  /**
+   * @param connection a connection that is not used by anything else
+   * @param executor handles the exceptions of the operations like it does for the other connections
+   *        of the pool
+   * @param maxOps the number of operations that may be outstanding on the connection at once
+   */
+  MultiplexedConnection(Connection connection, OpExecutorImpl executor, int maxOps,
+      int socketBufferSize) {
+    this.connection = connection;
+    this.responseConnection = new ResponseConnection(connection,
+        ServerConnection.allocateCommBuffer(socketBufferSize, connection.getSocket()));
+    this.executor = executor;
+    this.permits = new Semaphore(maxOps);
+    this.reader = new Thread(this, "MultiplexedConnection reader for " + connection.getServer());
+    this.reader.setDaemon(true);
+  }
+
+  void start() {
+    this.reader.start();
+  }
+
+  ServerLocation getServer() {
+    return this.connection.getServer();
+  }
+
+  boolean isClosed() {
+    synchronized (this.sendLock) {
+      return this.closed;
+    }
+  }
+
+  /**
+   * Sends the message of the given operation and returns a future completed with its result once
+   * its response has been read. Waits while the maximum number of operations are outstanding on the
+   * connection.
+   */
+  CompletableFuture<Object> execute(AbstractOp op) {
+    CompletableFuture<Object> result = new CompletableFuture<Object>();
+    try {
+      this.permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      result.completeExceptionally(e);
+      return result;
+    }
+    Exception failure = null;
+    synchronized (this.sendLock) {
+      if (this.closed) {
+        failure = new ServerConnectivityException(
+            "Multiplexed connection to " + getServer() + " was closed");
+      } else {
+        try {
+          long start = op.sendAttempt(this.connection);
+          this.pendingOps.add(new PendingOp(++this.lastSequence, op, start, result));
+        } catch (Exception e) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      this.permits.release();
+      RuntimeException thrown = completeExceptionally(result, failure);
+      if (failure instanceof IOException) {
+        // part of the message may have been written
+        close(thrown);
+      }
+    }
+    return result;
+  }
+
+  /** Reads the responses to the operations sent on the connection, in order */
+  public void run() {
+    try {
+      while (!isClosed()) {
+        PendingOp pending = this.pendingOps.take();
+        try {
+          Object value = pending.op.readAttempt(this.responseConnection, pending.start);
+          this.connection.getEndpoint().updateLastExecute();
+          this.permits.release();
+          pending.result.complete(value);
+        } catch (Exception e) {
+          if (logger.isDebugEnabled()) {
+            logger.debug("Operation {} on {} failed", pending.sequence, this, e);
+          }
+          this.permits.release();
+          RuntimeException thrown = completeExceptionally(pending.result, e);
+          if (e instanceof IOException || this.connection.isDestroyed()) {
+            // the next response can no longer be found in the stream
+            close(thrown);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      // the connection was closed
+    } catch (VirtualMachineError err) {
+      SystemFailure.initiateFailure(err);
+      throw err;
+    } catch (RuntimeException e) {
+      logger.warn("Unexpected exception reading responses on {}", this, e);
+      close(e);
+    }
+  }
+
+  /**
+   * Completes the future with the exception the pool would throw for the failure, destroying the
+   * connection if the failure calls for it.
+   * 
+   * @return the exception the future was completed with
+   */
+  private RuntimeException completeExceptionally(CompletableFuture<Object> result,
+      Exception failure) {
+    RuntimeException toThrow;
+    try {
+      this.executor.handleException(failure, this.connection, 0, true);
+      toThrow = new ServerConnectivityException("Received error connecting to server", failure);
+    } catch (RuntimeException e) {
+      toThrow = e;
+    }
+    result.completeExceptionally(toThrow);
+    return toThrow;
+  }
+
+  /**
+   * Destroys the connection and fails the operations still waiting for their response.
+   * 
+   * @param cause why the connection is closed, if it failed
+   */
+  void close(Throwable cause) {
+    synchronized (this.sendLock) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+    }
+    this.connection.destroy();
+    this.reader.interrupt();
+    ServerConnectivityException failure = new ServerConnectivityException(
+        "Multiplexed connection to " + getServer() + " was closed", cause);
+    PendingOp pending;
+    while ((pending = this.pendingOps.poll()) != null) {
+      this.permits.release();
+      pending.result.completeExceptionally(failure);
+    }
+    ServerConnection.releaseCommBuffer(this.responseConnection.takeCommBuffer());
+  }
+
+  @Override
+  public String toString() {
+    return "MultiplexedConnection[" + this.connection + "]";
+  }
+
+  /** An operation whose message has been sent, waiting for its response */
+  private static class PendingOp {
+    final long sequence;
+
+    final AbstractOp op;
+
+    /** The start time of the attempt */
+    final long start;
+
+    final CompletableFuture<Object> result;
+
+    PendingOp(long sequence, AbstractOp op, long start, CompletableFuture<Object> result) {
+      this.sequence = sequence;
+      this.op = op;
+      this.start = start;
+      this.result = result;
+    }
+  }
+
+  /** The connection the responses are read from, with a comm buffer of its own */
+  private static class ResponseConnection implements Connection {
+    private final Connection connection;
+
+    private volatile ByteBuffer commBuffer;
+
+    ResponseConnection(Connection connection, ByteBuffer commBuffer) {
+      this.connection = connection;
+      this.commBuffer = commBuffer;
+    }
+
+    public ByteBuffer getCommBuffer() throws SocketException {
+      ByteBuffer result = this.commBuffer;
+      if (result == null || this.connection.isDestroyed()) {
+        throw new SocketException("socket was closed");
+      }
+      return result;
+    }
+
+    /** Returns the comm buffer, which is no longer handed out, or null if it was taken already */
+    ByteBuffer takeCommBuffer() {
+      ByteBuffer result = this.commBuffer;
+      this.commBuffer = null;
+      return result;
+    }
+
+    public Socket getSocket() {
+      return this.connection.getSocket();
+    }
+
+    public ConnectionStats getStats() {
+      return this.connection.getStats();
+    }
+
+    public void destroy() {
+      this.connection.destroy();
+    }
+
+    public boolean isDestroyed() {
+      return this.connection.isDestroyed();
+    }
+
+    public void close(boolean keepAlive) throws Exception {
+      this.connection.close(keepAlive);
+    }
+
+    public ServerLocation getServer() {
+      return this.connection.getServer();
+    }
+
+    public Endpoint getEndpoint() {
+      return this.connection.getEndpoint();
+    }
+
+    public ServerQueueStatus getQueueStatus() {
+      return this.connection.getQueueStatus();
+    }
+
+    public Object execute(Op op) throws Exception {
+      throw new UnsupportedOperationException();
+    }
+
+    public void emergencyClose() {
+      this.connection.emergencyClose();
+    }
+
+    public short getWanSiteVersion() {
+      return this.connection.getWanSiteVersion();
+    }
+
+    public void setWanSiteVersion(short wanSiteVersion) {
+      this.connection.setWanSiteVersion(wanSiteVersion);
+    }
+
+    public int getDistributedSystemId() {
+      return this.connection.getDistributedSystemId();
+    }
+
+    public OutputStream getOutputStream() {
+      return this.connection.getOutputStream();
+    }
+
+    public InputStream getInputStream() {
+      return this.connection.getInputStream();
+    }
+
+    public void setConnectionID(long id) {
+      this.connection.setConnectionID(id);
+    }
+
+    public long getConnectionID() {
+      return this.connection.getConnectionID();
+    }
+
+    @Override
+    public String toString() {
+      return this.connection.toString();
+    }
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.client.internal;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.geode.cache.client.NoAvailableServersException;
+import org.apache.geode.cache.client.ServerConnectivityException;
+import org.apache.geode.distributed.internal.DistributionConfig;
+import org.apache.geode.distributed.internal.ServerLocation;
+
+/**
+ * Keeps the {@link MultiplexedConnection}s of a pool. Operations that may be executed on any server
+ * are spread over up to {@link #MULTIPLEXED_CONNECTIONS} connections, each to a different server
+ * when there are enough servers; operations that must be executed on a given server use a
+ * connection to that server, which is created if there is none.
+ * 
+ * The connections are not managed by the pool's
+ * {@link org.apache.geode.cache.client.internal.pooling.ConnectionManager}: they are not counted
+ * against its maximum number of connections, and are only replaced once they fail.
+ */
+class MultiplexedConnectionManager {
+
+  /**
+   * The number of multiplexed connections a pool executes its asynchronous operations on; 0
+   * disables them, in which case the operations are executed like the others
+   */
+  static final int MULTIPLEXED_CONNECTIONS =
+      Integer.getInteger(DistributionConfig.GEMFIRE_PREFIX + "PoolImpl.MULTIPLEXED_CONNECTIONS", 0)
+          .intValue();
+
+  /** The number of operations that may be outstanding on a multiplexed connection */
+  static final int MAX_MULTIPLEXED_OPS =
+      Integer.getInteger(DistributionConfig.GEMFIRE_PREFIX + "PoolImpl.MAX_MULTIPLEXED_OPS", 128)
+          .intValue();
+
+  private final ConnectionFactory connectionFactory;
+
+  private final OpExecutorImpl executor;
+
+  private final int maxConnections;
+
+  private final int maxOps;
+
+  private final int socketBufferSize;
+
+  /** Guarded by this */
+  private final List<MultiplexedConnection> connections = new ArrayList<MultiplexedConnection>();
+
+  /** The number of connections to any server being created; guarded by this */
+  private int creating;
+
+  /** The index of the connection the next operation is executed on; guarded by this */
+  private int next;
+
+  /**
+   * Set once the servers turn out to require credentials, which are not sent on multiplexed
+   * connections
+   */
+  private volatile boolean disabled;
+
+  /** Guarded by this */
+  private boolean closed;
+
+  MultiplexedConnectionManager(ConnectionFactory connectionFactory, OpExecutorImpl executor,
+      int maxConnections, int maxOps, int socketBufferSize) {
+    this.connectionFactory = connectionFactory;
+    this.executor = executor;
+    this.maxConnections = maxConnections;
+    this.maxOps = maxOps;
+    this.socketBufferSize = socketBufferSize;
+  }
+
+  /**
+   * Returns a connection to any server, or null if operations are not to be executed on multiplexed
+   * connections.
+   * 
+   * @throws NoAvailableServersException if no server can be connected to
+   */
+  MultiplexedConnection getConnection() {
+    if (this.disabled) {
+      return null;
+    }
+    Set<ServerLocation> excludedServers;
+    synchronized (this) {
+      removeClosedConnections();
+      int size = this.connections.size();
+      if (size > 0 && (size + this.creating >= this.maxConnections || this.creating > 0)) {
+        return nextConnection();
+      }
+      this.creating++;
+      excludedServers = new HashSet<ServerLocation>();
+      for (MultiplexedConnection cnx : this.connections) {
+        excludedServers.add(cnx.getServer());
+      }
+    }
+    Connection created = null;
+    try {
+      created = this.connectionFactory.createClientToServerConnection(excludedServers);
+    } finally {
+      synchronized (this) {
+        this.creating--;
+      }
+    }
+    if (created == null) {
+      synchronized (this) {
+        removeClosedConnections();
+        if (!this.connections.isEmpty()) {
+          return nextConnection();
+        }
+      }
+      throw new NoAvailableServersException();
+    }
+    return add(created);
+  }
+
+  /**
+   * Returns a connection to the given server, or null if operations are not to be executed on
+   * multiplexed connections.
+   * 
+   * @throws ServerConnectivityException if the server cannot be connected to
+   */
+  MultiplexedConnection getConnection(ServerLocation server) {
+    if (this.disabled) {
+      return null;
+    }
+    synchronized (this) {
+      removeClosedConnections();
+      for (MultiplexedConnection cnx : this.connections) {
+        if (cnx.getServer().equals(server)) {
+          return cnx;
+        }
+      }
+    }
+    Connection created = this.connectionFactory.createClientToServerConnection(server, false);
+    if (created == null) {
+      throw new ServerConnectivityException("Could not create a connection to " + server);
+    }
+    return add(created);
+  }
+
+  private MultiplexedConnection add(Connection created) {
+    if (created.getServer().getRequiresCredentials()) {
+      this.disabled = true;
+      created.destroy();
+      return null;
+    }
+    MultiplexedConnection result =
+        new MultiplexedConnection(created, this.executor, this.maxOps, this.socketBufferSize);
+    synchronized (this) {
+      if (this.closed) {
+        created.destroy();
+        throw new ServerConnectivityException("Pool was destroyed");
+      }
+      this.connections.add(result);
+    }
+    result.start();
+    return result;
+  }
+
+  private MultiplexedConnection nextConnection() {
+    if (this.next >= this.connections.size()) {
+      this.next = 0;
+    }
+    return this.connections.get(this.next++);
+  }
+
+  private void removeClosedConnections() {
+    for (Iterator<MultiplexedConnection> it = this.connections.iterator(); it.hasNext();) {
+      if (it.next().isClosed()) {
+        it.remove();
+      }
+    }
+  }
+
+  /** Closes the connections, failing the operations outstanding on them */
+  void close() {
+    List<MultiplexedConnection> toClose;
+    synchronized (this) {
+      this.closed = true;
+      toClose = new ArrayList<MultiplexedConnection>(this.connections);
+      this.connections.clear();
+    }
+    for (MultiplexedConnection cnx : toClose) {
+      cnx.close(null);
+    }
+  }
+}
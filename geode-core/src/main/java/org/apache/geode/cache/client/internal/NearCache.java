@@ -0,0 +1,493 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.client.internal;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.Logger;
+
+import org.apache.geode.cache.DataPolicy;
+import org.apache.geode.cache.InterestResultPolicy;
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.client.SubscriptionNotEnabledException;
+import org.apache.geode.internal.cache.LocalRegion;
+import org.apache.geode.internal.logging.LogService;
+import org.apache.geode.internal.offheap.MemoryAllocator;
+import org.apache.geode.internal.offheap.StoredObject;
+import org.apache.geode.internal.util.BlobHelper;
+
+/**
+ * Keeps the values recently read from the server by a client region without local storage, so that
+ * reading them again does not need a request to the server. The values are kept apart from the
+ * region, without the overhead of its entries, and are never updated by the server: the region
+ * registers interest in all its keys with updates sent as invalidates, and each invalidate, update
+ * or destroy received by the subscription of the pool just drops the value of its key. Duplicate
+ * events, identified by their EventID, are dropped by the subscription before they get here. While
+ * the pool has no primary subscription queue, nothing is kept, since invalidates may be missed.
+ * <p>
+ * The number of values kept is bounded. A value read for the first time is kept in a small window,
+ * and is only admitted to the rest of the near cache, when the window is full, if its key has been
+ * accessed more often lately than the key the near cache would have to evict for it. This keeps
+ * keys read once from evicting the keys read often. Values may also expire after a time to live,
+ * and may be kept serialized in the off-heap memory of the cache.
+ * <p>
+ * A value read while one of the events of its key is received is not kept, so that the near cache
+ * never returns a value older than the last event it received.
+ */
+public class NearCache<K, V> {
+  private static final Logger logger = LogService.getLogger();
+
+  private final Region<K, V> region;
+
+  private final int maxEntries;
+
+  private final long timeToLiveNanos;
+
+  private final MemoryAllocator offHeapStore;
+
+  /** The values of the keys, or the {@link Load} of the keys whose values are being read */
+  private final ConcurrentMap<Object, Object> entries = new ConcurrentHashMap<Object, Object>();
+
+  /**
+   * Guards the eviction order and the frequency sketch, and every addition or removal of an entry
+   */
+  private final ReentrantLock policyLock = new ReentrantLock();
+
+  /** The most recently added keys, in access order */
+  private final LinkedHashMap<Object, Boolean> window;
+
+  /** The keys admitted from the window, in access order */
+  private final LinkedHashMap<Object, Boolean> main;
+
+  private final int maxWindowSize;
+
+  private final FrequencySketch sketch;
+
+  /** Whether the events of the keys are being received; nothing is kept otherwise */
+  private volatile boolean subscribed;
+
+  /** The near caches of the pool whose subscription invalidates this one, once registered */
+  private volatile ConcurrentMap<String, NearCache> registry;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  /**
+   * Creates the near cache of a client region and starts receiving the events of its keys.
+   *
+   * @param region a client region with the {@link DataPolicy#EMPTY EMPTY} data policy, whose pool
+   *        has subscription enabled
+   * @param maxEntries the maximum number of values kept
+   * @param timeToLive how long a value is kept after being read, or 0 to keep it until evicted or
+   *        invalidated
+   * @param offHeap whether to keep the values serialized in the off-heap memory of the cache, when
+   *        it has any
+   * @throws SubscriptionNotEnabledException if the pool of the region has no subscription
+   * @throws IllegalStateException if the region already has a near cache
+   */
+  public static <K, V> NearCache<K, V> create(Region<K, V> region, int maxEntries, long timeToLive,
+      TimeUnit unit, boolean offHeap) {
+    if (!(region instanceof LocalRegion) || ((LocalRegion) region).getServerProxy() == null) {
+      throw new IllegalArgumentException("A near cache requires a region with a pool");
+    }
+    LocalRegion localRegion = (LocalRegion) region;
+    if (localRegion.getDataPolicy() != DataPolicy.EMPTY) {
+      throw new IllegalArgumentException(
+          "A near cache requires a region without local storage, not " + region.getFullPath());
+    }
+    PoolImpl pool = (PoolImpl) localRegion.getServerProxy().getPool();
+    QueueManager queueManager = pool.getQueueManager();
+    if (queueManager == null) {
+      throw new SubscriptionNotEnabledException(
+          "A near cache requires a pool whose queue is enabled.");
+    }
+    MemoryAllocator offHeapStore = offHeap ? localRegion.getCache().getOffHeapStore() : null;
+    NearCache<K, V> nearCache =
+        new NearCache<K, V>(region, maxEntries, unit.toNanos(timeToLive), offHeapStore);
+    ConcurrentMap<String, NearCache> registry = queueManager.getNearCaches();
+    if (registry.putIfAbsent(region.getFullPath(), nearCache) != null) {
+      throw new IllegalStateException(
+          "The region " + region.getFullPath() + " already has a near cache");
+    }
+    nearCache.registry = registry;
+    nearCache.subscribed = queueManager.getAllConnectionsNoWait().getPrimary() != null;
+    try {
+      localRegion.registerInterest("ALL_KEYS", InterestResultPolicy.NONE, false, false);
+    } catch (RuntimeException e) {
+      nearCache.close();
+      throw e;
+    }
+    return nearCache;
+  }
+
+  NearCache(Region<K, V> region, int maxEntries, long timeToLiveNanos,
+      MemoryAllocator offHeapStore) {
+    if (maxEntries <= 0) {
+      throw new IllegalArgumentException("maxEntries must be positive");
+    }
+    if (timeToLiveNanos < 0) {
+      throw new IllegalArgumentException("timeToLive must not be negative");
+    }
+    this.region = region;
+    this.maxEntries = maxEntries;
+    this.timeToLiveNanos = timeToLiveNanos;
+    this.offHeapStore = offHeapStore;
+    this.maxWindowSize = Math.max(1, maxEntries / 100);
+    this.window = new LinkedHashMap<Object, Boolean>(16, 0.75f, true);
+    this.main = new LinkedHashMap<Object, Boolean>(16, 0.75f, true);
+    this.sketch = new FrequencySketch(maxEntries);
+  }
+
+  public Region<K, V> getRegion() {
+    return this.region;
+  }
+
+  /**
+   * Returns the value of the key, reading it from the server if it is not kept.
+   */
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    Object current = this.entries.get(key);
+    if (current instanceof Entry) {
+      Entry entry = (Entry) current;
+      if (entry.isExpired(System.nanoTime())) {
+        remove(key, entry);
+      } else {
+        Object value = entry.getValue(this.entries, key);
+        if (value != null) {
+          this.hits.increment();
+          recordAccess(key);
+          return (V) value;
+        }
+      }
+    }
+    this.misses.increment();
+    if (!this.subscribed) {
+      return this.region.get(key);
+    }
+    Load load = new Load();
+    if (this.entries.putIfAbsent(key, load) != null) {
+      // another thread is reading or just kept the value
+      return this.region.get(key);
+    }
+    boolean kept = false;
+    try {
+      V value = this.region.get(key);
+      if (value != null) {
+        kept = keep(key, load, value);
+      }
+      return value;
+    } finally {
+      if (!kept) {
+        this.entries.remove(key, load);
+      }
+    }
+  }
+
+  /**
+   * Puts the value of the key in the region, keeping it unless one of the events of the key is
+   * received meanwhile.
+   */
+  public void put(K key, V value) {
+    Load load = null;
+    if (this.subscribed) {
+      load = new Load();
+      this.policyLock.lock();
+      try {
+        Object previous = this.entries.put(key, load);
+        if (previous instanceof Entry) {
+          removed(key, (Entry) previous);
+        }
+      } finally {
+        this.policyLock.unlock();
+      }
+    } else {
+      invalidate(key);
+    }
+    boolean kept = false;
+    try {
+      this.region.put(key, value);
+      if (load != null) {
+        kept = keep(key, load, value);
+      }
+    } finally {
+      if (load != null && !kept) {
+        this.entries.remove(key, load);
+      }
+    }
+  }
+
+  /**
+   * Destroys the entry of the key in the region, and forgets its value.
+   */
+  public void destroy(Object key) {
+    invalidate(key);
+    this.region.destroy(key);
+  }
+
+  /**
+   * Forgets the value of the key, or the value being read for it. Invoked for each event of the key
+   * received by the subscription of the pool.
+   */
+  public void invalidate(Object key) {
+    this.policyLock.lock();
+    try {
+      Object removed = this.entries.remove(key);
+      if (removed != null) {
+        this.invalidations.increment();
+        if (removed instanceof Entry) {
+          removed(key, (Entry) removed);
+        }
+      }
+    } finally {
+      this.policyLock.unlock();
+    }
+  }
+
+  /**
+   * Forgets all values. Invoked when the region is cleared, invalidated or destroyed on the server.
+   */
+  public void invalidateAll() {
+    for (Object key : this.entries.keySet()) {
+      invalidate(key);
+    }
+  }
+
+  /**
+   * Starts or stops keeping values as the pool gains or loses its primary subscription queue; all
+   * values are forgotten either way, since the events sent meanwhile may have been missed.
+   */
+  void setSubscribed(boolean subscribed) {
+    this.subscribed = subscribed;
+    invalidateAll();
+  }
+
+  /**
+   * Stops receiving the events of the region and forgets all values. The interest registered in the
+   * keys of the region is kept, since others may rely on it.
+   */
+  public void close() {
+    this.subscribed = false;
+    ConcurrentMap<String, NearCache> registry = this.registry;
+    if (registry != null) {
+      registry.remove(this.region.getFullPath(), this);
+    }
+    invalidateAll();
+  }
+
+  /** Returns the number of values kept */
+  public int size() {
+    this.policyLock.lock();
+    try {
+      return this.window.size() + this.main.size();
+    } finally {
+      this.policyLock.unlock();
+    }
+  }
+
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  public long getEvictions() {
+    return this.evictions.sum();
+  }
+
+  public long getInvalidations() {
+    return this.invalidations.sum();
+  }
+
+  /**
+   * Replaces the load of the key with its value, unless an event of the key removed it meanwhile.
+   *
+   * @return whether the value is kept
+   */
+  private boolean keep(Object key, Load load, Object value) {
+    Entry entry = newEntry(value);
+    if (entry == null) {
+      return false;
+    }
+    this.policyLock.lock();
+    try {
+      if (!this.entries.replace(key, load, entry)) {
+        entry.release();
+        return false;
+      }
+      this.sketch.increment(key);
+      this.window.put(key, Boolean.TRUE);
+      if (this.window.size() > this.maxWindowSize) {
+        admitEldestOfWindow();
+      }
+      return true;
+    } finally {
+      this.policyLock.unlock();
+    }
+  }
+
+  /**
+   * Moves the least recently used key of the window to the main space, evicting whichever of it and
+   * the least recently used key of the main space was accessed less often if the space is full.
+   */
+  private void admitEldestOfWindow() {
+    Iterator<Object> windowKeys = this.window.keySet().iterator();
+    Object candidate = windowKeys.next();
+    windowKeys.remove();
+    if (this.main.size() < this.maxEntries - this.maxWindowSize) {
+      this.main.put(candidate, Boolean.TRUE);
+      return;
+    }
+    Object evicted = candidate;
+    if (!this.main.isEmpty()) {
+      Object victim = this.main.keySet().iterator().next();
+      if (this.sketch.frequency(candidate) > this.sketch.frequency(victim)) {
+        this.main.remove(victim);
+        this.main.put(candidate, Boolean.TRUE);
+        evicted = victim;
+      }
+    }
+    Object value = this.entries.remove(evicted);
+    if (value instanceof Entry) {
+      ((Entry) value).release();
+    }
+    this.evictions.increment();
+  }
+
+  /**
+   * Counts an access of the key, and makes it the most recently used one, unless another thread is
+   * updating the eviction order; the eviction order is then only approximate, but reads never wait.
+   */
+  private void recordAccess(Object key) {
+    if (this.policyLock.tryLock()) {
+      try {
+        this.sketch.increment(key);
+        if (this.window.get(key) == null) {
+          this.main.get(key);
+        }
+      } finally {
+        this.policyLock.unlock();
+      }
+    }
+  }
+
+  private void remove(Object key, Entry entry) {
+    this.policyLock.lock();
+    try {
+      if (this.entries.remove(key, entry)) {
+        removed(key, entry);
+      }
+    } finally {
+      this.policyLock.unlock();
+    }
+  }
+
+  /**
+   * Forgets the key of an entry just removed, and releases its value. The lock is held while the
+   * entry is removed, so that the keys in the eviction order are those of the entries.
+   */
+  private void removed(Object key, Entry entry) {
+    if (this.window.remove(key) == null) {
+      this.main.remove(key);
+    }
+    entry.release();
+  }
+
+  private Entry newEntry(Object value) {
+    final long expiration =
+        this.timeToLiveNanos == 0 ? 0 : Math.max(1, System.nanoTime() + this.timeToLiveNanos);
+    if (this.offHeapStore == null) {
+      return new Entry(value, expiration);
+    }
+    try {
+      byte[] bytes = BlobHelper.serializeToBlob(value);
+      // leave most of the off-heap memory to the regions, which fail when they run out of it
+      if (this.offHeapStore.getFreeMemory() - bytes.length < this.offHeapStore.getTotalMemory()
+          / 10) {
+        return null;
+      }
+      return new Entry(this.offHeapStore.allocateAndInitialize(bytes, true, false), expiration);
+    } catch (IOException e) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Could not serialize the value of the near cache of {}",
+            this.region.getFullPath(), e);
+      }
+      return null;
+    }
+  }
+
+  /** Marks a key whose value is being read, so that it is only kept if not invalidated meanwhile */
+  private static class Load {
+  }
+
+  /** A value kept, either on the heap or serialized off-heap */
+  private static class Entry {
+    private final Object value;
+
+    /** The {@link System#nanoTime} the value expires at, or 0 if it does not expire */
+    private final long expiration;
+
+    Entry(Object value, long expiration) {
+      this.value = value;
+      this.expiration = expiration;
+    }
+
+    boolean isExpired(long now) {
+      return this.expiration != 0 && now - this.expiration >= 0;
+    }
+
+    /**
+     * Returns the value, or null if it was released while being read.
+     *
+     * @param entries the entries this one has to still be the one of the key in once its off-heap
+     *        value is retained, since its memory may already be reused otherwise
+     */
+    Object getValue(Map<Object, Object> entries, Object key) {
+      if (!(this.value instanceof StoredObject)) {
+        return this.value;
+      }
+      StoredObject stored = (StoredObject) this.value;
+      if (!stored.retain()) {
+        return null;
+      }
+      try {
+        if (entries.get(key) != this) {
+          return null;
+        }
+        return stored.getValueAsDeserializedHeapObject();
+      } finally {
+        stored.release();
+      }
+    }
+
+    void release() {
+      if (this.value instanceof StoredObject) {
+        ((StoredObject) this.value).release();
+      }
+    }
+  }
+}
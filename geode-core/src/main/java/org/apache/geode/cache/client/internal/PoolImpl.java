@@ -21,6 +21,7 @@ import org.apache.geode.SystemFailure;
 import org.apache.geode.cache.*;
 import org.apache.geode.cache.client.Pool;
 import org.apache.geode.cache.client.ServerConnectivityException;
+import org.apache.geode.cache.client.ServerOperationException;
 import org.apache.geode.cache.client.SubscriptionNotEnabledException;
 import org.apache.geode.cache.client.internal.pooling.ConnectionManager;
 import org.apache.geode.cache.client.internal.pooling.ConnectionManagerImpl;
@@ -46,6 +47,8 @@ import org.apache.logging.log4j.Logger;
 import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -114,6 +117,8 @@ public class PoolImpl implements InternalPool {
   private final PoolStats stats;
   private ScheduledExecutorService backgroundProcessor;
   private final OpExecutorImpl executor;
+  /** The connections asynchronous ops are multiplexed on; null if they are not */
+  private final MultiplexedConnectionManager multiplexedConnections;
   private final RegisterInterestTracker riTracker = new RegisterInterestTracker();
   private final InternalDistributedSystem dsys;
 
@@ -239,6 +244,14 @@ public class PoolImpl implements InternalPool {
     // an exception, by passing in the poolOrCache stopper
     executor = new OpExecutorImpl(manager, queueManager, endpointManager, riTracker, retryAttempts,
         freeConnectionTimeout, threadLocalConnections, new PoolOrCacheStopper(), this);
+    if (MultiplexedConnectionManager.MULTIPLEXED_CONNECTIONS > 0 && !usedByGateway
+        && !this.multiuserSecureModeEnabled) {
+      multiplexedConnections = new MultiplexedConnectionManager(connectionFactory, executor,
+          MultiplexedConnectionManager.MULTIPLEXED_CONNECTIONS,
+          MultiplexedConnectionManager.MAX_MULTIPLEXED_OPS, socketBufferSize);
+    } else {
+      multiplexedConnections = null;
+    }
     if (this.multiuserSecureModeEnabled) {
       this.proxyCacheList = new ArrayList<ProxyCache>();
     } else {
@@ -577,6 +590,10 @@ public class PoolImpl implements InternalPool {
             e);
       }
 
+      if (this.multiplexedConnections != null) {
+        this.multiplexedConnections.close();
+      }
+
       try {
         if (this.manager != null) {
           manager.close(keepAlive);
@@ -751,6 +768,113 @@ public class PoolImpl implements InternalPool {
     return executor.execute(op, retries);
   }
 
+  /**
+   * Execute the given op on one of the servers that this pool connects to, without waiting for its
+   * result when the pool multiplexes its connections. The op is then sent on a connection shared
+   * with other outstanding ops, and the returned future is completed by the thread reading the
+   * responses from it; the op is not retried if the attempt fails. Otherwise, and for ops that are
+   * part of a transaction, the op is executed like {@link #execute(Op)} before this method returns.
+   * 
+   * @param op the operation to execute
+   * @return a future completed with the result of execution if any, null if not
+   */
+  public CompletableFuture<Object> executeAsync(Op op) {
+    MultiplexedConnection cnx = null;
+    if (isMultiplexed(op)) {
+      try {
+        cnx = this.multiplexedConnections.getConnection();
+      } catch (RuntimeException e) {
+        return failedFuture(e);
+      }
+    }
+    if (cnx == null) {
+      return executeNow(op, null);
+    }
+    return cnx.execute((AbstractOp) op);
+  }
+
+  /**
+   * Execute the given op on the given server, without waiting for its result when the pool
+   * multiplexes its connections.
+   * 
+   * @param server the server to do the execution on
+   * @param op the operation to execute
+   * @return a future completed with the result of execution if any, null if not
+   * @see #executeAsync(Op)
+   */
+  public CompletableFuture<Object> executeOnAsync(ServerLocation server, Op op) {
+    MultiplexedConnection cnx = null;
+    if (isMultiplexed(op)) {
+      try {
+        cnx = this.multiplexedConnections.getConnection(server);
+      } catch (RuntimeException e) {
+        return failedFuture(e);
+      }
+    }
+    if (cnx == null) {
+      return executeNow(op, server);
+    }
+    return cnx.execute((AbstractOp) op);
+  }
+
+  /**
+   * Execute the given op on the server hosting the bucket of its key like
+   * {@link #executeOnAsync(ServerLocation, Op)}. If the server cannot be reached, it is removed
+   * from the single-hop metadata of the cache and the op is executed on any server instead, as the
+   * single-hop ops do when executed synchronously.
+   *
+   * @param server the server hosting the bucket the op is for
+   * @param op the operation to execute
+   * @param cms the single-hop metadata the server was found in
+   * @return a future completed with the result of execution if any, null if not
+   */
+  public CompletableFuture<Object> executeOnBucketServerAsync(final ServerLocation server,
+      final Op op, final ClientMetadataService cms) {
+    final CompletableFuture<Object> result = new CompletableFuture<Object>();
+    executeOnAsync(new ServerLocation(server.getHostName(), server.getPort()), op)
+        .whenComplete((value, ex) -> {
+          if (ex instanceof CompletionException) {
+            ex = ex.getCause();
+          }
+          if (ex == null) {
+            result.complete(value);
+          } else if (ex instanceof ServerConnectivityException
+              && !(ex instanceof ServerOperationException)) {
+            cms.removeBucketServerLocation(server);
+            executeAsync(op).whenComplete((retryValue, retryEx) -> {
+              if (retryEx == null) {
+                result.complete(retryValue);
+              } else {
+                result.completeExceptionally(retryEx);
+              }
+            });
+          } else {
+            result.completeExceptionally(ex);
+          }
+        });
+    return result;
+  }
+
+  private boolean isMultiplexed(Op op) {
+    return this.multiplexedConnections != null && op instanceof AbstractOp
+        && TXManagerImpl.getCurrentTXUniqueId() == TXManagerImpl.NOTX;
+  }
+
+  private CompletableFuture<Object> executeNow(Op op, ServerLocation server) {
+    try {
+      return CompletableFuture
+          .completedFuture(server == null ? execute(op) : executeOn(server, op));
+    } catch (RuntimeException e) {
+      return failedFuture(e);
+    }
+  }
+
+  private static CompletableFuture<Object> failedFuture(Throwable t) {
+    CompletableFuture<Object> result = new CompletableFuture<Object>();
+    result.completeExceptionally(t);
+    return result;
+  }
+
   /**
    * Execute the given op on the given server.
    * 
@@ -906,6 +1030,14 @@ public class PoolImpl implements InternalPool {
     return this.queueManager.getState().getThreadIdToSequenceIdMap();
   }
 
+  /**
+   * Returns the manager of the subscription queues of this pool, or null if subscription is not
+   * enabled.
+   */
+  public QueueManager getQueueManager() {
+    return this.queueManager;
+  }
+
   /**
    * Test hook that returns true if we have a primary and its updater thread is alive.
    */
@@ -35,6 +35,7 @@ import org.apache.geode.internal.logging.LogService;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.Logger;
 
@@ -47,6 +48,38 @@ public class PutOp {
 
   private static final Logger logger = LogService.getLogger();
 
+  /**
+   * Does a region put on a server like
+   * {@link #execute(ExecutablePool, LocalRegion, Object, Object, byte[], EntryEventImpl, Operation, boolean, Object, Object, boolean)}
+   * without waiting for the response when the pool multiplexes its connections. The full value is
+   * always sent, since retrying a failed delta would have to wait for the response.
+   * 
+   * @param pool the pool to use to communicate with the server.
+   * @param region the region to do the put on
+   * @param key the entry key to do the put on
+   * @param value the entry value to put
+   * @param event the event for this put
+   * @param callbackArg an optional callback arg to pass to any cache callbacks
+   * @return a future completed with the result of the put
+   * @see PoolImpl#executeAsync(Op)
+   */
+  public static CompletableFuture<Object> executeAsync(PoolImpl pool, LocalRegion region,
+      Object key, Object value, EntryEventImpl event, Operation operation, Object callbackArg,
+      boolean prSingleHopEnabled) {
+    PutOpImpl op = new PutOpImpl(region, key, value, null, event, operation, false, null,
+        callbackArg, true, prSingleHopEnabled);
+
+    if (prSingleHopEnabled) {
+      ClientMetadataService cms = region.getCache().getClientMetadataService();
+      ServerLocation server =
+          cms.getBucketServerLocation(region, Operation.UPDATE, key, value, callbackArg);
+      if (server != null) {
+        return pool.executeOnBucketServerAsync(server, op, cms);
+      }
+    }
+    return pool.executeAsync(op);
+  }
+
   /**
    * Does a region put on a server using connections from the given pool to communicate with the
    * server.
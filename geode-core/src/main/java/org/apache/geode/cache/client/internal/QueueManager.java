@@ -16,6 +16,7 @@ package org.apache.geode.cache.client.internal;
 
 import java.util.List;
 
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import org.apache.geode.distributed.internal.InternalDistributedSystem;
 import org.apache.geode.internal.logging.InternalLogWriter;
@@ -44,6 +45,11 @@ public interface QueueManager {
 
   public QueueState getState();
 
+  /**
+   * Returns the near caches invalidated by the events received, by the full path of their region.
+   */
+  public ConcurrentMap<String, NearCache> getNearCaches();
+
   public InternalPool getPool();
 
   public InternalLogWriter getSecurityLogger();
@@ -26,6 +26,8 @@ import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -94,6 +96,9 @@ public class QueueManagerImpl implements QueueManager {
   private final ClientProxyMembershipID proxyId;
   protected final InternalPool pool;
   private final QueueStateImpl state;
+  /** The near caches invalidated by the events received, by the full path of their region */
+  private final ConcurrentMap<String, NearCache> nearCaches =
+      new ConcurrentHashMap<String, NearCache>();
   private boolean printPrimaryNotFoundError;
   private boolean printRedundancyNotSatisfiedError;
   private boolean printRecoveringPrimary;
@@ -590,8 +595,10 @@ public class QueueManagerImpl implements QueueManager {
                     .toLocalizedString()));
         lock.notifyAll();
       }
+      nearCachesDisconnected();
       cqsDisconnected();
     } else {
+      nearCachesConnected();
       cqsConnected();
     }
 
@@ -602,6 +609,23 @@ public class QueueManagerImpl implements QueueManager {
     }
   }
 
+  /**
+   * Lets the near caches keep values again once there is a primary queue. The values kept before
+   * are forgotten, since the new primary may not have had the events the previous one had.
+   */
+  private void nearCachesConnected() {
+    for (NearCache nearCache : this.nearCaches.values()) {
+      nearCache.setSubscribed(true);
+    }
+  }
+
+  /** Forgets the values of the near caches, which are not invalidated without a primary queue */
+  private void nearCachesDisconnected() {
+    for (NearCache nearCache : this.nearCaches.values()) {
+      nearCache.setSubscribed(false);
+    }
+  }
+
   private void cqsConnected() {
     GemFireCacheImpl cache = GemFireCacheImpl.getInstance();
     if (cache != null) {
@@ -915,6 +939,7 @@ public class QueueManagerImpl implements QueueManager {
       }
 
       // new primary from back up server was found, alert affected cqs if necessary
+      nearCachesConnected();
       cqsConnected();
       printPrimaryNotFoundError = true;
       printRecoveringPrimary = true;
@@ -944,6 +969,7 @@ public class QueueManagerImpl implements QueueManager {
           newPrimary = null;
         }
         // New primary queue was found from a non backup, alert the affected cqs
+        nearCachesConnected();
         cqsConnected();
       }
 
@@ -956,6 +982,7 @@ public class QueueManagerImpl implements QueueManager {
       return;
     }
     // No primary queue was found, alert the affected cqs
+    nearCachesDisconnected();
     cqsDisconnected();
     if (isDebugEnabled) {
       logger.debug("SubscriptionManager redundancy satisfier - Could not recover a new primary");
@@ -1105,6 +1132,10 @@ public class QueueManagerImpl implements QueueManager {
     return this.state;
   }
 
+  public ConcurrentMap<String, NearCache> getNearCaches() {
+    return this.nearCaches;
+  }
+
   private void recoverSingleList(int interestType, Connection recoveredConnection,
       boolean isDurable, boolean receiveValues, boolean isFirstNewConnection) {
     Iterator i = this.getPool().getRITracker()
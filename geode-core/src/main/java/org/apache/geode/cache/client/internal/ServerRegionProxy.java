@@ -20,6 +20,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.logging.log4j.Logger;
 
@@ -45,6 +46,7 @@ import org.apache.geode.internal.cache.LocalRegion;
 import org.apache.geode.internal.cache.TXCommitMessage;
 import org.apache.geode.internal.cache.TXManagerImpl;
 import org.apache.geode.internal.cache.TXStateProxy;
+import org.apache.geode.internal.cache.Token;
 import org.apache.geode.internal.cache.execute.ServerRegionFunctionExecutor;
 import org.apache.geode.internal.cache.tier.InterestType;
 import org.apache.geode.internal.cache.tier.sockets.VersionedObjectList;
@@ -118,6 +120,63 @@ public class ServerRegionProxy extends ServerProxy implements ServerRegionDataAc
   }
 
 
+  /**
+   * Does a region get on the server without waiting for the response when the pool multiplexes its
+   * connections. Invalid and destroyed entries are returned as null.
+   * 
+   * @see PoolImpl#executeAsync(Op)
+   */
+  public CompletableFuture<Object> getAsync(Object key, Object callbackArg) {
+    return GetOp.executeAsync((PoolImpl) this.pool, this.region, key, callbackArg,
+        this.pool.getPRSingleHopEnabled(), null).thenApply(value -> {
+          if (Token.isInvalid(value) || value == Token.TOMBSTONE) {
+            return null;
+          }
+          return value;
+        });
+  }
+
+  /**
+   * Does a region put on the server without waiting for the response when the pool multiplexes its
+   * connections.
+   * 
+   * @see PoolImpl#executeAsync(Op)
+   */
+  public CompletableFuture<Object> putAsync(Object key, Object value, EntryEventImpl event,
+      Object callbackArg) {
+    return PutOp.executeAsync((PoolImpl) this.pool, this.region, key, value, event,
+        Operation.UPDATE, callbackArg, this.pool.getPRSingleHopEnabled());
+  }
+
+  /**
+   * Does a region getAll on the servers without waiting for the responses when the pool multiplexes
+   * its connections. Keys that are not on the servers are mapped to null; keys whose values could
+   * not be read are left out.
+   * 
+   * @see PoolImpl#executeAsync(Op)
+   */
+  public CompletableFuture<Map<Object, Object>> getAllAsync(List keys, Object callback) {
+    return GetAllOp.executeAsync((PoolImpl) this.pool, this.region, keys, callback,
+        this.pool.getPRSingleHopEnabled()).thenApply(result -> {
+          Map<Object, Object> values = new HashMap<Object, Object>();
+          for (Iterator it = result.iterator(); it.hasNext();) {
+            VersionedObjectList.Entry entry = it.next();
+            Object value = entry.isKeyNotOnServer() ? null : entry.getObject();
+            if (value instanceof Throwable) {
+              logger.warn(LocalizedMessage.create(
+                  LocalizedStrings.GetAll_0_CAUGHT_THE_FOLLOWING_EXCEPTION_ATTEMPTING_TO_GET_VALUE_FOR_KEY_1,
+                  new Object[] {value, entry.getKey()}), (Throwable) value);
+              continue;
+            }
+            if (Token.isInvalid(value) || value == Token.TOMBSTONE) {
+              value = null;
+            }
+            values.put(entry.getKey(), value);
+          }
+          return values;
+        });
+  }
+
 
   public int size() {
     return SizeOp.execute(this.pool, this.regionName);
@@ -14,12 +14,14 @@
  */
 package org.apache.geode.cache.query.internal;
 
+import org.apache.geode.cache.query.Aggregator;
 import org.apache.geode.cache.query.AmbiguousNameException;
 import org.apache.geode.cache.query.FunctionDomainException;
 import org.apache.geode.cache.query.NameResolutionException;
 import org.apache.geode.cache.query.QueryInvocationTargetException;
 import org.apache.geode.cache.query.TypeMismatchException;
 import org.apache.geode.cache.query.internal.aggregate.AvgBucketNode;
+import org.apache.geode.cache.query.internal.aggregate.AvgCombiner;
 import org.apache.geode.cache.query.internal.aggregate.AvgDistinct;
 import org.apache.geode.cache.query.internal.aggregate.AvgDistinctPRQueryNode;
 import org.apache.geode.cache.query.internal.aggregate.AvgPRQueryNode;
@@ -29,6 +31,7 @@ import org.apache.geode.cache.query.internal.aggregate.CountDistinctPRQueryNode;
 import org.apache.geode.cache.query.internal.aggregate.SumDistinctPRQueryNode;
 import org.apache.geode.cache.query.internal.aggregate.CountPRQueryNode;
 import org.apache.geode.cache.query.internal.aggregate.DistinctAggregator;
+import org.apache.geode.cache.query.internal.aggregate.DistinctCombiner;
 import org.apache.geode.cache.query.internal.aggregate.MaxMin;
 import org.apache.geode.cache.query.internal.aggregate.Avg;
 import org.apache.geode.cache.query.internal.aggregate.Sum;
@@ -107,6 +110,35 @@ public class CompiledAggregateFunction extends AbstractCompiledValue {
 
   }
 
+  /**
+   * Returns an aggregator which merges the partial results computed by the bucket nodes for this
+   * function into a single partial result of the same form. This allows a data store to combine the
+   * partial results of all its buckets before sending them to the query node.
+   */
+  public Aggregator getPartialResultCombiner() {
+    switch (this.aggFuncType) {
+
+      case OQLLexerTokenTypes.SUM:
+        return this.distinctOnly ? new DistinctCombiner() : new Sum();
+
+      case OQLLexerTokenTypes.MAX:
+        return new MaxMin(true);
+
+      case OQLLexerTokenTypes.MIN:
+        return new MaxMin(false);
+
+      case OQLLexerTokenTypes.AVG:
+        return this.distinctOnly ? new DistinctCombiner() : new AvgCombiner();
+
+      case OQLLexerTokenTypes.COUNT:
+        return this.distinctOnly ? new DistinctCombiner() : new CountPRQueryNode();
+
+      default:
+        throw new UnsupportedOperationException("Aggregate function not implemented");
+
+    }
+  }
+
   private String getStringRep() {
     switch (this.aggFuncType) {
 
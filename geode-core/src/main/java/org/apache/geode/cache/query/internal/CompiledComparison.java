@@ -29,6 +29,7 @@ import org.apache.geode.cache.query.SelectResults;
 import org.apache.geode.cache.query.Struct;
 import org.apache.geode.cache.query.TypeMismatchException;
 import org.apache.geode.cache.query.internal.index.IndexData;
+import org.apache.geode.cache.query.internal.index.IndexManager;
 import org.apache.geode.cache.query.internal.index.IndexProtocol;
 import org.apache.geode.cache.query.internal.index.IndexUtils;
 import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
@@ -313,8 +314,34 @@ public class CompiledComparison extends AbstractCompiledValue
     // before the index lookup
     int op = reflectOnOperator(idxInfo[0]._key());
 
-    return idxInfo[0]._index.getSizeEstimate(key, op, idxInfo[0]._matchLevel);
+    int size = idxInfo[0]._index.getSizeEstimate(key, op, idxInfo[0]._matchLevel);
+    QueryObserverHolder.getInstance().indexSizeEstimated(idxInfo[0]._index, op, key, size);
+    return size;
+  }
 
+  /**
+   * Returns true if two filters of the given operators can be compared by their size estimate. The
+   * number of values an equality selects is known from its index, and the number a range selects is
+   * estimated from the histogram of the keys of its index, so that when the cost based selection is
+   * on, the hard rules preferring equalities to ranges are not needed.
+   */
+  static boolean isCostBasedSelectionApplicable(int thisOperator, int thatOperator) {
+    return IndexManager.COST_BASED_INDEX_SELECTION && isEqualityOrRange(thisOperator)
+        && isEqualityOrRange(thatOperator);
+  }
+
+  private static boolean isEqualityOrRange(int operator) {
+    switch (operator) {
+      case TOK_EQ:
+      case TOK_LT:
+      case TOK_LE:
+      case TOK_GT:
+      case TOK_GE:
+      case LITERAL_and:
+        return true;
+      default:
+        return false;
+    }
   }
 
   /** **************** PRIVATE METHODS ************************** */
@@ -777,6 +804,11 @@ public class CompiledComparison extends AbstractCompiledValue
       return thisSize <= thatSize;
     }
 
+    // Go with the lowest cost when the sizes of both are estimated from the keys of their index
+    if (isCostBasedSelectionApplicable(this._operator, thatOperator)) {
+      return thisSize <= thatSize;
+    }
+
     // There may be some hard rules that give unoptimal selections based on these switch cases.
     if (this._operator == TOK_EQ || this._operator == TOK_NE || this._operator == TOK_NE_ALT) {
       switch (thatOperator) {
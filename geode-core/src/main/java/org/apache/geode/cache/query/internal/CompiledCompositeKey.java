@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.geode.cache.query.AmbiguousNameException;
+import org.apache.geode.cache.query.FunctionDomainException;
+import org.apache.geode.cache.query.NameResolutionException;
+import org.apache.geode.cache.query.QueryInvocationTargetException;
+import org.apache.geode.cache.query.TypeMismatchException;
+import org.apache.geode.cache.query.internal.index.CompositeIndexKey;
+import org.apache.geode.cache.query.internal.types.TypeUtils;
+
+/**
+ * The indexed expression of a composite index, a comma separated list of expressions like
+ * <code>p.status, p.ts</code>. Evaluates to a {@link CompositeIndexKey} holding the values of the
+ * expressions in order.
+ *
+ * It is also the path of the conditions a query uses to look up a composite index, in which case
+ * the trailing expressions the query has no condition on are {@link #unconstrained} components.
+ */
+public class CompiledCompositeKey extends AbstractCompiledValue {
+  private final CompiledValue[] components;
+
+  public CompiledCompositeKey(CompiledValue[] components) {
+    this.components = components;
+  }
+
+  /**
+   * Returns a component standing for an indexed expression of a composite index that a query has no
+   * condition on. It is canonicalized as the given canonicalized indexed expression, so that the
+   * path it is a part of matches the index, and evaluates to null, which is within any range of
+   * keys of the index padded with {@link CompositeIndexKey#MIN} or {@link CompositeIndexKey#MAX}
+   * components.
+   */
+  static CompiledValue unconstrained(final String canonicalizedExpression) {
+    return new AbstractCompiledValue() {
+      public int getType() {
+        return COMPOSITE_KEY;
+      }
+
+      public Object evaluate(ExecutionContext context) {
+        return null;
+      }
+
+      @Override
+      public void generateCanonicalizedExpression(StringBuffer clauseBuffer,
+          ExecutionContext context) {
+        clauseBuffer.insert(0, canonicalizedExpression);
+      }
+    };
+  }
+
+  @Override
+  public List getChildren() {
+    return Arrays.asList(this.components);
+  }
+
+  public int getType() {
+    return COMPOSITE_KEY;
+  }
+
+  public CompiledValue[] getComponents() {
+    return this.components;
+  }
+
+  /**
+   * Returns the first component, as all the components of a composite index key depend on the same
+   * iterator
+   */
+  @Override
+  public CompiledValue getReceiver() {
+    return this.components[0];
+  }
+
+  public Object evaluate(ExecutionContext context) throws FunctionDomainException,
+      TypeMismatchException, NameResolutionException, QueryInvocationTargetException {
+    Object[] values = new Object[this.components.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = TypeUtils.indexKeyFor(this.components[i].evaluate(context));
+    }
+    return new CompositeIndexKey(values);
+  }
+
+  @Override
+  public Set computeDependencies(ExecutionContext context)
+      throws TypeMismatchException, AmbiguousNameException, NameResolutionException {
+    for (int i = 0; i < this.components.length; i++) {
+      context.addDependencies(this, this.components[i].computeDependencies(context));
+    }
+    return context.getDependencySet(this, true);
+  }
+
+  @Override
+  public void generateCanonicalizedExpression(StringBuffer clauseBuffer, ExecutionContext context)
+      throws AmbiguousNameException, TypeMismatchException, NameResolutionException {
+    for (int i = this.components.length - 1; i > 0; i--) {
+      this.components[i].generateCanonicalizedExpression(clauseBuffer, context);
+      clauseBuffer.insert(0, ", ");
+    }
+    this.components[0].generateCanonicalizedExpression(clauseBuffer, context);
+  }
+}
@@ -176,10 +176,10 @@ public class CompiledGroupBySelect extends CompiledSelect {
     SelectResults newResults =
         createResultSet(context, elementType, isStruct, createOrderedResultSet);
     Aggregator[] aggregators = new Aggregator[this.aggregateFunctions.length];
-    refreshAggregators(aggregators, context);
+    refreshAggregators(aggregators, context, false);
     if (this.orderByAttrs != null) {
       applyGroupBy(baseResults, context, isStruct, newResults, aggregators, !createOrderedResultSet,
-          objectChangedMarker, limitValue);
+          objectChangedMarker, limitValue, false);
     } else {
       Iterator iter = baseResults.iterator();
       Object current = null;
@@ -190,13 +190,50 @@ public class CompiledGroupBySelect extends CompiledSelect {
       }
       if (unterminated) {
         this.terminateAndAddToResults(isStruct, newResults, aggregators, current, context,
-            !createOrderedResultSet, limitValue);
+            !createOrderedResultSet, limitValue, false);
       }
     }
 
     return newResults;
   }
 
+  /**
+   * Returns true if the partial results of this query computed on different buckets can be combined
+   * into a single partial result per group by {@link #combinePartialAggregates}.
+   */
+  public boolean canCombinePartialAggregates() {
+    return this.aggregateFunctions.length > 0 && this.orderByAttrs != null;
+  }
+
+  /**
+   * Combines the partial results computed on the buckets of a data store into a single partial
+   * result per group, so that only the group by columns & the partial aggregate state of each group
+   * is sent to the query node, instead of one row per group per bucket. The bucket results must be
+   * ordered on the group by columns, as done by merging the sorted results of the buckets. The
+   * output retains that ordering, so the query node can merge it with the results of the other data
+   * stores.
+   * 
+   * @param bucketResults the merged partial results of the buckets, ordered on the group by columns
+   * @param limit the limit of the query, or -1 if there is no limit. It is applied only if the
+   *        groups are not reordered by an order by clause on the query node
+   */
+  public SelectResults combinePartialAggregates(SelectResults bucketResults,
+      ExecutionContext context, int limit) throws FunctionDomainException, TypeMismatchException,
+      NameResolutionException, QueryInvocationTargetException {
+    ObjectType elementType = bucketResults.getCollectionType().getElementType();
+    boolean isStruct = elementType != null && elementType.isStructType();
+    boolean[] objectChangedMarker = new boolean[] {false};
+    SelectResults newResults = createResultSet(context, elementType, isStruct, true);
+    Aggregator[] aggregators = new Aggregator[this.aggregateFunctions.length];
+    refreshAggregators(aggregators, context, true);
+    applyGroupBy(bucketResults, context, isStruct, newResults, aggregators, false,
+        objectChangedMarker, -1, true);
+    if (this.originalOrderByClause == null && limit > 0) {
+      ((Bag) newResults).applyLimit(limit);
+    }
+    return newResults;
+  }
+
   private SelectResults createResultSet(ExecutionContext context, ObjectType elementType,
       boolean isStruct, boolean createOrderedResults) {
     elementType = createNewElementType(elementType, isStruct);
@@ -266,8 +303,9 @@ public class CompiledGroupBySelect extends CompiledSelect {
 
   private void applyGroupBy(SelectResults baseResults, ExecutionContext context, boolean isStruct,
       SelectResults newResults, Aggregator[] aggregators, boolean isStructFields,
-      boolean[] objectChangedMarker, int limitValue) throws FunctionDomainException,
-      TypeMismatchException, NameResolutionException, QueryInvocationTargetException {
+      boolean[] objectChangedMarker, int limitValue, boolean combinePartials)
+      throws FunctionDomainException, TypeMismatchException, NameResolutionException,
+      QueryInvocationTargetException {
     Iterator iter = baseResults.iterator();
     Object[] orderByTupleHolderCurrent = null;
     Object[] orderByTupleHolderPrev = null;
@@ -300,7 +338,7 @@ public class CompiledGroupBySelect extends CompiledSelect {
         isFirst = false;
       } else {
         keepAdding = terminateAndAddToResults(isStruct, newResults, aggregators, prev, context,
-            isStructFields, limitValue);
+            isStructFields, limitValue, combinePartials);
         this.accumulate(isStruct, aggregators, current, objectChangedMarker);
         unterminated = true;
       }
@@ -313,7 +351,7 @@ public class CompiledGroupBySelect extends CompiledSelect {
     }
     if (unterminated && keepAdding) {
       this.terminateAndAddToResults(isStruct, newResults, aggregators, prev, context,
-          isStructFields, limitValue);
+          isStructFields, limitValue, combinePartials);
     }
 
     if (this.originalOrderByClause != null && limitValue > 0
@@ -324,8 +362,8 @@ public class CompiledGroupBySelect extends CompiledSelect {
 
   private boolean terminateAndAddToResults(boolean isStruct, SelectResults newResults,
       Aggregator[] aggregators, Object prev, ExecutionContext context, boolean isStrucFields,
-      int limitValue) throws FunctionDomainException, TypeMismatchException,
-      NameResolutionException, QueryInvocationTargetException {
+      int limitValue, boolean combinePartials) throws FunctionDomainException,
+      TypeMismatchException, NameResolutionException, QueryInvocationTargetException {
     Object[] newRowArray = isStruct ? copyStruct((Struct) prev) : null;
     Object newObject = null;
     int bitstart = 0;
@@ -361,16 +399,17 @@ public class CompiledGroupBySelect extends CompiledSelect {
       keepAdding = false;
     }
     // rfresh the aggregators
-    refreshAggregators(aggregators, context);
+    refreshAggregators(aggregators, context, combinePartials);
     return keepAdding;
   }
 
-  private void refreshAggregators(Aggregator[] aggregators, ExecutionContext context)
-      throws FunctionDomainException, TypeMismatchException, NameResolutionException,
-      QueryInvocationTargetException {
+  private void refreshAggregators(Aggregator[] aggregators, ExecutionContext context,
+      boolean combinePartials) throws FunctionDomainException, TypeMismatchException,
+      NameResolutionException, QueryInvocationTargetException {
     int i = 0;
     for (CompiledAggregateFunction aggFunc : this.aggregateFunctions) {
-      Aggregator agg = (Aggregator) aggFunc.evaluate(context);
+      Aggregator agg = combinePartials ? aggFunc.getPartialResultCombiner()
+          : (Aggregator) aggFunc.evaluate(context);
       aggregators[i++] = agg;
     }
   }
@@ -29,16 +29,22 @@ import org.apache.geode.InternalGemFireError;
 import org.apache.geode.cache.EntryDestroyedException;
 import org.apache.geode.cache.query.AmbiguousNameException;
 import org.apache.geode.cache.query.FunctionDomainException;
+import org.apache.geode.cache.query.Index;
 import org.apache.geode.cache.query.NameResolutionException;
 import org.apache.geode.cache.query.QueryInvocationTargetException;
 import org.apache.geode.cache.query.QueryService;
 import org.apache.geode.cache.query.SelectResults;
 import org.apache.geode.cache.query.Struct;
 import org.apache.geode.cache.query.TypeMismatchException;
+import org.apache.geode.cache.query.internal.index.AbstractIndex;
+import org.apache.geode.cache.query.internal.index.CompositeIndexKey;
 import org.apache.geode.cache.query.internal.index.IndexManager;
 import org.apache.geode.cache.query.internal.index.IndexProtocol;
+import org.apache.geode.cache.query.internal.index.IndexUtils;
+import org.apache.geode.cache.query.internal.index.PartitionedIndex;
 import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
 import org.apache.geode.cache.query.internal.types.StructTypeImpl;
+import org.apache.geode.cache.query.internal.types.TypeUtils;
 import org.apache.geode.cache.query.types.ObjectType;
 import org.apache.geode.internal.Assert;
 import org.apache.geode.internal.i18n.LocalizedStrings;
@@ -99,6 +105,10 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
   // not set the place holder
   private final static String PLACEHOLDER_FOR_JOIN = "join";
 
+  // The key of the operands rewritten to use composite indexes in the cache of the
+  // ExecutionContext
+  private final Object compositeIndexOperandsKey = new Object();
+
   CompiledJunction(CompiledValue[] operands, int operator) {
     // invariant: operator must be LITERAL_and or LITERAL_or
     // invariant: at least two operands
@@ -408,12 +418,13 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
     // set default evalAsFilter depending on operator
     boolean isOr = (_operator == LITERAL_or);
     resultPlanInfo.evalAsFilter = isOr;
+    CompiledValue[] operands = getOperandsUsingCompositeIndexes(context);
     // collect indexes
     // for LITERAL_and operator, if any say yes to filter,
     // then change default evalAsFilter from false to true
     // of LITERAL_or operator, if any say no to filter, change to false
-    for (int i = 0; i < _operands.length; i++) {
-      PlanInfo opPlanInfo = _operands[i].getPlanInfo(context);
+    for (int i = 0; i < operands.length; i++) {
+      PlanInfo opPlanInfo = operands[i].getPlanInfo(context);
       resultPlanInfo.indexes.addAll(opPlanInfo.indexes);
       if (!isOr && opPlanInfo.evalAsFilter) {
         resultPlanInfo.evalAsFilter = true;
@@ -453,13 +464,14 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
    */
   OrganizedOperands organizeOperands(ExecutionContext context) throws FunctionDomainException,
       TypeMismatchException, NameResolutionException, QueryInvocationTargetException {
+    CompiledValue[] operands = getOperandsUsingCompositeIndexes(context);
     // get the list of operands to evaluate, and evaluate operands that can use
     // indexes first.
-    List evalOperands = new ArrayList(_operands.length);
+    List evalOperands = new ArrayList(operands.length);
     int indexCount = 0;
     // TODO: Check if we can defer the creation of this array list only
     // if there exists an eval operand
-    List compositeIterOperands = new ArrayList(_operands.length);
+    List compositeIterOperands = new ArrayList(operands.length);
     // Asif: This Map will contain as key the composite filter operand & as
     // value , the set containing independent RuntimeIterators ( which will
     // necessarily be two )
@@ -469,7 +481,7 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
     boolean isJunctionNeeded = false;
     boolean indexExistsOnNonJoinOp = false;
 
-    for (int i = 0; i < _operands.length; i++) {
+    for (int i = 0; i < operands.length; i++) {
       // Asif : If we are inside this function this itself indicates
       // that there exists at least on operand which can be evaluated
       // as an auxFilterEvaluate. If any operand even if its flag of
@@ -486,7 +498,7 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
       // We are here itself implies, that any independent operand can be
       // either true or false for an AND junction but always false for an
       // OR Junction.
-      operand = this._operands[i];
+      operand = operands[i];
       if (!operand.isDependentOnCurrentScope(context)) {
         indexCount++;
         // Asif Ensure that independent operands are always at the start
@@ -614,6 +626,320 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
     return result;
   }
 
+  /**
+   * Returns the operands of this junction, where for an AND junction the comparisons which can be
+   * answered together by a composite index are replaced by comparisons on the composite index key.
+   * The equality conditions on the leading expressions of a composite index, along with the range
+   * or equality conditions on the next expression, become either a single equality condition or a
+   * pair of range conditions forming a RangeJunction on the index. This way a query like
+   * <code>status = 'OPEN' AND ts > $1</code> does a single range lookup of an index on
+   * <code>status, ts</code> instead of intersecting the results of two indexes.
+   *
+   * The operands are cached in the context, as the new conditions hold the read lock of the index
+   * they use and so must be the ones used for the whole execution.
+   */
+  private CompiledValue[] getOperandsUsingCompositeIndexes(ExecutionContext context)
+      throws FunctionDomainException, TypeMismatchException, NameResolutionException,
+      QueryInvocationTargetException {
+    if (_operator != LITERAL_and || !IndexUtils.indexesEnabled) {
+      return _operands;
+    }
+    CompiledValue[] operands = (CompiledValue[]) context.cacheGet(compositeIndexOperandsKey);
+    if (operands == null) {
+      operands = useCompositeIndexes(context);
+      context.cachePut(compositeIndexOperandsKey, operands);
+    }
+    return operands;
+  }
+
+  private CompiledValue[] useCompositeIndexes(ExecutionContext context)
+      throws FunctionDomainException, TypeMismatchException, NameResolutionException,
+      QueryInvocationTargetException {
+    // Group the comparisons of a path with a constant by the independent iterator of the path
+    Map<RuntimeIterator, List<CompositeIndexCondition>> iterToConditions = null;
+    for (int i = 0; i < _operands.length; i++) {
+      CompositeIndexCondition condition = getCompositeIndexCondition(_operands[i], i, context);
+      if (condition != null) {
+        if (iterToConditions == null) {
+          iterToConditions = new LinkedHashMap<RuntimeIterator, List<CompositeIndexCondition>>();
+        }
+        List<CompositeIndexCondition> conditions = iterToConditions.get(condition.independentItr);
+        if (conditions == null) {
+          conditions = new ArrayList<CompositeIndexCondition>();
+          iterToConditions.put(condition.independentItr, conditions);
+        }
+        conditions.add(condition);
+      }
+    }
+    if (iterToConditions == null) {
+      return _operands;
+    }
+    // The conditions replacing an operand, if any. The replaced operands other than the first one
+    // of a composite index are replaced by no condition.
+    CompiledValue[][] replacements = null;
+    for (Map.Entry<RuntimeIterator, List<CompositeIndexCondition>> entry : iterToConditions
+        .entrySet()) {
+      List<CompositeIndexCondition> conditions = entry.getValue();
+      if (conditions.size() < 2) {
+        continue;
+      }
+      String regionPath = context.getRegionPathForIndependentRuntimeIterator(entry.getKey());
+      IndexManager indexManager = regionPath == null ? null
+          : IndexUtils.getIndexManager(context.getCache().getRegion(regionPath), false);
+      if (indexManager == null) {
+        continue;
+      }
+      CompositeIndexMatch bestMatch = null;
+      for (String[] indexedExpressions : indexManager.getCompositeIndexedExpressions()) {
+        CompositeIndexMatch match = new CompositeIndexMatch(indexedExpressions, conditions);
+        if (match.getNumConditions() >= 2
+            && (bestMatch == null || match.getNumConditions() > bestMatch.getNumConditions())) {
+          bestMatch = match;
+        }
+      }
+      if (bestMatch == null) {
+        continue;
+      }
+      CompiledValue[] newConditions = bestMatch.createConditions(context);
+      if (newConditions == null) {
+        continue;
+      }
+      if (replacements == null) {
+        replacements = new CompiledValue[_operands.length][];
+      }
+      List<CompositeIndexCondition> matched = bestMatch.getConditions();
+      for (CompositeIndexCondition condition : matched) {
+        replacements[condition.position] = new CompiledValue[0];
+      }
+      replacements[matched.get(0).position] = newConditions;
+    }
+    if (replacements == null) {
+      return _operands;
+    }
+    List<CompiledValue> operands = new ArrayList<CompiledValue>(_operands.length);
+    for (int i = 0; i < _operands.length; i++) {
+      if (replacements[i] == null) {
+        operands.add(_operands[i]);
+      } else {
+        operands.addAll(Arrays.asList(replacements[i]));
+      }
+    }
+    return operands.toArray(new CompiledValue[operands.size()]);
+  }
+
+  /**
+   * Returns the operand as a comparison of a path with a constant or a bind argument, which a
+   * composite index on the path may answer, or null if it is not such a comparison.
+   */
+  private CompositeIndexCondition getCompositeIndexCondition(CompiledValue operand, int position,
+      ExecutionContext context) throws FunctionDomainException, TypeMismatchException,
+      NameResolutionException, QueryInvocationTargetException {
+    if (operand.getType() != COMPARISON) {
+      return null;
+    }
+    CompiledComparison comparison = (CompiledComparison) operand;
+    int operator = comparison.getOperator();
+    if (operator != TOK_EQ && operator != TOK_LT && operator != TOK_LE && operator != TOK_GT
+        && operator != TOK_GE) {
+      return null;
+    }
+    boolean isLeftDependent = context.isDependentOnCurrentScope(comparison._left);
+    if (isLeftDependent == context.isDependentOnCurrentScope(comparison._right)) {
+      return null;
+    }
+    CompiledValue path = isLeftDependent ? comparison._left : comparison._right;
+    CompiledValue key = isLeftDependent ? comparison._right : comparison._left;
+    if (!(key instanceof CompiledLiteral || key instanceof CompiledBindArgument)) {
+      return null;
+    }
+    Object keyValue = key.evaluate(context);
+    if (!(keyValue instanceof Comparable) || keyValue == QueryService.UNDEFINED) {
+      return null;
+    }
+    Set itrs = QueryUtils.getCurrentScopeUltimateRuntimeIteratorsIfAny(path, context);
+    if (itrs.size() != 1) {
+      return null;
+    }
+    StringBuffer sb = new StringBuffer();
+    path.generateCanonicalizedExpression(sb, context);
+    return new CompositeIndexCondition(position, path, sb.toString(),
+        isLeftDependent ? operator : reflectOperator(operator), TypeUtils.indexKeyFor(keyValue),
+        (RuntimeIterator) itrs.iterator().next());
+  }
+
+  /**
+   * A comparison of a path with a constant, which may be answered by a composite index on the path
+   */
+  private static class CompositeIndexCondition {
+    /** The position of the comparison in the operands of the junction */
+    final int position;
+    final CompiledValue path;
+    final String canonicalizedPath;
+    /** The operator of the comparison, with the path on the left */
+    final int operator;
+    final Object key;
+    final RuntimeIterator independentItr;
+
+    CompositeIndexCondition(int position, CompiledValue path, String canonicalizedPath,
+        int operator, Object key, RuntimeIterator independentItr) {
+      this.position = position;
+      this.path = path;
+      this.canonicalizedPath = canonicalizedPath;
+      this.operator = operator;
+      this.key = key;
+      this.independentItr = independentItr;
+    }
+  }
+
+  /**
+   * The conditions of a junction a composite index can answer: equality conditions on its leading
+   * expressions, and a lower and upper bound on the next expression, if any.
+   */
+  private static class CompositeIndexMatch {
+    private final String[] indexedExpressions;
+    private final List<CompositeIndexCondition> equalities =
+        new ArrayList<CompositeIndexCondition>();
+    private CompositeIndexCondition lowerBound;
+    private CompositeIndexCondition upperBound;
+
+    CompositeIndexMatch(String[] indexedExpressions, List<CompositeIndexCondition> conditions) {
+      this.indexedExpressions = indexedExpressions;
+      int position = 0;
+      while (position < indexedExpressions.length) {
+        CompositeIndexCondition equality = null;
+        for (CompositeIndexCondition condition : conditions) {
+          if (condition.operator == TOK_EQ
+              && condition.canonicalizedPath.equals(indexedExpressions[position])) {
+            equality = condition;
+            break;
+          }
+        }
+        if (equality == null) {
+          break;
+        }
+        this.equalities.add(equality);
+        position++;
+      }
+      if (this.equalities.isEmpty() || position == indexedExpressions.length) {
+        return;
+      }
+      for (CompositeIndexCondition condition : conditions) {
+        if (!condition.canonicalizedPath.equals(indexedExpressions[position])) {
+          continue;
+        }
+        if (this.lowerBound == null
+            && (condition.operator == TOK_GT || condition.operator == TOK_GE)) {
+          this.lowerBound = condition;
+        } else if (this.upperBound == null
+            && (condition.operator == TOK_LT || condition.operator == TOK_LE)) {
+          this.upperBound = condition;
+        }
+      }
+    }
+
+    int getNumConditions() {
+      return this.equalities.size() + (this.lowerBound == null ? 0 : 1)
+          + (this.upperBound == null ? 0 : 1);
+    }
+
+    List<CompositeIndexCondition> getConditions() {
+      List<CompositeIndexCondition> conditions =
+          new ArrayList<CompositeIndexCondition>(this.equalities);
+      if (this.lowerBound != null) {
+        conditions.add(this.lowerBound);
+      }
+      if (this.upperBound != null) {
+        conditions.add(this.upperBound);
+      }
+      return conditions;
+    }
+
+    /**
+     * Creates the conditions on the composite index replacing the matched conditions, or returns
+     * null if they cannot use the index.
+     */
+    CompiledValue[] createConditions(ExecutionContext context) throws FunctionDomainException,
+        TypeMismatchException, NameResolutionException, QueryInvocationTargetException {
+      int numComponents = this.indexedExpressions.length;
+      int numEqualities = this.equalities.size();
+      CompiledValue[] pathComponents = new CompiledValue[numComponents];
+      for (int i = 0; i < numEqualities; i++) {
+        pathComponents[i] = this.equalities.get(i).path;
+      }
+      for (int i = numEqualities; i < numComponents; i++) {
+        pathComponents[i] = CompiledCompositeKey.unconstrained(this.indexedExpressions[i]);
+      }
+      CompiledValue path = new CompiledCompositeKey(pathComponents);
+      CompiledComparison[] conditions;
+      if (numEqualities == numComponents) {
+        conditions =
+            new CompiledComparison[] {new CompiledComparison(path, createKey(null, null), TOK_EQ)};
+      } else if (this.lowerBound == null && this.upperBound == null) {
+        conditions = new CompiledComparison[] {
+            new CompiledComparison(path, createKey(null, CompositeIndexKey.MIN), TOK_GE),
+            new CompiledComparison(path, createKey(null, CompositeIndexKey.MAX), TOK_LE)};
+      } else {
+        pathComponents[numEqualities] =
+            (this.lowerBound != null ? this.lowerBound : this.upperBound).path;
+        // Without a lower bound, the keys must be greater than those with a null value, and
+        // without an upper bound lower than or equal to the highest ones
+        CompiledValue lowerKey = this.lowerBound == null
+            ? createKey(new Object[] {null}, CompositeIndexKey.MAX)
+            : createKey(new Object[] {this.lowerBound.key},
+                this.lowerBound.operator == TOK_GE ? CompositeIndexKey.MIN : CompositeIndexKey.MAX);
+        CompiledValue upperKey = this.upperBound == null ? createKey(null, CompositeIndexKey.MAX)
+            : createKey(new Object[] {this.upperBound.key},
+                this.upperBound.operator == TOK_LE ? CompositeIndexKey.MAX : CompositeIndexKey.MIN);
+        conditions = new CompiledComparison[] {
+            new CompiledComparison(path, lowerKey,
+                this.lowerBound == null ? TOK_GT : this.lowerBound.operator),
+            new CompiledComparison(path, upperKey,
+                this.upperBound == null ? TOK_LE : this.upperBound.operator)};
+      }
+      boolean useIndex = true;
+      for (CompiledComparison condition : conditions) {
+        condition.computeDependencies(context);
+        useIndex = condition.getPlanInfo(context).evalAsFilter && useIndex;
+      }
+      if (!useIndex) {
+        // release the read lock held on the index by the conditions which could use it
+        for (CompiledComparison condition : conditions) {
+          for (Object index : condition.getPlanInfo(context).indexes) {
+            Index prIndex = ((AbstractIndex) index).getPRIndex();
+            if (prIndex != null) {
+              ((PartitionedIndex) prIndex).releaseIndexReadLockForRemove();
+            } else {
+              ((AbstractIndex) index).releaseIndexReadLockForRemove();
+            }
+          }
+        }
+        return null;
+      }
+      return conditions;
+    }
+
+    /**
+     * Creates a key with the values of the equality conditions, followed by the given values and
+     * padded with the given bound
+     */
+    private CompiledValue createKey(Object[] values, Object padding) {
+      Object[] components = new Object[this.indexedExpressions.length];
+      int i = 0;
+      for (CompositeIndexCondition equality : this.equalities) {
+        components[i++] = equality.key;
+      }
+      if (values != null) {
+        for (Object value : values) {
+          components[i++] = value;
+        }
+      }
+      while (i < components.length) {
+        components[i++] = padding;
+      }
+      return new CompiledLiteral(new CompositeIndexKey(components));
+    }
+  }
+
   /**
    * Creates a GroupJunction or a RangeJunction based on the operands passed. The operands are
    * either Filter Operands belonging to single independent RuntimeIterator or are iter evaluable on
@@ -1052,10 +1378,11 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
   public boolean isProjectionEvaluationAPossibility(ExecutionContext context)
       throws FunctionDomainException, TypeMismatchException, NameResolutionException,
       QueryInvocationTargetException {
-    for (int i = 0; i < this._operands.length; ++i) {
+    CompiledValue[] operands = getOperandsUsingCompositeIndexes(context);
+    for (int i = 0; i < operands.length; ++i) {
       // LIKE gives rise to a JUNCTION in CompiledLike whether wildcard is present or not
-      if ((this._operands[i].getType() == JUNCTION || this._operands[i].getType() == LIKE)
-          && this._operands[i].getPlanInfo(context).evalAsFilter) {
+      if ((operands[i].getType() == JUNCTION || operands[i].getType() == LIKE)
+          && operands[i].getPlanInfo(context).evalAsFilter) {
         return false;
       }
     }
@@ -1107,11 +1434,11 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
       // hard coded to use 1 index
       // we can for the time being return true if there exists atleast one indexable condition
       boolean foundIndex = false;
-      for (int i = 0; i < this._operands.length; ++i) {
-        if (this._operands[i].getPlanInfo(context).evalAsFilter
-            && this._operands[i].getType() == JUNCTION) {
+      CompiledValue[] operands = getOperandsUsingCompositeIndexes(context);
+      for (int i = 0; i < operands.length; ++i) {
+        if (operands[i].getPlanInfo(context).evalAsFilter && operands[i].getType() == JUNCTION) {
           return false;
-        } else if (this._operands[i].getPlanInfo(context).evalAsFilter) {
+        } else if (operands[i].getPlanInfo(context).evalAsFilter) {
           foundIndex = true;
         }
       }
@@ -1126,14 +1453,14 @@ public class CompiledJunction extends AbstractCompiledValue implements Negatable
     if (this._operator == LITERAL_and) {
       // Set<IndexProtocol> usedIndex = new HashSet<IndexProtocol>();
       boolean foundRightIndex = false;
-      for (int i = 0; i < this._operands.length; ++i) {
-        PlanInfo pi = this._operands[i].getPlanInfo(context);
-        if (pi.evalAsFilter && this._operands[i].getType() == JUNCTION) {
+      CompiledValue[] operands = getOperandsUsingCompositeIndexes(context);
+      for (int i = 0; i < operands.length; ++i) {
+        PlanInfo pi = operands[i].getPlanInfo(context);
+        if (pi.evalAsFilter && operands[i].getType() == JUNCTION) {
           return false;
         } else if (pi.evalAsFilter) {
           if (!foundRightIndex) {
-            IndexProtocol ip =
-                (IndexProtocol) this._operands[i].getPlanInfo(context).indexes.get(0);
+            IndexProtocol ip = (IndexProtocol) operands[i].getPlanInfo(context).indexes.get(0);
             if (ip.getCanonicalizedIndexedExpression().equals(canonicalizedOrderByClause)
                 && pi.isPreferred) {
               foundRightIndex = true;
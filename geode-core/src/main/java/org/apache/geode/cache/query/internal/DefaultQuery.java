@@ -906,6 +906,7 @@ public class DefaultQuery implements Query {
     if (observer != null && observer instanceof IndexTrackingQueryObserver) {
       IndexTrackingQueryObserver indexObserver = (IndexTrackingQueryObserver) observer;
       Map usedIndexes = indexObserver.getUsedIndexes();
+      Map<String, Long> sizeEstimates = indexObserver.getIndexSizeEstimates();
       indexObserver.reset();
       StringBuffer buf = new StringBuffer();
       buf.append(" indexesUsed(");
@@ -921,6 +922,7 @@ public class DefaultQuery implements Query {
           }
         }
       }
+      appendIndexSizeEstimates(buf, sizeEstimates);
       usedIndexesString = buf.toString();
     } else if (DefaultQuery.QUERY_VERBOSE) {
       usedIndexesString = " indexesUsed(NA due to other observer in the way: "
@@ -934,6 +936,23 @@ public class DefaultQuery implements Query {
         + (usedIndexesString != null ? usedIndexesString : "") + " \"" + query + "\"";
   }
 
+  /**
+   * Appends the size estimates of the index lookups the indexes used by the query were chosen from
+   */
+  private static void appendIndexSizeEstimates(StringBuffer buf, Map<String, Long> sizeEstimates) {
+    if (sizeEstimates.size() > 0) {
+      buf.append(" indexSizeEstimates:");
+      for (Iterator<Map.Entry<String, Long>> itr = sizeEstimates.entrySet().iterator(); itr
+          .hasNext();) {
+        Map.Entry<String, Long> entry = itr.next();
+        buf.append(entry.getKey()).append("=").append(entry.getValue());
+        if (itr.hasNext()) {
+          buf.append(",");
+        }
+      }
+    }
+  }
+
   public static String getLogMessage(IndexTrackingQueryObserver indexObserver, long startTime,
       String otherObserver, int resultSize, String query, BucketRegion bucket) {
     String usedIndexesString = null;
@@ -83,6 +83,13 @@ public class ExecutionContext {
   private Object currentProjectionField = null;
   private boolean isPRQueryNode = false;
 
+  /**
+   * Whether the asynchronous updates queued for the indexes of a region had been applied when this
+   * execution first needed its indexes, by IndexManager. Kept here rather than with cachePut so
+   * that every kind of context remembers it for the whole execution.
+   */
+  private Map<IndexManager, Boolean> pendingIndexUpdatesApplied = null;
+
   /**
    * Param specialIteratorVar name of special variable to use to denote the current iteration
    * element. Used to implement the "this" var in the query shortcut methods
@@ -622,6 +629,7 @@ public class ExecutionContext {
    */
   public void reset() {
     this.scopes.clear();
+    this.pendingIndexUpdatesApplied = null;
   }
 
   public BucketRegion getBucketRegion() {
@@ -637,6 +645,24 @@ public class ExecutionContext {
     return this.pr;
   }
 
+  /**
+   * Returns whether the pending updates of the indexes of the given IndexManager were found applied
+   * during this execution, or null if they have not been looked at yet.
+   */
+  public Boolean arePendingIndexUpdatesApplied(IndexManager indexManager) {
+    if (this.pendingIndexUpdatesApplied == null) {
+      return null;
+    }
+    return this.pendingIndexUpdatesApplied.get(indexManager);
+  }
+
+  public void setPendingIndexUpdatesApplied(IndexManager indexManager, boolean applied) {
+    if (this.pendingIndexUpdatesApplied == null) {
+      this.pendingIndexUpdatesApplied = new HashMap<IndexManager, Boolean>();
+    }
+    this.pendingIndexUpdatesApplied.put(indexManager, Boolean.valueOf(applied));
+  }
+
   // General purpose caching methods for data that is only valid for one
   // query execution
   void cachePut(Object key, Object value) {
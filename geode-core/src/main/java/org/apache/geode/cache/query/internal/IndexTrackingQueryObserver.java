@@ -23,6 +23,7 @@ import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -30,6 +31,7 @@ import java.util.Set;
 import org.apache.geode.cache.query.Index;
 import org.apache.geode.cache.query.internal.index.CompactMapRangeIndex;
 import org.apache.geode.cache.query.internal.index.MapRangeIndex;
+import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
 import org.apache.geode.internal.cache.PartitionedRegionQueryEvaluator.TestHook;
 
 /**
@@ -41,6 +43,8 @@ public class IndexTrackingQueryObserver extends QueryObserverAdapter {
 
   private static final ThreadLocal indexInfo = new ThreadLocal();
   private static final ThreadLocal lastIndexUsed = new ThreadLocal();
+  // The size estimates of the index lookups considered, per lookup and region of the index
+  private static final ThreadLocal sizeEstimates = new ThreadLocal();
   private volatile TestHook th;
 
   public void beforeIndexLookup(Index index, int oper, Object key) {
@@ -121,6 +125,69 @@ public class IndexTrackingQueryObserver extends QueryObserverAdapter {
     }
   }
 
+  /**
+   * Records the size estimate of an index lookup, per region of the index so that the estimates of
+   * the lookups on the buckets of a partitioned region add up.
+   */
+  @Override
+  public void indexSizeEstimated(Index index, int operator, Object key, int sizeEstimate) {
+    Map<String, Map<String, Integer>> estimates = (Map) sizeEstimates.get();
+    if (estimates == null) {
+      estimates = new LinkedHashMap<String, Map<String, Integer>>();
+      sizeEstimates.set(estimates);
+    }
+    String lookup = index.getName() + "(" + operatorToString(operator)
+        + (operator == OQLLexerTokenTypes.LITERAL_and ? "" : " " + key) + ")";
+    Map<String, Integer> regionEstimates = estimates.get(lookup);
+    if (regionEstimates == null) {
+      regionEstimates = new HashMap<String, Integer>();
+      estimates.put(lookup, regionEstimates);
+    }
+    regionEstimates.put(index.getRegion().getFullPath(), sizeEstimate);
+  }
+
+  /**
+   * Returns the size estimates of the index lookups considered to choose the indexes used by the
+   * query, keyed by index name and lookup
+   */
+  public Map<String, Long> getIndexSizeEstimates() {
+    Map<String, Map<String, Integer>> estimates = (Map) sizeEstimates.get();
+    if (estimates == null) {
+      return Collections.emptyMap();
+    }
+    Map<String, Long> totals = new LinkedHashMap<String, Long>();
+    for (Map.Entry<String, Map<String, Integer>> entry : estimates.entrySet()) {
+      long total = 0;
+      for (Integer estimate : entry.getValue().values()) {
+        total += estimate;
+      }
+      totals.put(entry.getKey(), total);
+    }
+    return totals;
+  }
+
+  private static String operatorToString(int operator) {
+    switch (operator) {
+      case OQLLexerTokenTypes.TOK_EQ:
+        return "=";
+      case OQLLexerTokenTypes.TOK_NE:
+      case OQLLexerTokenTypes.TOK_NE_ALT:
+        return "<>";
+      case OQLLexerTokenTypes.TOK_LT:
+        return "<";
+      case OQLLexerTokenTypes.TOK_LE:
+        return "<=";
+      case OQLLexerTokenTypes.TOK_GT:
+        return ">";
+      case OQLLexerTokenTypes.TOK_GE:
+        return ">=";
+      case OQLLexerTokenTypes.LITERAL_and:
+        return "range";
+      default:
+        return String.valueOf(operator);
+    }
+  }
+
   /**
    * This should be called only when one query execution on one gemfire node is done. NOT for each
    * buckets.
@@ -130,6 +197,7 @@ public class IndexTrackingQueryObserver extends QueryObserverAdapter {
       th.hook(4);
     }
     this.indexInfo.set(null);
+    sizeEstimates.set(null);
   }
 
   public void setIndexInfo(Map indexInfoMap) {
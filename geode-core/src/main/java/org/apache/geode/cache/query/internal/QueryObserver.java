@@ -292,4 +292,15 @@ public interface QueryObserver {
    */
   void orderByColumnsEqual();
 
+  /**
+   * Callback issued after estimating the number of values an index lookup selects, when choosing
+   * the condition of a junction to evaluate using its index.
+   *
+   * @param index the index which would be looked up
+   * @param operator the operator of the lookup, or LITERAL_and for a range with several bounds
+   * @param key the key of the lookup, or null for a range with several bounds
+   * @param sizeEstimate the estimated number of values
+   */
+  void indexSizeEstimated(Index index, int operator, Object key, int sizeEstimate);
+
 }
@@ -275,4 +275,6 @@ public class QueryObserverAdapter implements QueryObserver {
   public void orderByColumnsEqual() {
 
   }
+
+  public void indexSizeEstimated(Index index, int operator, Object key, int sizeEstimate) {}
 }
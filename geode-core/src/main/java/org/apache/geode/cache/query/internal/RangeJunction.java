@@ -34,6 +34,8 @@ import org.apache.geode.cache.query.SelectResults;
 import org.apache.geode.cache.query.Struct;
 import org.apache.geode.cache.query.TypeMismatchException;
 import org.apache.geode.internal.i18n.LocalizedStrings;
+import org.apache.geode.cache.query.internal.index.IndexManager;
+import org.apache.geode.cache.query.internal.index.IndexProtocol;
 import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
 import org.apache.geode.cache.query.internal.types.StructTypeImpl;
 import org.apache.geode.cache.query.internal.types.TypeUtils;
@@ -120,6 +122,10 @@ public class RangeJunction extends AbstractGroupOrRangeJunction {
     }
 
     int thatOperator = comparedTo.getOperator();
+    // Go with the lowest cost when the sizes of both are estimated from the keys of their index
+    if (CompiledComparison.isCostBasedSelectionApplicable(LITERAL_and, thatOperator)) {
+      return thisSize <= comparedTo.getSizeEstimate(context);
+    }
     switch (thatOperator) {
       case TOK_EQ:
         isThisBetter = false;
@@ -354,8 +360,11 @@ public class RangeJunction extends AbstractGroupOrRangeJunction {
       evalOperands.add(new CompiledLiteral(Boolean.FALSE));
     }
 
-    // If no hints were provided, we continue with our single index solution
-    if (!(context instanceof QueryExecutionContext)
+    // If no hints were provided, we continue with our single index solution. With the cost based
+    // selection of indexes the iter operands are added even if multiple hints were provided, as the
+    // hints of a subquery may only be known once the GroupJunction holding this RangeJunction chose
+    // it as its single filter.
+    if (IndexManager.COST_BASED_INDEX_SELECTION || !(context instanceof QueryExecutionContext)
         || !((QueryExecutionContext) context).hasMultiHints()) {
       // At the end check if the unevaluatedIterOperand
       // are null or not. This could be the case only if at top level
@@ -517,9 +526,27 @@ public class RangeJunction extends AbstractGroupOrRangeJunction {
     Support.assertionFailed("Should not have come here");
   }
 
-  public int getSizeEstimate(ExecutionContext context) {
-    // TODO:Asif:Try to estimate better
-    return RANGE_SIZE_ESTIMATE;
+  public int getSizeEstimate(ExecutionContext context) throws FunctionDomainException,
+      TypeMismatchException, NameResolutionException, QueryInvocationTargetException {
+    if (!IndexManager.COST_BASED_INDEX_SELECTION) {
+      return RANGE_SIZE_ESTIMATE;
+    }
+    // The range selects at most the values the most selective of its conditions selects
+    int size = Integer.MAX_VALUE;
+    IndexProtocol index = null;
+    for (int i = 0; i < _operands.length; i++) {
+      if (_operands[i] instanceof Filter) {
+        size = Math.min(size, ((Filter) _operands[i]).getSizeEstimate(context));
+      }
+      if (index == null && _operands[i].getType() == COMPARISON) {
+        IndexInfo[] indexInfo = ((CompiledComparison) _operands[i]).getIndexInfo(context);
+        index = indexInfo == null ? null : indexInfo[0]._index;
+      }
+    }
+    if (index != null) {
+      QueryObserverHolder.getInstance().indexSizeEstimated(index, LITERAL_and, null, size);
+    }
+    return size;
   }
 
   /*
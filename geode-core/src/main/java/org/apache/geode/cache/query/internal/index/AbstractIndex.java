@@ -22,6 +22,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -113,6 +115,17 @@ public abstract class AbstractIndex implements IndexProtocol {
 
   final String[] canonicalizedDefinitions;
 
+  // The canonicalized expressions of a composite index, in the order of the
+  // components of its keys. Null if the index is not a composite index.
+  private String[] canonicalizedIndexedExpressionComponents;
+
+  // The histogram of the keys, for the indexes keeping their keys sorted. Built in the background
+  // on first use and rebuilt once stale.
+  private volatile IndexKeyHistogram keyHistogram;
+
+  // Set while the histogram of the keys is being built
+  private final AtomicBoolean buildingKeyHistogram = new AtomicBoolean();
+
   private boolean isValid;
 
   protected IndexedExpressionEvaluator evaluator;
@@ -808,6 +821,86 @@ public abstract class AbstractIndex implements IndexProtocol {
     this.prIndex = parIndex;
   }
 
+  /**
+   * Returns the canonicalized indexed expressions of this composite index in the order of the
+   * components of its keys, or null if this is not a composite index.
+   */
+  public String[] getCanonicalizedIndexedExpressionComponents() {
+    return this.canonicalizedIndexedExpressionComponents;
+  }
+
+  void setCanonicalizedIndexedExpressionComponents(String[] components) {
+    this.canonicalizedIndexedExpressionComponents = components;
+  }
+
+  /**
+   * Returns the number of values of this index a range condition selects, as estimated from the
+   * histogram of its keys, or -1 if the operator is not a range operator, this index keeps no
+   * histogram or the key cannot be compared with its keys.
+   */
+  int getRangeSizeEstimate(Object key, int operator) throws TypeMismatchException {
+    if (!IndexManager.COST_BASED_INDEX_SELECTION
+        || (operator != OQLLexerTokenTypes.TOK_LT && operator != OQLLexerTokenTypes.TOK_LE
+            && operator != OQLLexerTokenTypes.TOK_GT && operator != OQLLexerTokenTypes.TOK_GE)) {
+      return -1;
+    }
+    IndexKeyHistogram histogram = getKeyHistogram();
+    if (histogram == null) {
+      return -1;
+    }
+    key = getPdxStringForIndexedPdxKeys(TypeUtils.indexKeyFor(key));
+    try {
+      return histogram.estimate(operator, key, this.internalIndexStats.getNumberOfValues());
+    } catch (ClassCastException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the histogram of the keys of this index, or null if it has not been built yet. A
+   * missing or stale histogram is built in the background, so that the query threads never scan the
+   * index, and the stale one keeps being used until then.
+   */
+  IndexKeyHistogram getKeyHistogram() {
+    IndexKeyHistogram histogram = this.keyHistogram;
+    if ((histogram == null || histogram.isStale(this.internalIndexStats.getNumUpdates()))
+        && this.buildingKeyHistogram.compareAndSet(false, true)) {
+      Runnable build = new Runnable() {
+        public void run() {
+          try {
+            IndexKeyHistogram histogram =
+                buildKeyHistogram(AbstractIndex.this.internalIndexStats.getNumUpdates());
+            if (histogram != null) {
+              AbstractIndex.this.keyHistogram = histogram;
+            }
+          } catch (RuntimeException e) {
+            if (logger.isDebugEnabled()) {
+              logger.debug("Failed to build the key histogram of index {}", indexName, e);
+            }
+          } finally {
+            AbstractIndex.this.buildingKeyHistogram.set(false);
+          }
+        }
+      };
+      try {
+        IndexKeyHistogram.buildInBackground(build);
+      } catch (RejectedExecutionException e) {
+        this.buildingKeyHistogram.set(false);
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * Builds the histogram of the keys of this index by scanning them in order. Only the indexes
+   * keeping their keys sorted build one, the others return null.
+   *
+   * @param numUpdates the number of updates of this index before the scan
+   */
+  IndexKeyHistogram buildKeyHistogram(long numUpdates) {
+    return null;
+  }
+
 
   /**
    * Dummy implementation that subclasses can override.
@@ -857,6 +950,14 @@ public abstract class AbstractIndex implements IndexProtocol {
       return 0;
     }
 
+    public int getPendingUpdates() {
+      return 0;
+    }
+
+    public long getSynchronousUpdates() {
+      return 0;
+    }
+
     public void close() {}
 
     public void incNumValues(int delta) {}
@@ -884,6 +985,10 @@ public abstract class AbstractIndex implements IndexProtocol {
     public void incReadLockCount(int delta) {}
 
     public void incNumBucketIndexes(int delta) {}
+
+    public void incPendingUpdates(int delta) {}
+
+    public void incSynchronousUpdates() {}
   }
 
   /**
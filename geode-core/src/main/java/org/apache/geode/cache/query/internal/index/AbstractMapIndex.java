@@ -146,6 +146,22 @@ public abstract class AbstractMapIndex extends AbstractIndex {
       this.vsdStats.incReadLockCount(delta);
     }
 
+    public void incPendingUpdates(int delta) {
+      this.vsdStats.incPendingUpdates(delta);
+    }
+
+    public int getPendingUpdates() {
+      return this.vsdStats.getPendingUpdates();
+    }
+
+    public void incSynchronousUpdates() {
+      this.vsdStats.incSynchronousUpdates();
+    }
+
+    public long getSynchronousUpdates() {
+      return this.vsdStats.getSynchronousUpdates();
+    }
+
     /**
      * Returns the total amount of time (in nanoseconds) spent updating this index.
      */
@@ -56,7 +56,6 @@ import org.apache.geode.cache.query.internal.StructImpl;
 import org.apache.geode.cache.query.internal.Support;
 import org.apache.geode.cache.query.internal.index.IndexManager.TestHook;
 import org.apache.geode.cache.query.internal.index.IndexStore.IndexStoreEntry;
-import org.apache.geode.cache.query.internal.index.MemoryIndexStore.MemoryIndexStoreEntry;
 import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
 import org.apache.geode.cache.query.internal.types.StructTypeImpl;
 import org.apache.geode.cache.query.internal.types.TypeUtils;
@@ -101,6 +100,9 @@ public class CompactRangeIndex extends AbstractIndex {
     if (IndexManager.IS_TEST_LDM) {
       indexStore = new MapIndexStore(
           ((LocalRegion) region).getIndexMap(indexName, indexedExpression, origFromClause), region);
+    } else if (IndexManager.SORTED_BLOCK_INDEX_STORE
+        || IndexManager.TEST_SORTED_BLOCK_INDEX_STORE) {
+      indexStore = new SortedBlockIndexStore(region, internalIndexStats);
     } else {
       indexStore = new MemoryIndexStore(region, internalIndexStats);
     }
@@ -286,7 +288,7 @@ public class CompactRangeIndex extends AbstractIndex {
     CompactRangeIndex index = (CompactRangeIndex) indexInfo._getIndex();
     RuntimeIterator runtimeItr = index.getRuntimeIteratorForThisIndex(context, indexInfo);
     if (runtimeItr != null) {
-      runtimeItr.setCurrent(((MemoryIndexStoreEntry) entry).getDeserializedValue());
+      runtimeItr.setCurrent(entry.getDeserializedValue());
     }
     return evaluateEntry(indexInfo, context, keyVal);
   }
@@ -316,6 +318,16 @@ public class CompactRangeIndex extends AbstractIndex {
           break;
         case OQLLexerTokenTypes.TOK_LE:
         case OQLLexerTokenTypes.TOK_LT:
+          if (matchLevel <= 0 && IndexManager.COST_BASED_INDEX_SELECTION) {
+            if (CompactRangeIndex.testHook != null) {
+              CompactRangeIndex.testHook.hook(1);
+            }
+            // the histogram of the keys estimates the ranges of keys of any type
+            size = getRangeSizeEstimate(key, operator);
+            if (size >= 0) {
+              break;
+            }
+          }
           if (matchLevel <= 0 && (key instanceof Number)) {
 
             int totalSize = indexStore.size();
@@ -380,6 +392,16 @@ public class CompactRangeIndex extends AbstractIndex {
 
         case OQLLexerTokenTypes.TOK_GE:
         case OQLLexerTokenTypes.TOK_GT:
+          if (matchLevel <= 0 && IndexManager.COST_BASED_INDEX_SELECTION) {
+            if (CompactRangeIndex.testHook != null) {
+              CompactRangeIndex.testHook.hook(2);
+            }
+            // the histogram of the keys estimates the ranges of keys of any type
+            size = getRangeSizeEstimate(key, operator);
+            if (size >= 0) {
+              break;
+            }
+          }
           if (matchLevel <= 0 && (key instanceof Number)) {
             int totalSize = indexStore.size();
             if (CompactRangeIndex.testHook != null) {
@@ -443,6 +465,22 @@ public class CompactRangeIndex extends AbstractIndex {
     return size;
   }
 
+  @Override
+  IndexKeyHistogram buildKeyHistogram(long numUpdates) {
+    IndexKeyHistogram.Builder builder =
+        new IndexKeyHistogram.Builder(TypeUtils.getExtendedNumericComparator(),
+            this.internalIndexStats.getNumberOfValues(), numUpdates);
+    CloseableIterator<IndexStoreEntry> iterator = this.indexStore.iterator(null);
+    try {
+      while (iterator.hasNext()) {
+        builder.add(iterator.next().getDeserializedKey(), 1);
+      }
+    } finally {
+      iterator.close();
+    }
+    return builder.build();
+  }
+
   /** Method called while appropriate lock held on index */
   private void lockedQueryPrivate(Object key, int operator, Collection results,
       CompiledValue iterOps, RuntimeIterator runtimeItr, ExecutionContext context, Set keysToRemove,
@@ -1075,6 +1113,22 @@ public class CompactRangeIndex extends AbstractIndex {
       this.vsdStats.incReadLockCount(delta);
     }
 
+    public void incPendingUpdates(int delta) {
+      this.vsdStats.incPendingUpdates(delta);
+    }
+
+    public int getPendingUpdates() {
+      return this.vsdStats.getPendingUpdates();
+    }
+
+    public void incSynchronousUpdates() {
+      this.vsdStats.incSynchronousUpdates();
+    }
+
+    public long getSynchronousUpdates() {
+      return this.vsdStats.getSynchronousUpdates();
+    }
+
     /**
      * Returns the total amount of time (in nanoseconds) spent updating this index.
      */
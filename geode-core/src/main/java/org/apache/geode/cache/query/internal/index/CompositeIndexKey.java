@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal.index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+
+import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.internal.NullToken;
+import org.apache.geode.cache.query.internal.Undefined;
+import org.apache.geode.cache.query.internal.types.TypeUtils;
+import org.apache.geode.pdx.internal.PdxString;
+
+/**
+ * The key of a composite index, holding the values of its indexed expressions in order. Keys are
+ * ordered lexicographically. Within a component, UNDEFINED sorts before null, which sorts before
+ * any other value, and values are compared the way OQL compares them.
+ *
+ * The {@link #MIN} and {@link #MAX} components sort before and after anything, including UNDEFINED
+ * and null. A query key padded with them bounds all the keys sharing its leading components, which
+ * is how a range of the index is selected from conditions on only some of its expressions.
+ */
+public class CompositeIndexKey implements Comparable {
+
+  /** A component lower than any other */
+  public static final Object MIN = new Bound("MIN");
+
+  /** A component higher than any other */
+  public static final Object MAX = new Bound("MAX");
+
+  /** The rank of the components which are neither a bound, UNDEFINED nor null */
+  private static final int VALUE_RANK = 3;
+
+  private static final Comparator numericComparator = TypeUtils.getNumericComparator();
+
+  private static final Comparator temporalComparator = TypeUtils.getTemporalComparator();
+
+  private final Object[] components;
+
+  public CompositeIndexKey(Object[] components) {
+    this.components = components;
+  }
+
+  public Object[] getComponents() {
+    return this.components;
+  }
+
+  @Override
+  public int compareTo(Object other) {
+    if (!(other instanceof CompositeIndexKey)) {
+      if (other instanceof Undefined || other instanceof NullToken) {
+        return 1;
+      }
+      throw new ClassCastException(
+          "A composite index key cannot be compared with " + other.getClass().getName());
+    }
+    Object[] otherComponents = ((CompositeIndexKey) other).components;
+    int length = Math.min(this.components.length, otherComponents.length);
+    for (int i = 0; i < length; i++) {
+      int result = compareComponents(this.components[i], otherComponents[i]);
+      if (result != 0) {
+        return result;
+      }
+    }
+    return this.components.length - otherComponents.length;
+  }
+
+  private static int compareComponents(Object c1, Object c2) {
+    if (c1 == c2) {
+      return 0;
+    }
+    int rank1 = rank(c1);
+    int rank2 = rank(c2);
+    if (rank1 != rank2 || rank1 != VALUE_RANK) {
+      return rank1 - rank2;
+    }
+    if (c1 instanceof PdxString && c2 instanceof String) {
+      c2 = new PdxString((String) c2);
+    } else if (c1 instanceof String && c2 instanceof PdxString) {
+      c1 = new PdxString((String) c1);
+    }
+    if (c1 instanceof Date && c2 instanceof Date) {
+      return temporalComparator.compare(c1, c2);
+    }
+    if (c1.getClass() != c2.getClass() && c1 instanceof Number && c2 instanceof Number) {
+      return numericComparator.compare(c1, c2);
+    }
+    return ((Comparable) c1).compareTo(c2);
+  }
+
+  private static int rank(Object component) {
+    if (component == MIN) {
+      return 0;
+    } else if (component == QueryService.UNDEFINED) {
+      return 1;
+    } else if (component == null) {
+      return 2;
+    } else if (component == MAX) {
+      return 4;
+    }
+    return VALUE_RANK;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (this == other) {
+      return true;
+    }
+    if (!(other instanceof CompositeIndexKey)) {
+      return false;
+    }
+    try {
+      return compareTo(other) == 0;
+    } catch (ClassCastException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    // consistent with compareTo, which considers Integer 1 and Long 1 or a String and the
+    // PdxString of the same value to be equal
+    int hash = 1;
+    for (Object component : this.components) {
+      int componentHash;
+      if (component == null) {
+        componentHash = 0;
+      } else if (component instanceof Number) {
+        componentHash = Double.valueOf(((Number) component).doubleValue()).hashCode();
+      } else if (component instanceof PdxString) {
+        componentHash = component.toString().hashCode();
+      } else if (component instanceof Date) {
+        componentHash = Long.valueOf(((Date) component).getTime()).hashCode();
+      } else {
+        componentHash = component.hashCode();
+      }
+      hash = 31 * hash + componentHash;
+    }
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(this.components);
+  }
+
+  private static class Bound {
+    private final String name;
+
+    Bound(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public String toString() {
+      return this.name;
+    }
+  }
+}
@@ -33,6 +33,7 @@ import org.apache.geode.cache.query.NameResolutionException;
 import org.apache.geode.cache.query.TypeMismatchException;
 import org.apache.geode.cache.query.internal.CompiledBindArgument;
 import org.apache.geode.cache.query.internal.CompiledComparison;
+import org.apache.geode.cache.query.internal.CompiledCompositeKey;
 import org.apache.geode.cache.query.internal.CompiledFunction;
 import org.apache.geode.cache.query.internal.CompiledID;
 import org.apache.geode.cache.query.internal.CompiledIndexOperation;
@@ -431,17 +432,33 @@ class FunctionalIndexCreationHelper extends IndexCreationHelper {
    * the 0th iterator.
    */
   private void prepareIndexExpression(String indexedExpression) throws IndexInvalidException {
-    CompiledValue expr = this.compiler.compileQuery(indexedExpression);
-    // List indexedExprs = this.compiler.compileProjectionAttributes(indexedExpression);
+    // A comma separated list of expressions is the indexed expression of a composite index
+    List indexedExprs = indexedExpression.indexOf(',') < 0 ? null
+        : this.compiler.compileProjectionAttributes(indexedExpression);
+    CompiledValue expr;
+    if (indexedExprs != null && indexedExprs.size() > 1) {
+      CompiledValue[] components = new CompiledValue[indexedExprs.size()];
+      for (int i = 0; i < components.length; i++) {
+        Object[] projection = (Object[]) indexedExprs.get(i);
+        components[i] = (CompiledValue) projection[1];
+        if (projection[0] != null || !isValidIndexedExpression(components[i])
+            || components[i] instanceof MapIndexable) {
+          throw new IndexInvalidException(
+              LocalizedStrings.FunctionalIndexCreationHelper_INVALID_INDEXED_EXPRESSION_0
+                  .toLocalizedString(indexedExpression));
+        }
+      }
+      expr = new CompiledCompositeKey(components);
+    } else {
+      expr = this.compiler.compileQuery(indexedExpression);
+    }
     if (expr == null) {
       throw new IndexInvalidException(
           LocalizedStrings.FunctionalIndexCreationHelper_INVALID_INDEXED_EXPRESSION_0
               .toLocalizedString(indexedExpression));
     }
 
-    if (expr instanceof CompiledUndefined || expr instanceof CompiledLiteral
-        || expr instanceof CompiledComparison || expr instanceof CompiledBindArgument
-        || expr instanceof CompiledNegation)
+    if (!isValidIndexedExpression(expr))
       throw new IndexInvalidException(
           LocalizedStrings.FunctionalIndexCreationHelper_INVALID_INDEXED_EXPRESSION_0
               .toLocalizedString(indexedExpression));
@@ -490,6 +507,15 @@ class FunctionalIndexCreationHelper extends IndexCreationHelper {
         }
       } else {
         expr.generateCanonicalizedExpression(sb, context);
+        if (expr instanceof CompiledCompositeKey) {
+          CompiledValue[] components = ((CompiledCompositeKey) expr).getComponents();
+          this.canonicalizedIndexedExpressionComponents = new String[components.length];
+          for (int i = 0; i < components.length; i++) {
+            StringBuffer componentBuffer = new StringBuffer();
+            components[i].generateCanonicalizedExpression(componentBuffer, context);
+            this.canonicalizedIndexedExpressionComponents[i] = componentBuffer.toString();
+          }
+        }
       }
 
       // expr.generateCanonicalizedExpression(sb, this.context);
@@ -510,6 +536,12 @@ class FunctionalIndexCreationHelper extends IndexCreationHelper {
     indexedExpr = expr;
   }
 
+  private boolean isValidIndexedExpression(CompiledValue expr) {
+    return !(expr instanceof CompiledUndefined || expr instanceof CompiledLiteral
+        || expr instanceof CompiledComparison || expr instanceof CompiledBindArgument
+        || expr instanceof CompiledNegation);
+  }
+
   private void prepareProjectionAttributes(String projectionAttributes)
       throws IndexInvalidException {
     if (projectionAttributes != null && !projectionAttributes.equals("*")) {
@@ -653,6 +685,21 @@ class FunctionalIndexCreationHelper extends IndexCreationHelper {
         }
       }
       return new CompiledFunction(newCvArray, function);
+    } else if (cv instanceof CompiledCompositeKey) {
+      CompiledValue[] cvArray = ((CompiledCompositeKey) cv).getComponents();
+      int len = cvArray.length;
+      CompiledValue[] newCvArray = new CompiledValue[len];
+      for (int i = 0; i < len; ++i) {
+        CompiledValue cv1 = cvArray[i];
+        StringBuffer sbuff = new StringBuffer();
+        cv1.generateCanonicalizedExpression(sbuff, context);
+        if (sbuff.toString().startsWith(this.canonicalizedIteratorNames[0])) {
+          newCvArray[i] = getModifiedDependentCompiledValue(context, currItrID, cv1, true);
+        } else {
+          newCvArray[i] = getModifiedDependentCompiledValue(context, currItrID, cv1, false);
+        }
+      }
+      return new CompiledCompositeKey(newCvArray);
     } else if (cv instanceof CompiledID) {
       CompiledID id = (CompiledID) cv;
       RuntimeIterator rItr0 = (RuntimeIterator) context.getCurrentIterators().get(0);
@@ -984,6 +984,22 @@ public class HashIndex extends AbstractIndex {
       this.vsdStats.incReadLockCount(delta);
     }
 
+    public void incPendingUpdates(int delta) {
+      this.vsdStats.incPendingUpdates(delta);
+    }
+
+    public int getPendingUpdates() {
+      return this.vsdStats.getPendingUpdates();
+    }
+
+    public void incSynchronousUpdates() {
+      this.vsdStats.incSynchronousUpdates();
+    }
+
+    public long getSynchronousUpdates() {
+      return this.vsdStats.getSynchronousUpdates();
+    }
+
     /**
      * Returns the total amount of time (in nanoseconds) spent updating this index.
      */
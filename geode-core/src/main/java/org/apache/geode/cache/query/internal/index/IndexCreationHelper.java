@@ -54,6 +54,9 @@ public abstract class IndexCreationHelper {
   // TODO: Asif : How to make it final so that the invokers do not end up
   // modifying it
   String[] canonicalizedIteratorDefinitions = null;
+  // The canonicalized expressions of a composite index, in the order of the
+  // index key components. It is null if the index is not a composite index.
+  String[] canonicalizedIndexedExpressionComponents = null;
 
   IndexCreationHelper(String fromClause, String projectionAttributes, Cache cache)
       throws IndexInvalidException {
@@ -99,6 +102,14 @@ public abstract class IndexCreationHelper {
     return this.canonicalizedIteratorDefinitions;
   }
 
+  /*
+   * Returns the canonicalized indexed expressions of a composite index, in the order of the
+   * components of its keys, or null if the index is not a composite index
+   */
+  public String[] getCanonicalizedIndexedExpressionComponents() {
+    return this.canonicalizedIndexedExpressionComponents;
+  }
+
   boolean isMapTypeIndex() {
     return false;
   }
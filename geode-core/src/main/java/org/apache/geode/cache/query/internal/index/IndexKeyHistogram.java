@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+
+import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
+import org.apache.geode.internal.logging.LogService;
+import org.apache.geode.internal.logging.LoggingThreadGroup;
+
+/**
+ * An equi-depth histogram of the keys of a sorted index, used to estimate the number of values a
+ * range condition selects. Each bucket holds about the same number of values and is bounded by the
+ * highest key it holds, so the estimate is exact at bucket boundaries and only interpolated within
+ * a bucket, whatever the distribution of the keys.
+ *
+ * A histogram is immutable. It is built from a scan of the index keys in order and remembers the
+ * number of updates of the index at that time, so that the index can build a new one once enough
+ * updates made it stale. Estimates are scaled by the current number of values of the index in the
+ * meantime. The scans run on a single background thread shared by all the indexes, so that the
+ * planning of a query never waits for one.
+ */
+class IndexKeyHistogram {
+
+  private static final Logger logger = LogService.getLogger();
+
+  /** The number of buckets a histogram is built with */
+  static final int NUM_BUCKETS = 64;
+
+  /**
+   * The minimum number of updates of the index, and fraction of its number of values, after which a
+   * histogram is stale
+   */
+  static final int MIN_UPDATES_FOR_REBUILD = 16;
+
+  static final int REBUILD_FRACTION = 5;
+
+  /** Builds the histograms, with a thread which only lives while there are some to build */
+  private static final ThreadPoolExecutor builder;
+
+  static {
+    final LoggingThreadGroup group =
+        LoggingThreadGroup.createThreadGroup("Index Key Histogram Builder Group", logger);
+    ThreadFactory threadFactory = new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(group, task, "Index Key Histogram Builder");
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+    builder = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), threadFactory);
+    builder.allowCoreThreadTimeOut(true);
+  }
+
+  private final Comparator comparator;
+
+  /** The lowest key of the index */
+  private final Object lowestKey;
+
+  /** The highest key of each bucket */
+  private final Object[] upperKeys;
+
+  /** The number of values with a key lower than or equal to the highest key of each bucket */
+  private final long[] cumulativeCounts;
+
+  /** The number of values of the highest key of each bucket */
+  private final long[] upperKeyCounts;
+
+  private final long numKeys;
+
+  /**
+   * The number of values of the index when the histogram was built, including those with a null or
+   * UNDEFINED key the histogram leaves out
+   */
+  private final long numIndexValues;
+
+  private final long numUpdates;
+
+  private IndexKeyHistogram(Comparator comparator, Object lowestKey, Object[] upperKeys,
+      long[] cumulativeCounts, long[] upperKeyCounts, long numKeys, long numIndexValues,
+      long numUpdates) {
+    this.comparator = comparator;
+    this.lowestKey = lowestKey;
+    this.upperKeys = upperKeys;
+    this.cumulativeCounts = cumulativeCounts;
+    this.upperKeyCounts = upperKeyCounts;
+    this.numKeys = numKeys;
+    this.numIndexValues = numIndexValues;
+    this.numUpdates = numUpdates;
+  }
+
+  /** Returns the number of values in the histogram */
+  long getNumValues() {
+    return this.upperKeys.length == 0 ? 0 : this.cumulativeCounts[this.upperKeys.length - 1];
+  }
+
+  /** Returns the number of distinct keys in the histogram */
+  long getNumKeys() {
+    return this.numKeys;
+  }
+
+  int getNumBuckets() {
+    return this.upperKeys.length;
+  }
+
+  /**
+   * Returns true if the index was updated enough since this histogram was built for its estimates
+   * to be off
+   */
+  boolean isStale(long currentNumUpdates) {
+    long updates = currentNumUpdates - this.numUpdates;
+    return updates < 0
+        || updates > Math.max(MIN_UPDATES_FOR_REBUILD, getNumValues() / REBUILD_FRACTION);
+  }
+
+  /**
+   * Returns the estimated number of values whose key satisfies the condition <code>key op
+   * conditionKey</code>, where the operator is one of the range operators. The estimate is scaled
+   * by the growth of the index since the histogram was built, as given by its current number of
+   * values. Throws a ClassCastException if the condition key cannot be compared with the keys of
+   * the index.
+   */
+  int estimate(int operator, Object conditionKey, long currentNumIndexValues) {
+    long total = getNumValues();
+    if (total == 0) {
+      return 0;
+    }
+    double estimate;
+    switch (operator) {
+      case OQLLexerTokenTypes.TOK_LT:
+        estimate = countBelow(conditionKey, false);
+        break;
+      case OQLLexerTokenTypes.TOK_LE:
+        estimate = countBelow(conditionKey, true);
+        break;
+      case OQLLexerTokenTypes.TOK_GT:
+        estimate = total - countBelow(conditionKey, true);
+        break;
+      case OQLLexerTokenTypes.TOK_GE:
+        estimate = total - countBelow(conditionKey, false);
+        break;
+      default:
+        throw new IllegalArgumentException("The operator type =" + operator + " is not a range");
+    }
+    if (this.numIndexValues > 0 && currentNumIndexValues > 0) {
+      estimate = estimate * currentNumIndexValues / this.numIndexValues;
+    }
+    return (int) Math.min(Integer.MAX_VALUE, Math.round(Math.max(0, estimate)));
+  }
+
+  /** Returns the estimated number of values with a key lower than, or equal to, the given key */
+  private double countBelow(Object key, boolean inclusive) {
+    int bucket = Arrays.binarySearch(this.upperKeys, key, this.comparator);
+    if (bucket >= 0) {
+      // the key is the highest of a bucket
+      return inclusive ? this.cumulativeCounts[bucket]
+          : this.cumulativeCounts[bucket] - this.upperKeyCounts[bucket];
+    }
+    bucket = -bucket - 1;
+    if (bucket == this.upperKeys.length) {
+      return getNumValues();
+    }
+    long before = bucket == 0 ? 0 : this.cumulativeCounts[bucket - 1];
+    Object bucketLowerKey = bucket == 0 ? this.lowestKey : this.upperKeys[bucket - 1];
+    if (this.comparator.compare(key, bucketLowerKey) < 0) {
+      return before;
+    }
+    // the key falls within the bucket, before its highest key
+    long inBucket = this.cumulativeCounts[bucket] - before - this.upperKeyCounts[bucket];
+    return before + inBucket * fractionOfBucket(key, bucketLowerKey, this.upperKeys[bucket]);
+  }
+
+  /**
+   * Returns the fraction of a bucket below the given key, interpolated from the bounds of the
+   * bucket for numbers and assumed to be half of the bucket otherwise
+   */
+  private static double fractionOfBucket(Object key, Object lowerKey, Object upperKey) {
+    if (key instanceof Number && lowerKey instanceof Number && upperKey instanceof Number) {
+      double lower = ((Number) lowerKey).doubleValue();
+      double range = ((Number) upperKey).doubleValue() - lower;
+      if (range > 0) {
+        return Math.min(1, Math.max(0, (((Number) key).doubleValue() - lower) / range));
+      }
+    }
+    return 0.5;
+  }
+
+  /**
+   * Runs the build of a histogram on the background thread
+   */
+  static void buildInBackground(Runnable build) {
+    builder.execute(build);
+  }
+
+  @Override
+  public String toString() {
+    return "IndexKeyHistogram[numValues=" + getNumValues() + ", numKeys=" + this.numKeys
+        + ", numBuckets=" + this.upperKeys.length + "]";
+  }
+
+  /**
+   * Builds a histogram from the keys of an index given in ascending order, along with the number of
+   * values of each key. A key may be given several times in a row, as when scanning the entries of
+   * an index store.
+   */
+  static class Builder {
+    private final Comparator comparator;
+    private final long numIndexValues;
+    private final long bucketDepth;
+    private final long numUpdates;
+    private final List<Object> upperKeys = new ArrayList<Object>();
+    private final List<long[]> counts = new ArrayList<long[]>();
+    private Object lowestKey;
+    private Object currentKey;
+    private long currentKeyCount;
+    private long numValues;
+    private long numKeys;
+
+    /**
+     * @param comparator the comparator the index orders its keys with
+     * @param numIndexValues the number of values of the index before the scan of its keys, which
+     *        sets the depth of the buckets
+     * @param numUpdates the number of updates of the index before the scan of its keys
+     */
+    Builder(Comparator comparator, long numIndexValues, long numUpdates) {
+      this.comparator = comparator;
+      this.numIndexValues = numIndexValues;
+      this.bucketDepth = Math.max(1, numIndexValues / NUM_BUCKETS);
+      this.numUpdates = numUpdates;
+    }
+
+    void add(Object key, long count) {
+      if (key == null || key == IndexManager.NULL || key == QueryService.UNDEFINED || count <= 0) {
+        return;
+      }
+      if (this.currentKey != null && this.comparator.compare(this.currentKey, key) == 0) {
+        this.currentKeyCount += count;
+        return;
+      }
+      if (this.currentKey == null) {
+        this.lowestKey = key;
+      } else {
+        closeKey(false);
+      }
+      this.currentKey = key;
+      this.currentKeyCount = count;
+      this.numKeys++;
+    }
+
+    /**
+     * Adds the values of the current key to the histogram, closing the current bucket with it if
+     * the bucket is deep enough
+     */
+    private void closeKey(boolean last) {
+      this.numValues += this.currentKeyCount;
+      long bucketStart = this.counts.isEmpty() ? 0 : this.counts.get(this.counts.size() - 1)[0];
+      if (last || this.numValues - bucketStart >= this.bucketDepth) {
+        this.upperKeys.add(this.currentKey);
+        this.counts.add(new long[] {this.numValues, this.currentKeyCount});
+      }
+    }
+
+    IndexKeyHistogram build() {
+      if (this.currentKey != null) {
+        closeKey(true);
+        this.currentKey = null;
+      }
+      int numBuckets = this.upperKeys.size();
+      long[] cumulativeCounts = new long[numBuckets];
+      long[] upperKeyCounts = new long[numBuckets];
+      for (int i = 0; i < numBuckets; i++) {
+        cumulativeCounts[i] = this.counts.get(i)[0];
+        upperKeyCounts[i] = this.counts.get(i)[1];
+      }
+      return new IndexKeyHistogram(this.comparator, this.lowestKey, this.upperKeys.toArray(),
+          cumulativeCounts, upperKeyCounts, this.numKeys, this.numIndexValues, this.numUpdates);
+    }
+  }
+}
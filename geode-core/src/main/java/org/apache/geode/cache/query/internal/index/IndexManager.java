@@ -72,6 +72,20 @@ public class IndexManager {
       Integer.getInteger(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceThreshold", -1)
           .intValue();
 
+  // Maximum number of queued updates applied together by the asynchronous index updater.
+  private final int INDEX_MAINTENANCE_BATCH_SIZE =
+      Integer.getInteger(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceBatchSize", 100)
+          .intValue();
+
+  // Maximum time in milliseconds a query waits for the queued index updates of a region to be
+  // applied before evaluating its conditions without the indexes. Negative by default, which lets
+  // the queries use stale indexes. Otherwise a query waits for the whole queue of the region, and
+  // of every local bucket of a partitioned region, and scans the region if the updates are still
+  // pending, so under a heavy write load the queries become much slower.
+  private final long INDEX_MAINTENANCE_QUERY_WAIT =
+      Long.getLong(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceQueryWait", -1)
+          .longValue();
+
   public static boolean JOIN_OPTIMIZATION =
       !Boolean.getBoolean(DistributionConfig.GEMFIRE_PREFIX + "index.DisableJoinOptimization");
 
@@ -106,6 +120,28 @@ public class IndexManager {
 
   /** For test purpose only */
   public static boolean TEST_RANGEINDEX_ONLY = false;
+
+  /**
+   * System property to store the compact range indexes in sorted blocks of arrays (see
+   * {@link SortedBlockIndexStore}) instead of a skip list with a collection of region entries per
+   * index key. This trades some index maintenance concurrency for a much smaller heap footprint.
+   */
+  public static final boolean SORTED_BLOCK_INDEX_STORE =
+      Boolean.getBoolean(DistributionConfig.GEMFIRE_PREFIX + "index.SORTED_BLOCK_INDEX_STORE");
+
+  /** For test purpose only */
+  public static boolean TEST_SORTED_BLOCK_INDEX_STORE = false;
+
+  /**
+   * System property to turn on the cost based selection of indexes, off by default. When on, the
+   * number of values a range condition selects is estimated from a histogram of the keys of its
+   * index (see {@link IndexKeyHistogram}), and the condition of an AND junction selecting the fewest
+   * values is used for the index lookup, instead of always preferring equality conditions to
+   * ranges. Until the histogram of an index is built the previous rules apply.
+   */
+  public static boolean COST_BASED_INDEX_SELECTION =
+      Boolean.getBoolean(DistributionConfig.GEMFIRE_PREFIX + "index.COST_BASED_SELECTION");
+
   public static final String INDEX_ELEMARRAY_THRESHOLD_PROP = "index_elemarray_threshold";
   public static final String INDEX_ELEMARRAY_SIZE_PROP = "index_elemarray_size";
   public static final int INDEX_ELEMARRAY_THRESHOLD =
@@ -137,7 +173,7 @@ public class IndexManager {
       final LoggingThreadGroup group =
           LoggingThreadGroup.createThreadGroup("QueryMonitor Thread Group", logger);
       updater = new IndexUpdaterThread(group, this.INDEX_MAINTENANCE_BUFFER,
-          "OqlIndexUpdater:" + region.getFullPath());
+          this.INDEX_MAINTENANCE_BATCH_SIZE, "OqlIndexUpdater:" + region.getFullPath());
       updater.start();
     }
   }
@@ -433,26 +469,31 @@ public class IndexManager {
       return false;
     }
 
-    // indexedExpression requirement
-    CompiledValue cv = helper.getCompiledIndexedExpression();
-    int nodeType;
-    do {
-      nodeType = cv.getType();
-      if (nodeType == CompiledValue.PATH) {
-        cv = ((CompiledPath) cv).getReceiver();
-      }
-    } while (nodeType == CompiledValue.PATH);
-    // end of path, nodeType at this point should be an Identifier
-    if (nodeType != OQLLexerTokenTypes.Identifier && nodeType != OQLLexerTokenTypes.METHOD_INV) {
-      if (nodeType == OQLLexerTokenTypes.TOK_LBRACK && !helper.isMapTypeIndex()
-          && helper.modifiedIndexExpr instanceof MapIndexable) {
-        if (((MapIndexable) helper.modifiedIndexExpr).getIndexingKeys().size() == 1) {
+    // indexedExpression requirement, which applies to each of the expressions of a composite index
+    CompiledValue indexedExpr = helper.getCompiledIndexedExpression();
+    CompiledValue[] exprs = indexedExpr instanceof CompiledCompositeKey
+        ? ((CompiledCompositeKey) indexedExpr).getComponents()
+        : new CompiledValue[] {indexedExpr};
+    for (CompiledValue cv : exprs) {
+      int nodeType;
+      do {
+        nodeType = cv.getType();
+        if (nodeType == CompiledValue.PATH) {
+          cv = ((CompiledPath) cv).getReceiver();
+        }
+      } while (nodeType == CompiledValue.PATH);
+      // end of path, nodeType at this point should be an Identifier
+      if (nodeType != OQLLexerTokenTypes.Identifier && nodeType != OQLLexerTokenTypes.METHOD_INV) {
+        if (nodeType == OQLLexerTokenTypes.TOK_LBRACK && !helper.isMapTypeIndex()
+            && helper.modifiedIndexExpr instanceof MapIndexable) {
+          if (((MapIndexable) helper.modifiedIndexExpr).getIndexingKeys().size() == 1) {
 
+          } else {
+            return false;
+          }
         } else {
           return false;
         }
-      } else {
-        return false;
       }
     }
 
@@ -511,6 +552,9 @@ public class IndexManager {
   public IndexData getIndex(IndexType indexType, String[] definitions,
       CompiledValue indexedExpression, ExecutionContext context)
       throws AmbiguousNameException, TypeMismatchException, NameResolutionException {
+    if (!arePendingUpdatesApplied(context)) {
+      return null;
+    }
     IndexData indxData = null;
     int qItrSize = definitions.length;
     Iterator it = this.indexes.values().iterator();
@@ -543,6 +587,48 @@ public class IndexManager {
     return indxData;
   }
 
+  /**
+   * Returns true if the indexes of this region reflect the region operations done before the query
+   * started. With asynchronous index maintenance, waits for the updates queued so far to be
+   * applied, for at most {@link #INDEX_MAINTENANCE_QUERY_WAIT} milliseconds. If they have not been
+   * applied in time the query does not use the indexes of the region, and so reads its own writes.
+   * The outcome is remembered for the rest of the query execution. Always true when the wait is
+   * negative, which is the default, as waiting for the updates of every key of the region is only
+   * worth it for the queries which must see their writes.
+   */
+  private boolean arePendingUpdatesApplied(ExecutionContext context) {
+    if (isIndexMaintenanceTypeSynchronous() || INDEX_MAINTENANCE_QUERY_WAIT < 0
+        || Thread.currentThread() == this.updater) {
+      return true;
+    }
+    Boolean applied = context.arePendingIndexUpdatesApplied(this);
+    if (applied == null) {
+      long deadline = System.currentTimeMillis() + INDEX_MAINTENANCE_QUERY_WAIT;
+      boolean done = this.updater.waitForPendingTasks(deadline);
+      // The indexes of a partitioned region are maintained by its buckets
+      if (done && this.region instanceof PartitionedRegion
+          && ((PartitionedRegion) this.region).getDataStore() != null) {
+        for (BucketRegion bucket : ((PartitionedRegion) this.region).getDataStore()
+            .getAllLocalBucketRegions()) {
+          IndexManager bucketIndexManager = bucket.getIndexManager();
+          if (bucketIndexManager != null && bucketIndexManager.updater != null
+              && !bucketIndexManager.updater.waitForPendingTasks(deadline)) {
+            done = false;
+            break;
+          }
+        }
+      }
+      if (!done && logger.isDebugEnabled()) {
+        logger.debug(
+            "Not using the indexes of region {} as their asynchronous updates are still pending",
+            this.region.getFullPath());
+      }
+      context.setPendingIndexUpdatesApplied(this, done);
+      return done;
+    }
+    return applied.booleanValue();
+  }
+
   public int compareIndexData(IndexType indexType, String[] indexDefinitions,
       String indexExpression, IndexType otherType, String[] otherDefinitions,
       String otherExpression, int mapping[]) {
@@ -556,6 +642,33 @@ public class IndexManager {
     return matchLevel;
   }
 
+  /**
+   * Returns the canonicalized indexed expressions of each populated composite index of the region,
+   * in the order of the components of the index keys. The query engine matches them against the
+   * conditions of a query to build a path which {@link #getBestMatchIndex} resolves to the index.
+   */
+  public List<String[]> getCompositeIndexedExpressions() {
+    List<String[]> compositeIndexedExpressions = new ArrayList<String[]>();
+    for (Object ind : this.indexes.values()) {
+      // Skip the indexes which are still in create phase
+      if (ind instanceof FutureTask || !((AbstractIndex) ind).isPopulated()) {
+        continue;
+      }
+      Index index = (Index) ind;
+      if (index instanceof PartitionedIndex) {
+        index = ((PartitionedIndex) index).getBucketIndex();
+        if (index == null) {
+          continue;
+        }
+      }
+      String[] components = ((AbstractIndex) index).getCanonicalizedIndexedExpressionComponents();
+      if (components != null) {
+        compositeIndexedExpressions.add(components);
+      }
+    }
+    return compositeIndexedExpressions;
+  }
+
   /**
    * Asif : Returns the best available Index based on the available iterators in the Group
    * 
@@ -576,6 +689,9 @@ public class IndexManager {
   public IndexData getBestMatchIndex(IndexType indexType, String[] definitions,
       CompiledValue indexedExpression, ExecutionContext context)
       throws AmbiguousNameException, TypeMismatchException, NameResolutionException {
+    if (!arePendingUpdatesApplied(context)) {
+      return null;
+    }
 
     Index bestIndex = null;
     Index bestPRIndex = null;
@@ -876,8 +992,7 @@ public class IndexManager {
     if (isIndexMaintenanceTypeSynchronous()) {
       recreateAllIndexesForRegion();
     } else {
-      // System.out.println("Aynchronous update");
-      updater.addTask(RECREATE_INDEX, null, IndexProtocol.OTHER_OP);
+      updater.recreateAllIndexes();
     }
   }
 
@@ -976,9 +1091,11 @@ public class IndexManager {
     if (isIndexMaintenanceTypeSynchronous()) {
       // System.out.println("Synchronous update");
       processAction(entry, action, opCode);
-    } else {
-      // System.out.println("Aynchronous update");
-      updater.addTask(action, entry, opCode);
+    } else if (!updater.addTask(action, entry, opCode)) {
+      // The queue is full or the updater has stopped. The entry is locked by this thread, which
+      // must not wait for the updater as it may need the entry to apply the queued updates.
+      updater.appliedSynchronously(entry);
+      processAction(entry, action, opCode);
     }
   }
 
@@ -1141,6 +1258,27 @@ public class IndexManager {
     }
   }
 
+  /**
+   * Applies a batch of queued index updates. Each task is an array of the action, the region entry
+   * and the opCode, as given to {@link #updateIndexes(RegionEntry, int, int)}.
+   */
+  private void processActions(List<Object[]> tasks) {
+    for (Object[] task : tasks) {
+      int action = ((Integer) task[0]).intValue();
+      RegionEntry entry = (RegionEntry) task[1];
+      int opCode = ((Integer) task[2]).intValue();
+      entry.setUpdateInProgress(true);
+      try {
+        processAction(entry, action, opCode);
+      } catch (Exception e) {
+        logger.warn("Failed to update the indexes of region {} for key {}",
+            this.region.getFullPath(), entry.getKey(), e);
+      } finally {
+        entry.setUpdateInProgress(false);
+      }
+    }
+  }
+
   private void waitBeforeUpdate() {
     synchronized (indexes) {
       ++numCreators;
@@ -1187,9 +1325,16 @@ public class IndexManager {
    * 
    */
   private void recreateAllIndexesForRegion() {
+    waitBeforeUpdate();
+    try {
+      recreateIndexes();
+    } finally {
+      notifyAfterUpdate();
+    }
+  }
 
+  private void recreateIndexes() {
     long start = 0;
-    waitBeforeUpdate();
     try {
       // opCode is ignored for this operation
       Iterator iter = this.indexes.values().iterator();
@@ -1211,8 +1356,6 @@ public class IndexManager {
       }
     } catch (Exception e) {
       throw new IndexInvalidException(e);
-    } finally {
-      notifyAfterUpdate();
     }
   }
 
@@ -1379,13 +1522,39 @@ public class IndexManager {
 
     private volatile BlockingQueue pendingTasks;
 
+    private final int batchSize;
+
+    // Held while a batch of tasks is being applied
+    private final Object batchLock = new Object();
+
+    private final AtomicLong numTasksAdded = new AtomicLong();
+
+    // Gives every update a sequence number, in the order they are queued for a given entry
+    private final AtomicLong taskSequence = new AtomicLong();
+
+    // The sequence number of the last update applied synchronously of the entries which may still
+    // have older updates in the queue
+    private final ConcurrentMap<RegionEntry, Long> syncUpdates =
+        new ConcurrentHashMap<RegionEntry, Long>();
+
+    private volatile boolean stoppedWarningLogged = false;
+
+    // The number of tasks applied or discarded, guarded by tasksDoneLock
+    private long numTasksDone = 0;
+
+    private final Object tasksDoneLock = new Object();
+
+    // The queue size last added to the pendingUpdates stat of the indexes
+    private int reportedPendingTasks = 0;
+
     /**
      * Creates instance of IndexUpdaterThread
      * 
      * @param updateThreshold
+     * @param batchSize
      * @param threadName
      */
-    IndexUpdaterThread(ThreadGroup group, int updateThreshold, String threadName) {
+    IndexUpdaterThread(ThreadGroup group, int updateThreshold, int batchSize, String threadName) {
       super(group, threadName);
       // Check if threshold is set.
       if (updateThreshold > 0) {
@@ -1395,15 +1564,60 @@ public class IndexManager {
         // Create non-bounded queue.
         pendingTasks = new LinkedBlockingQueue();
       }
+      this.batchSize = Math.max(batchSize, 1);
       this.setDaemon(true);
     }
 
-    public void addTask(int action, RegionEntry entry, int opCode) {
-      Object[] task = new Object[3];
+    /**
+     * Queues an index update, unless the queue is bounded and full or this thread has stopped.
+     * Called with the entry locked.
+     * 
+     * @return false if the update was not queued, and must be applied by the caller
+     */
+    public boolean addTask(int action, RegionEntry entry, int opCode) {
+      Object[] task = new Object[4];
       task[0] = Integer.valueOf(action);
       task[1] = entry;
       task[2] = Integer.valueOf(opCode); // !!!:ezoerner:20081029 change to valueOf jdk 1.5+
-      pendingTasks.add(task);
+      task[3] = Long.valueOf(this.taskSequence.getAndIncrement());
+      if (!this.running) {
+        if (!this.shutdownRequested && !this.stoppedWarningLogged) {
+          this.stoppedWarningLogged = true;
+          logger.warn("The asynchronous index updater of region {} has stopped, "
+              + "its index updates are applied synchronously", region.getFullPath());
+        }
+        return false;
+      }
+      if (!pendingTasks.offer(task)) {
+        return false;
+      }
+      this.numTasksAdded.incrementAndGet();
+      return true;
+    }
+
+    /**
+     * Records that the caller applied an update of the entry itself, so that the updates of the
+     * entry queued before are skipped. The caller holds the entry lock, so all of them are queued
+     * already.
+     */
+    void appliedSynchronously(RegionEntry entry) {
+      this.syncUpdates.put(entry, Long.valueOf(this.taskSequence.getAndIncrement()));
+      for (Object ind : indexes.values()) {
+        if (ind instanceof FutureTask) {
+          continue;
+        }
+        InternalIndexStatistics stats = ((AbstractIndex) ind).internalIndexStats;
+        if (stats != null) {
+          stats.incSynchronousUpdates();
+        }
+      }
+    }
+
+    /**
+     * Returns the number of updates in the queue, not counting the batch being applied.
+     */
+    int getQueueSize() {
+      return this.pendingTasks.size();
     }
 
     /**
@@ -1428,6 +1642,7 @@ public class IndexManager {
       // async writers main loop
       // logger.debug("DiskRegion writer started (writer=" + this + ")");
       org.apache.geode.CancelCriterion stopper = ((LocalRegion) region).getCancelCriterion();
+      List<Object[]> batch = new ArrayList<Object[]>(this.batchSize);
       try {
         while (!this.shutdownRequested) {
           // Termination checks
@@ -1436,52 +1651,155 @@ public class IndexManager {
             break;
           }
           try {
-            Object[] task = (Object[]) pendingTasks.take();
+            batch.add((Object[]) pendingTasks.take());
             if (this.shutdownRequested) {
               break;
             }
-            updateIndexes(task);
+            pendingTasks.drainTo(batch, this.batchSize - 1);
+            updateIndexes(batch);
+            batch.clear();
           } catch (InterruptedException ignore) {
             return; // give up (exit the thread)
           }
         }
       } finally {
         this.running = false;
+        synchronized (this.batchLock) {
+          reportPendingTasks(0);
+        }
       }
     }
 
-    private void updateIndexes(Object[] task) {
-      int action = ((Integer) task[0]).intValue();
-      RegionEntry entry = (RegionEntry) task[1];
-      int opCode = ((Integer) task[2]).intValue();
-      // System.out.println("entry = "+entry.getKey());
-      if (entry != null || action == RECREATE_INDEX) {
+    private void updateIndexes(List<Object[]> batch) {
+      synchronized (this.batchLock) {
+        reportPendingTasks(this.pendingTasks.size() + batch.size());
+        if (this.syncUpdates.isEmpty()) {
+          processActions(batch);
+        } else {
+          processActions(skipSupersededTasks(batch));
+        }
+        reportPendingTasks(this.pendingTasks.size());
+      }
+      tasksDone(batch.size());
+    }
+
+    /**
+     * Returns the tasks of the batch which were not superseded by an update applied synchronously
+     * since they were queued, and forgets the synchronous updates which no queued task precedes.
+     */
+    private List<Object[]> skipSupersededTasks(List<Object[]> batch) {
+      List<Object[]> tasks = new ArrayList<Object[]>(batch.size());
+      for (Object[] task : batch) {
+        Long applied = this.syncUpdates.get(task[1]);
+        if (applied == null || ((Long) task[3]).longValue() > applied.longValue()) {
+          tasks.add(task);
+        }
+      }
+      // The entry stays locked from the queueing of its updates to the synchronous one, so none of
+      // its updates numbered before the synchronous one is queued after a task numbered after it
+      long last = ((Long) batch.get(batch.size() - 1)[3]).longValue();
+      for (Iterator<Long> it = this.syncUpdates.values().iterator(); it.hasNext();) {
+        if (it.next().longValue() < last) {
+          it.remove();
+        }
+      }
+      return tasks;
+    }
+
+    /**
+     * Recreates all the indexes of the region, discarding the queued updates as the indexes are
+     * rebuilt from the current content of the region.
+     */
+    void recreateAllIndexes() {
+      // Stop the region operations first, then the updates of the operations done so far
+      waitBeforeUpdate();
+      try {
+        synchronized (this.batchLock) {
+          List discarded = new ArrayList();
+          this.pendingTasks.drainTo(discarded);
+          this.syncUpdates.clear();
+          try {
+            recreateIndexes();
+          } finally {
+            reportPendingTasks(0);
+            tasksDone(discarded.size());
+          }
+        }
+      } finally {
+        notifyAfterUpdate();
+      }
+    }
+
+    /**
+     * Updates the pendingUpdates stat of the indexes of the region with the number of queued tasks.
+     * The bucket indexes of a partitioned region share its statistics, so the stat is changed by
+     * the difference with the last reported number. Must be called with the batchLock held.
+     */
+    private void reportPendingTasks(int numPendingTasks) {
+      int delta = numPendingTasks - this.reportedPendingTasks;
+      if (delta == 0) {
+        return;
+      }
+      this.reportedPendingTasks = numPendingTasks;
+      for (Object ind : indexes.values()) {
+        // Check if the value is instance of FutureTask, this means
+        // the index is in create phase.
+        if (ind instanceof FutureTask) {
+          continue;
+        }
+        InternalIndexStatistics stats = ((AbstractIndex) ind).internalIndexStats;
+        if (stats != null) {
+          stats.incPendingUpdates(delta);
+        }
+      }
+    }
+
+    private void tasksDone(int numTasks) {
+      synchronized (this.tasksDoneLock) {
+        this.numTasksDone += numTasks;
+        this.tasksDoneLock.notifyAll();
+      }
+    }
+
+    /**
+     * Waits for the tasks added before this call to be applied.
+     * 
+     * @param deadline the time in milliseconds at which to give up waiting
+     * @return true if the tasks have been applied
+     */
+    boolean waitForPendingTasks(long deadline) {
+      long target = this.numTasksAdded.get();
+      synchronized (this.tasksDoneLock) {
+        boolean interrupted = false;
         try {
-          if (action == RECREATE_INDEX) {
-            recreateAllIndexesForRegion();
-          } else {
-            if (entry != null) {
-              entry.setUpdateInProgress(true);
+          while (this.numTasksDone < target) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !this.running) {
+              return false;
+            }
+            try {
+              this.tasksDoneLock.wait(remaining);
+            } catch (InterruptedException ignore) {
+              interrupted = true;
+              return false;
             }
-            processAction(entry, action, opCode);
           }
-        } catch (Exception e) {
-          e.printStackTrace();
+          return true;
         } finally {
-          if (entry != null && action != RECREATE_INDEX) {
-            entry.setUpdateInProgress(false);
+          if (interrupted) {
+            Thread.currentThread().interrupt();
           }
         }
       }
     }
 
     /**
-     * Used by tests to determine if the updater thread has finished updating its indexes. The list
-     * is cleared without synchronization, which makes this methods somewhat unsafe from a threading
-     * point of view.
+     * Used by tests to determine if the updater thread has finished updating its indexes.
      */
-    public synchronized boolean isDone() {
-      return this.pendingTasks.size() == 0;
+    public boolean isDone() {
+      synchronized (this.tasksDoneLock) {
+        return this.numTasksDone >= this.numTasksAdded.get();
+      }
     }
 
   }
@@ -1626,6 +1944,8 @@ public class IndexManager {
         }
       }
       ((AbstractIndex) index).setPRIndex(prIndex);
+      ((AbstractIndex) index).setCanonicalizedIndexedExpressionComponents(
+          helper.getCanonicalizedIndexedExpressionComponents());
 
       if (index.getType() != IndexType.PRIMARY_KEY) {
         AbstractIndex aIndex = ((AbstractIndex) index);
@@ -40,6 +40,8 @@ public class IndexStats {
   private static final int readLockCountId;
   private static final int numMapIndexKeysId;
   private static final int numBucketIndexesId;
+  private static final int pendingUpdatesId;
+  private static final int synchronousUpdatesId;
 
   /** The Statistics object that we delegate most behavior to */
   private final Statistics stats;
@@ -68,7 +70,12 @@ public class IndexStats {
             f.createIntGauge("readLockCount", "Current number of read locks taken.", "uses"),
             f.createLongGauge("numMapIndexKeys", "Number of keys in this Map index", "keys"),
             f.createIntGauge("numBucketIndexes",
-                "Number of bucket indexes in the partitioned region", "indexes"),});
+                "Number of bucket indexes in the partitioned region", "indexes"),
+            f.createIntGauge("pendingUpdates",
+                "Current number of updates queued for asynchronous maintenance.", "updates"),
+            f.createLongCounter("synchronousUpdates",
+                "Number of updates applied synchronously as the asynchronous queue was full.",
+                "updates"),});
 
     // Initialize id fields
     numKeysId = type.nameToId("numKeys");
@@ -82,6 +89,8 @@ public class IndexStats {
     readLockCountId = type.nameToId("readLockCount");
     numMapIndexKeysId = type.nameToId("numMapIndexKeys");
     numBucketIndexesId = type.nameToId("numBucketIndexes");
+    pendingUpdatesId = type.nameToId("pendingUpdates");
+    synchronousUpdatesId = type.nameToId("synchronousUpdates");
   }
 
   //////////////////////// Constructors ////////////////////////
@@ -132,6 +141,14 @@ public class IndexStats {
     return stats.getInt(numBucketIndexesId);
   }
 
+  public int getPendingUpdates() {
+    return stats.getInt(pendingUpdatesId);
+  }
+
+  public long getSynchronousUpdates() {
+    return stats.getLong(synchronousUpdatesId);
+  }
+
   ////////////////////// Updating Stats //////////////////////
 
   public void incNumUpdates() {
@@ -189,6 +206,14 @@ public class IndexStats {
   public void incNumBucketIndexes(int delta) {
     this.stats.incInt(numBucketIndexesId, delta);
   }
+
+  public void incPendingUpdates(int delta) {
+    this.stats.incInt(pendingUpdatesId, delta);
+  }
+
+  public void incSynchronousUpdates() {
+    this.stats.incLong(synchronousUpdatesId, 1);
+  }
   ////// Special Instance Methods /////
 
   /**
@@ -483,6 +483,22 @@ public class PartitionedIndex extends AbstractIndex {
       this.vsdStats.incReadLockCount(delta);
     }
 
+    public void incPendingUpdates(int delta) {
+      this.vsdStats.incPendingUpdates(delta);
+    }
+
+    public int getPendingUpdates() {
+      return this.vsdStats.getPendingUpdates();
+    }
+
+    public void incSynchronousUpdates() {
+      this.vsdStats.incSynchronousUpdates();
+    }
+
+    public long getSynchronousUpdates() {
+      return this.vsdStats.getSynchronousUpdates();
+    }
+
     public void incNumBucketIndexes(int delta) {
       this.vsdStats.incNumBucketIndexes(delta);
     }
@@ -637,6 +637,18 @@ public class RangeIndex extends AbstractIndex {
     }
   }
 
+  @Override
+  IndexKeyHistogram buildKeyHistogram(long numUpdates) {
+    IndexKeyHistogram.Builder builder =
+        new IndexKeyHistogram.Builder(TypeUtils.getExtendedNumericComparator(),
+            this.internalIndexStats.getNumberOfValues(), numUpdates);
+    for (Object entry : this.valueToEntriesMap.entrySet()) {
+      Map.Entry mapEntry = (Map.Entry) entry;
+      builder.add(mapEntry.getKey(), ((RegionEntryToValuesMap) mapEntry.getValue()).getNumValues());
+    }
+    return builder.build();
+  }
+
   public int getSizeEstimate(Object key, int operator, int matchLevel)
       throws TypeMismatchException {
     // Get approx size;
@@ -677,6 +689,16 @@ public class RangeIndex extends AbstractIndex {
           break;
         case OQLLexerTokenTypes.TOK_LE:
         case OQLLexerTokenTypes.TOK_LT:
+          if (matchLevel <= 0 && IndexManager.COST_BASED_INDEX_SELECTION) {
+            if (RangeIndex.testHook != null) {
+              RangeIndex.testHook.hook(1);
+            }
+            // the histogram of the keys estimates the ranges of keys of any type
+            size = getRangeSizeEstimate(key, operator);
+            if (size >= 0) {
+              break;
+            }
+          }
           if (matchLevel <= 0 && key instanceof Number) {
             int totalSize = valueToEntriesMapSize;// this.valueToEntriesMap.size();
             if (RangeIndex.testHook != null) {
@@ -716,6 +738,16 @@ public class RangeIndex extends AbstractIndex {
 
         case OQLLexerTokenTypes.TOK_GE:
         case OQLLexerTokenTypes.TOK_GT:
+          if (matchLevel <= 0 && IndexManager.COST_BASED_INDEX_SELECTION) {
+            if (testHook != null) {
+              testHook.hook(2);
+            }
+            // the histogram of the keys estimates the ranges of keys of any type
+            size = getRangeSizeEstimate(key, operator);
+            if (size >= 0) {
+              break;
+            }
+          }
           if (matchLevel <= 0 && key instanceof Number) {
             int totalSize = valueToEntriesMapSize;// this.valueToEntriesMap.size();
             if (testHook != null) {
@@ -1527,6 +1559,22 @@ public class RangeIndex extends AbstractIndex {
       this.vsdStats.incReadLockCount(delta);
     }
 
+    public void incPendingUpdates(int delta) {
+      this.vsdStats.incPendingUpdates(delta);
+    }
+
+    public int getPendingUpdates() {
+      return this.vsdStats.getPendingUpdates();
+    }
+
+    public void incSynchronousUpdates() {
+      this.vsdStats.incSynchronousUpdates();
+    }
+
+    public long getSynchronousUpdates() {
+      return this.vsdStats.getSynchronousUpdates();
+    }
+
     public long getUseTime() {
       return this.vsdStats.getUseTime();
     }
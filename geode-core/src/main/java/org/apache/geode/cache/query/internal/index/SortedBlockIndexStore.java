@@ -0,0 +1,999 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal.index;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.geode.cache.EntryDestroyedException;
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.RegionAttributes;
+import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.TypeMismatchException;
+import org.apache.geode.cache.query.internal.CompiledComparison;
+import org.apache.geode.cache.query.internal.index.AbstractIndex.InternalIndexStatistics;
+import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
+import org.apache.geode.cache.query.internal.types.TypeUtils;
+import org.apache.geode.distributed.internal.DistributionConfig;
+import org.apache.geode.internal.cache.CachedDeserializable;
+import org.apache.geode.internal.cache.GemFireCacheImpl;
+import org.apache.geode.internal.cache.LocalRegion;
+import org.apache.geode.internal.cache.RegionEntry;
+import org.apache.geode.internal.cache.Token;
+import org.apache.geode.internal.cache.persistence.query.CloseableIterator;
+
+/**
+ * An in-memory index storage which keeps the (index key, region entry) mappings in sorted blocks of
+ * arrays instead of a skip list node plus an {@link IndexElemArray} or
+ * {@link IndexConcurrentHashSet} per index key as done by {@link MemoryIndexStore}. A mapping costs
+ * two array slots, so the per entry overhead of the index is a small fraction of that of the
+ * {@link MemoryIndexStore}.
+ *
+ * The mappings are ordered on the index key and then on the identity hash code of the region entry,
+ * so that a mapping can be found with a binary search even when many entries share the same index
+ * key. Each block is immutable and is replaced by a modified copy on every update, which lets
+ * queries iterate over the blocks without any locking. Updates are serialized on the store.
+ *
+ * @see IndexManager#SORTED_BLOCK_INDEX_STORE
+ */
+public class SortedBlockIndexStore implements IndexStore {
+
+  /**
+   * The maximum number of mappings in a block. Larger blocks save memory but make updates more
+   * expensive, as each update copies the block.
+   */
+  public static final int MAX_BLOCK_SIZE = Integer
+      .getInteger(DistributionConfig.GEMFIRE_PREFIX + "index.SORTED_BLOCK_SIZE", 128).intValue();
+
+  private static final Block EMPTY_BLOCK = new Block(new Object[0], new RegionEntry[0]);
+
+  private final Comparator comparator = TypeUtils.getExtendedNumericComparator();
+
+  /**
+   * The blocks, keyed by a lower bound of the mappings they contain. The first block is always
+   * keyed by {@link BlockKey#MIN} so that every mapping has a block to go to. Package access for
+   * unit tests.
+   */
+  final ConcurrentSkipListMap<BlockKey, Block> blocks =
+      new ConcurrentSkipListMap<BlockKey, Block>(new BlockKeyComparator());
+
+  private final int maxBlockSize;
+
+  private final Object updateLock = new Object();
+
+  // number of keys, guarded by updateLock for writes
+  private volatile int numIndexKeys = 0;
+
+  // Map for RegionEntries=>value of indexedExpression (reverse map)
+  private ConcurrentMap entryToValuesMap;
+
+  private InternalIndexStatistics internalIndexStats;
+
+  private Region region;
+  private boolean indexOnRegionKeys;
+  private boolean indexOnValues;
+
+  public SortedBlockIndexStore(Region region, InternalIndexStatistics internalIndexStats) {
+    this(region, internalIndexStats, MAX_BLOCK_SIZE);
+  }
+
+  public SortedBlockIndexStore(Region region, InternalIndexStatistics internalIndexStats,
+      int maxBlockSize) {
+    this.region = region;
+    RegionAttributes ra = region.getAttributes();
+    // Initialize the reverse-map if in-place modification is set by the
+    // application.
+    if (IndexManager.isObjectModificationInplace()) {
+      this.entryToValuesMap = new ConcurrentHashMap(ra.getInitialCapacity(), ra.getLoadFactor(),
+          ra.getConcurrencyLevel());
+    }
+    this.internalIndexStats = internalIndexStats;
+    this.maxBlockSize = Math.max(maxBlockSize, 2);
+    this.blocks.put(BlockKey.MIN, EMPTY_BLOCK);
+  }
+
+  @Override
+  public void updateMapping(Object newKey, Object oldKey, RegionEntry entry, Object oldValue)
+      throws IMQException {
+    try {
+      // Check if reverse-map is present.
+      if (IndexManager.isObjectModificationInplace()) {
+        // If reverse map get the old index key from reverse map.
+        if (this.entryToValuesMap.containsKey(entry)) {
+          oldKey = this.entryToValuesMap.get(entry);
+        }
+      } else {
+        // If the old value and new value are the same, the value got updated in place. In the
+        // absence of reverse-map find the old index key from the blocks.
+        if (oldValue != null && oldValue == getTargetObjectInVM(entry)) {
+          oldKey = getOldKey(newKey, entry);
+        }
+      }
+
+      // No need to update the blocks if new and old index key are same.
+      if (oldKey != null && oldKey.equals(TypeUtils.indexKeyFor(newKey))) {
+        return;
+      }
+
+      newKey = TypeUtils.indexKeyFor(newKey);
+      if (newKey.equals(QueryService.UNDEFINED)) {
+        Object targetObject = getTargetObjectForUpdate(entry);
+        if (Token.isInvalidOrRemoved(targetObject)) {
+          if (oldKey != null) {
+            basicRemoveMapping(oldKey, entry, false);
+          }
+          return;
+        }
+      }
+
+      boolean added;
+      synchronized (this.updateLock) {
+        added = insert(newKey, entry);
+      }
+      if (added) {
+        internalIndexStats.incNumValues(1);
+      }
+
+      // remove the old mapping in case of update
+      if (oldKey != null) {
+        basicRemoveMapping(oldKey, entry, false);
+      }
+      if (IndexManager.isObjectModificationInplace()) {
+        this.entryToValuesMap.put(entry, newKey);
+      }
+    } catch (TypeMismatchException ex) {
+      throw new IMQException("Could not add object of type " + newKey.getClass().getName(), ex);
+    }
+  }
+
+  @Override
+  public void addMapping(Object newKey, RegionEntry entry) throws IMQException {
+    // for add, oldkey is null
+    updateMapping(newKey, null, entry, null);
+  }
+
+  @Override
+  public void removeMapping(Object key, RegionEntry entry) throws IMQException {
+    boolean found = basicRemoveMapping(key, entry, true);
+    if (found && IndexManager.isObjectModificationInplace()) {
+      this.entryToValuesMap.remove(entry);
+    }
+  }
+
+  private boolean basicRemoveMapping(Object key, RegionEntry entry, boolean findOldKey)
+      throws IMQException {
+    boolean found = false;
+    try {
+      Object indexKey = convertToIndexKey(key, entry);
+      if (indexKey != null) {
+        synchronized (this.updateLock) {
+          found = delete(indexKey, entry);
+        }
+      }
+    } catch (TypeMismatchException ex) {
+      throw new IMQException("Could not add object of type " + key.getClass().getName(), ex);
+    }
+    if (found) {
+      internalIndexStats.incNumValues(-1);
+    } else if (findOldKey && !IndexManager.isObjectModificationInplace() && key != null) {
+      // if there is an inplace-modification find old key by iterating
+      // over the blocks and then remove the mapping
+      try {
+        Object oldKey = getOldKey(key, entry);
+        found = basicRemoveMapping(oldKey, entry, false);
+      } catch (TypeMismatchException e) {
+        throw new IMQException("Could not find old key: " + key.getClass().getName(), e);
+      }
+    }
+    return found;
+  }
+
+  private Object convertToIndexKey(Object key, RegionEntry entry) throws TypeMismatchException {
+    if (IndexManager.isObjectModificationInplace() && this.entryToValuesMap.containsKey(entry)) {
+      return this.entryToValuesMap.get(entry);
+    }
+    return TypeUtils.indexKeyFor(key);
+  }
+
+  /**
+   * Find the old key by traversing the blocks in case of in-place update modification. If not found
+   * it means the value object was modified with same value. So oldKey is same as newKey.
+   */
+  private Object getOldKey(Object newKey, RegionEntry entry) throws TypeMismatchException {
+    for (Block block : this.blocks.values()) {
+      for (int i = 0; i < block.entries.length; i++) {
+        if (block.entries[i] == entry && TypeUtils
+            .compare(block.keys[i], newKey, CompiledComparison.TOK_NE).equals(Boolean.TRUE)) {
+          return block.keys[i];
+        }
+      }
+    }
+    return newKey;
+  }
+
+  /**
+   * Adds the mapping to the block it belongs to, splitting the block if it has grown too large.
+   * Must be called with the update lock held.
+   *
+   * @return false if the mapping was already present
+   */
+  private boolean insert(Object key, RegionEntry entry) {
+    long tie = tieBreakerFor(entry);
+    Map.Entry<BlockKey, Block> floor = this.blocks.floorEntry(new BlockKey(key, tie));
+    BlockKey blockKey = floor.getKey();
+    Block block = floor.getValue();
+    int pos = lowerBound(block, key, tie);
+    for (int i = pos; i < block.size() && compare(block, i, key, tie) == 0; i++) {
+      if (block.entries[i] == entry) {
+        return false;
+      }
+    }
+
+    // Share the key instance with the other mappings of the same index key, if any
+    Object existingKey = findEqualNeighbourKey(blockKey, block, pos, key);
+    if (existingKey == null) {
+      this.numIndexKeys++;
+      internalIndexStats.incNumKeys(1);
+    } else {
+      key = existingKey;
+    }
+
+    Block newBlock = block.insert(pos, key, entry);
+    if (newBlock.size() <= this.maxBlockSize) {
+      this.blocks.put(blockKey, newBlock);
+      return true;
+    }
+
+    int split = splitPoint(newBlock);
+    if (split <= 0) {
+      // All the mappings are ties; the block is left oversized
+      this.blocks.put(blockKey, newBlock);
+      return true;
+    }
+    Block right = newBlock.copy(split, newBlock.size());
+    // Publish the upper half first so that a concurrent iterator never misses a mapping; it skips
+    // the mappings it has already seen in the old block.
+    this.blocks.put(new BlockKey(right.keys[0], tieBreakerFor(right.entries[0])), right);
+    this.blocks.put(blockKey, newBlock.copy(0, split));
+    return true;
+  }
+
+  /**
+   * Removes the mapping from its block, dropping the block if it becomes empty or merging it into
+   * the next one if both are small. Must be called with the update lock held.
+   *
+   * @return true if the mapping was found
+   */
+  private boolean delete(Object key, RegionEntry entry) {
+    long tie = tieBreakerFor(entry);
+    Map.Entry<BlockKey, Block> floor = this.blocks.floorEntry(new BlockKey(key, tie));
+    BlockKey blockKey = floor.getKey();
+    Block block = floor.getValue();
+    int pos = lowerBound(block, key, tie);
+    for (; pos < block.size() && compare(block, pos, key, tie) == 0; pos++) {
+      if (block.entries[pos] == entry) {
+        break;
+      }
+    }
+    if (pos >= block.size() || block.entries[pos] != entry) {
+      return false;
+    }
+
+    Object removedKey = block.keys[pos];
+    Block newBlock = block.remove(pos);
+    Map.Entry<BlockKey, Block> next = this.blocks.higherEntry(blockKey);
+    if (newBlock.size() == 0 && blockKey != BlockKey.MIN) {
+      this.blocks.remove(blockKey);
+      Map.Entry<BlockKey, Block> previous = this.blocks.lowerEntry(blockKey);
+      checkKeyRemoved(removedKey, previous.getValue(), previous.getValue().size(), next);
+      return true;
+    }
+    if (next != null && newBlock.size() + next.getValue().size() <= this.maxBlockSize / 2) {
+      // Publish the merged block before dropping the next one so that a concurrent iterator never
+      // misses a mapping.
+      this.blocks.put(blockKey, newBlock.merge(next.getValue()));
+      this.blocks.remove(next.getKey());
+      next = this.blocks.higherEntry(blockKey);
+      newBlock = this.blocks.get(blockKey);
+    } else {
+      this.blocks.put(blockKey, newBlock);
+    }
+    if (pos > 0) {
+      checkKeyRemoved(removedKey, newBlock, pos, next);
+    } else {
+      Map.Entry<BlockKey, Block> previous = this.blocks.lowerEntry(blockKey);
+      if (previous == null || previous.getValue().size() == 0
+          || this.comparator.compare(previous.getValue().lastKey(), removedKey) != 0) {
+        checkKeyRemoved(removedKey, newBlock, 0, next);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Decrements the number of keys if no mapping for the removed key remains around the position of
+   * the removed mapping, which is just after position - 1 in the given block.
+   */
+  private void checkKeyRemoved(Object removedKey, Block block, int position,
+      Map.Entry<BlockKey, Block> next) {
+    if (position > 0 && this.comparator.compare(block.keys[position - 1], removedKey) == 0) {
+      return;
+    }
+    if (position < block.size()) {
+      if (this.comparator.compare(block.keys[position], removedKey) == 0) {
+        return;
+      }
+    } else if (next != null && next.getValue().size() > 0
+        && this.comparator.compare(next.getValue().keys[0], removedKey) == 0) {
+      return;
+    }
+    this.numIndexKeys--;
+    internalIndexStats.incNumKeys(-1);
+  }
+
+  /**
+   * Returns the key of a mapping adjacent to the given insertion position which is equal to the
+   * given key, or null if there is none.
+   */
+  private Object findEqualNeighbourKey(BlockKey blockKey, Block block, int pos, Object key) {
+    if (pos > 0) {
+      if (this.comparator.compare(block.keys[pos - 1], key) == 0) {
+        return block.keys[pos - 1];
+      }
+    } else {
+      Map.Entry<BlockKey, Block> previous = this.blocks.lowerEntry(blockKey);
+      if (previous != null && previous.getValue().size() > 0
+          && this.comparator.compare(previous.getValue().lastKey(), key) == 0) {
+        return previous.getValue().lastKey();
+      }
+    }
+    if (pos < block.size()) {
+      if (this.comparator.compare(block.keys[pos], key) == 0) {
+        return block.keys[pos];
+      }
+    } else {
+      Map.Entry<BlockKey, Block> next = this.blocks.higherEntry(blockKey);
+      if (next != null && next.getValue().size() > 0
+          && this.comparator.compare(next.getValue().keys[0], key) == 0) {
+        return next.getValue().keys[0];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the position at which to split the given block, which does not separate mappings with
+   * the same key and tie breaker, or 0 if there is no such position.
+   */
+  private int splitPoint(Block block) {
+    int mid = block.size() / 2;
+    for (int split = mid; split < block.size(); split++) {
+      if (compare(block, split, block.keys[split - 1],
+          tieBreakerFor(block.entries[split - 1])) != 0) {
+        return split;
+      }
+    }
+    for (int split = mid - 1; split > 0; split--) {
+      if (compare(block, split, block.keys[split - 1],
+          tieBreakerFor(block.entries[split - 1])) != 0) {
+        return split;
+      }
+    }
+    return 0;
+  }
+
+  private static long tieBreakerFor(RegionEntry entry) {
+    return System.identityHashCode(entry);
+  }
+
+  /**
+   * Compares the mapping at the given position of the block with the given key and tie breaker
+   */
+  private int compare(Block block, int pos, Object key, long tie) {
+    int result = this.comparator.compare(block.keys[pos], key);
+    if (result != 0) {
+      return result;
+    }
+    long blockTie = tieBreakerFor(block.entries[pos]);
+    return blockTie < tie ? -1 : (blockTie == tie ? 0 : 1);
+  }
+
+  /**
+   * Returns the position of the first mapping in the block which is not less than the given key and
+   * tie breaker.
+   */
+  private int lowerBound(Block block, Object key, long tie) {
+    int low = 0;
+    int high = block.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (compare(block, mid, key, tie) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @Override
+  public CloseableIterator<IndexStoreEntry> get(Object indexKey) {
+    return new SortedBlockIterator(indexKey, true, indexKey, true, false, indexKey, null);
+  }
+
+  @Override
+  public CloseableIterator<IndexStoreEntry> iterator(Object start, boolean startInclusive,
+      Object end, boolean endInclusive, Collection keysToRemove) {
+    return new SortedBlockIterator(start, startInclusive, end, endInclusive, false, null,
+        keysToRemove);
+  }
+
+  @Override
+  public CloseableIterator<IndexStoreEntry> iterator(Object start, boolean startInclusive,
+      Collection keysToRemove) {
+    return new SortedBlockIterator(start, startInclusive, null, false, false, null, keysToRemove);
+  }
+
+  @Override
+  public CloseableIterator<IndexStoreEntry> iterator(Collection keysToRemove) {
+    return new SortedBlockIterator(null, false, null, false, false, null, keysToRemove);
+  }
+
+  @Override
+  public CloseableIterator<IndexStoreEntry> descendingIterator(Object start, boolean startInclusive,
+      Object end, boolean endInclusive, Collection keysToRemove) {
+    return new SortedBlockIterator(start, startInclusive, end, endInclusive, true, null,
+        keysToRemove);
+  }
+
+  @Override
+  public CloseableIterator<IndexStoreEntry> descendingIterator(Object start, boolean startInclusive,
+      Collection keysToRemove) {
+    return new SortedBlockIterator(start, startInclusive, null, false, true, null, keysToRemove);
+  }
+
+  @Override
+  public CloseableIterator<IndexStoreEntry> descendingIterator(Collection keysToRemove) {
+    return new SortedBlockIterator(null, false, null, false, true, null, keysToRemove);
+  }
+
+  @Override
+  public boolean isIndexOnRegionKeys() {
+    return indexOnRegionKeys;
+  }
+
+  @Override
+  public void setIndexOnRegionKeys(boolean indexOnRegionKeys) {
+    this.indexOnRegionKeys = indexOnRegionKeys;
+  }
+
+  @Override
+  public boolean isIndexOnValues() {
+    return indexOnValues;
+  }
+
+  @Override
+  public void setIndexOnValues(boolean indexOnValues) {
+    this.indexOnValues = indexOnValues;
+  }
+
+  /**
+   * Get the object of interest from the region entry. For now it always gets the deserialized
+   * value.
+   */
+  @Override
+  public Object getTargetObject(RegionEntry entry) {
+    if (indexOnValues) {
+      Object o = entry.getValue((LocalRegion) this.region);
+      try {
+        if (o == Token.INVALID) {
+          return null;
+        }
+        if (o instanceof CachedDeserializable) {
+          return ((CachedDeserializable) o).getDeserializedValue(this.region, entry);
+        }
+      } catch (EntryDestroyedException ede) {
+        return null;
+      }
+      return o;
+    } else if (indexOnRegionKeys) {
+      return entry.getKey();
+    }
+    return new MemoryIndexStore.CachedEntryWrapper(
+        ((LocalRegion) this.region).new NonTXEntry(entry));
+  }
+
+  @Override
+  public Object getTargetObjectInVM(RegionEntry entry) {
+    if (indexOnValues) {
+      Object o = entry.getValueInVM((LocalRegion) this.region);
+      try {
+        if (o == Token.INVALID) {
+          return null;
+        }
+        if (o instanceof CachedDeserializable) {
+          return ((CachedDeserializable) o).getDeserializedValue(this.region, entry);
+        }
+      } catch (EntryDestroyedException ede) {
+        return null;
+      }
+      return o;
+    } else if (indexOnRegionKeys) {
+      return entry.getKey();
+    }
+    return ((LocalRegion) this.region).new NonTXEntry(entry);
+  }
+
+  private Object getTargetObjectForUpdate(RegionEntry entry) {
+    if (indexOnValues) {
+      Object o = entry.getValue((LocalRegion) this.region);
+      try {
+        if (o == Token.INVALID) {
+          return Token.INVALID;
+        }
+        if (o instanceof CachedDeserializable) {
+          return ((CachedDeserializable) o).getDeserializedValue(this.region, entry);
+        }
+      } catch (EntryDestroyedException ede) {
+        return Token.INVALID;
+      }
+      return o;
+    } else if (indexOnRegionKeys) {
+      return entry.getKey();
+    }
+    return ((LocalRegion) this.region).new NonTXEntry(entry);
+  }
+
+  @Override
+  public boolean clear() {
+    synchronized (this.updateLock) {
+      this.blocks.clear();
+      this.blocks.put(BlockKey.MIN, EMPTY_BLOCK);
+      this.numIndexKeys = 0;
+    }
+    if (IndexManager.isObjectModificationInplace()) {
+      this.entryToValuesMap.clear();
+    }
+    return true;
+  }
+
+  @Override
+  public int size(Object key) {
+    int size = 0;
+    Map.Entry<BlockKey, Block> current =
+        this.blocks.floorEntry(new BlockKey(key, BlockKey.LOWEST_TIE));
+    int pos = lowerBound(current.getValue(), key, BlockKey.LOWEST_TIE);
+    while (current != null) {
+      Block block = current.getValue();
+      int end = lowerBound(block, key, BlockKey.HIGHEST_TIE);
+      size += Math.max(end - pos, 0);
+      if (end < block.size()) {
+        break;
+      }
+      current = this.blocks.higherEntry(current.getKey());
+      pos = 0;
+    }
+    return size;
+  }
+
+  @Override
+  public int size() {
+    return this.numIndexKeys;
+  }
+
+  /**
+   * Returns the number of blocks used by this store
+   */
+  int getNumBlocks() {
+    return this.blocks.size();
+  }
+
+  public String printAll() {
+    StringBuffer sb = new StringBuffer();
+    for (Block block : this.blocks.values()) {
+      for (int i = 0; i < block.size(); i++) {
+        sb.append("Key: " + block.keys[i]);
+        sb.append(" Value:" + getTargetObject(block.entries[i]));
+        sb.append("\n");
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * An immutable, sorted run of mappings. The arrays are exactly sized.
+   */
+  static final class Block {
+    final Object[] keys;
+    final RegionEntry[] entries;
+
+    Block(Object[] keys, RegionEntry[] entries) {
+      this.keys = keys;
+      this.entries = entries;
+    }
+
+    int size() {
+      return this.keys.length;
+    }
+
+    Object lastKey() {
+      return this.keys[this.keys.length - 1];
+    }
+
+    Block insert(int pos, Object key, RegionEntry entry) {
+      int size = size();
+      Object[] newKeys = new Object[size + 1];
+      RegionEntry[] newEntries = new RegionEntry[size + 1];
+      System.arraycopy(this.keys, 0, newKeys, 0, pos);
+      System.arraycopy(this.entries, 0, newEntries, 0, pos);
+      newKeys[pos] = key;
+      newEntries[pos] = entry;
+      System.arraycopy(this.keys, pos, newKeys, pos + 1, size - pos);
+      System.arraycopy(this.entries, pos, newEntries, pos + 1, size - pos);
+      return new Block(newKeys, newEntries);
+    }
+
+    Block remove(int pos) {
+      int size = size();
+      Object[] newKeys = new Object[size - 1];
+      RegionEntry[] newEntries = new RegionEntry[size - 1];
+      System.arraycopy(this.keys, 0, newKeys, 0, pos);
+      System.arraycopy(this.entries, 0, newEntries, 0, pos);
+      System.arraycopy(this.keys, pos + 1, newKeys, pos, size - pos - 1);
+      System.arraycopy(this.entries, pos + 1, newEntries, pos, size - pos - 1);
+      return new Block(newKeys, newEntries);
+    }
+
+    Block copy(int from, int to) {
+      Object[] newKeys = new Object[to - from];
+      RegionEntry[] newEntries = new RegionEntry[to - from];
+      System.arraycopy(this.keys, from, newKeys, 0, to - from);
+      System.arraycopy(this.entries, from, newEntries, 0, to - from);
+      return new Block(newKeys, newEntries);
+    }
+
+    Block merge(Block next) {
+      int size = size();
+      Object[] newKeys = new Object[size + next.size()];
+      RegionEntry[] newEntries = new RegionEntry[size + next.size()];
+      System.arraycopy(this.keys, 0, newKeys, 0, size);
+      System.arraycopy(this.entries, 0, newEntries, 0, size);
+      System.arraycopy(next.keys, 0, newKeys, size, next.size());
+      System.arraycopy(next.entries, 0, newEntries, size, next.size());
+      return new Block(newKeys, newEntries);
+    }
+  }
+
+  /**
+   * The lower bound of the mappings of a block: an index key and a region entry tie breaker.
+   */
+  static final class BlockKey {
+    static final long LOWEST_TIE = Long.MIN_VALUE;
+    static final long HIGHEST_TIE = Long.MAX_VALUE;
+
+    /** The key of the first block, which is less than any other key */
+    static final BlockKey MIN = new BlockKey(null, LOWEST_TIE);
+
+    final Object key;
+    final long tie;
+
+    BlockKey(Object key, long tie) {
+      this.key = key;
+      this.tie = tie;
+    }
+  }
+
+  private class BlockKeyComparator implements Comparator<BlockKey> {
+    @Override
+    public int compare(BlockKey o1, BlockKey o2) {
+      if (o1 == o2) {
+        return 0;
+      } else if (o1 == BlockKey.MIN) {
+        return -1;
+      } else if (o2 == BlockKey.MIN) {
+        return 1;
+      }
+      int result = comparator.compare(o1.key, o2.key);
+      if (result != 0) {
+        return result;
+      }
+      return o1.tie < o2.tie ? -1 : (o1.tie == o2.tie ? 0 : 1);
+    }
+  }
+
+  /**
+   * An iterator over the mappings of the blocks within an index key range, in ascending or
+   * descending order. A block replaced while it is being iterated over is not seen by the iterator;
+   * when moving to the adjacent block, the mappings already returned from an older copy of the
+   * blocks are skipped.
+   */
+  private class SortedBlockIterator implements CloseableIterator<IndexStoreEntry> {
+    private final Object low;
+    private final boolean lowInclusive;
+    private final Object high;
+    private final boolean highInclusive;
+    private final boolean descending;
+    private final Object indexKey;
+    private final Collection keysToRemove;
+
+    private BlockKey blockKey;
+    private Block block;
+    private int pos;
+
+    // The boundary mapping of the last block iterated over; the mappings up to it (or from it, when
+    // descending) have been visited
+    private Object cursorKey;
+    private long cursorTie;
+    private boolean hasCursor;
+
+    // The index key of the current run of mappings, and whether the run is skipped
+    private Object runKey;
+    private boolean skipRun;
+
+    private boolean hasNextEntry;
+    private boolean done;
+    private Object nextKey;
+    private RegionEntry nextEntry;
+    private final SortedBlockIndexStoreEntry currentEntry;
+
+    SortedBlockIterator(Object low, boolean lowInclusive, Object high, boolean highInclusive,
+        boolean descending, Object indexKey, Collection keysToRemove) {
+      this.low = low;
+      this.lowInclusive = lowInclusive;
+      this.high = high;
+      this.highInclusive = highInclusive;
+      this.descending = descending;
+      this.indexKey = indexKey;
+      this.keysToRemove = keysToRemove == null ? null : new HashSet(keysToRemove);
+      this.currentEntry =
+          new SortedBlockIndexStoreEntry(GemFireCacheImpl.getInstance().cacheTimeMillis());
+      Map.Entry<BlockKey, Block> start;
+      if (descending) {
+        if (high == null) {
+          start = blocks.lastEntry();
+          this.pos = start.getValue().size() - 1;
+        } else {
+          long tie = highInclusive ? BlockKey.HIGHEST_TIE : BlockKey.LOWEST_TIE;
+          start = blocks.floorEntry(new BlockKey(high, tie));
+          this.pos = lowerBound(start.getValue(), high, tie) - 1;
+        }
+      } else {
+        if (low == null) {
+          start = blocks.firstEntry();
+          this.pos = 0;
+        } else {
+          long tie = lowInclusive ? BlockKey.LOWEST_TIE : BlockKey.HIGHEST_TIE;
+          start = blocks.floorEntry(new BlockKey(low, tie));
+          this.pos = lowerBound(start.getValue(), low, tie);
+        }
+      }
+      this.blockKey = start.getKey();
+      this.block = start.getValue();
+    }
+
+    public boolean hasNext() {
+      if (this.hasNextEntry) {
+        return true;
+      }
+      while (!this.done) {
+        if (this.pos < 0 || this.pos >= this.block.size()) {
+          moveToAdjacentBlock();
+          continue;
+        }
+        Object key = this.block.keys[this.pos];
+        RegionEntry entry = this.block.entries[this.pos];
+        this.pos += this.descending ? -1 : 1;
+        if (isBeforeRange(key)) {
+          continue;
+        }
+        if (isAfterRange(key)) {
+          this.done = true;
+          break;
+        }
+        if (skip(key)) {
+          continue;
+        }
+        this.nextKey = key;
+        this.nextEntry = entry;
+        this.hasNextEntry = true;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Moves to the block holding the mappings following the current block. The current block may
+     * have been replaced, split or merged since the iteration started, so the next block is looked
+     * up from the boundary mapping of the current block.
+     */
+    private void moveToAdjacentBlock() {
+      if (this.descending && this.blockKey == BlockKey.MIN) {
+        this.done = true;
+        return;
+      }
+      if (this.block.size() > 0) {
+        int boundary = this.descending ? 0 : this.block.size() - 1;
+        this.cursorKey = this.block.keys[boundary];
+        this.cursorTie = tieBreakerFor(this.block.entries[boundary]);
+        this.hasCursor = true;
+      }
+      Map.Entry<BlockKey, Block> next;
+      if (this.hasCursor) {
+        // The up to date block holding the boundary mapping may have mappings past it
+        next = blocks.floorEntry(new BlockKey(this.cursorKey, this.cursorTie));
+        if (moveTo(next)) {
+          return;
+        }
+      } else {
+        next = blocks.floorEntry(this.blockKey);
+      }
+      next = this.descending ? blocks.lowerEntry(next.getKey()) : blocks.higherEntry(next.getKey());
+      if (next == null) {
+        this.done = true;
+        return;
+      }
+      moveTo(next);
+    }
+
+    /**
+     * Positions the iterator on the first mapping past the cursor in the given block.
+     *
+     * @return true if there is such a mapping
+     */
+    private boolean moveTo(Map.Entry<BlockKey, Block> next) {
+      this.blockKey = next.getKey();
+      this.block = next.getValue();
+      if (!this.hasCursor) {
+        this.pos = this.descending ? this.block.size() - 1 : 0;
+      } else if (this.descending) {
+        this.pos = lowerBound(this.block, this.cursorKey, this.cursorTie) - 1;
+      } else {
+        this.pos = lowerBound(this.block, this.cursorKey, this.cursorTie + 1);
+      }
+      return this.pos >= 0 && this.pos < this.block.size();
+    }
+
+    private boolean isBeforeRange(Object key) {
+      if (this.descending) {
+        return this.high != null && exceeds(key, this.high, this.highInclusive, 1);
+      }
+      return this.low != null && exceeds(key, this.low, this.lowInclusive, -1);
+    }
+
+    private boolean isAfterRange(Object key) {
+      if (this.descending) {
+        return this.low != null && exceeds(key, this.low, this.lowInclusive, -1);
+      }
+      return this.high != null && exceeds(key, this.high, this.highInclusive, 1);
+    }
+
+    /**
+     * Returns true if the key is beyond the bound in the given direction
+     */
+    private boolean exceeds(Object key, Object bound, boolean inclusive, int direction) {
+      int result = comparator.compare(key, bound) * direction;
+      return result > 0 || (result == 0 && !inclusive);
+    }
+
+    /**
+     * Returns true if the mappings of the key need to be skipped. The keys present in the
+     * keysToRemove collection, Undefined and Null are skipped so that they do not get into the
+     * results of range queries. Equality and not equality on null/undefined use the index key.
+     */
+    private boolean skip(Object key) {
+      if (this.runKey != null && comparator.compare(this.runKey, key) == 0) {
+        return this.skipRun;
+      }
+      this.runKey = key;
+      this.skipRun =
+          key != this.indexKey && (key == QueryService.UNDEFINED || key == IndexManager.NULL
+              || this.keysToRemove != null && removeFromKeysToRemove(this.keysToRemove, key));
+      return this.skipRun;
+    }
+
+    /**
+     * returns the entry for the next mapping. The same entry instance is reused for all the
+     * mappings. Make sure hasNext() has been called before calling this method
+     */
+    public IndexStoreEntry next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      this.hasNextEntry = false;
+      this.currentEntry.setSortedBlockIndexStoreEntry(this.nextKey, this.nextEntry);
+      return this.currentEntry;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    public void close() {
+      // do nothing
+    }
+
+    private boolean removeFromKeysToRemove(Collection keysToRemove, Object key) {
+      Iterator iterator = keysToRemove.iterator();
+      while (iterator.hasNext()) {
+        try {
+          if (TypeUtils.compare(key, iterator.next(), OQLLexerTokenTypes.TOK_EQ)
+              .equals(Boolean.TRUE)) {
+            iterator.remove();
+            return true;
+          }
+        } catch (TypeMismatchException e) {
+          // they are not equals, so we just continue iterating
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * A wrapper over a mapping of the blocks. It maps IndexKey -> RegionEntry
+   */
+  class SortedBlockIndexStoreEntry implements IndexStoreEntry {
+    private Object deserializedIndexKey;
+    private RegionEntry regionEntry;
+    private boolean updateInProgress;
+    private Object value;
+    private long iteratorStartTime;
+
+    private SortedBlockIndexStoreEntry(long iteratorStartTime) {
+      this.iteratorStartTime = iteratorStartTime;
+    }
+
+    void setSortedBlockIndexStoreEntry(Object deserializedIndexKey, RegionEntry regionEntry) {
+      this.deserializedIndexKey = deserializedIndexKey;
+      this.regionEntry = regionEntry;
+      this.updateInProgress = regionEntry.isUpdateInProgress();
+      this.value = getTargetObject(regionEntry);
+    }
+
+    @Override
+    public Object getDeserializedKey() {
+      return deserializedIndexKey;
+    }
+
+    @Override
+    public Object getDeserializedValue() {
+      return value;
+    }
+
+    @Override
+    public Object getDeserializedRegionKey() {
+      return regionEntry.getKey();
+    }
+
+    public RegionEntry getRegionEntry() {
+      return regionEntry;
+    }
+
+    @Override
+    public boolean isUpdateInProgress() {
+      return updateInProgress || regionEntry.isUpdateInProgress()
+      // The index update could have started just before the iterator was created. The entry still
+      // needs to be re-evaluated in this case.
+          || IndexManager.needsRecalculation(iteratorStartTime, regionEntry.getLastModified());
+    }
+  }
+}
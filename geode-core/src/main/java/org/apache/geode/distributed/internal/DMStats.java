@@ -141,6 +141,14 @@ public interface DMStats {
 
   public void incBatchFlushTime(long start);
 
+  /**
+   * Records a socket write of coalesced messages.
+   * 
+   * @param messages the number of messages written at once
+   * @param delay the sum of the nanoseconds each message waited for the write
+   */
+  public void incCoalescedMessages(int messages, long delay);
+
   /**
    * Increments the total number of nanoseconds spent scheduling messages to be processed.
    */
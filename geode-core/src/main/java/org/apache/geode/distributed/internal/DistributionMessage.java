@@ -488,7 +488,8 @@ public abstract class DistributionMessage implements DataSerializableFixedID, Cl
   public static boolean isPreciousThread() {
     String thrname = Thread.currentThread().getName();
     // return thrname.startsWith("Geode UDP");
-    return thrname.startsWith("unicast receiver") || thrname.startsWith("multicast receiver");
+    return thrname.startsWith("unicast receiver") || thrname.startsWith("multicast receiver")
+        || thrname.startsWith(Connection.EVENT_LOOP_THREAD_NAME_PREFIX);
   }
 
 
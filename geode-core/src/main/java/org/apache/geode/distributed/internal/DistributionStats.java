@@ -147,6 +147,10 @@ public class DistributionStats implements DMStats {
   private final static int batchWaitTimeId;
   private final static int batchFlushTimeId;
 
+  private final static int coalescedWritesId;
+  private final static int coalescedMessagesId;
+  private final static int coalescedMessagesDelayId;
+
   private final static int threadOwnedReceiversId;
   private final static int threadOwnedReceiversId2;
 
@@ -597,6 +601,15 @@ public class DistributionStats implements DMStats {
             "Total amount of time, in nanoseconds, spent flushing batched messages to the network",
             "nanoseconds"),
 
+        f.createLongCounter("coalescedWrites",
+            "Total number of socket writes of messages coalesced on shared ordered connections.",
+            "writes"),
+        f.createLongCounter("coalescedMessages",
+            "Total number of messages written by coalesced socket writes.", "messages"),
+        f.createLongCounter("coalescedMessagesDelay",
+            "Total amount of time, in nanoseconds, that coalesced messages waited to be written.",
+            "nanoseconds"),
+
         f.createIntGauge("asyncSocketWritesInProgress",
             "Current number of non-blocking socket write calls in progress.", "writes"),
         f.createIntCounter("asyncSocketWrites",
@@ -843,6 +856,10 @@ public class DistributionStats implements DMStats {
     batchWaitTimeId = type.nameToId("batchWaitTime");
     batchFlushTimeId = type.nameToId("batchFlushTime");
 
+    coalescedWritesId = type.nameToId("coalescedWrites");
+    coalescedMessagesId = type.nameToId("coalescedMessages");
+    coalescedMessagesDelayId = type.nameToId("coalescedMessagesDelay");
+
     asyncSocketWritesInProgressId = type.nameToId("asyncSocketWritesInProgress");
     asyncSocketWritesId = type.nameToId("asyncSocketWrites");
     asyncSocketWriteRetriesId = type.nameToId("asyncSocketWriteRetries");
@@ -2069,6 +2086,12 @@ public class DistributionStats implements DMStats {
     }
   }
 
+  public void incCoalescedMessages(int messages, long delay) {
+    stats.incLong(coalescedWritesId, 1);
+    stats.incLong(coalescedMessagesId, messages);
+    stats.incLong(coalescedMessagesDelayId, delay);
+  }
+
   public void incUcastRetransmits() {
     stats.incInt(ucastRetransmitsId, 1);
   }
@@ -573,6 +573,9 @@ public class LonerDistributionManager implements DM {
     @Override
     public void incBatchFlushTime(long start) {}
 
+    @Override
+    public void incCoalescedMessages(int messages, long delay) {}
+
     @Override
     public void incUcastWriteBytes(int bytesWritten) {}
 
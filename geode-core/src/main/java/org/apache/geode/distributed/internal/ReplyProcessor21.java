@@ -35,6 +35,7 @@ import org.apache.geode.internal.util.concurrent.StoppableCountDownLatch;
 import org.apache.logging.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class processes responses to {@link DistributionMessage}s. It handles a the generic case of
@@ -116,6 +117,14 @@ public class ReplyProcessor21 implements MembershipListener {
   /** Have we heard back from everyone? */
   private volatile boolean done;
 
+  /**
+   * The future of {@link #waitForRepliesAsync}, set once it has called {@link #preWait}; from then
+   * on the future is completed by {@link #finished}.
+   *
+   * Concurrency: protected by synchronization of this processor
+   */
+  private CompletableFuture<Void> asyncWait;
+
   protected boolean keeperCleanedUp;
 
   /** Have we been aborted due to shutdown? */
@@ -605,6 +614,56 @@ public class ReplyProcessor21 implements MembershipListener {
     }
   }
 
+  /**
+   * Returns a future that is completed once the expected replies have been received, without a
+   * thread waiting for them. Members that depart are no longer waited for, as when waiting.
+   * <p>
+   * The future is completed by the thread that processed the last reply, usually a P2P reader, so
+   * what depends on it should be done in another thread. That thread then calls one of the
+   * waitForReplies methods, which return at once, to have the exception of a reply thrown and the
+   * processor cleaned up.
+   * <p>
+   * Unlike the waitForReplies methods, this does not raise ack-wait-threshold alerts.
+   *
+   * @throws IllegalStateException if the processor is not registered to receive messages
+   */
+  public final CompletableFuture<Void> waitForRepliesAsync() {
+    if (this.keeperCleanedUp) {
+      throw new IllegalStateException(
+          LocalizedStrings.ReplyProcessor21_THIS_REPLY_PROCESSOR_HAS_ALREADY_BEEN_REMOVED_FROM_THE_PROCESSOR_KEEPER
+              .toLocalizedString());
+    }
+    final CompletableFuture<Void> result = new CompletableFuture<Void>();
+    if (!this.done && stillWaiting()) {
+      preWait();
+    }
+    boolean isDone;
+    synchronized (this) {
+      this.asyncWait = result;
+      isDone = this.done;
+    }
+    if (isDone) {
+      // finished() ran before the wait started, so it is up to us to end it
+      endAsyncWait(result);
+    } else {
+      checkIfDone();
+    }
+    return result;
+  }
+
+  /** Ends the wait started by {@link #waitForRepliesAsync} and completes its future */
+  private void endAsyncWait(CompletableFuture<Void> future) {
+    try {
+      if (this.waiting) {
+        postWait();
+      }
+    } catch (RuntimeException e) {
+      future.completeExceptionally(e);
+      return;
+    }
+    future.complete(null);
+  }
+
   /**
    * Wait a given number of milliseconds for the expected acks to be received. If <code>msecs</code>
    * milliseconds pass before all acknowlegdements are received, <code>false</code> is returned.
@@ -931,18 +990,23 @@ public class ReplyProcessor21 implements MembershipListener {
   /** do processing required when finished */
   protected final void finished() {
     boolean isDone = false;
+    CompletableFuture<Void> endedAsyncWait = null;
     synchronized (this) {
       if (!this.done) { // make sure only called once
         this.done = true;
         isDone = true;
         // getSync().release(); // notifies threads in waitForReplies
         getLatch().countDown();
+        endedAsyncWait = this.asyncWait;
       }
     } // synchronized
 
     // ensure that postFinish is invoked only once
     if (isDone) {
       postFinish();
+      if (endedAsyncWait != null) {
+        endAsyncWait(endedAsyncWait);
+      }
     }
   }
 
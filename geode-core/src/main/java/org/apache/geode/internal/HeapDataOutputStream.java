@@ -47,8 +47,8 @@ import java.util.LinkedList;
  *        DataSerializer.writeObject(obj, stream); } catch (BufferOverflowException e) { succeeded =
  *        false; }
  */
-public class HeapDataOutputStream extends OutputStream
-    implements ObjToByteArraySerializer, VersionedDataStream, ByteBufferWriter {
+public class HeapDataOutputStream extends OutputStream implements ObjToByteArraySerializer,
+    VersionedDataStream, ByteBufferWriter, ByteArrayReferencingOutput {
   private static final Logger logger = LogService.getLogger();
   ByteBuffer buffer;
   protected LinkedList<ByteBuffer> chunks = null;
@@ -151,6 +151,7 @@ public class HeapDataOutputStream extends OutputStream
    * Returns true if this HDOS currently does not copy byte arrays/buffers written to it. Instead of
    * copying a reference is kept to the original array/buffer.
    */
+  @Override
   public boolean setDoNotCopy(boolean v) {
     boolean result = this.doNotCopy;
     if (result != v) {
@@ -214,7 +215,15 @@ public class HeapDataOutputStream extends OutputStream
     if (amount < MIN_CHUNK_SIZE) {
       amount = MIN_CHUNK_SIZE;
     }
-    this.buffer = ByteBuffer.allocate(amount);
+    this.buffer = allocateChunk(amount);
+  }
+
+  /**
+   * Allocates a buffer of at least the given size that is written to once the current one is full.
+   * Subclasses may take it from a pool, as long as the contents of the stream are not handed out.
+   */
+  protected ByteBuffer allocateChunk(int size) {
+    return ByteBuffer.allocate(size);
   }
 
   private final void checkIfWritable() {
@@ -303,7 +312,7 @@ public class HeapDataOutputStream extends OutputStream
     this.chunks.add(bufToAdd);
     int newPos = oldBuffer.limit();
     if ((oldBuffer.capacity() - newPos) <= 0) {
-      this.buffer = ByteBuffer.allocate(MIN_CHUNK_SIZE);
+      this.buffer = allocateChunk(MIN_CHUNK_SIZE);
     } else {
       oldBuffer.limit(oldBuffer.capacity());
       oldBuffer.position(newPos);
@@ -37,6 +37,7 @@ import java.lang.reflect.Proxy;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -86,6 +87,7 @@ import org.apache.geode.distributed.internal.InternalDistributedSystem;
 import org.apache.geode.distributed.internal.LonerDistributionManager;
 import org.apache.geode.distributed.internal.SerialDistributionMessage;
 import org.apache.geode.i18n.StringId;
+import org.apache.geode.internal.cache.CachedDeserializable;
 import org.apache.geode.internal.cache.EnumListenerEvent;
 import org.apache.geode.internal.cache.EventID;
 import org.apache.geode.internal.cache.GemFireCacheImpl;
@@ -2288,12 +2290,12 @@ public abstract class InternalDataSerializer extends DataSerializer implements D
         };
       }
       boolean wasDoNotCopy = false;
-      if (out instanceof HeapDataOutputStream) {
+      if (out instanceof ByteArrayReferencingOutput) {
         // To fix bug 52197 disable doNotCopy mode
         // while serialize with an ObjectOutputStream.
         // The problem is that ObjectOutputStream keeps
         // an internal byte array that it reuses while serializing.
-        wasDoNotCopy = ((HeapDataOutputStream) out).setDoNotCopy(false);
+        wasDoNotCopy = ((ByteArrayReferencingOutput) out).setDoNotCopy(false);
       }
       try {
         ObjectOutput oos = new ObjectOutputStream(stream);
@@ -2309,7 +2311,7 @@ public abstract class InternalDataSerializer extends DataSerializer implements D
         oos.flush();
       } finally {
         if (wasDoNotCopy) {
-          ((HeapDataOutputStream) out).setDoNotCopy(true);
+          ((ByteArrayReferencingOutput) out).setDoNotCopy(true);
         }
       }
     }
@@ -2572,6 +2574,20 @@ public abstract class InternalDataSerializer extends DataSerializer implements D
   public static final byte INT_ARRAY_LEN = -3; // array len encoded as int in next 4 bytes
   private static final int MAX_BYTE_ARRAY_LEN = ((byte) -4) & 0xFF;
 
+  /**
+   * Writes the given byte array in the format of {@link DataSerializer#writeByteArray}. The array
+   * must never be modified, like the serialized bytes of a {@link CachedDeserializable}, as it is
+   * given to a {@link ByteBufferWriter} output, which may send it later without copying it.
+   */
+  public static void writeImmutableByteArray(byte[] array, DataOutput out) throws IOException {
+    if (array != null && array.length > 0 && out instanceof ByteBufferWriter) {
+      writeArrayLength(array.length, out);
+      ((ByteBufferWriter) out).write(ByteBuffer.wrap(array));
+    } else {
+      DataSerializer.writeByteArray(array, out);
+    }
+  }
+
   public static void writeArrayLength(int len, DataOutput out) throws IOException {
     if (len == -1) {
       out.writeByte(NULL_ARRAY);
@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.geode.cache.AsyncRegion;
+import org.apache.geode.cache.DataPolicy;
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.client.internal.ServerRegionProxy;
+import org.apache.geode.internal.offheap.annotations.Released;
+
+/**
+ * The {@link AsyncRegion} of a region. Client regions without local storage send their operations
+ * through the {@link ServerRegionProxy} without waiting for the responses, and partitioned regions
+ * wait for the replies of remote gets with {@link PartitionedRegion#getAsync}; everything else is
+ * done synchronously.
+ */
+public class AsyncRegionImpl<K, V> implements AsyncRegion<K, V> {
+
+  private final Region<K, V> region;
+
+  public AsyncRegionImpl(Region<K, V> region) {
+    if (region == null) {
+      throw new NullPointerException("region");
+    }
+    this.region = region;
+  }
+
+  @Override
+  public Region<K, V> getRegion() {
+    return this.region;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<V> getAsync(Object key) {
+    try {
+      ServerRegionProxy proxy = getAsyncServerProxy();
+      if (proxy != null) {
+        final LocalRegion localRegion = (LocalRegion) this.region;
+        localRegion.validateKey(key);
+        final CachePerfStats stats = localRegion.getCachePerfStats();
+        final long start = stats.startGet();
+        return proxy.getAsync(key, null).thenApply(value -> {
+          stats.endGet(start, value == null);
+          return (V) value;
+        });
+      }
+      if (this.region instanceof PartitionedRegion) {
+        return ((PartitionedRegion) this.region).getAsync(key).thenApply(value -> (V) value);
+      }
+      return CompletableFuture.completedFuture(this.region.get(key));
+    } catch (RuntimeException e) {
+      return failedFuture(e);
+    }
+  }
+
+  @Override
+  public CompletableFuture<Void> putAsync(K key, V value) {
+    try {
+      ServerRegionProxy proxy = getAsyncServerProxy();
+      if (proxy != null) {
+        final LocalRegion localRegion = (LocalRegion) this.region;
+        final long start = CachePerfStats.getStatTime();
+        @Released
+        final EntryEventImpl event = localRegion.newUpdateEntryEvent(key, value, null);
+        try {
+          event.setNewEventId(localRegion.getCache().getDistributedSystem());
+          CompletableFuture<Object> put = proxy.putAsync(key, value, event, null);
+          put.whenComplete((result, ex) -> event.release());
+          return put.thenApply(result -> {
+            localRegion.getCachePerfStats().endPut(start, false);
+            return null;
+          });
+        } catch (RuntimeException e) {
+          event.release();
+          throw e;
+        }
+      }
+      this.region.put(key, value);
+      return CompletableFuture.completedFuture(null);
+    } catch (RuntimeException e) {
+      return failedFuture(e);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public CompletableFuture<Map<K, V>> getAllAsync(Collection<? extends K> keys) {
+    try {
+      if (keys == null) {
+        throw new NullPointerException("The collection of keys for getAll cannot be null");
+      }
+      ServerRegionProxy proxy = getAsyncServerProxy();
+      if (proxy != null) {
+        final List keyList = new ArrayList(keys);
+        for (Object key : keyList) {
+          ((LocalRegion) this.region).validateKey(key);
+        }
+        if (keyList.isEmpty()) {
+          return CompletableFuture.completedFuture(new HashMap<K, V>());
+        }
+        return proxy.getAllAsync(keyList, null).thenApply(values -> (Map<K, V>) values);
+      }
+      if (this.region instanceof PartitionedRegion) {
+        return getAllFromPartitionedRegion(keys);
+      }
+      return CompletableFuture.completedFuture(this.region.getAll(keys));
+    } catch (RuntimeException e) {
+      return failedFuture(e);
+    }
+  }
+
+  /** Gets each key with {@link PartitionedRegion#getAsync}, to wait for all the replies at once */
+  @SuppressWarnings("unchecked")
+  private CompletableFuture<Map<K, V>> getAllFromPartitionedRegion(Collection<? extends K> keys) {
+    final PartitionedRegion pr = (PartitionedRegion) this.region;
+    final Map<K, CompletableFuture<Object>> gets = new HashMap<K, CompletableFuture<Object>>();
+    for (K key : keys) {
+      if (!gets.containsKey(key)) {
+        gets.put(key, pr.getAsync(key));
+      }
+    }
+    return CompletableFuture.allOf(gets.values().toArray(new CompletableFuture[gets.size()]))
+        .thenApply(ignored -> {
+          Map<K, V> result = new HashMap<K, V>();
+          for (Map.Entry<K, CompletableFuture<Object>> get : gets.entrySet()) {
+            result.put(get.getKey(), (V) get.getValue().join());
+          }
+          return result;
+        });
+  }
+
+  /**
+   * Returns the proxy to send the operations of the region with, if it is a client region whose
+   * operations only need a response from the server.
+   */
+  private ServerRegionProxy getAsyncServerProxy() {
+    if (!(this.region instanceof LocalRegion)) {
+      return null;
+    }
+    LocalRegion localRegion = (LocalRegion) this.region;
+    ServerRegionProxy proxy = localRegion.getServerProxy();
+    if (proxy == null || localRegion.getDataPolicy() != DataPolicy.EMPTY
+        || localRegion.hasListener() || localRegion.basicGetWriter() != null
+        || localRegion.basicGetLoader() != null) {
+      return null;
+    }
+    localRegion.checkReadiness();
+    if (localRegion.isTX()) {
+      return null;
+    }
+    return proxy;
+  }
+
+  private static <T> CompletableFuture<T> failedFuture(Throwable t) {
+    CompletableFuture<T> result = new CompletableFuture<T>();
+    result.completeExceptionally(t);
+    return result;
+  }
+}
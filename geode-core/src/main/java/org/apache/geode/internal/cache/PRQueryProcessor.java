@@ -333,7 +333,7 @@ public class PRQueryProcessor {
   }
 
   private Collection coalesceOrderedResults(Collection<Collection> results,
-      ExecutionContext context, CompiledSelect cs, int limit) {
+      ExecutionContext context, CompiledSelect cs, int limit) throws QueryException {
     List<Collection> sortedResults = new ArrayList<Collection>(results.size());
     // TODO :Asif : Deal with UNDEFINED
     for (Object o : results) {
@@ -342,8 +342,17 @@ public class PRQueryProcessor {
       }
     }
 
-    NWayMergeResults mergedResults = new NWayMergeResults(sortedResults, cs.isDistinct(), limit,
-        cs.getOrderByAttrs(), context, cs.getElementTypeForOrderByQueries());
+    // The buckets of a group by query each return a partial result per group. Combine these into
+    // a single partial result per group, so that only one row per group is sent to the query node.
+    // The limit can only be applied once the groups have been combined.
+    boolean combineGroups = cs.getType() == CompiledValue.GROUP_BY_SELECT
+        && ((CompiledGroupBySelect) cs).canCombinePartialAggregates();
+    NWayMergeResults mergedResults =
+        new NWayMergeResults(sortedResults, cs.isDistinct(), combineGroups ? -1 : limit,
+            cs.getOrderByAttrs(), context, cs.getElementTypeForOrderByQueries());
+    if (combineGroups) {
+      return ((CompiledGroupBySelect) cs).combinePartialAggregates(mergedResults, context, limit);
+    }
     return mergedResults;
 
   }
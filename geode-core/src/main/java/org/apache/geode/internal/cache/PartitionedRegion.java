@@ -4874,6 +4874,57 @@ public class PartitionedRegion extends LocalRegion
     return value;
   }
 
+  /**
+   * Gets the value of the key without waiting for it when it is read from a bucket hosted by
+   * another member: the returned future is completed once the reply to the {@link GetMessage} has
+   * been processed, by a thread of the waiting pool. Gets that cannot be done with a single message,
+   * such as those that may load the value or are part of a transaction, are done like
+   * {@link #get(Object)} before this method returns, as are the gets of local buckets. A get whose
+   * reply asks for a reattempt is retried like {@link #get(Object)} by the waiting pool.
+   *
+   * @return a future completed with the value, or null if there is none
+   */
+  public CompletableFuture<Object> getAsync(final Object key) {
+    final CachePerfStats stats = getCachePerfStats();
+    final long start = stats.startGet();
+    final GetResponse response;
+    try {
+      validateKey(key);
+      checkReadiness();
+      InternalDistributedMember targetNode = null;
+      if (getTXState() == null && !this.haveCacheLoader && !localCacheEnabled) {
+        int bucketId = PartitionedRegionHelper.getHashKey(this, Operation.GET, key, null, null);
+        targetNode = getNodeForBucketRead(bucketId);
+      }
+      if (targetNode == null || targetNode.equals(getMyId())) {
+        return CompletableFuture.completedFuture(get(key));
+      }
+      try {
+        response = GetMessage.send(targetNode, this, key, null, null, false);
+      } catch (ForceReattemptException e) {
+        return CompletableFuture.completedFuture(get(key));
+      }
+      this.prStats.incPartitionMessagesSent();
+    } catch (RuntimeException e) {
+      CompletableFuture<Object> result = new CompletableFuture<Object>();
+      result.completeExceptionally(e);
+      return result;
+    }
+    return response.waitForRepliesAsync().thenApplyAsync(ignored -> {
+      Object value;
+      try {
+        value = response.waitForResponse(false);
+      } catch (ForceReattemptException | PrimaryBucketException e) {
+        return get(key);
+      }
+      if (Token.isInvalid(value) || value == Token.TOMBSTONE) {
+        value = null;
+      }
+      stats.endGet(start, value == null);
+      return value;
+    }, getDistributionManager().getWaitingThreadPool());
+  }
+
   private ResultCollector executeFunctionOnRemoteNode(InternalDistributedMember targetNode,
       final Function function, final Object object, final Set routingKeys, ResultCollector rc,
       Set bucketSet, ServerToClientFunctionResultSender sender, AbstractExecution execution) {
@@ -22,6 +22,7 @@ import java.io.IOException;
 import org.apache.geode.DataSerializer;
 import org.apache.geode.cache.Region;
 import org.apache.geode.internal.DataSerializableFixedID;
+import org.apache.geode.internal.InternalDataSerializer;
 import org.apache.geode.internal.Version;
 import org.apache.geode.internal.i18n.LocalizedStrings;
 import org.apache.geode.internal.lang.StringUtils;
@@ -119,7 +120,7 @@ public final class PreferBytesCachedDeserializable
   }
 
   public void toData(DataOutput out) throws IOException {
-    DataSerializer.writeByteArray(this.value, out);
+    InternalDataSerializer.writeImmutableByteArray(this.value, out);
   }
 
   String getShortClassName() {
@@ -23,6 +23,7 @@ import org.apache.geode.CopyHelper;
 import org.apache.geode.DataSerializer;
 import org.apache.geode.cache.Region;
 import org.apache.geode.internal.DataSerializableFixedID;
+import org.apache.geode.internal.InternalDataSerializer;
 import org.apache.geode.internal.Version;
 import org.apache.geode.internal.cache.lru.LRUEntry;
 import org.apache.geode.internal.i18n.LocalizedStrings;
@@ -221,7 +222,12 @@ public final class VMCachedDeserializable implements CachedDeserializable, DataS
 
   public void toData(DataOutput out) throws IOException {
     // fix for bug 38309
-    DataSerializer.writeObjectAsByteArray(getValue(), out);
+    Object v = getValue();
+    if (v instanceof byte[]) {
+      InternalDataSerializer.writeImmutableByteArray((byte[]) v, out);
+    } else {
+      DataSerializer.writeObjectAsByteArray(v, out);
+    }
   }
 
   String getShortClassName() {
@@ -1517,6 +1517,48 @@ public class HARegionQueue implements RegionQueue {
     } // for
   }
 
+  /**
+   * Peeks the events that follow those already peeked by this thread, at most maxSize of them,
+   * without waiting for more to be added. Their counters are added to the thread-context, so that
+   * upon calling of remove(), they are removed from the queue along with the events peeked before.
+   * 
+   * @param maxSize The maximum number of events to peek
+   * 
+   * @return The list of events peeked, which may be empty
+   */
+  public List peekMore(int maxSize) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    List peekedIds = (List) HARegionQueue.peekedEventsContext.get();
+    if (peekedIds == null) {
+      peekedIds = new LinkedList();
+      HARegionQueue.peekedEventsContext.set(peekedIds);
+    }
+    Set alreadyPeeked = new HashSet(peekedIds);
+    List batch = new ArrayList();
+    acquireReadLock();
+    try {
+      for (Iterator itr = this.idsAvailable.iterator(); itr.hasNext() && batch.size() < maxSize;) {
+        Long counter = (Long) itr.next();
+        if (alreadyPeeked.contains(counter)) {
+          continue;
+        }
+        Object event = this.region.get(counter);
+        if (event instanceof HAEventWrapper) {
+          event = this.haContainer.get(event);
+        }
+        if (event != null) {
+          batch.add(event);
+          peekedIds.add(counter);
+        }
+      }
+    } finally {
+      releaseReadLock();
+    }
+    return batch;
+  }
+
   /**
    * This method prepares the batch of events and updates the thread-context with corresponding
    * counters, so that when remove is called by this thread, these events are destroyed from the
@@ -2446,6 +2488,15 @@ public class HARegionQueue implements RegionQueue {
     LinkedList unremovedElements = null;
     HashMap currDurableMap = null;
 
+    /**
+     * Peeks nothing more: the events of a durable queue are taken from the available ids as they
+     * are peeked, and are then tracked until acknowledged, one peek at a time.
+     */
+    @Override
+    public List peekMore(int maxSize) {
+      return Collections.emptyList();
+    }
+
     protected DurableHARegionQueue(String regionName, GemFireCacheImpl cache,
         HARegionQueueAttributes hrqa, Map haContainer, ClientProxyMembershipID clientProxyId,
         final byte clientConflation, boolean isPrimary)
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.ha;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.geode.internal.cache.Conflatable;
+
+/**
+ * A conflating queue of events for a single client, which any number of threads put to and a single
+ * dispatcher thread peeks and removes from, without any lock.
+ * <p>
+ * The events are kept in a linked list: a put swaps its node in as the tail, then links the
+ * previous tail to it, and the dispatcher follows the links from the head. Until a put has linked
+ * its node, the dispatcher sees the list end before it, and the events of the later puts wait.
+ * <p>
+ * Like the conflation indexes of {@link HARegionQueue}, an index maps the region and the key of
+ * every conflatable event to its node. A put of a conflatable event replaces the node of the
+ * previous event of its key in the index and clears that node, which the dispatcher then skips. The
+ * node of an event is cleared once, by either its conflation or its removal, which keeps the size
+ * exact.
+ * <p>
+ * Unlike {@link HARegionQueue}, this queue is not backed by a region: it does not take part in GII,
+ * expiry or queue removal messages.
+ */
+public class MpscConflatingQueue {
+
+  private static final AtomicReferenceFieldUpdater<Node, Conflatable> EVENT_UPDATER =
+      AtomicReferenceFieldUpdater.newUpdater(Node.class, Conflatable.class, "event");
+
+  private final AtomicReference<Node> tail;
+
+  /** The node before the first event, only used by the dispatcher */
+  private Node head;
+
+  /** The last node of the events peeked, only used by the dispatcher */
+  private Node lastPeeked;
+
+  /** The region name -> conflation key -> node of the latest event of the key */
+  private final ConcurrentMap<String, ConcurrentMap<Object, Node>> indexes =
+      new ConcurrentHashMap<>();
+
+  private final AtomicInteger size = new AtomicInteger();
+
+  private final AtomicLong eventsConflated = new AtomicLong();
+
+  /** The dispatcher, while it waits for events */
+  private volatile Thread waiter;
+
+  public MpscConflatingQueue() {
+    this.head = new Node(null, null, null);
+    this.tail = new AtomicReference<>(this.head);
+  }
+
+  /**
+   * Adds the event at the tail of this queue, and clears the previous event of its key if it is
+   * conflatable.
+   */
+  public void put(Conflatable event) {
+    ConcurrentMap<Object, Node> index = null;
+    Object key = null;
+    if (event.shouldBeConflated()) {
+      index = this.indexes.computeIfAbsent(event.getRegionToConflate(),
+          regionName -> new ConcurrentHashMap<>());
+      key = event.getKeyToConflate();
+    }
+    Node node = new Node(event, index, key);
+    // counted before being linked, so that its removal never makes the size negative
+    this.size.incrementAndGet();
+    if (index != null) {
+      Node previous = index.put(key, node);
+      if (previous != null && previous.clear()) {
+        this.size.decrementAndGet();
+        this.eventsConflated.incrementAndGet();
+      }
+    }
+    // a volatile write, so that it is seen by a dispatcher registered as waiter before the read
+    this.tail.getAndSet(node).next = node;
+
+    Thread waiter = this.waiter;
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+    }
+  }
+
+  /**
+   * Returns the first event of this queue without removing it, or null if it is empty. Only the
+   * dispatcher may call this.
+   */
+  public Conflatable peek() {
+    List<Conflatable> batch = peek(1);
+    return batch.isEmpty() ? null : batch.get(0);
+  }
+
+  /**
+   * Returns up to <code>batchSize</code> events from the head of this queue without removing them.
+   * The events stay in the queue until {@link #remove()}, and are peeked again until then. Only the
+   * dispatcher may call this.
+   */
+  public List<Conflatable> peek(int batchSize) {
+    List<Conflatable> batch = new ArrayList<>(Math.min(batchSize, 64));
+    Node node = skipCleared();
+    Node last = this.head;
+    while (node != null && batch.size() < batchSize) {
+      Conflatable event = node.event;
+      if (event != null) {
+        batch.add(event);
+        last = node;
+      }
+      node = node.next;
+    }
+    this.lastPeeked = last;
+    return batch;
+  }
+
+  /**
+   * Like {@link #peek(int)}, but waits up to <code>timeToWait</code> milliseconds for the first
+   * event when this queue is empty.
+   */
+  public List<Conflatable> peek(int batchSize, int timeToWait) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeToWait);
+    List<Conflatable> batch = peek(batchSize);
+    while (batch.isEmpty()) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        break;
+      }
+      this.waiter = Thread.currentThread();
+      try {
+        // checked again once registered, so that a put in between is not missed
+        if (skipCleared() == null) {
+          LockSupport.parkNanos(this, remaining);
+        }
+      } finally {
+        this.waiter = null;
+      }
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      batch = peek(batchSize);
+    }
+    return batch;
+  }
+
+  /**
+   * Removes the events returned by the last peek. Only the dispatcher may call this.
+   */
+  public void remove() {
+    Node last = this.lastPeeked;
+    if (last == null) {
+      return;
+    }
+    Node node = this.head;
+    while (node != last) {
+      node = node.next;
+      if (node.clear()) {
+        this.size.decrementAndGet();
+        node.removeFromIndex();
+      }
+    }
+    this.head = last;
+    this.lastPeeked = null;
+  }
+
+  /**
+   * Removes and returns up to <code>batchSize</code> events from the head of this queue. Only the
+   * dispatcher may call this.
+   */
+  public List<Conflatable> take(int batchSize) {
+    List<Conflatable> batch = peek(batchSize);
+    remove();
+    return batch;
+  }
+
+  public int size() {
+    return this.size.get();
+  }
+
+  public boolean isEmpty() {
+    return this.size.get() == 0;
+  }
+
+  /**
+   * Returns the number of events cleared by a later event of their key.
+   */
+  public long getEventsConflated() {
+    return this.eventsConflated.get();
+  }
+
+  /**
+   * Moves the head past the events cleared by conflation, and returns the node of the first event,
+   * or null if there is none.
+   */
+  private Node skipCleared() {
+    Node node = this.head.next;
+    while (node != null && node.event == null) {
+      // the removed head keeps no event, so the nodes before it can be collected
+      this.head = node;
+      node = node.next;
+    }
+    return node;
+  }
+
+  private static class Node {
+
+    volatile Conflatable event;
+
+    volatile Node next;
+
+    /** The conflation index of the region of the event, if it is conflatable */
+    private final ConcurrentMap<Object, Node> index;
+
+    private final Object key;
+
+    Node(Conflatable event, ConcurrentMap<Object, Node> index, Object key) {
+      this.event = event;
+      this.index = index;
+      this.key = key;
+    }
+
+    /**
+     * Clears the event of this node, returning false if it was already cleared.
+     */
+    boolean clear() {
+      Conflatable event = this.event;
+      return event != null && EVENT_UPDATER.compareAndSet(this, event, null);
+    }
+
+    void removeFromIndex() {
+      if (this.index != null) {
+        this.index.remove(this.key, this);
+      }
+    }
+  }
+}
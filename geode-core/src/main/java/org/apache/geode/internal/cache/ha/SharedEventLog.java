@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.ha;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * A log of the events sent to the clients of a server, which keeps a single copy of every event
+ * however many clients it is sent to, as an alternative to a {@link HARegionQueue} per client.
+ * <p>
+ * Every client reads the log with its own {@link Cursor}, which skips the events its interest
+ * filter rejects. The filter is evaluated when the client reads an event, so the log does not keep
+ * any routing information with the events.
+ * <p>
+ * The events are appended to segments of a fixed size. Every segment counts the cursors which have
+ * not read past it yet, and releases its events once none is left. A new cursor starts at the end
+ * of the log, so it never reads the events appended before it was created.
+ *
+ * @param <E> the type of the events
+ */
+public class SharedEventLog<E> {
+
+  static final int SEGMENT_SIZE = 256;
+
+  /** The segment the events are appended to. Guarded by this log. */
+  private Segment<E> tail = new Segment<>(0);
+
+  /** The number of open cursors. Guarded by this log. */
+  private int cursors;
+
+  private final AtomicLong eventsRetained = new AtomicLong();
+
+  /**
+   * Appends the event at the end of this log.
+   */
+  public synchronized void append(E event) {
+    Segment<E> segment = this.tail;
+    if (segment.size == SEGMENT_SIZE) {
+      Segment<E> next = new Segment<>(this.cursors);
+      segment.next = next;
+      this.tail = next;
+      // the segment filled while no cursor was left in it
+      if (segment.refCount.get() == 0) {
+        release(segment);
+      }
+      segment = next;
+    }
+    segment.events[segment.size] = event;
+    // volatile write, which publishes the event to the cursors
+    segment.size = segment.size + 1;
+    this.eventsRetained.incrementAndGet();
+  }
+
+  /**
+   * Returns a cursor reading the events appended from now on which the filter accepts.
+   */
+  public synchronized Cursor newCursor(Predicate<? super E> filter) {
+    Segment<E> segment = this.tail;
+    segment.refCount.incrementAndGet();
+    this.cursors++;
+    return new Cursor(filter, segment, segment.size);
+  }
+
+  /**
+   * Returns the number of events kept for the cursors which have not read them yet.
+   */
+  public long getEventsRetained() {
+    return this.eventsRetained.get();
+  }
+
+  private void release(Segment<E> segment) {
+    if (segment.released) {
+      return;
+    }
+    segment.released = true;
+    segment.events = null;
+    this.eventsRetained.addAndGet(-segment.size);
+  }
+
+  /**
+   * Counts a cursor leaving the segment, once it has read past it or is closed, and releases the
+   * segment after the last one.
+   */
+  private void leave(Segment<E> segment) {
+    if (segment.refCount.decrementAndGet() == 0) {
+      synchronized (this) {
+        // the tail is released once full, by the append which moves past it
+        if (segment != this.tail) {
+          release(segment);
+        }
+      }
+    }
+  }
+
+  /**
+   * The events of this log a client reads, in order. A cursor is used by a single thread.
+   */
+  public class Cursor {
+
+    private final Predicate<? super E> filter;
+
+    private Segment<E> segment;
+
+    private int index;
+
+    /** Where the events peeked last end */
+    private Segment<E> peekedSegment;
+
+    private int peekedIndex;
+
+    private boolean closed;
+
+    Cursor(Predicate<? super E> filter, Segment<E> segment, int index) {
+      this.filter = filter;
+      this.segment = segment;
+      this.index = index;
+    }
+
+    /**
+     * Returns up to <code>maxSize</code> of the next events the filter accepts, without moving past
+     * them until {@link #remove()}.
+     */
+    public List<E> peek(int maxSize) {
+      List<E> batch = new ArrayList<>(Math.min(maxSize, 64));
+      Segment<E> segment = this.segment;
+      int index = this.index;
+      while (batch.size() < maxSize) {
+        if (index == segment.size) {
+          Segment<E> next = segment.next;
+          if (next == null || index < SEGMENT_SIZE) {
+            break;
+          }
+          segment = next;
+          index = 0;
+          continue;
+        }
+        E event = segment.events[index++];
+        if (this.filter.test(event)) {
+          batch.add(event);
+        }
+      }
+      this.peekedSegment = segment;
+      this.peekedIndex = index;
+      return batch;
+    }
+
+    /**
+     * Moves past the events peeked last, and the events the filter rejected among them.
+     */
+    public void remove() {
+      if (this.peekedSegment == null) {
+        return;
+      }
+      while (this.segment != this.peekedSegment) {
+        Segment<E> left = this.segment;
+        this.segment = left.next;
+        leave(left);
+      }
+      this.index = this.peekedIndex;
+      this.peekedSegment = null;
+    }
+
+    /**
+     * Returns the number of events appended after this cursor, including the ones its filter
+     * rejects.
+     */
+    public long getLag() {
+      long lag = -this.index;
+      for (Segment<E> segment = this.segment; segment != null; segment = segment.next) {
+        lag += segment.size;
+      }
+      return lag;
+    }
+
+    /**
+     * Stops reading this log, releasing the events this cursor has not read.
+     */
+    public void close() {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      // under the lock, so that no segment is appended without counting this cursor
+      synchronized (SharedEventLog.this) {
+        SharedEventLog.this.cursors--;
+        for (Segment<E> segment = this.segment; segment != null; segment = segment.next) {
+          leave(segment);
+        }
+      }
+      this.segment = null;
+    }
+  }
+
+  static class Segment<E> {
+
+    /** The cursors in this segment or before it */
+    final AtomicInteger refCount;
+
+    @SuppressWarnings("unchecked")
+    E[] events = (E[]) new Object[SEGMENT_SIZE];
+
+    volatile int size;
+
+    volatile Segment<E> next;
+
+    boolean released;
+
+    Segment(int refCount) {
+      this.refCount = new AtomicInteger(refCount);
+    }
+  }
+}
@@ -46,6 +46,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -112,6 +114,14 @@ public class AcceptorImpl extends Acceptor implements Runnable {
    */
   private final ThreadPoolExecutor hsPool;
 
+  /**
+   * A pool used by gateway receivers to apply the events of batches along with the threads of the
+   * connections, created on demand.
+   */
+  private ExecutorService batchApplyPool;
+
+  private final Object batchApplyPoolLock = new Object();
+
   /** The port on which this acceptor listens for client connections */
   private final int localPort;
 
@@ -132,10 +142,6 @@ public class AcceptorImpl extends Acceptor implements Runnable {
    */
   private final Selector selector;
   // private final Selector tmpSel;
-  /**
-   * Used for managing direct byte buffer for client comms; null if no selector.
-   */
-  private final LinkedBlockingQueue commBufferQueue;
   /**
    * Used to timeout accepted sockets that we are waiting for the handshake packet
    */
@@ -305,12 +311,25 @@ public class AcceptorImpl extends Acceptor implements Runnable {
       }
       this.maxConnections = tmp_maxConnections;
     }
+    if (!isGatewayReceiver) {
+      // If configured use SSL properties for cache-server
+      this.socketCreator =
+          SocketCreatorFactory.getSocketCreatorForComponent(SecurableCommunicationChannel.SERVER);
+    } else {
+      this.socketCreator =
+          SocketCreatorFactory.getSocketCreatorForComponent(SecurableCommunicationChannel.GATEWAY);
+    }
     {
       int tmp_maxThreads = maxThreads;
+      boolean defaultSelector = false;
       if (maxThreads == CacheServer.DEFAULT_MAX_THREADS) {
         // consult system properties for 5.0.2 backwards compatibility
         if (DEPRECATED_SELECTOR) {
           tmp_maxThreads = DEPRECATED_SELECTOR_POOL_SIZE;
+        } else if (!THREAD_PER_CONNECTION && !isGatewayReceiver && !this.socketCreator.useSSL()) {
+          // the selector cannot be used with SSL nor with gateway transport filters
+          tmp_maxThreads = DEFAULT_SELECTOR_POOL_SIZE;
+          defaultSelector = true;
         }
       }
       if (tmp_maxThreads < 0) {
@@ -328,14 +347,18 @@ public class AcceptorImpl extends Acceptor implements Runnable {
       if (tmp_maxThreads > 0 && isWindows) {
         // bug #40472 and JDK bug 6230761 - NIO can't be used with IPv6 on Windows
         if (getBindAddress() instanceof Inet6Address) {
-          logger.warn(LocalizedMessage
-              .create(LocalizedStrings.AcceptorImpl_IGNORING_MAX_THREADS_DUE_TO_JROCKIT_NIO_BUG));
+          if (!defaultSelector) {
+            logger.warn(LocalizedMessage
+                .create(LocalizedStrings.AcceptorImpl_IGNORING_MAX_THREADS_DUE_TO_JROCKIT_NIO_BUG));
+          }
           tmp_maxThreads = 0;
         }
         // bug #40198 - Selector.wakeup() hangs if VM starts to exit
         if (isJRockit) {
-          logger.warn(LocalizedMessage
-              .create(LocalizedStrings.AcceptorImpl_IGNORING_MAX_THREADS_DUE_TO_WINDOWS_IPV6_BUG));
+          if (!defaultSelector) {
+            logger.warn(LocalizedMessage.create(
+                LocalizedStrings.AcceptorImpl_IGNORING_MAX_THREADS_DUE_TO_WINDOWS_IPV6_BUG));
+          }
           tmp_maxThreads = 0;
         }
       }
@@ -345,36 +368,24 @@ public class AcceptorImpl extends Acceptor implements Runnable {
       Selector tmp_s = null;
       // Selector tmp2_s = null;
       LinkedBlockingQueue tmp_q = null;
-      LinkedBlockingQueue tmp_commQ = null;
       HashSet tmp_hs = null;
       SystemTimer tmp_timer = null;
       if (isSelector()) {
         tmp_s = Selector.open(); // no longer catch ex to fix bug 36907
         // tmp2_s = Selector.open(); // workaround for bug 39624
         tmp_q = new LinkedBlockingQueue();
-        tmp_commQ = new LinkedBlockingQueue();
         tmp_hs = new HashSet(512);
         tmp_timer = new SystemTimer(internalCache.getDistributedSystem(), true);
       }
       this.selector = tmp_s;
       // this.tmpSel = tmp2_s;
       this.selectorQueue = tmp_q;
-      this.commBufferQueue = tmp_commQ;
       this.selectorRegistrations = tmp_hs;
       this.hsTimer = tmp_timer;
       this.tcpNoDelay = tcpNoDelay;
     }
 
     {
-      if (!isGatewayReceiver) {
-        // If configured use SSL properties for cache-server
-        this.socketCreator =
-            SocketCreatorFactory.getSocketCreatorForComponent(SecurableCommunicationChannel.SERVER);
-      } else {
-        this.socketCreator = SocketCreatorFactory
-            .getSocketCreatorForComponent(SecurableCommunicationChannel.GATEWAY);
-      }
-
       final GemFireCacheImpl gc;
       if (getCachedRegionHelper() != null) {
         gc = (GemFireCacheImpl) getCachedRegionHelper().getCache();
@@ -628,6 +639,22 @@ public class AcceptorImpl extends Acceptor implements Runnable {
   @Deprecated
   private final static int DEPRECATED_SELECTOR_POOL_SIZE =
       Integer.getInteger("BridgeServer.SELECTOR_POOL_SIZE", 16).intValue();
+  /**
+   * The number of threads processing client messages when max-threads is not configured. The
+   * acceptor then uses a selector, unless the connections use SSL or belong to a gateway receiver,
+   * so that the number of threads does not grow with the number of clients.
+   */
+  private static final int DEFAULT_SELECTOR_POOL_SIZE =
+      Integer.getInteger(DistributionConfig.GEMFIRE_PREFIX + "AcceptorImpl.defaultMaxThreads",
+          Math.max(16, 4 * Runtime.getRuntime().availableProcessors())).intValue();
+
+  /**
+   * Whether each client connection keeps a thread of its own when max-threads is not configured, as
+   * it did before the acceptor used a selector by default.
+   */
+  private static final boolean THREAD_PER_CONNECTION =
+      Boolean.getBoolean(DistributionConfig.GEMFIRE_PREFIX + "AcceptorImpl.threadPerConnection");
+
   private final static int HANDSHAKE_POOL_SIZE =
       Integer.getInteger("BridgeServer.HANDSHAKE_POOL_SIZE", 4).intValue();
 
@@ -1055,6 +1082,22 @@ public class AcceptorImpl extends Acceptor implements Runnable {
             try {
               if (key.isValid() && key.isReadable()) {
                 // this is the only event we currently register for
+                try {
+                  if (!sc.readMessageFrame()) {
+                    // stay registered until the rest of the message arrives
+                    continue;
+                  }
+                } catch (EOFException ignore) {
+                  finishCon(sc);
+                  continue;
+                } catch (IOException ex) {
+                  finishCon(sc);
+                  if (isRunning()) {
+                    logger.warn(
+                        LocalizedMessage.create(LocalizedStrings.AcceptorImpl_UNEXPECTED, ex));
+                  }
+                  continue;
+                }
                 try {
                   key.cancel();
                   this.selectorRegistrations.remove(sc);
@@ -1341,20 +1384,14 @@ public class AcceptorImpl extends Acceptor implements Runnable {
   }
 
   public ByteBuffer takeCommBuffer() {
-    ByteBuffer result = (ByteBuffer) this.commBufferQueue.poll();
-    if (result == null) {
-      result = ByteBuffer.allocateDirect(this.socketBufferSize);
-    }
-    return result;
+    return BufferPool.getPool().acquireDirectBuffer(this.socketBufferSize, this.stats);
   }
 
   public void releaseCommBuffer(ByteBuffer bb) {
     if (bb == null) { // fix for bug 37107
       return;
     }
-    if (isRunning()) {
-      this.commBufferQueue.offer(bb);
-    }
+    BufferPool.getPool().release(bb);
   }
 
   public void incClientServerCnxCount() {
@@ -1560,7 +1597,6 @@ public class AcceptorImpl extends Acceptor implements Runnable {
           if (this.selectorThread != null) {
             this.selectorThread.interrupt();
           }
-          this.commBufferQueue.clear();
         }
         ClientHealthMonitor.shutdownInstance();
         shutdownSCs();
@@ -1572,6 +1608,7 @@ public class AcceptorImpl extends Acceptor implements Runnable {
           this.pool.shutdownNow();
         }
         this.hsPool.shutdownNow();
+        shutdownBatchApplyPool();
         this.stats.close();
         GemFireCacheImpl myCache = (GemFireCacheImpl) cache;
         if (!myCache.forcedDisconnect()) {
@@ -1747,6 +1784,45 @@ public class AcceptorImpl extends Acceptor implements Runnable {
     return connectionListener;
   }
 
+  /**
+   * Returns the pool the connections of this gateway receiver apply the events of batches with,
+   * creating it with the given number of threads if needed. The pool is shut down when this
+   * acceptor is closed.
+   */
+  public ExecutorService getBatchApplyPool(int threads) {
+    synchronized (this.batchApplyPoolLock) {
+      if (this.shutdown) {
+        throw new RejectedExecutionException(
+            LocalizedStrings.AcceptorImpl_CACHE_SERVER_ON_PORT_0_IS_SHUTTING_DOWN
+                .toLocalizedString(this.localPort));
+      }
+      if (this.batchApplyPool == null) {
+        final ThreadGroup threadGroup = LoggingThreadGroup
+            .createThreadGroup("GatewayReceiver Batch Apply Logger Group", logger);
+        final ThreadFactory threadFactory = new ThreadFactory() {
+          private final AtomicInteger threadId = new AtomicInteger();
+
+          public Thread newThread(final Runnable task) {
+            final Thread thread = new Thread(threadGroup, task,
+                "GatewayReceiver Batch Apply Thread " + this.threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        };
+        this.batchApplyPool = Executors.newFixedThreadPool(threads, threadFactory);
+      }
+      return this.batchApplyPool;
+    }
+  }
+
+  private void shutdownBatchApplyPool() {
+    synchronized (this.batchApplyPoolLock) {
+      if (this.batchApplyPool != null) {
+        this.batchApplyPool.shutdownNow();
+      }
+    }
+  }
+
   public boolean isGatewayReceiver() {
     return this.isGatewayReceiver;
   }
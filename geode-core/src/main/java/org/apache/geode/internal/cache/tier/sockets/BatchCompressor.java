@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.geode.distributed.internal.DistributionConfig;
+import org.apache.geode.distributed.internal.DistributionStats;
+import org.apache.geode.internal.HeapDataOutputStream;
+import org.apache.geode.internal.Version;
+import org.apache.geode.internal.cache.wan.GatewayReceiverStats;
+import org.apache.geode.internal.cache.wan.GatewaySenderStats;
+
+/**
+ * Compresses the events of the batches a gateway sender sends on one connection, and decompresses
+ * them on the gateway receiver, once the {@link HandShake} of the connection has negotiated it. The
+ * parts of the events are replaced by two parts: their size and their parts deflated.
+ * <p>
+ * Consecutive batches have much in common, like region names, the members and threads of the event
+ * ids, or keys and values of the same classes, so each batch is deflated with the end of the
+ * previous batch of the connection as preset dictionary. Both sides have to use the same
+ * dictionary: the sender only moves to the next dictionary once a batch has been sent, and the
+ * receiver decompresses every batch it receives, in order, before anything else. A compressor is
+ * used by a single thread, for a single connection.
+ */
+public class BatchCompressor {
+
+  /** No compression, also replied by the receivers that do not accept compressed batches */
+  public static final byte NONE = 0;
+
+  /** Deflate, with the end of the previous batch as dictionary */
+  public static final byte DEFLATE = 1;
+
+  /** The compression the gateway receivers of this member accept, if requested */
+  static final byte ACCEPTED = Boolean.getBoolean(
+      DistributionConfig.GEMFIRE_PREFIX + "GatewayReceiver.DISABLE_BATCH_COMPRESSION") ? NONE
+          : DEFLATE;
+
+  /** The window of deflate, which would not use a longer dictionary */
+  private static final int DICTIONARY_SIZE = 32 * 1024;
+
+  private Deflater deflater;
+
+  private Inflater inflater;
+
+  private byte[] dictionary;
+
+  /** The dictionary of the batch compressed last, used once that batch has been sent */
+  private byte[] nextDictionary;
+
+  /** Used to copy the parts that are not byte arrays */
+  private final ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+  /**
+   * Replaces the parts of the given message from <code>firstPart</code> on by their size and the
+   * parts compressed.
+   */
+  public void compress(Message message, int firstPart, GatewaySenderStats stats)
+      throws IOException {
+    long start = DistributionStats.getStatTime();
+    byte[] uncompressed;
+    HeapDataOutputStream parts = new HeapDataOutputStream(Version.CURRENT);
+    try {
+      for (int i = firstPart; i < message.getNumberOfParts(); i++) {
+        Part part = message.partsList[i];
+        parts.writeByte(part.getTypeCode());
+        parts.writeInt(part.getLength());
+        part.writeTo(parts, this.buffer);
+        HeapDataOutputStream.flushStream(parts, this.buffer);
+        part.clear();
+      }
+      uncompressed = parts.toByteArray();
+    } finally {
+      parts.close();
+    }
+
+    if (this.deflater == null) {
+      this.deflater = new Deflater(Deflater.BEST_SPEED);
+    }
+    this.deflater.reset();
+    if (this.dictionary != null) {
+      this.deflater.setDictionary(this.dictionary);
+    }
+    this.deflater.setInput(uncompressed);
+    this.deflater.finish();
+    byte[] compressed = new byte[uncompressed.length / 4 + 64];
+    int length = 0;
+    while (!this.deflater.finished()) {
+      if (length == compressed.length) {
+        compressed = Arrays.copyOf(compressed, length * 2);
+      }
+      length += this.deflater.deflate(compressed, length, compressed.length - length);
+    }
+    this.nextDictionary = nextDictionary(uncompressed);
+
+    // not setInt, which caches the encoding of every value
+    byte[] size = new byte[4];
+    Part.encodeInt(uncompressed.length, size);
+    message.setNumberOfParts(firstPart + 2);
+    message.partsList[firstPart].setPartState(size, false);
+    message.partsList[firstPart + 1].setPartState(Arrays.copyOf(compressed, length), false);
+    stats.endBatchCompression(start, uncompressed.length, length);
+  }
+
+  /**
+   * Moves to the dictionary of the batch compressed last, once it has been sent.
+   */
+  public void batchSent() {
+    this.dictionary = this.nextDictionary;
+  }
+
+  /**
+   * Replaces the parts of the given message from <code>firstPart</code> on, compressed by
+   * {@link #compress}, by the parts they were compressed from.
+   */
+  public void decompress(Message message, int firstPart, GatewayReceiverStats stats)
+      throws IOException {
+    long start = DistributionStats.getStatTime();
+    byte[] uncompressed = new byte[message.getPart(firstPart).getInt()];
+    if (this.inflater == null) {
+      this.inflater = new Inflater();
+    }
+    this.inflater.reset();
+    this.inflater.setInput(message.getPart(firstPart + 1).getSerializedForm());
+    try {
+      int length = 0;
+      while (length < uncompressed.length) {
+        int inflated = this.inflater.inflate(uncompressed, length, uncompressed.length - length);
+        if (inflated == 0) {
+          if (this.inflater.needsDictionary() && this.dictionary != null) {
+            this.inflater.setDictionary(this.dictionary);
+          } else {
+            throw new IOException("Compressed batch is truncated or lacks its dictionary");
+          }
+        }
+        length += inflated;
+      }
+    } catch (DataFormatException | IllegalArgumentException e) {
+      // the dictionary set does not match the one the batch was compressed with
+      throw new IOException("Compressed batch could not be decompressed", e);
+    }
+    this.dictionary = nextDictionary(uncompressed);
+
+    ByteBuffer parts = ByteBuffer.wrap(uncompressed);
+    int numberOfParts = firstPart;
+    while (parts.hasRemaining()) {
+      parts.get();
+      int length = parts.getInt();
+      parts.position(parts.position() + length);
+      numberOfParts++;
+    }
+    parts.rewind();
+    message.setNumberOfParts(numberOfParts);
+    for (int i = firstPart; i < numberOfParts; i++) {
+      byte typeCode = parts.get();
+      byte[] bytes = null;
+      int length = parts.getInt();
+      if (length > 0) {
+        bytes = new byte[length];
+        parts.get(bytes);
+      }
+      message.partsList[i].init(bytes, typeCode);
+    }
+    stats.endBatchDecompression(start);
+  }
+
+  private byte[] nextDictionary(byte[] uncompressed) {
+    if (uncompressed.length == 0) {
+      return this.dictionary;
+    }
+    return Arrays.copyOfRange(uncompressed, Math.max(0, uncompressed.length - DICTIONARY_SIZE),
+        uncompressed.length);
+  }
+
+  /**
+   * Releases the native memory of this compressor, which must not be used afterwards.
+   */
+  public void close() {
+    if (this.deflater != null) {
+      this.deflater.end();
+    }
+    if (this.inflater != null) {
+      this.inflater.end();
+    }
+  }
+}
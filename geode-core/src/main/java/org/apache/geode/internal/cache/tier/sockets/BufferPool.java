@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.geode.distributed.internal.DistributionConfig;
+
+/**
+ * A pool of the byte buffers used to read and write client/server messages: the comm buffers of the
+ * connections and the buffers the parts of outgoing messages are serialized into. Buffers are
+ * pooled by size class, each class holding buffers whose capacity is a power of two, with separate
+ * classes for heap and direct buffers. A buffer acquired from the pool has at least the requested
+ * capacity and is to be released to it once it is no longer used.
+ *
+ * The pool holds at most {@link #MAX_POOLED_BYTES} bytes of each kind of buffer; buffers released
+ * past that, and buffers larger than {@link #MAX_POOLED_SIZE}, are left to the garbage collector.
+ *
+ * When gemfire.BufferPool.trackBuffers is set, the pool remembers where each buffer it hands out
+ * was acquired, so that tests can check that all of them were released, and fails when a buffer is
+ * released twice.
+ */
+public class BufferPool {
+
+  /** The smallest size class; smaller buffers are rounded up to it */
+  static final int MIN_POOLED_SIZE = 128;
+
+  /** Buffers larger than this are not pooled */
+  static final int MAX_POOLED_SIZE = Integer
+      .getInteger(DistributionConfig.GEMFIRE_PREFIX + "BufferPool.maxPooledSize", 1024 * 1024)
+      .intValue();
+
+  /** The number of bytes the pooled buffers of each kind, heap or direct, may add up to */
+  static final long MAX_POOLED_BYTES = Long
+      .getLong(DistributionConfig.GEMFIRE_PREFIX + "BufferPool.maxPooledBytes", 32 * 1024 * 1024)
+      .longValue();
+
+  private static final boolean TRACK_BUFFERS =
+      Boolean.getBoolean(DistributionConfig.GEMFIRE_PREFIX + "BufferPool.trackBuffers");
+
+  private static final BufferPool pool = new BufferPool(MAX_POOLED_SIZE, MAX_POOLED_BYTES);
+
+  /** Returns the pool shared by the client and server messages of this VM */
+  public static BufferPool getPool() {
+    return pool;
+  }
+
+  private final int maxPooledSize;
+
+  private final SizeClasses heapBuffers;
+
+  private final SizeClasses directBuffers;
+
+  /** The buffers handed out and released, when the buffers are tracked */
+  private volatile Tracking tracking;
+
+  BufferPool(int maxPooledSize, long maxPooledBytes) {
+    this.maxPooledSize = maxPooledSize;
+    int numClasses = sizeClass(maxPooledSize) + 1;
+    this.heapBuffers = new SizeClasses(numClasses, maxPooledBytes);
+    this.directBuffers = new SizeClasses(numClasses, maxPooledBytes);
+    if (TRACK_BUFFERS) {
+      setTrackBuffers(true);
+    }
+  }
+
+  /**
+   * Returns a heap buffer of at least the given capacity, cleared.
+   *
+   * @param stats the server statistics the pool hit or miss is recorded in, if any
+   */
+  public ByteBuffer acquireHeapBuffer(int size, CacheServerStats stats) {
+    return acquire(size, false, stats);
+  }
+
+  /**
+   * Returns a direct buffer of at least the given capacity, cleared.
+   *
+   * @param stats the server statistics the pool hit or miss is recorded in, if any
+   */
+  public ByteBuffer acquireDirectBuffer(int size, CacheServerStats stats) {
+    return acquire(size, true, stats);
+  }
+
+  private ByteBuffer acquire(int size, boolean direct, CacheServerStats stats) {
+    ByteBuffer result = null;
+    if (size <= this.maxPooledSize) {
+      int sizeClass = sizeClass(size);
+      result = (direct ? this.directBuffers : this.heapBuffers).poll(sizeClass);
+      if (result == null) {
+        size = MIN_POOLED_SIZE << sizeClass;
+      }
+    }
+    if (result != null) {
+      result.clear();
+      if (stats != null) {
+        stats.incBufferPoolHits();
+      }
+    } else {
+      result = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+      if (stats != null) {
+        stats.incBufferPoolMisses();
+      }
+    }
+    Tracking tracked = this.tracking;
+    if (tracked != null) {
+      synchronized (tracked) {
+        tracked.acquired.put(result,
+            new Throwable("buffer of " + result.capacity() + " bytes acquired"));
+        tracked.released.remove(result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns a buffer acquired from this pool to it. The buffer must no longer be used, nor any
+   * slice or duplicate of it.
+   */
+  public void release(ByteBuffer bb) {
+    if (bb == null) {
+      return;
+    }
+    Tracking tracked = this.tracking;
+    if (tracked != null) {
+      synchronized (tracked) {
+        if (tracked.acquired.remove(bb) != null) {
+          tracked.released.put(bb, Boolean.TRUE);
+        } else if (tracked.released.containsKey(bb)) {
+          throw new IllegalStateException("Released a buffer that was already released");
+        }
+      }
+    }
+    int capacity = bb.capacity();
+    if (capacity > this.maxPooledSize || capacity < MIN_POOLED_SIZE
+        || Integer.bitCount(capacity) != 1) {
+      return;
+    }
+    (bb.isDirect() ? this.directBuffers : this.heapBuffers).offer(sizeClass(capacity), bb);
+  }
+
+  /** Drops all the pooled buffers */
+  public void clear() {
+    this.heapBuffers.clear();
+    this.directBuffers.clear();
+  }
+
+  /**
+   * Starts or stops remembering where the buffers handed out are acquired. Buffers acquired while
+   * this is off are not tracked.
+   */
+  public void setTrackBuffers(boolean trackBuffers) {
+    this.tracking = trackBuffers ? new Tracking() : null;
+  }
+
+  /**
+   * Returns where the tracked buffers that have not been released yet were acquired.
+   */
+  public List<Throwable> getUnreleasedBuffers() {
+    Tracking tracked = this.tracking;
+    if (tracked == null) {
+      return new ArrayList<Throwable>();
+    }
+    synchronized (tracked) {
+      return new ArrayList<Throwable>(tracked.acquired.values());
+    }
+  }
+
+  /** Returns the index of the size class holding buffers of the given size */
+  static int sizeClass(int size) {
+    if (size <= MIN_POOLED_SIZE) {
+      return 0;
+    }
+    return Integer.numberOfLeadingZeros(MIN_POOLED_SIZE - 1)
+        - Integer.numberOfLeadingZeros(size - 1);
+  }
+
+  private static class Tracking {
+    /** Where each buffer not released yet was acquired */
+    final Map<ByteBuffer, Throwable> acquired = new IdentityHashMap<ByteBuffer, Throwable>();
+
+    /** The buffers released since, to tell them apart from those acquired before tracking */
+    final Map<ByteBuffer, Boolean> released = new IdentityHashMap<ByteBuffer, Boolean>();
+  }
+
+  /** The pooled buffers of one kind */
+  private static class SizeClasses {
+    private final ConcurrentLinkedQueue<ByteBuffer>[] queues;
+
+    private final AtomicLong pooledBytes = new AtomicLong();
+
+    private final long maxPooledBytes;
+
+    @SuppressWarnings("unchecked")
+    SizeClasses(int numClasses, long maxPooledBytes) {
+      this.queues = new ConcurrentLinkedQueue[numClasses];
+      for (int i = 0; i < numClasses; i++) {
+        this.queues[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+      }
+      this.maxPooledBytes = maxPooledBytes;
+    }
+
+    ByteBuffer poll(int sizeClass) {
+      ByteBuffer result = this.queues[sizeClass].poll();
+      if (result != null) {
+        this.pooledBytes.addAndGet(-result.capacity());
+      }
+      return result;
+    }
+
+    void offer(int sizeClass, ByteBuffer bb) {
+      if (this.pooledBytes.addAndGet(bb.capacity()) > this.maxPooledBytes) {
+        this.pooledBytes.addAndGet(-bb.capacity());
+        return;
+      }
+      this.queues[sizeClass].offer(bb);
+    }
+
+    void clear() {
+      for (ConcurrentLinkedQueue<ByteBuffer> queue : this.queues) {
+        ByteBuffer bb;
+        while ((bb = queue.poll()) != null) {
+          this.pooledBytes.addAndGet(-bb.capacity());
+        }
+      }
+    }
+  }
+}
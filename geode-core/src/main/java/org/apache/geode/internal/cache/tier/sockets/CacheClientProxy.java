@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -90,6 +91,7 @@ import org.apache.geode.internal.cache.ha.HARegionQueue;
 import org.apache.geode.internal.cache.ha.HARegionQueueAttributes;
 import org.apache.geode.internal.cache.ha.HARegionQueueStats;
 import org.apache.geode.internal.cache.tier.InterestType;
+import org.apache.geode.internal.cache.tier.MessageType;
 import org.apache.geode.internal.cache.tier.sockets.ClientUpdateMessageImpl.CqNameToOp;
 import org.apache.geode.internal.cache.tier.sockets.command.Get70;
 import org.apache.geode.internal.cache.versions.VersionTag;
@@ -291,6 +293,14 @@ public class CacheClientProxy implements ClientSession {
   protected static final boolean NOTIFY_REGION_ON_INTEREST =
       Boolean.getBoolean(DistributionConfig.GEMFIRE_PREFIX + "updateAccessTimeOnClientInterest");
 
+  /**
+   * The largest number of events dispatched to a client in one message. Batching is disabled by
+   * default, since clients older than the server cannot unpack the batches. The events of durable
+   * clients are never batched.
+   */
+  static final int MAX_EVENTS_PER_BATCH = Integer
+      .getInteger(DistributionConfig.GEMFIRE_PREFIX + "CacheClientProxy.maxEventsPerBatch", 1);
+
   /**
    * The AcceptorImpl identifier to which the proxy is connected.
    */
@@ -2538,10 +2548,15 @@ public class CacheClientProxy implements ClientSession {
             break;
           }
           // Process the message
-          long start = getStatistics().startTime();
-          //// BUGFIX for BUG#38206 and BUG#37791
-          boolean isDispatched = dispatchMessage(clientMessage);
-          getStatistics().endMessage(start);
+          boolean isDispatched;
+          if (MAX_EVENTS_PER_BATCH > 1 && clientMessage instanceof ClientUpdateMessageImpl) {
+            isDispatched = dispatchBatch(clientMessage);
+          } else {
+            long start = getStatistics().startTime();
+            //// BUGFIX for BUG#38206 and BUG#37791
+            isDispatched = dispatchMessage(clientMessage);
+            getStatistics().endMessage(start);
+          }
           if (isDispatched) {
             this._messageQueue.remove();
             if (clientMessage instanceof ClientMarkerMessageImpl) {
@@ -2821,6 +2836,86 @@ public class CacheClientProxy implements ClientSession {
       return isDispatched;
     }
 
+    /**
+     * Dispatches the given message along with the ones queued after it, at most
+     * <code>MAX_EVENTS_PER_BATCH</code> of them. Consecutive updates are sent in a
+     * <code>CLIENT_EVENT_BATCH</code> message, the other messages one at a time, in queue order.
+     *
+     * @param clientMessage The <code>ClientUpdateMessageImpl</code> peeked from the queue
+     * @return whether all the messages peeked were dispatched, so they can be removed from the
+     *         queue
+     */
+    protected boolean dispatchBatch(ClientMessage clientMessage)
+        throws IOException, InterruptedException {
+      List peeked = this._messageQueue.peekMore(MAX_EVENTS_PER_BATCH - 1);
+      List<ClientUpdateMessageImpl> batch =
+          new ArrayList<ClientUpdateMessageImpl>(peeked.size() + 1);
+      batch.add((ClientUpdateMessageImpl) clientMessage);
+      for (Object next : peeked) {
+        if (next instanceof ClientUpdateMessageImpl) {
+          batch.add((ClientUpdateMessageImpl) next);
+          continue;
+        }
+        if (!sendBatch(batch)) {
+          return false;
+        }
+        batch.clear();
+        long start = getStatistics().startTime();
+        boolean isDispatched = dispatchMessage((ClientMessage) next);
+        getStatistics().endMessage(start);
+        if (!isDispatched) {
+          return false;
+        }
+        if (next instanceof ClientMarkerMessageImpl) {
+          getProxy().markerEnqueued = false;
+        }
+      }
+      return sendBatch(batch);
+    }
+
+    private boolean sendBatch(List<ClientUpdateMessageImpl> batch) throws IOException {
+      if (batch.isEmpty()) {
+        return true;
+      }
+      long start = getStatistics().startTime();
+      if (batch.size() == 1) {
+        boolean isDispatched = dispatchMessage(batch.get(0));
+        getStatistics().endMessage(start);
+        return isDispatched;
+      }
+      List<Message> messages = new ArrayList<Message>(batch.size());
+      int numberOfParts = 1;
+      for (ClientUpdateMessageImpl update : batch) {
+        Message message = update.getMessage(getProxy(), (byte[]) update.getValue());
+        if (message != null) {
+          messages.add(message);
+          numberOfParts += 2 + message.getNumberOfParts();
+        }
+      }
+      if (this._proxy.isPaused()) {
+        if (logger.isDebugEnabled()) {
+          logger.debug("Message Dispatcher of a Paused CCProxy is trying to dispatch a batch");
+        }
+        return false;
+      }
+      Message batchMessage = new Message(numberOfParts, getProxy().getVersion());
+      batchMessage.setMessageType(MessageType.CLIENT_EVENT_BATCH);
+      batchMessage.setTransactionId(0);
+      batchMessage.addIntPart(messages.size());
+      for (Message message : messages) {
+        batchMessage.addBatchedMessage(message);
+      }
+      sendMessage(batchMessage);
+      getStatistics().endBatch(start, batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        this._messageQueue.getStatistics().incEventsDispatched();
+      }
+      if (logger.isTraceEnabled()) {
+        logger.trace("{}: Dispatched a batch of {} events", this, batch.size());
+      }
+      return true;
+    }
+
     private void sendMessage(Message message) throws IOException {
       if (message == null) {
         return;
@@ -58,6 +58,10 @@ public class CacheClientProxyStats implements MessageStats {
   private static final String DELTA_FULL_MESSAGES_SENT = "deltaFullMessagesSent";
   /** Name of the CQ count statistic */
   private static final String CQ_COUNT = "cqCount";
+  /** Name of the batches sent statistic */
+  private static final String BATCHES_SENT = "batchesSent";
+  /** Name of the messages batched statistic */
+  private static final String MESSAGES_BATCHED = "messagesBatched";
 
   /** Id of the messages received statistic */
   private static final int _messagesReceivedId;
@@ -81,6 +85,10 @@ public class CacheClientProxyStats implements MessageStats {
   private static final int _deltaFullMessagesSentId;
   /** Id of the CQ count statistic */
   private static final int _cqCountId;
+  /** Id of the batches sent statistic */
+  private static final int _batchesSentId;
+  /** Id of the messages batched statistic */
+  private static final int _messagesBatchedId;
   private final static int _sentBytesId;
 
   /**
@@ -126,6 +134,12 @@ public class CacheClientProxyStats implements MessageStats {
             "operations"),
 
         f.createLongCounter(CQ_COUNT, "Number of CQs on the client.", "operations"),
+        f.createIntCounter(BATCHES_SENT,
+            "Number of messages sent to the client with more than one client message in them.",
+            "operations"),
+        f.createIntCounter(MESSAGES_BATCHED,
+            "Number of client messages sent in batches. Divided by batchesSent, the average batch size.",
+            "operations"),
         f.createLongCounter("sentBytes", "Total number of bytes sent to client.", "bytes"),});
 
     // Initialize id fields
@@ -140,6 +154,8 @@ public class CacheClientProxyStats implements MessageStats {
     _deltaMessagesSentId = _type.nameToId(DELTA_MESSAGES_SENT);
     _deltaFullMessagesSentId = _type.nameToId(DELTA_FULL_MESSAGES_SENT);
     _cqCountId = _type.nameToId(CQ_COUNT);
+    _batchesSentId = _type.nameToId(BATCHES_SENT);
+    _messagesBatchedId = _type.nameToId(MESSAGES_BATCHED);
     _sentBytesId = _type.nameToId("sentBytes");
   }
 
@@ -269,6 +285,24 @@ public class CacheClientProxyStats implements MessageStats {
     return this._stats.getInt(_cqCountId);
   }
 
+  /**
+   * Returns the current value of the "batchesSent" stat.
+   * 
+   * @return the current value of the "batchesSent" stat
+   */
+  public int getBatchesSent() {
+    return this._stats.getInt(_batchesSentId);
+  }
+
+  /**
+   * Returns the current value of the "messagesBatched" stat.
+   * 
+   * @return the current value of the "messagesBatched" stat
+   */
+  public int getMessagesBatched() {
+    return this._stats.getInt(_messagesBatchedId);
+  }
+
   /**
    * Increments the "messagesReceived" stat.
    */
@@ -353,6 +387,22 @@ public class CacheClientProxyStats implements MessageStats {
     this._stats.incLong(_messageProcessingTimeId, elapsed);
   }
 
+  /**
+   * Increments the "messagesProcessed", "messageProcessingTime", "batchesSent" and
+   * "messagesBatched" stats for a batch of messages sent together.
+   * 
+   * @param start The start of the batch (which is decremented from the current time to determine
+   *        the message processing time).
+   * @param numberOfMessages The number of messages in the batch
+   */
+  public void endBatch(long start, int numberOfMessages) {
+    long ts = DistributionStats.getStatTime();
+    this._stats.incInt(_messagesProcessedId, numberOfMessages);
+    this._stats.incLong(_messageProcessingTimeId, ts - start);
+    this._stats.incInt(_batchesSentId, 1);
+    this._stats.incInt(_messagesBatchedId, numberOfMessages);
+  }
+
   /**
    * Increments the "deltaMessagesSent" stats.
    */
@@ -686,6 +686,7 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
 
       regionName = regionNamePart.getString();
       key = keyPart.getStringOrObject();
+      invalidateNearCache(regionName, key);
       Object callbackArgument = callbackArgumentPart.getObject();
 
       // Don't automatically deserialize the value.
@@ -845,6 +846,7 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
 
       regionName = regionNamePart.getString();
       key = keyPart.getStringOrObject();
+      invalidateNearCache(regionName, key);
 
       Object callbackArgument = callbackArgumentPart.getObject();
       boolean withInterest = ((Boolean) isInterestListPassedPart.getObject()).booleanValue();
@@ -942,6 +944,7 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
 
       regionName = regionNamePart.getString();
       key = keyPart.getStringOrObject();
+      invalidateNearCache(regionName, key);
 
       Part isInterestListPassedPart = m.getPart(partCnt++);
       Part hasCqsPart = m.getPart(partCnt++);
@@ -1027,6 +1030,7 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
       regionNamePart = m.getPart(partCnt++);
       callbackArgumentPart = m.getPart(partCnt++);
       regionName = regionNamePart.getString();
+      invalidateNearCache(regionName);
       callbackArgument = callbackArgumentPart.getObject();
 
       Part hasCqsPart = m.getPart(partCnt++);
@@ -1098,6 +1102,7 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
       Part hasCqsPart = m.getPart(partCnt++);
 
       regionName = regionNamePart.getString();
+      invalidateNearCache(regionName);
       Object callbackArgument = callbackArgumentPart.getObject();
       if (isDebugEnabled) {
         logger.debug("Clearing region: {} callbackArgument: {}", regionName, callbackArgument);
@@ -1164,6 +1169,7 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
       Part hasCqsPart = m.getPart(partCnt++);
 
       regionName = regionNamePart.getString();
+      invalidateNearCache(regionName);
       // Object callbackArgument = callbackArgumentPart.getObject();
 
       if (((Boolean) hasCqsPart.getObject()).booleanValue()) {
@@ -1596,6 +1602,100 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
     }
   }
 
+  /**
+   * Processes a message received from the server, or one of the messages of a batch, unless it is
+   * the duplicate of an event already processed.
+   */
+  private void processMessage(Message m) throws Exception {
+    boolean isDeltaSent = false;
+    boolean isCreateOrUpdate = m.getMessageType() == MessageType.LOCAL_CREATE
+        || m.getMessageType() == MessageType.LOCAL_UPDATE;
+    if (isCreateOrUpdate) {
+      isDeltaSent = ((Boolean) m.getPart(2).getObject()).booleanValue();
+    }
+
+    // extract the eventId and verify if it is a duplicate event
+    // if it is a duplicate event, ignore
+    // @since GemFire 5.1
+    int numberOfParts = m.getNumberOfParts();
+    Part eid = m.getPart(numberOfParts - 1);
+    // TODO the message handling methods also deserialized the eventID - inefficient
+    EventID eventId = (EventID) eid.getObject();
+
+    // no need to verify if the instantiator msg is duplicate or not
+    if (m.getMessageType() != MessageType.REGISTER_INSTANTIATORS
+        && m.getMessageType() != MessageType.REGISTER_DATASERIALIZERS) {
+      if (this.qManager.getState().verifyIfDuplicate(eventId,
+          !(this.isDurableClient || isDeltaSent))) {
+        return;
+      }
+    }
+    if (logger.isTraceEnabled(LogMarker.BRIDGE_SERVER)) {
+      logger.trace(LogMarker.BRIDGE_SERVER,
+          "Processing event with id {}" + eventId.expensiveToString());
+    }
+    this.isOpCompleted = true;
+    // Process the message
+    switch (m.getMessageType()) {
+      case MessageType.LOCAL_CREATE:
+      case MessageType.LOCAL_UPDATE:
+        handleUpdate(m);
+        break;
+      case MessageType.LOCAL_INVALIDATE:
+        handleInvalidate(m);
+        break;
+      case MessageType.LOCAL_DESTROY:
+        handleDestroy(m);
+        break;
+      case MessageType.LOCAL_DESTROY_REGION:
+        handleDestroyRegion(m);
+        break;
+      case MessageType.CLEAR_REGION:
+        handleClearRegion(m);
+        break;
+      case MessageType.REGISTER_INSTANTIATORS:
+        handleRegisterInstantiator(m, eventId);
+        break;
+      case MessageType.REGISTER_DATASERIALIZERS:
+        handleRegisterDataSerializer(m, eventId);
+        break;
+      case MessageType.CLIENT_MARKER:
+        handleMarker(m);
+        break;
+      case MessageType.INVALIDATE_REGION:
+        handleInvalidateRegion(m);
+        break;
+      case MessageType.CLIENT_REGISTER_INTEREST:
+        handleRegisterInterest(m);
+        break;
+      case MessageType.CLIENT_UNREGISTER_INTEREST:
+        handleUnregisterInterest(m);
+        break;
+      case MessageType.TOMBSTONE_OPERATION:
+        handleTombstoneOperation(m);
+        break;
+      default:
+        logger.warn(LocalizedMessage.create(
+            LocalizedStrings.CacheClientUpdater_0_RECEIVED_AN_UNSUPPORTED_MESSAGE_TYPE_1,
+            new Object[] {this, MessageType.getString(m.getMessageType())}));
+        break;
+    }
+
+    if (this.isOpCompleted && (this.isDurableClient || isDeltaSent)) {
+      this.qManager.getState().verifyIfDuplicate(eventId, true);
+    }
+
+    // TODO we should maintain the client's "live" view of the server
+    // but we don't because the server health monitor needs traffic
+    // originating from the client
+    // and by updating the last update stat, the ServerMonitor is less
+    // likely to send pings...
+    // and the ClientHealthMonitor will cause a disconnect -- mthomas
+    // 10/18/2006
+
+    // this._endpoint.setLastUpdate();
+  }
+
   /**
    * Processes messages received from the server.
    * 
@@ -1613,7 +1713,6 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
   protected void processMessages() {
     final boolean isDebugEnabled = logger.isDebugEnabled();
     try {
-      Part eid = null;
       Message _message = initializeMessage();
       if (quitting()) {
         if (isDebugEnabled) {
@@ -1667,94 +1766,14 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
             continue;
           }
 
-          boolean isDeltaSent = false;
-          boolean isCreateOrUpdate = _message.getMessageType() == MessageType.LOCAL_CREATE
-              || _message.getMessageType() == MessageType.LOCAL_UPDATE;
-          if (isCreateOrUpdate) {
-            isDeltaSent = ((Boolean) _message.getPart(2).getObject()).booleanValue();
-          }
-
-          // extract the eventId and verify if it is a duplicate event
-          // if it is a duplicate event, ignore
-          // @since GemFire 5.1
-          int numberOfParts = _message.getNumberOfParts();
-          eid = _message.getPart(numberOfParts - 1);
-          // TODO the message handling methods also deserialized the eventID - inefficient
-          EventID eventId = (EventID) eid.getObject();
-
-          // no need to verify if the instantiator msg is duplicate or not
-          if (_message.getMessageType() != MessageType.REGISTER_INSTANTIATORS
-              && _message.getMessageType() != MessageType.REGISTER_DATASERIALIZERS) {
-            if (this.qManager.getState().verifyIfDuplicate(eventId,
-                !(this.isDurableClient || isDeltaSent))) {
-              continue;
+          if (_message.getMessageType() == MessageType.CLIENT_EVENT_BATCH) {
+            for (Message batched : _message.getBatchedMessages()) {
+              processMessage(batched);
             }
-          }
-          if (logger.isTraceEnabled(LogMarker.BRIDGE_SERVER)) {
-            logger.trace(LogMarker.BRIDGE_SERVER,
-                "Processing event with id {}" + eventId.expensiveToString());
-          }
-          this.isOpCompleted = true;
-          // Process the message
-          switch (_message.getMessageType()) {
-            case MessageType.LOCAL_CREATE:
-            case MessageType.LOCAL_UPDATE:
-              handleUpdate(_message);
-              break;
-            case MessageType.LOCAL_INVALIDATE:
-              handleInvalidate(_message);
-              break;
-            case MessageType.LOCAL_DESTROY:
-              handleDestroy(_message);
-              break;
-            case MessageType.LOCAL_DESTROY_REGION:
-              handleDestroyRegion(_message);
-              break;
-            case MessageType.CLEAR_REGION:
-              handleClearRegion(_message);
-              break;
-            case MessageType.REGISTER_INSTANTIATORS:
-              handleRegisterInstantiator(_message, eventId);
-              break;
-            case MessageType.REGISTER_DATASERIALIZERS:
-              handleRegisterDataSerializer(_message, eventId);
-              break;
-            case MessageType.CLIENT_MARKER:
-              handleMarker(_message);
-              break;
-            case MessageType.INVALIDATE_REGION:
-              handleInvalidateRegion(_message);
-              break;
-            case MessageType.CLIENT_REGISTER_INTEREST:
-              handleRegisterInterest(_message);
-              break;
-            case MessageType.CLIENT_UNREGISTER_INTEREST:
-              handleUnregisterInterest(_message);
-              break;
-            case MessageType.TOMBSTONE_OPERATION:
-              handleTombstoneOperation(_message);
-              break;
-            default:
-              logger.warn(LocalizedMessage.create(
-                  LocalizedStrings.CacheClientUpdater_0_RECEIVED_AN_UNSUPPORTED_MESSAGE_TYPE_1,
-                  new Object[] {this, MessageType.getString(_message.getMessageType())}));
-              break;
-          }
-
-          if (this.isOpCompleted && (this.isDurableClient || isDeltaSent)) {
-            this.qManager.getState().verifyIfDuplicate(eventId, true);
+          } else {
+            processMessage(_message);
           }
 
-          // TODO we should maintain the client's "live" view of the server
-          // but we don't because the server health monitor needs traffic
-          // originating from the client
-          // and by updating the last update stat, the ServerMonitor is less
-          // likely to send pings...
-          // and the ClientHealthMonitor will cause a disconnect -- mthomas
-          // 10/18/2006
-
-          // this._endpoint.setLastUpdate();
-
         } catch (InterruptedIOException e) {
           // Per Sun's support web site, this exception seems to be peculiar
           // to Solaris, and may eventually not even be generated there.
@@ -1822,6 +1841,29 @@ public class CacheClientUpdater extends Thread implements ClientUpdater, Disconn
     }
   }
 
+  /**
+   * Forgets the value of the key kept by the near cache of the region, if it has one. The value is
+   * forgotten whatever the event, since near caches only keep the values read from the server.
+   */
+  private void invalidateNearCache(String regionName, Object key) {
+    if (this.qManager != null) {
+      NearCache nearCache = this.qManager.getNearCaches().get(regionName);
+      if (nearCache != null) {
+        nearCache.invalidate(key);
+      }
+    }
+  }
+
+  /** Forgets all the values kept by the near cache of the region, if it has one */
+  private void invalidateNearCache(String regionName) {
+    if (this.qManager != null) {
+      NearCache nearCache = this.qManager.getNearCaches().get(regionName);
+      if (nearCache != null) {
+        nearCache.invalidateAll();
+      }
+    }
+  }
+
   /**
    * Conditionally print a warning describing the failure
    * <p>
@@ -203,6 +203,9 @@ public class CacheServerStats implements MessageStats {
   int receivedBytesId;
   int sentBytesId;
 
+  int bufferPoolHitsId;
+  int bufferPoolMissesId;
+
   int outOfOrderBatchIdsId;
   int abandonedWriteRequestsId;
   int abandonedReadRequestsId;
@@ -442,6 +445,12 @@ public class CacheServerStats implements MessageStats {
         f.createLongCounter("receivedBytes", "Total number of bytes received from clients.",
             "bytes"),
         f.createLongCounter("sentBytes", "Total number of bytes sent to clients.", "bytes"),
+        f.createLongCounter("bufferPoolHits",
+            "Total number of buffers for client messages that were taken from the buffer pool.",
+            "buffers"),
+        f.createLongCounter("bufferPoolMisses",
+            "Total number of buffers for client messages that had to be allocated because the buffer pool had none of their size.",
+            "buffers"),
         f.createIntGauge("messagesBeingReceived",
             "Current number of message being received off the network or being processed after reception.",
             "messages"),
@@ -589,6 +598,9 @@ public class CacheServerStats implements MessageStats {
     receivedBytesId = this.stats.nameToId("receivedBytes");
     sentBytesId = this.stats.nameToId("sentBytes");
 
+    bufferPoolHitsId = this.stats.nameToId("bufferPoolHits");
+    bufferPoolMissesId = this.stats.nameToId("bufferPoolMisses");
+
     messagesBeingReceivedId = this.stats.nameToId("messagesBeingReceived");
     messageBytesBeingReceivedId = this.stats.nameToId("messageBytesBeingReceived");
     connectionsTimedOutId = this.stats.nameToId("connectionsTimedOut");
@@ -939,6 +951,14 @@ public class CacheServerStats implements MessageStats {
     this.stats.incLong(sentBytesId, v);
   }
 
+  public void incBufferPoolHits() {
+    this.stats.incLong(bufferPoolHitsId, 1);
+  }
+
+  public void incBufferPoolMisses() {
+    this.stats.incLong(bufferPoolMissesId, 1);
+  }
+
   public void incMessagesBeingReceived(int bytes) {
     stats.incInt(messagesBeingReceivedId, 1);
     if (bytes > 0) {
@@ -226,6 +226,26 @@ public class HandShake implements ClientHandShake {
    */
   private byte[] overrides = null;
 
+  /**
+   * Override bit of the gateway senders requesting compressed batches. Receivers only read the
+   * conflation bits, so older ones ignore it and do not reply with the compression they accept.
+   */
+  private static final byte BATCH_COMPRESSION_REQUESTED = 0x40;
+
+  /**
+   * Bit of the endpoint type the gateway receivers set when they reply with the compression they
+   * accept. Endpoint types only use the lower bits, and only the senders requesting compressed
+   * batches get a reply with this bit, so older senders never see it, and a sender only reads the
+   * compression from the receivers that acknowledged the request.
+   */
+  private static final byte BATCH_COMPRESSION_ACKNOWLEDGED = 0x40;
+
+  /** Whether the gateway sender requests, or requested, compressed batches */
+  private boolean batchCompressionRequested = false;
+
+  /** The compression of the batches the gateway receiver accepted */
+  private byte batchCompression = BatchCompressor.NONE;
+
   /**
    * Test hooks for per client conflation
    * 
@@ -284,7 +304,10 @@ public class HandShake implements ClientHandShake {
           // Note: credentials should always be the last piece in handshake for
           // Diffie-Hellman key exchange to work
           if (clientVersion.compareTo(Version.GFE_603) >= 0) {
-            setOverrides(new byte[] {dis.readByte()});
+            byte override = dis.readByte();
+            setOverrides(new byte[] {override});
+            this.batchCompressionRequested = communicationMode == Acceptor.GATEWAY_TO_GATEWAY
+                && (override & BATCH_COMPRESSION_REQUESTED) != 0;
           } else {
             setClientConflation(dis.readByte());
           }
@@ -315,6 +338,23 @@ public class HandShake implements ClientHandShake {
     }
   }
 
+  /**
+   * Makes this gateway sender handshake request compressed batches, which the remote site may or
+   * may not accept.
+   * 
+   * @see ServerQueueStatus#getBatchCompression
+   */
+  public void setBatchCompressionRequested(boolean requested) {
+    this.batchCompressionRequested = requested;
+  }
+
+  /**
+   * Returns the compression of the batches this gateway receiver handshake accepted.
+   */
+  public byte getBatchCompression() {
+    return this.batchCompression;
+  }
+
   public final Version getClientVersion() {
     return this.clientVersion;
   }
@@ -349,6 +389,7 @@ public class HandShake implements ClientHandShake {
     this.isRead = handShake.isRead;
     this.multiuserSecureMode = handShake.multiuserSecureMode;
     this.overrides = handShake.overrides;
+    this.batchCompressionRequested = handShake.batchCompressionRequested;
     this.system = handShake.system;
     this.id = handShake.id;
     // create new one
@@ -480,7 +521,12 @@ public class HandShake implements ClientHandShake {
 
       if (currentClientVersion.compareTo(Version.GFE_603) >= 0) {
         for (int bytes = 0; bytes < this.overrides.length; bytes++) {
-          hdos.writeByte(this.overrides[bytes]);
+          byte override = this.overrides[bytes];
+          if (bytes == 0 && communicationMode == Acceptor.GATEWAY_TO_GATEWAY
+              && this.batchCompressionRequested) {
+            override |= BATCH_COMPRESSION_REQUESTED;
+          }
+          hdos.writeByte(override);
         }
       } else {
         // write the client conflation setting byte
@@ -1141,7 +1187,12 @@ public class HandShake implements ClientHandShake {
       Version.writeOrdinal(dos, ServerHandShakeProcessor.currentServerVersion.ordinal(), true);
     }
 
-    dos.writeByte(epType);
+    // Acknowledge the request of compressed batches, the compression following the pdx size
+    if (communicationMode == Acceptor.GATEWAY_TO_GATEWAY && this.batchCompressionRequested) {
+      dos.writeByte(epType | BATCH_COMPRESSION_ACKNOWLEDGED);
+    } else {
+      dos.writeByte(epType);
+    }
     dos.writeInt(qSize);
 
     // Write the server's member
@@ -1179,6 +1230,12 @@ public class HandShake implements ClientHandShake {
       dos.writeInt(pdxSize);
     }
 
+    // Reply with the compression accepted to the gateway senders requesting one
+    if (communicationMode == Acceptor.GATEWAY_TO_GATEWAY && this.batchCompressionRequested) {
+      this.batchCompression = BatchCompressor.ACCEPTED;
+      dos.writeByte(this.batchCompression);
+    }
+
     // Flush
     dos.flush();
   }
@@ -1250,6 +1307,11 @@ public class HandShake implements ClientHandShake {
       // No need to check for return value since DataInputStream already throws
       // EOFException in case of EOF
       byte epType = dis.readByte();
+      boolean batchCompressionAcknowledged = communicationMode == Acceptor.GATEWAY_TO_GATEWAY
+          && this.batchCompressionRequested && (epType & BATCH_COMPRESSION_ACKNOWLEDGED) != 0;
+      if (batchCompressionAcknowledged) {
+        epType &= ~BATCH_COMPRESSION_ACKNOWLEDGED;
+      }
       int qSize = dis.readInt();
 
       // Read the server member
@@ -1288,6 +1350,11 @@ public class HandShake implements ClientHandShake {
         int remotePdxSize = dis.readInt();
         serverQStatus.setPdxSize(remotePdxSize);
       }
+      // Read the compression of the batches accepted by the remote site, if it acknowledged the
+      // request: older sites ignore it and do not reply with one
+      if (batchCompressionAcknowledged) {
+        serverQStatus.setBatchCompression(dis.readByte());
+      }
 
       return serverQStatus;
     } catch (IOException ex) {
@@ -37,6 +37,9 @@ import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
@@ -127,6 +130,8 @@ public class Message {
   protected ByteBuffer cachedCommBuffer;
   protected Socket socket = null;
   protected SocketChannel sockCh = null;
+  /** The bytes of this message already received from sockCh, read before the channel itself */
+  private ByteBuffer receivedBytes = null;
   protected OutputStream os = null;
   protected InputStream is = null;
   protected boolean messageModified = true;
@@ -235,6 +240,44 @@ public class Message {
     this.partsList = parts;
   }
 
+  /**
+   * Adds the type, the number of parts and the parts of the given message to this batch, which
+   * needs two more parts than the message. The parts are shared, not copied, so they are cleared
+   * once this batch is sent.
+   *
+   * @see #getBatchedMessages
+   */
+  void addBatchedMessage(Message message) {
+    addIntPart(message.getMessageType());
+    addIntPart(message.getNumberOfParts());
+    for (int i = 0; i < message.getNumberOfParts(); i++) {
+      this.partsList[this.currentPart++] = message.partsList[i];
+    }
+  }
+
+  /**
+   * Returns the messages of the batch received, whose first part is their number. The parts of the
+   * messages are those of this one, so they are only valid until the next message is received.
+   *
+   * @see #addBatchedMessage
+   */
+  List<Message> getBatchedMessages() {
+    final int count = getPart(0).getInt();
+    final List<Message> messages = new ArrayList<Message>(count);
+    int index = 1;
+    for (int i = 0; i < count; i++) {
+      final int type = getPart(index++).getInt();
+      final int numParts = getPart(index++).getInt();
+      final Message message = new Message(0, this.version);
+      message.setMessageType(type);
+      message.partsList = Arrays.copyOfRange(this.partsList, index, index + numParts);
+      message.numberOfParts = numParts;
+      messages.add(message);
+      index += numParts;
+    }
+    return messages;
+  }
+
   public void setTransactionId(int transactionId) {
     this.messageModified = true;
     this.transactionId = transactionId;
@@ -369,7 +412,7 @@ public class Message {
     }
     // create the HDOS with a flag telling it that it can keep any byte[] or ByteBuffers/ByteSources
     // passed to it.
-    hdos = new HeapDataOutputStream(chunkSize, v, true);
+    hdos = createPartStream(v, true);
     try {
       BlobHelper.serializeTo(o, hdos);
     } catch (IOException ex) {
@@ -392,7 +435,7 @@ public class Message {
       if (version.equals(Version.CURRENT)) {
         v = null;
       }
-      hdos = new HeapDataOutputStream(chunkSize, v);
+      hdos = createPartStream(v, false);
       try {
         BlobHelper.serializeTo(o, hdos);
       } catch (IOException ex) {
@@ -405,6 +448,20 @@ public class Message {
     }
   }
 
+  /**
+   * Creates the stream an object part is serialized into. The messages of a server connection clear
+   * their parts once they are sent, so their streams take their buffers from the {@link BufferPool}
+   * and release them when the part is cleared. Client messages may be sent again to another server
+   * and keep their parts, so their streams allocate their buffers.
+   */
+  private HeapDataOutputStream createPartStream(Version v, boolean doNotCopy) {
+    if (this.sc == null) {
+      return new HeapDataOutputStream(this.chunkSize, v, doNotCopy);
+    }
+    return PooledHeapDataOutputStream.create(BufferPool.getPool(), this.chunkSize, v, doNotCopy,
+        this.sc.getCacheServerStats());
+  }
+
   public void addIntPart(int v) {
     this.messageModified = true;
     Part part = partsList[this.currentPart];
@@ -673,7 +730,7 @@ public class Message {
     if (this.sockCh != null) {
       cb.limit(headerLength);
       do {
-        int bytesRead = this.sockCh.read(cb);
+        int bytesRead = readChannel(cb);
         // System.out.println("DEBUG: fetchHeader read " + bytesRead + " bytes commBuffer=" + cb);
         if (bytesRead == -1) {
           throw new EOFException(
@@ -889,7 +946,7 @@ public class Message {
               bytesThisTime = cb.capacity();
             }
             cb.limit(bytesThisTime);
-            int res = this.sockCh.read(cb);
+            int res = readChannel(cb);
             if (res != -1) {
               cb.flip();
               bytesRemaining -= res;
@@ -964,7 +1021,7 @@ public class Message {
         cb.limit(cb.position() + bytesRemaining);
       }
       while (remaining > 0) {
-        int res = this.sockCh.read(cb);
+        int res = readChannel(cb);
         if (res != -1) {
           remaining -= res;
           bytesRead += res;
@@ -1007,6 +1064,33 @@ public class Message {
     return bytesRead;
   }
 
+  /**
+   * Reads from the bytes already received, if any are left, and from the channel otherwise.
+   */
+  private int readChannel(ByteBuffer cb) throws IOException {
+    final ByteBuffer received = this.receivedBytes;
+    if (received == null || !received.hasRemaining()) {
+      return this.sockCh.read(cb);
+    }
+    final int length = Math.min(received.remaining(), cb.remaining());
+    final int limit = received.limit();
+    received.limit(received.position() + length);
+    cb.put(received);
+    received.limit(limit);
+    return length;
+  }
+
+  /**
+   * Sets the bytes of the next message that were already received from the channel, so that reading
+   * the message starts with them. What the buffer does not hold is read from the channel.
+   *
+   * @param bb the received bytes, which the message reads from its position on; null once the
+   *        message has been read
+   */
+  void setReceivedBytes(ByteBuffer bb) {
+    this.receivedBytes = bb;
+  }
+
   /**
    * Gets rid of all the parts that have been added to this message.
    */
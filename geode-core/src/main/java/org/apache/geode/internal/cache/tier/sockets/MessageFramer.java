@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import org.apache.geode.distributed.internal.DistributionConfig;
+import org.apache.geode.internal.i18n.LocalizedStrings;
+
+/**
+ * Receives the messages of a {@link ServerConnection} while it is registered with the selector of
+ * its acceptor, reading whatever its non-blocking channel has available each time it is readable.
+ * The connection is handed to a thread of the pool only once a message has been received in full,
+ * so that no thread waits for a slow client to send the rest of it. The received bytes are then
+ * read by the {@link Message}, as if from the channel.
+ *
+ * Messages larger than {@link #MAX_BUFFERED_MESSAGE_SIZE} are handed over once their header has
+ * been received, and the rest of them is read from the channel by the thread processing them.
+ */
+class MessageFramer {
+
+  /** The size of the largest message buffered before being handed to a thread of the pool */
+  static final int MAX_BUFFERED_MESSAGE_SIZE =
+      Integer.getInteger(DistributionConfig.GEMFIRE_PREFIX + "AcceptorImpl.maxBufferedMessageSize",
+          1024 * 1024).intValue();
+
+  /** The offset of the payload length in the message header */
+  private static final int PAYLOAD_LENGTH_OFFSET = 4;
+
+  private final int headerLength;
+
+  private final int maxBufferedSize;
+
+  private final BufferPool pool;
+
+  private final CacheServerStats stats;
+
+  /** The bytes received so far, null if none; the limit is where the bytes to receive end */
+  private ByteBuffer buffer;
+
+  /** Whether the limit of the buffer is the end of the message, not just that of its header */
+  private boolean headerRead;
+
+  /**
+   * @param headerLength the length of the header of the messages
+   * @param stats the server statistics the buffer pool hits and misses are recorded in, if any
+   */
+  MessageFramer(int headerLength, CacheServerStats stats) {
+    this(headerLength, MAX_BUFFERED_MESSAGE_SIZE, BufferPool.getPool(), stats);
+  }
+
+  MessageFramer(int headerLength, int maxBufferedSize, BufferPool pool, CacheServerStats stats) {
+    this.headerLength = headerLength;
+    this.maxBufferedSize = maxBufferedSize;
+    this.pool = pool;
+    this.stats = stats;
+  }
+
+  /**
+   * Reads what the channel has available of the next message without blocking.
+   *
+   * @return true once the message has been received, or as much of it as is buffered
+   * @throws EOFException if the channel has been closed by the client
+   */
+  boolean readFrom(ReadableByteChannel channel) throws IOException {
+    if (this.buffer == null) {
+      this.buffer = this.pool.acquireHeapBuffer(this.headerLength, this.stats);
+      this.buffer.limit(this.headerLength);
+      this.headerRead = false;
+    }
+    for (;;) {
+      if (this.buffer.hasRemaining()) {
+        if (channel.read(this.buffer) < 0) {
+          throw new EOFException(
+              LocalizedStrings.Message_THE_CONNECTION_HAS_BEEN_RESET_WHILE_READING_THE_HEADER
+                  .toLocalizedString());
+        }
+        if (this.buffer.hasRemaining()) {
+          return false;
+        }
+      }
+      if (this.headerRead) {
+        return true;
+      }
+      this.headerRead = true;
+      final int payloadLength = this.buffer.getInt(PAYLOAD_LENGTH_OFFSET);
+      if (payloadLength <= 0 || payloadLength > this.maxBufferedSize - this.headerLength) {
+        // nothing more to buffer; the message reports an invalid length when it is read
+        return true;
+      }
+      final ByteBuffer message =
+          this.pool.acquireHeapBuffer(this.headerLength + payloadLength, this.stats);
+      this.buffer.flip();
+      message.put(this.buffer);
+      message.limit(this.headerLength + payloadLength);
+      this.pool.release(this.buffer);
+      this.buffer = message;
+    }
+  }
+
+  /**
+   * Returns the bytes received of the message, once {@link #readFrom} returned true, ready to be
+   * read. They remain valid until {@link #clear} is invoked.
+   */
+  ByteBuffer getReceivedBytes() {
+    if (this.buffer == null) {
+      return null;
+    }
+    ByteBuffer result = this.buffer.duplicate();
+    result.flip();
+    return result;
+  }
+
+  /** Forgets the received bytes, to receive the next message */
+  void clear() {
+    if (this.buffer != null) {
+      this.pool.release(this.buffer);
+      this.buffer = null;
+    }
+  }
+}
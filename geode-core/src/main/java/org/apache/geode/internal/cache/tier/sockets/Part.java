@@ -60,6 +60,7 @@ public class Part {
   private byte typeCode;
 
   public void init(byte[] v, byte tc) {
+    closePooledStream();
     if (tc == EMPTY_BYTEARRAY_CODE) {
       this.part = EMPTY_BYTE_ARRAY;
     } else {
@@ -79,6 +80,16 @@ public class Part {
     this.typeCode = BYTE_CODE;
   }
 
+  /**
+   * Releases the pooled buffers of the stream this part holds, if any, before it is given other
+   * contents.
+   */
+  private void closePooledStream() {
+    if (this.part instanceof PooledHeapDataOutputStream) {
+      ((PooledHeapDataOutputStream) this.part).close();
+    }
+  }
+
   public boolean isNull() {
     if (this.part == null) {
       return true;
@@ -101,6 +112,7 @@ public class Part {
   }
 
   public void setPartState(byte[] b, boolean isObject) {
+    closePooledStream();
     if (isObject) {
       this.typeCode = OBJECT_CODE;
     } else if (b != null && b.length == 0) {
@@ -113,6 +125,9 @@ public class Part {
   }
 
   public void setPartState(HeapDataOutputStream os, boolean isObject) {
+    if (this.part != os) {
+      closePooledStream();
+    }
     if (isObject) {
       this.typeCode = OBJECT_CODE;
       this.part = os;
@@ -126,6 +141,7 @@ public class Part {
   }
 
   public void setPartState(StoredObject so, boolean isObject) {
+    closePooledStream();
     if (isObject) {
       this.typeCode = OBJECT_CODE;
     } else if (so.getDataSize() == 0) {
@@ -198,6 +214,7 @@ public class Part {
       encodeInt(v, bytes);
       CACHED_INTS.put(v, bytes);
     }
+    closePooledStream();
     this.typeCode = BYTE_CODE;
     this.part = bytes;
   }
@@ -227,6 +244,7 @@ public class Part {
     bytes[5] = (byte) ((v & 0x0000000000FF0000l) >> 16);
     bytes[6] = (byte) ((v & 0x000000000000FF00l) >> 8);
     bytes[7] = (byte) (v & 0xFF);
+    closePooledStream();
     this.typeCode = BYTE_CODE;
     this.part = bytes;
   }
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.geode.internal.HeapDataOutputStream;
+import org.apache.geode.internal.Version;
+
+/**
+ * The stream the object parts of an outgoing {@link Message} are serialized into. Its buffers are
+ * taken from the {@link BufferPool} and released to it when the stream is closed, which its
+ * {@link Part} does once the message has been sent. The contents of the stream are only ever
+ * written to the connection, never handed out, so nothing refers to the buffers once it is closed.
+ */
+class PooledHeapDataOutputStream extends HeapDataOutputStream {
+
+  private final BufferPool pool;
+
+  private final CacheServerStats stats;
+
+  /** The buffers taken from the pool, including the initial one */
+  private final List<ByteBuffer> pooledBuffers;
+
+  /**
+   * @param stats the server statistics the pool hits and misses are recorded in, if any
+   */
+  static PooledHeapDataOutputStream create(BufferPool pool, int allocSize, Version version,
+      boolean doNotCopy, CacheServerStats stats) {
+    ByteBuffer initialBuffer = pool.acquireHeapBuffer(allocSize, stats);
+    return new PooledHeapDataOutputStream(pool, initialBuffer, version, doNotCopy, stats);
+  }
+
+  private PooledHeapDataOutputStream(BufferPool pool, ByteBuffer initialBuffer, Version version,
+      boolean doNotCopy, CacheServerStats stats) {
+    super(initialBuffer, version, doNotCopy);
+    this.pool = pool;
+    this.stats = stats;
+    this.pooledBuffers = new ArrayList<ByteBuffer>(2);
+    this.pooledBuffers.add(initialBuffer);
+  }
+
+  @Override
+  protected ByteBuffer allocateChunk(int size) {
+    ByteBuffer result = this.pool.acquireHeapBuffer(size, this.stats);
+    this.pooledBuffers.add(result);
+    return result;
+  }
+
+  /** Empties the stream and releases its buffers to the pool; it must not be used afterwards */
+  @Override
+  public void close() {
+    super.close();
+    for (ByteBuffer bb : this.pooledBuffers) {
+      this.pool.release(bb);
+    }
+    this.pooledBuffers.clear();
+  }
+}
@@ -31,7 +31,6 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.shiro.subject.Subject;
@@ -96,49 +95,30 @@ public class ServerConnection implements Runnable {
   // private static boolean useDataStream =
   // System.getProperty("hct.useDataStream", "false").equals("true");
 
-  // The key is the size of each ByteBuffer. The value is a queue of byte buffers all of that size.
-  private static final ConcurrentHashMap<Integer, LinkedBlockingQueue<ByteBuffer>> commBufferMap =
-      new ConcurrentHashMap<>(4, 0.75f, 1);
-
   public static ByteBuffer allocateCommBuffer(int size, Socket sock) {
-    // I expect that size will almost always be the same value
+    return allocateCommBuffer(size, sock, null);
+  }
+
+  /**
+   * Takes a comm buffer for the given socket from the {@link BufferPool}.
+   * 
+   * @param stats the server statistics the pool hit or miss is recorded in, if any
+   */
+  public static ByteBuffer allocateCommBuffer(int size, Socket sock, CacheServerStats stats) {
     if (sock.getChannel() == null) {
       // The socket this commBuffer will be used for is old IO (it has no channel).
       // So the commBuffer should be heap based.
-      return ByteBuffer.allocate(size);
-    }
-    LinkedBlockingQueue<ByteBuffer> q = commBufferMap.get(size);
-    ByteBuffer result = null;
-    if (q != null) {
-      result = q.poll();
+      return BufferPool.getPool().acquireHeapBuffer(size, stats);
     }
-    if (result == null) {
-      result = ByteBuffer.allocateDirect(size);
-    } else {
-      result.position(0);
-      result.limit(result.capacity());
-    }
-    return result;
+    return BufferPool.getPool().acquireDirectBuffer(size, stats);
   }
 
   public static void releaseCommBuffer(ByteBuffer bb) {
-    if (bb != null && bb.isDirect()) {
-      LinkedBlockingQueue<ByteBuffer> q = commBufferMap.get(bb.capacity());
-      if (q == null) {
-        q = new LinkedBlockingQueue<>();
-        LinkedBlockingQueue<ByteBuffer> oldQ = commBufferMap.putIfAbsent(bb.capacity(), q);
-        if (oldQ != null) {
-          q = oldQ;
-        }
-      }
-      q.offer(bb);
-    }
+    BufferPool.getPool().release(bb);
   }
 
   public static void emptyCommBufferPool() {
-    for (LinkedBlockingQueue<ByteBuffer> q : commBufferMap.values()) {
-      q.clear();
-    }
+    BufferPool.getPool().clear();
   }
 
   private Socket theSocket;
@@ -184,6 +164,9 @@ public class ServerConnection implements Runnable {
   /** Tracks the id of the most recent batch to which a reply has been sent */
   private int latestBatchIdReplied = -1;
 
+  /** Decompresses the batches of a gateway sender, if negotiated by the handshake */
+  private BatchCompressor batchCompressor;
+
   /*
    * Uniquely identifying the client's Distributed System
    *
@@ -690,6 +673,12 @@ public class ServerConnection implements Runnable {
    */
   private boolean doHandshake = true;
 
+  /**
+   * Receives the next message while this connection is registered with the selector; null until the
+   * first message is received that way
+   */
+  private MessageFramer messageFramer;
+
   private boolean clientDisconnectedCleanly = false;
   private int failureCount = 0;
   private boolean processMessages = true;
@@ -1125,7 +1114,14 @@ public class ServerConnection implements Runnable {
         this.stats.decThreadQueueSize();
         if (!isTerminated()) {
           Message.setTLCommBuffer(getAcceptor().takeCommBuffer());
-          doOneMessage();
+          if (this.messageFramer != null) {
+            this.requestMsg.setReceivedBytes(this.messageFramer.getReceivedBytes());
+          }
+          try {
+            doOneMessage();
+          } finally {
+            releaseReceivedBytes();
+          }
           if (this.processMessages && !(this.crHelper.isShutdown())) {
             registerWithSelector(); // finished msg so reregister
             finishedMsg = true;
@@ -1177,6 +1173,31 @@ public class ServerConnection implements Runnable {
     }
   }
 
+  /**
+   * Reads what the channel has available of the next message without blocking, while this
+   * connection is registered with the selector.
+   *
+   * @return true if this connection is to be handed to a thread of the pool: once the message has
+   *         been received, or at once while the handshake, which is read by that thread, is due
+   * @throws java.io.EOFException if the client closed the connection
+   */
+  boolean readMessageFrame() throws IOException {
+    if (this.doHandshake) {
+      return true;
+    }
+    if (this.messageFramer == null) {
+      this.messageFramer = new MessageFramer(this.requestMsg.getHeaderLength(), this.stats);
+    }
+    return this.messageFramer.readFrom(this.theSocket.getChannel());
+  }
+
+  private void releaseReceivedBytes() {
+    this.requestMsg.setReceivedBytes(null);
+    if (this.messageFramer != null) {
+      this.messageFramer.clear();
+    }
+  }
+
   /**
    * If registered with a selector then this will be the key we are registered with.
    */
@@ -1362,6 +1383,18 @@ public class ServerConnection implements Runnable {
     return this.latestBatchIdReplied;
   }
 
+  /**
+   * Returns the compressor of the batches received on this connection, or null if its handshake did
+   * not negotiate compressed batches.
+   */
+  public BatchCompressor getBatchCompressor() {
+    if (this.batchCompressor == null && this.handshake instanceof HandShake
+        && ((HandShake) this.handshake).getBatchCompression() != BatchCompressor.NONE) {
+      this.batchCompressor = new BatchCompressor();
+    }
+    return this.batchCompressor;
+  }
+
   private final Object ownerLock = new Object();
 
   protected void interruptOwner() {
@@ -1399,7 +1432,7 @@ public class ServerConnection implements Runnable {
         // one per connection.
         commBuffer = null;
       } else {
-        commBuffer = allocateCommBuffer(socketBufferSize, s);
+        commBuffer = allocateCommBuffer(socketBufferSize, s, this.stats);
       }
       requestMsg.setComms(this, theSocket, commBuffer, msgStats);
       replyMsg.setComms(this, theSocket, commBuffer, msgStats);
@@ -1470,6 +1503,9 @@ public class ServerConnection implements Runnable {
             new Object[] {this.name, ex});
       }
     }
+    if (this.batchCompressor != null) {
+      this.batchCompressor.close();
+    }
     getAcceptor().unregisterSC(this);
     if (logger.isDebugEnabled()) {
       logger.debug("{}: Closed connection", this.name);
@@ -33,6 +33,8 @@ public class ServerQueueStatus {
   private DistributedMember memberId = null;
   /** size of the PDX registry on the server. Currently only set for gateways */
   private int pdxSize = 0;
+  /** compression of the batches accepted by the server. Currently only set for gateways */
+  private byte batchCompression = BatchCompressor.NONE;
 
   /**
    * Default constructor Called when connectionsPerServer=0
@@ -119,6 +121,19 @@ public class ServerQueueStatus {
     this.pdxSize = pdxSize;
   }
 
+  /**
+   * The compression of the batches accepted by the gateway receiver we connected to.
+   * 
+   * @return one of the {@link BatchCompressor} constants
+   */
+  public byte getBatchCompression() {
+    return this.batchCompression;
+  }
+
+  public void setBatchCompression(byte batchCompression) {
+    this.batchCompression = batchCompression;
+  }
+
   /**
    * The member id of the server we connected to.
    * 
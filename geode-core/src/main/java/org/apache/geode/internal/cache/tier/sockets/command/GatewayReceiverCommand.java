@@ -20,8 +20,13 @@ package org.apache.geode.internal.cache.tier.sockets.command;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.geode.CancelException;
+import org.apache.geode.InternalGemFireError;
 import org.apache.geode.cache.CacheClosedException;
 import org.apache.geode.cache.EntryNotFoundException;
 import org.apache.geode.cache.RegionDestroyedException;
@@ -29,6 +34,7 @@ import org.apache.geode.cache.operations.DestroyOperationContext;
 import org.apache.geode.cache.operations.PutOperationContext;
 import org.apache.geode.cache.wan.GatewayReceiver;
 import org.apache.geode.distributed.DistributedSystem;
+import org.apache.geode.distributed.internal.DistributionConfig;
 import org.apache.geode.distributed.internal.DistributionStats;
 import org.apache.geode.distributed.internal.InternalDistributedSystem;
 import org.apache.geode.i18n.LogWriterI18n;
@@ -42,6 +48,7 @@ import org.apache.geode.internal.cache.tier.CachedRegionHelper;
 import org.apache.geode.internal.cache.tier.Command;
 import org.apache.geode.internal.cache.tier.MessageType;
 import org.apache.geode.internal.cache.tier.sockets.BaseCommand;
+import org.apache.geode.internal.cache.tier.sockets.BatchCompressor;
 import org.apache.geode.internal.cache.tier.sockets.Message;
 import org.apache.geode.internal.cache.tier.sockets.Part;
 import org.apache.geode.internal.cache.tier.sockets.ServerConnection;
@@ -64,6 +71,14 @@ public class GatewayReceiverCommand extends BaseCommand {
     return singleton;
   }
 
+  /**
+   * The number of threads applying the events of each batch, the events of a key being applied in
+   * order by the same thread. Default is 1, which applies the events in order on the thread of the
+   * connection.
+   */
+  static int BATCH_APPLY_THREADS = Integer
+      .getInteger(DistributionConfig.GEMFIRE_PREFIX + "GatewayReceiver.BATCH_APPLY_THREADS", 1);
+
   private GatewayReceiverCommand() {}
 
   private void handleRegionNull(ServerConnection servConn, String regionName, int batchId) {
@@ -80,14 +95,9 @@ public class GatewayReceiverCommand extends BaseCommand {
   @Override
   public void cmdExecute(Message msg, ServerConnection servConn, long start)
       throws IOException, InterruptedException {
-    Part regionNamePart = null, keyPart = null, valuePart = null, callbackArgPart = null;
-    String regionName = null;
-    Object callbackArg = null, key = null;
     int partNumber = 0;
     CachedRegionHelper crHelper = servConn.getCachedRegionHelper();
     GatewayReceiverStats stats = (GatewayReceiverStats) servConn.getCacheServerStats();
-    EventID eventId = null;
-    LocalRegion region = null;
     List<BatchException70> exceptions = new ArrayList<BatchException70>();
     Throwable fatalException = null;
     // requiresResponse = true;// let PROCESS_BATCH deal with this itself
@@ -96,13 +106,19 @@ public class GatewayReceiverCommand extends BaseCommand {
       start = DistributionStats.getStatTime();
       stats.incReadProcessBatchRequestTime(start - oldStart);
     }
-    Part callbackArgExistsPart;
     // Get early ack flag. This test should eventually be moved up above this switch
     // statement so that all messages can take advantage of it.
     boolean earlyAck = false;// msg.getEarlyAck();
 
     stats.incBatchSize(msg.getPayloadLength());
 
+    // Decompress the events before anything else, so that every batch compressed on the
+    // connection leaves its dictionary to the next one
+    BatchCompressor batchCompressor = servConn.getBatchCompressor();
+    if (batchCompressor != null) {
+      batchCompressor.decompress(msg, 4, stats);
+    }
+
     // Retrieve the number of events
     Part numberOfEventsPart = msg.getPart(0);
     int numberOfEvents = numberOfEventsPart.getInt();
@@ -192,6 +208,13 @@ public class GatewayReceiverCommand extends BaseCommand {
     // Keep track of whether a response has been written for
     // exceptions
     boolean wroteResponse = earlyAck;
+    // The exceptions of the events if they are applied in parallel, before
+    // being handled in order below
+    Exception[] failures = null;
+    if (BATCH_APPLY_THREADS > 1 && numberOfEvents > 1 && !wroteResponse) {
+      failures = applyEventsInParallel(msg, servConn, partNumber, batchId, numberOfEvents, dsid,
+          removeOnException);
+    }
     // event received in batch also have PDX events at the start of the batch,to
     // represent correct index on which the exception occurred, number of PDX
     // events need to be subtratced.
@@ -203,477 +226,18 @@ public class GatewayReceiverCommand extends BaseCommand {
       Part actionTypePart = msg.getPart(partNumber);
       int actionType = actionTypePart.getInt();
 
-      long versionTimeStamp = VersionTag.ILLEGAL_VERSION_TIMESTAMP;
-      EventIDHolder clientEvent = null;
-
-      boolean callbackArgExists = false;
-
       try {
-        Part possibleDuplicatePart = msg.getPart(partNumber + 1);
-        byte[] possibleDuplicatePartBytes;
-        try {
-          possibleDuplicatePartBytes = (byte[]) possibleDuplicatePart.getObject();
-        } catch (Exception e) {
-          logger.warn(LocalizedMessage.create(
-              LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_REQUEST_1_CONTAINING_2_EVENTS,
-              new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                  Integer.valueOf(numberOfEvents)}),
-              e);
-          throw e;
-        }
-        boolean possibleDuplicate = possibleDuplicatePartBytes[0] == 0x01;
-
-        // Make sure instance variables are null before each iteration
-        regionName = null;
-        key = null;
-        callbackArg = null;
-
-        // Retrieve the region name from the message parts
-        regionNamePart = msg.getPart(partNumber + 2);
-        regionName = regionNamePart.getString();
-        if (regionName.equals(PeerTypeRegistration.REGION_FULL_PATH)) {
+        if (isPdxEvent(msg, partNumber)) {
           indexWithoutPDXEvent--;
         }
-
-        // Retrieve the event id from the message parts
-        // This was going to be used to determine possible
-        // duplication of events, but it is unused now. In
-        // fact the event id is overridden by the FROM_GATEWAY
-        // token.
-        Part eventIdPart = msg.getPart(partNumber + 3);
-        eventIdPart.setVersion(servConn.getClientVersion());
-        // String eventId = eventIdPart.getString();
-        try {
-          eventId = (EventID) eventIdPart.getObject();
-        } catch (Exception e) {
-          logger.warn(LocalizedMessage.create(
-              LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_REQUEST_1_CONTAINING_2_EVENTS,
-              new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                  Integer.valueOf(numberOfEvents)}),
-              e);
-          throw e;
-        }
-
-        // Retrieve the key from the message parts
-        keyPart = msg.getPart(partNumber + 4);
-        try {
-          key = keyPart.getStringOrObject();
-        } catch (Exception e) {
-          logger.warn(LocalizedMessage.create(
-              LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_REQUEST_1_CONTAINING_2_EVENTS,
-              new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                  Integer.valueOf(numberOfEvents)}),
-              e);
-          throw e;
-        }
-        switch (actionType) {
-          case 0: // Create
-
-            /*
-             * CLIENT EXCEPTION HANDLING TESTING CODE String keySt = (String) key;
-             * System.out.println("Processing new key: " + key); if (keySt.startsWith("failure")) {
-             * throw new Exception(LocalizedStrings
-             * .ProcessBatch_THIS_EXCEPTION_REPRESENTS_A_FAILURE_ON_THE_SERVER
-             * .toLocalizedString()); }
-             */
-
-            // Retrieve the value from the message parts (do not deserialize it)
-            valuePart = msg.getPart(partNumber + 5);
-            // try {
-            // logger.warn(getName() + ": Creating key " + key + " value " +
-            // valuePart.getObject());
-            // } catch (Exception e) {}
-
-            // Retrieve the callbackArg from the message parts if necessary
-            int index = partNumber + 6;
-            callbackArgExistsPart = msg.getPart(index++); {
-            byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
-            callbackArgExists = partBytes[0] == 0x01;
+        if (failures == null) {
+          Modification modification =
+              applyEvent(msg, servConn, partNumber, actionType, batchId, numberOfEvents, dsid);
+          if (modification != null) {
+            modification.record(servConn);
           }
-            if (callbackArgExists) {
-              callbackArgPart = msg.getPart(index++);
-              try {
-                callbackArg = callbackArgPart.getObject();
-              } catch (Exception e) {
-                logger.warn(LocalizedMessage.create(
-                    LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_CREATE_REQUEST_1_FOR_2_EVENTS,
-                    new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                        Integer.valueOf(numberOfEvents)}),
-                    e);
-                throw e;
-              }
-            }
-            if (logger.isDebugEnabled()) {
-              logger.debug(
-                  "{}: Processing batch create request {} on {} for region {} key {} value {} callbackArg {}, eventId={}",
-                  servConn.getName(), batchId, servConn.getSocketString(), regionName, key,
-                  valuePart, callbackArg, eventId);
-            }
-            versionTimeStamp = msg.getPart(index++).getLong();
-            // Process the create request
-            if (key == null || regionName == null) {
-              StringId message = null;
-              Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId)};
-              if (key == null) {
-                message =
-                    LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_CREATE_REQUEST_1_IS_NULL;
-              }
-              if (regionName == null) {
-                message =
-                    LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_CREATE_REQUEST_1_IS_NULL;
-              }
-              String s = message.toLocalizedString(messageArgs);
-              logger.warn(s);
-              throw new Exception(s);
-            }
-            region = (LocalRegion) crHelper.getRegion(regionName);
-            if (region == null) {
-              handleRegionNull(servConn, regionName, batchId);
-            } else {
-              clientEvent = new EventIDHolder(eventId);
-              if (versionTimeStamp > 0) {
-                VersionTag tag = VersionTag.create(region.getVersionMember());
-                tag.setIsGatewayTag(true);
-                tag.setVersionTimeStamp(versionTimeStamp);
-                tag.setDistributedSystemId(dsid);
-                clientEvent.setVersionTag(tag);
-              }
-              clientEvent.setPossibleDuplicate(possibleDuplicate);
-              handleMessageRetry(region, clientEvent);
-              try {
-                byte[] value = valuePart.getSerializedForm();
-                boolean isObject = valuePart.isObject();
-                // [sumedh] This should be done on client while sending
-                // since that is the WAN gateway
-                AuthorizeRequest authzRequest = servConn.getAuthzRequest();
-                if (authzRequest != null) {
-                  PutOperationContext putContext =
-                      authzRequest.putAuthorize(regionName, key, value, isObject, callbackArg);
-                  value = putContext.getSerializedValue();
-                  isObject = putContext.isObject();
-                }
-                // Attempt to create the entry
-                boolean result = false;
-                result = region.basicBridgeCreate(key, value, isObject, callbackArg,
-                    servConn.getProxyID(), false, clientEvent, false);
-                // If the create fails (presumably because it already exists),
-                // attempt to update the entry
-                if (!result) {
-                  result = region.basicBridgePut(key, value, null, isObject, callbackArg,
-                      servConn.getProxyID(), false, clientEvent);
-                }
-
-                if (result || clientEvent.isConcurrencyConflict()) {
-                  servConn.setModificationInfo(true, regionName, key);
-                  stats.incCreateRequest();
-                } else {
-                  // This exception will be logged in the catch block below
-                  throw new Exception(
-                      LocalizedStrings.ProcessBatch_0_FAILED_TO_CREATE_OR_UPDATE_ENTRY_FOR_REGION_1_KEY_2_VALUE_3_CALLBACKARG_4
-                          .toLocalizedString(new Object[] {servConn.getName(), regionName, key,
-                              valuePart, callbackArg}));
-                }
-              } catch (Exception e) {
-                logger.warn(LocalizedMessage.create(
-                    LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_CREATE_REQUEST_1_FOR_2_EVENTS,
-                    new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                        Integer.valueOf(numberOfEvents)}),
-                    e);
-                throw e;
-              }
-            }
-            break;
-          case 1: // Update
-            /*
-             * CLIENT EXCEPTION HANDLING TESTING CODE keySt = (String) key;
-             * System.out.println("Processing updated key: " + key); if
-             * (keySt.startsWith("failure")) { throw new Exception(LocalizedStrings
-             * .ProcessBatch_THIS_EXCEPTION_REPRESENTS_A_FAILURE_ON_THE_SERVER
-             * .toLocalizedString()); }
-             */
-
-            // Retrieve the value from the message parts (do not deserialize it)
-            valuePart = msg.getPart(partNumber + 5);
-            // try {
-            // logger.warn(getName() + ": Updating key " + key + " value " +
-            // valuePart.getObject());
-            // } catch (Exception e) {}
-
-            // Retrieve the callbackArg from the message parts if necessary
-            index = partNumber + 6;
-            callbackArgExistsPart = msg.getPart(index++); {
-            byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
-            callbackArgExists = partBytes[0] == 0x01;
-          }
-            if (callbackArgExists) {
-              callbackArgPart = msg.getPart(index++);
-              try {
-                callbackArg = callbackArgPart.getObject();
-              } catch (Exception e) {
-                logger.warn(LocalizedMessage.create(
-                    LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_REQUEST_1_CONTAINING_2_EVENTS,
-                    new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                        Integer.valueOf(numberOfEvents)}),
-                    e);
-                throw e;
-              }
-            }
-            versionTimeStamp = msg.getPart(index++).getLong();
-            if (logger.isDebugEnabled()) {
-              logger.debug(
-                  "{}: Processing batch update request {} on {} for region {} key {} value {} callbackArg {}",
-                  servConn.getName(), batchId, servConn.getSocketString(), regionName, key,
-                  valuePart, callbackArg);
-            }
-            // Process the update request
-            if (key == null || regionName == null) {
-              StringId message = null;
-              Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId)};
-              if (key == null) {
-                message =
-                    LocalizedStrings.ProcessBatch_0_THE_INPUT_KEY_FOR_THE_BATCH_UPDATE_REQUEST_1_IS_NULL;
-              }
-              if (regionName == null) {
-                message =
-                    LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_UPDATE_REQUEST_1_IS_NULL;
-              }
-              String s = message.toLocalizedString(messageArgs);
-              logger.warn(s);
-              throw new Exception(s);
-            }
-            region = (LocalRegion) crHelper.getRegion(regionName);
-            if (region == null) {
-              handleRegionNull(servConn, regionName, batchId);
-            } else {
-              clientEvent = new EventIDHolder(eventId);
-              if (versionTimeStamp > 0) {
-                VersionTag tag = VersionTag.create(region.getVersionMember());
-                tag.setIsGatewayTag(true);
-                tag.setVersionTimeStamp(versionTimeStamp);
-                tag.setDistributedSystemId(dsid);
-                clientEvent.setVersionTag(tag);
-              }
-              clientEvent.setPossibleDuplicate(possibleDuplicate);
-              handleMessageRetry(region, clientEvent);
-              try {
-                byte[] value = valuePart.getSerializedForm();
-                boolean isObject = valuePart.isObject();
-                AuthorizeRequest authzRequest = servConn.getAuthzRequest();
-                if (authzRequest != null) {
-                  PutOperationContext putContext = authzRequest.putAuthorize(regionName, key, value,
-                      isObject, callbackArg, PutOperationContext.UPDATE);
-                  value = putContext.getSerializedValue();
-                  isObject = putContext.isObject();
-                }
-                boolean result = region.basicBridgePut(key, value, null, isObject, callbackArg,
-                    servConn.getProxyID(), false, clientEvent);
-                if (result || clientEvent.isConcurrencyConflict()) {
-                  servConn.setModificationInfo(true, regionName, key);
-                  stats.incUpdateRequest();
-                } else {
-                  final Object[] msgArgs =
-                      new Object[] {servConn.getName(), regionName, key, valuePart, callbackArg};
-                  final StringId message =
-                      LocalizedStrings.ProcessBatch_0_FAILED_TO_UPDATE_ENTRY_FOR_REGION_1_KEY_2_VALUE_3_AND_CALLBACKARG_4;
-                  String s = message.toLocalizedString(msgArgs);
-                  logger.info(s);
-                  throw new Exception(s);
-                }
-              } catch (CancelException e) {
-                // FIXME better exception hierarchy would avoid this check
-                if (servConn.getCachedRegionHelper().getCache().getCancelCriterion()
-                    .isCancelInProgress()) {
-                  if (logger.isDebugEnabled()) {
-                    logger.debug(
-                        "{} ignoring message of type {} from client {} because shutdown occurred during message processing.",
-                        servConn.getName(), MessageType.getString(msg.getMessageType()),
-                        servConn.getProxyID());
-                  }
-                  servConn.setFlagProcessMessagesAsFalse();
-                } else {
-                  throw e;
-                }
-                return;
-              } catch (Exception e) {
-                // Preserve the connection under all circumstances
-                logger.warn(LocalizedMessage.create(
-                    LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_REQUEST_1_CONTAINING_2_EVENTS,
-                    new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                        Integer.valueOf(numberOfEvents)}),
-                    e);
-                throw e;
-              }
-            }
-            break;
-          case 2: // Destroy
-            // Retrieve the callbackArg from the message parts if necessary
-            index = partNumber + 5;
-            callbackArgExistsPart = msg.getPart(index++); {
-            byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
-            callbackArgExists = partBytes[0] == 0x01;
-          }
-            if (callbackArgExists) {
-              callbackArgPart = msg.getPart(index++);
-              try {
-                callbackArg = callbackArgPart.getObject();
-              } catch (Exception e) {
-                logger.warn(LocalizedMessage.create(
-                    LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_DESTROY_REQUEST_1_CONTAINING_2_EVENTS,
-                    new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                        Integer.valueOf(numberOfEvents)}),
-                    e);
-                throw e;
-              }
-            }
-
-            versionTimeStamp = msg.getPart(index++).getLong();
-            if (logger.isDebugEnabled()) {
-              logger.debug("{}: Processing batch destroy request {} on {} for region {} key {}",
-                  servConn.getName(), batchId, servConn.getSocketString(), regionName, key);
-            }
-
-            // Process the destroy request
-            if (key == null || regionName == null) {
-              StringId message = null;
-              if (key == null) {
-                message =
-                    LocalizedStrings.ProcessBatch_0_THE_INPUT_KEY_FOR_THE_BATCH_DESTROY_REQUEST_1_IS_NULL;
-              }
-              if (regionName == null) {
-                message =
-                    LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_DESTROY_REQUEST_1_IS_NULL;
-              }
-              Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId)};
-              String s = message.toLocalizedString(messageArgs);
-              logger.warn(s);
-              throw new Exception(s);
-            }
-            region = (LocalRegion) crHelper.getRegion(regionName);
-            if (region == null) {
-              handleRegionNull(servConn, regionName, batchId);
-            } else {
-              clientEvent = new EventIDHolder(eventId);
-              if (versionTimeStamp > 0) {
-                VersionTag tag = VersionTag.create(region.getVersionMember());
-                tag.setIsGatewayTag(true);
-                tag.setVersionTimeStamp(versionTimeStamp);
-                tag.setDistributedSystemId(dsid);
-                clientEvent.setVersionTag(tag);
-              }
-              handleMessageRetry(region, clientEvent);
-              // Destroy the entry
-              try {
-                AuthorizeRequest authzRequest = servConn.getAuthzRequest();
-                if (authzRequest != null) {
-                  DestroyOperationContext destroyContext =
-                      authzRequest.destroyAuthorize(regionName, key, callbackArg);
-                  callbackArg = destroyContext.getCallbackArg();
-                }
-                region.basicBridgeDestroy(key, callbackArg, servConn.getProxyID(), false,
-                    clientEvent);
-                servConn.setModificationInfo(true, regionName, key);
-                stats.incDestroyRequest();
-              } catch (EntryNotFoundException e) {
-                logger.info(LocalizedMessage.create(
-                    LocalizedStrings.ProcessBatch_0_DURING_BATCH_DESTROY_NO_ENTRY_WAS_FOUND_FOR_KEY_1,
-                    new Object[] {servConn.getName(), key}));
-                // throw new Exception(e);
-              }
-            }
-            break;
-          case 3: // Update Time-stamp for a RegionEntry
-
-            try {
-              // Region name
-              regionNamePart = msg.getPart(partNumber + 2);
-              regionName = regionNamePart.getString();
-
-              // Retrieve the event id from the message parts
-              eventIdPart = msg.getPart(partNumber + 3);
-              eventId = (EventID) eventIdPart.getObject();
-
-              // Retrieve the key from the message parts
-              keyPart = msg.getPart(partNumber + 4);
-              key = keyPart.getStringOrObject();
-
-              // Retrieve the callbackArg from the message parts if necessary
-              index = partNumber + 5;
-              callbackArgExistsPart = msg.getPart(index++);
-
-              byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
-              callbackArgExists = partBytes[0] == 0x01;
-
-              if (callbackArgExists) {
-                callbackArgPart = msg.getPart(index++);
-                callbackArg = callbackArgPart.getObject();
-              }
-
-            } catch (Exception e) {
-              logger.warn(LocalizedMessage.create(
-                  LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_VERSION_REQUEST_1_CONTAINING_2_EVENTS,
-                  new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                      Integer.valueOf(numberOfEvents)}),
-                  e);
-              throw e;
-            }
-
-            versionTimeStamp = msg.getPart(index++).getLong();
-            if (logger.isDebugEnabled()) {
-              logger.debug(
-                  "{}: Processing batch update-version request {} on {} for region {} key {} value {} callbackArg {}",
-                  servConn.getName(), batchId, servConn.getSocketString(), regionName, key,
-                  valuePart, callbackArg);
-            }
-            // Process the update time-stamp request
-            if (key == null || regionName == null) {
-              StringId message =
-                  LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_VERSION_REQUEST_1_CONTAINING_2_EVENTS;
-
-              Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId),
-                  Integer.valueOf(numberOfEvents)};
-              String s = message.toLocalizedString(messageArgs);
-              logger.warn(s);
-              throw new Exception(s);
-
-            } else {
-              region = (LocalRegion) crHelper.getRegion(regionName);
-
-              if (region == null) {
-                handleRegionNull(servConn, regionName, batchId);
-              } else {
-
-                clientEvent = new EventIDHolder(eventId);
-
-                if (versionTimeStamp > 0) {
-                  VersionTag tag = VersionTag.create(region.getVersionMember());
-                  tag.setIsGatewayTag(true);
-                  tag.setVersionTimeStamp(versionTimeStamp);
-                  tag.setDistributedSystemId(dsid);
-                  clientEvent.setVersionTag(tag);
-                }
-
-                // Update the version tag
-                try {
-
-                  region.basicBridgeUpdateVersionStamp(key, callbackArg, servConn.getProxyID(),
-                      false, clientEvent);
-
-                } catch (EntryNotFoundException e) {
-                  logger.info(LocalizedMessage.create(
-                      LocalizedStrings.ProcessBatch_0_DURING_BATCH_UPDATE_VERSION_NO_ENTRY_WAS_FOUND_FOR_KEY_1,
-                      new Object[] {servConn.getName(), key}));
-                  // throw new Exception(e);
-                }
-              }
-            }
-
-            break;
-          default:
-            logger.fatal(LocalizedMessage.create(
-                LocalizedStrings.Processbatch_0_UNKNOWN_ACTION_TYPE_1_FOR_BATCH_FROM_2,
-                new Object[] {servConn.getName(), Integer.valueOf(actionType),
-                    servConn.getSocketString()}));
-            stats.incUnknowsOperationsReceived();
+        } else if (failures[i] != null) {
+          throw failures[i];
         }
       } catch (CancelException e) {
         if (logger.isDebugEnabled()) {
@@ -730,28 +294,9 @@ public class GatewayReceiverCommand extends BaseCommand {
         }
       } finally {
         // Increment the partNumber
-        if (actionType == 0 /* create */ || actionType == 1 /* update */) {
-          if (callbackArgExists) {
-            partNumber += 9;
-          } else {
-            partNumber += 8;
-          }
-        } else if (actionType == 2 /* destroy */) {
-          if (callbackArgExists) {
-            partNumber += 8;
-          } else {
-            partNumber += 7;
-          }
-        } else if (actionType == 3 /* update-version */) {
-          if (callbackArgExists) {
-            partNumber += 8;
-          } else {
-            partNumber += 7;
-          }
-        }
+        partNumber += getNumberOfEventParts(msg, partNumber, actionType);
       }
     }
-
     {
       long oldStart = start;
       start = DistributionStats.getStatTime();
@@ -799,6 +344,640 @@ public class GatewayReceiverCommand extends BaseCommand {
     }
   }
 
+  /**
+   * The region and key of an event that may have modified the cache, for the thread of the
+   * connection to record in the connection once the event is applied.
+   */
+  private static class Modification {
+    private final String regionName;
+    private final Object key;
+
+    Modification(String regionName, Object key) {
+      this.regionName = regionName;
+      this.key = key;
+    }
+
+    void record(ServerConnection servConn) {
+      servConn.setModificationInfo(true, this.regionName, this.key);
+    }
+  }
+
+  /**
+   * Applies the event of the batch starting at the given part. Returns the modification the event
+   * made, if any, without recording it in the connection, since the event may be applied by a
+   * thread other than the one of the connection.
+   */
+  private Modification applyEvent(Message msg, ServerConnection servConn, int partNumber,
+      int actionType, int batchId, int numberOfEvents, int dsid) throws Exception {
+    Part regionNamePart = null, keyPart = null, valuePart = null, callbackArgPart = null;
+    String regionName = null;
+    Object callbackArg = null, key = null;
+    CachedRegionHelper crHelper = servConn.getCachedRegionHelper();
+    GatewayReceiverStats stats = (GatewayReceiverStats) servConn.getCacheServerStats();
+    EventID eventId = null;
+    LocalRegion region = null;
+    Part callbackArgExistsPart;
+    long versionTimeStamp = VersionTag.ILLEGAL_VERSION_TIMESTAMP;
+    EventIDHolder clientEvent = null;
+    boolean callbackArgExists = false;
+    Modification modification = null;
+
+
+    Part possibleDuplicatePart = msg.getPart(partNumber + 1);
+    byte[] possibleDuplicatePartBytes;
+    try {
+      possibleDuplicatePartBytes = (byte[]) possibleDuplicatePart.getObject();
+    } catch (Exception e) {
+      logger.warn(LocalizedMessage.create(
+          LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_REQUEST_1_CONTAINING_2_EVENTS,
+          new Object[] {servConn.getName(), Integer.valueOf(batchId),
+              Integer.valueOf(numberOfEvents)}),
+          e);
+      throw e;
+    }
+    boolean possibleDuplicate = possibleDuplicatePartBytes[0] == 0x01;
+
+    // Make sure instance variables are null before each iteration
+    regionName = null;
+    key = null;
+    callbackArg = null;
+
+    // Retrieve the region name from the message parts
+    regionNamePart = msg.getPart(partNumber + 2);
+    regionName = regionNamePart.getString();
+
+    // Retrieve the event id from the message parts
+    // This was going to be used to determine possible
+    // duplication of events, but it is unused now. In
+    // fact the event id is overridden by the FROM_GATEWAY
+    // token.
+    Part eventIdPart = msg.getPart(partNumber + 3);
+    eventIdPart.setVersion(servConn.getClientVersion());
+    // String eventId = eventIdPart.getString();
+    try {
+      eventId = (EventID) eventIdPart.getObject();
+    } catch (Exception e) {
+      logger.warn(LocalizedMessage.create(
+          LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_REQUEST_1_CONTAINING_2_EVENTS,
+          new Object[] {servConn.getName(), Integer.valueOf(batchId),
+              Integer.valueOf(numberOfEvents)}),
+          e);
+      throw e;
+    }
+
+    // Retrieve the key from the message parts
+    keyPart = msg.getPart(partNumber + 4);
+    try {
+      key = keyPart.getStringOrObject();
+    } catch (Exception e) {
+      logger.warn(LocalizedMessage.create(
+          LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_REQUEST_1_CONTAINING_2_EVENTS,
+          new Object[] {servConn.getName(), Integer.valueOf(batchId),
+              Integer.valueOf(numberOfEvents)}),
+          e);
+      throw e;
+    }
+    switch (actionType) {
+      case 0: // Create
+
+        /*
+         * CLIENT EXCEPTION HANDLING TESTING CODE String keySt = (String) key;
+         * System.out.println("Processing new key: " + key); if (keySt.startsWith("failure")) {
+         * throw new Exception(LocalizedStrings
+         * .ProcessBatch_THIS_EXCEPTION_REPRESENTS_A_FAILURE_ON_THE_SERVER .toLocalizedString()); }
+         */
+
+        // Retrieve the value from the message parts (do not deserialize it)
+        valuePart = msg.getPart(partNumber + 5);
+        // try {
+        // logger.warn(getName() + ": Creating key " + key + " value " +
+        // valuePart.getObject());
+        // } catch (Exception e) {}
+
+        // Retrieve the callbackArg from the message parts if necessary
+        int index = partNumber + 6;
+        callbackArgExistsPart = msg.getPart(index++); {
+        byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
+        callbackArgExists = partBytes[0] == 0x01;
+      }
+        if (callbackArgExists) {
+          callbackArgPart = msg.getPart(index++);
+          try {
+            callbackArg = callbackArgPart.getObject();
+          } catch (Exception e) {
+            logger.warn(LocalizedMessage.create(
+                LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_CREATE_REQUEST_1_FOR_2_EVENTS,
+                new Object[] {servConn.getName(), Integer.valueOf(batchId),
+                    Integer.valueOf(numberOfEvents)}),
+                e);
+            throw e;
+          }
+        }
+        if (logger.isDebugEnabled()) {
+          logger.debug(
+              "{}: Processing batch create request {} on {} for region {} key {} value {} callbackArg {}, eventId={}",
+              servConn.getName(), batchId, servConn.getSocketString(), regionName, key, valuePart,
+              callbackArg, eventId);
+        }
+        versionTimeStamp = msg.getPart(index++).getLong();
+        // Process the create request
+        if (key == null || regionName == null) {
+          StringId message = null;
+          Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId)};
+          if (key == null) {
+            message =
+                LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_CREATE_REQUEST_1_IS_NULL;
+          }
+          if (regionName == null) {
+            message =
+                LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_CREATE_REQUEST_1_IS_NULL;
+          }
+          String s = message.toLocalizedString(messageArgs);
+          logger.warn(s);
+          throw new Exception(s);
+        }
+        region = (LocalRegion) crHelper.getRegion(regionName);
+        if (region == null) {
+          handleRegionNull(servConn, regionName, batchId);
+        } else {
+          clientEvent = new EventIDHolder(eventId);
+          if (versionTimeStamp > 0) {
+            VersionTag tag = VersionTag.create(region.getVersionMember());
+            tag.setIsGatewayTag(true);
+            tag.setVersionTimeStamp(versionTimeStamp);
+            tag.setDistributedSystemId(dsid);
+            clientEvent.setVersionTag(tag);
+          }
+          clientEvent.setPossibleDuplicate(possibleDuplicate);
+          handleMessageRetry(region, clientEvent);
+          try {
+            byte[] value = valuePart.getSerializedForm();
+            boolean isObject = valuePart.isObject();
+            // [sumedh] This should be done on client while sending
+            // since that is the WAN gateway
+            AuthorizeRequest authzRequest = servConn.getAuthzRequest();
+            if (authzRequest != null) {
+              PutOperationContext putContext =
+                  authzRequest.putAuthorize(regionName, key, value, isObject, callbackArg);
+              value = putContext.getSerializedValue();
+              isObject = putContext.isObject();
+            }
+            // Attempt to create the entry
+            boolean result = false;
+            result = region.basicBridgeCreate(key, value, isObject, callbackArg,
+                servConn.getProxyID(), false, clientEvent, false);
+            // If the create fails (presumably because it already exists),
+            // attempt to update the entry
+            if (!result) {
+              result = region.basicBridgePut(key, value, null, isObject, callbackArg,
+                  servConn.getProxyID(), false, clientEvent);
+            }
+
+            if (result || clientEvent.isConcurrencyConflict()) {
+              modification = new Modification(regionName, key);
+              stats.incCreateRequest();
+            } else {
+              // This exception will be logged in the catch block below
+              throw new Exception(
+                  LocalizedStrings.ProcessBatch_0_FAILED_TO_CREATE_OR_UPDATE_ENTRY_FOR_REGION_1_KEY_2_VALUE_3_CALLBACKARG_4
+                      .toLocalizedString(new Object[] {servConn.getName(), regionName, key,
+                          valuePart, callbackArg}));
+            }
+          } catch (Exception e) {
+            logger.warn(LocalizedMessage.create(
+                LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_CREATE_REQUEST_1_FOR_2_EVENTS,
+                new Object[] {servConn.getName(), Integer.valueOf(batchId),
+                    Integer.valueOf(numberOfEvents)}),
+                e);
+            throw e;
+          }
+        }
+        break;
+      case 1: // Update
+        /*
+         * CLIENT EXCEPTION HANDLING TESTING CODE keySt = (String) key;
+         * System.out.println("Processing updated key: " + key); if (keySt.startsWith("failure")) {
+         * throw new Exception(LocalizedStrings
+         * .ProcessBatch_THIS_EXCEPTION_REPRESENTS_A_FAILURE_ON_THE_SERVER .toLocalizedString()); }
+         */
+
+        // Retrieve the value from the message parts (do not deserialize it)
+        valuePart = msg.getPart(partNumber + 5);
+        // try {
+        // logger.warn(getName() + ": Updating key " + key + " value " +
+        // valuePart.getObject());
+        // } catch (Exception e) {}
+
+        // Retrieve the callbackArg from the message parts if necessary
+        index = partNumber + 6;
+        callbackArgExistsPart = msg.getPart(index++); {
+        byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
+        callbackArgExists = partBytes[0] == 0x01;
+      }
+        if (callbackArgExists) {
+          callbackArgPart = msg.getPart(index++);
+          try {
+            callbackArg = callbackArgPart.getObject();
+          } catch (Exception e) {
+            logger.warn(LocalizedMessage.create(
+                LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_REQUEST_1_CONTAINING_2_EVENTS,
+                new Object[] {servConn.getName(), Integer.valueOf(batchId),
+                    Integer.valueOf(numberOfEvents)}),
+                e);
+            throw e;
+          }
+        }
+        versionTimeStamp = msg.getPart(index++).getLong();
+        if (logger.isDebugEnabled()) {
+          logger.debug(
+              "{}: Processing batch update request {} on {} for region {} key {} value {} callbackArg {}",
+              servConn.getName(), batchId, servConn.getSocketString(), regionName, key, valuePart,
+              callbackArg);
+        }
+        // Process the update request
+        if (key == null || regionName == null) {
+          StringId message = null;
+          Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId)};
+          if (key == null) {
+            message =
+                LocalizedStrings.ProcessBatch_0_THE_INPUT_KEY_FOR_THE_BATCH_UPDATE_REQUEST_1_IS_NULL;
+          }
+          if (regionName == null) {
+            message =
+                LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_UPDATE_REQUEST_1_IS_NULL;
+          }
+          String s = message.toLocalizedString(messageArgs);
+          logger.warn(s);
+          throw new Exception(s);
+        }
+        region = (LocalRegion) crHelper.getRegion(regionName);
+        if (region == null) {
+          handleRegionNull(servConn, regionName, batchId);
+        } else {
+          clientEvent = new EventIDHolder(eventId);
+          if (versionTimeStamp > 0) {
+            VersionTag tag = VersionTag.create(region.getVersionMember());
+            tag.setIsGatewayTag(true);
+            tag.setVersionTimeStamp(versionTimeStamp);
+            tag.setDistributedSystemId(dsid);
+            clientEvent.setVersionTag(tag);
+          }
+          clientEvent.setPossibleDuplicate(possibleDuplicate);
+          handleMessageRetry(region, clientEvent);
+          try {
+            byte[] value = valuePart.getSerializedForm();
+            boolean isObject = valuePart.isObject();
+            AuthorizeRequest authzRequest = servConn.getAuthzRequest();
+            if (authzRequest != null) {
+              PutOperationContext putContext = authzRequest.putAuthorize(regionName, key, value,
+                  isObject, callbackArg, PutOperationContext.UPDATE);
+              value = putContext.getSerializedValue();
+              isObject = putContext.isObject();
+            }
+            boolean result = region.basicBridgePut(key, value, null, isObject, callbackArg,
+                servConn.getProxyID(), false, clientEvent);
+            if (result || clientEvent.isConcurrencyConflict()) {
+              modification = new Modification(regionName, key);
+              stats.incUpdateRequest();
+            } else {
+              final Object[] msgArgs =
+                  new Object[] {servConn.getName(), regionName, key, valuePart, callbackArg};
+              final StringId message =
+                  LocalizedStrings.ProcessBatch_0_FAILED_TO_UPDATE_ENTRY_FOR_REGION_1_KEY_2_VALUE_3_AND_CALLBACKARG_4;
+              String s = message.toLocalizedString(msgArgs);
+              logger.info(s);
+              throw new Exception(s);
+            }
+          } catch (CancelException e) {
+            // the caller stops processing the batch
+            throw e;
+          } catch (Exception e) {
+            // Preserve the connection under all circumstances
+            logger.warn(LocalizedMessage.create(
+                LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_REQUEST_1_CONTAINING_2_EVENTS,
+                new Object[] {servConn.getName(), Integer.valueOf(batchId),
+                    Integer.valueOf(numberOfEvents)}),
+                e);
+            throw e;
+          }
+        }
+        break;
+      case 2: // Destroy
+        // Retrieve the callbackArg from the message parts if necessary
+        index = partNumber + 5;
+        callbackArgExistsPart = msg.getPart(index++); {
+        byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
+        callbackArgExists = partBytes[0] == 0x01;
+      }
+        if (callbackArgExists) {
+          callbackArgPart = msg.getPart(index++);
+          try {
+            callbackArg = callbackArgPart.getObject();
+          } catch (Exception e) {
+            logger.warn(LocalizedMessage.create(
+                LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_DESTROY_REQUEST_1_CONTAINING_2_EVENTS,
+                new Object[] {servConn.getName(), Integer.valueOf(batchId),
+                    Integer.valueOf(numberOfEvents)}),
+                e);
+            throw e;
+          }
+        }
+
+        versionTimeStamp = msg.getPart(index++).getLong();
+        if (logger.isDebugEnabled()) {
+          logger.debug("{}: Processing batch destroy request {} on {} for region {} key {}",
+              servConn.getName(), batchId, servConn.getSocketString(), regionName, key);
+        }
+
+        // Process the destroy request
+        if (key == null || regionName == null) {
+          StringId message = null;
+          if (key == null) {
+            message =
+                LocalizedStrings.ProcessBatch_0_THE_INPUT_KEY_FOR_THE_BATCH_DESTROY_REQUEST_1_IS_NULL;
+          }
+          if (regionName == null) {
+            message =
+                LocalizedStrings.ProcessBatch_0_THE_INPUT_REGION_NAME_FOR_THE_BATCH_DESTROY_REQUEST_1_IS_NULL;
+          }
+          Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId)};
+          String s = message.toLocalizedString(messageArgs);
+          logger.warn(s);
+          throw new Exception(s);
+        }
+        region = (LocalRegion) crHelper.getRegion(regionName);
+        if (region == null) {
+          handleRegionNull(servConn, regionName, batchId);
+        } else {
+          clientEvent = new EventIDHolder(eventId);
+          if (versionTimeStamp > 0) {
+            VersionTag tag = VersionTag.create(region.getVersionMember());
+            tag.setIsGatewayTag(true);
+            tag.setVersionTimeStamp(versionTimeStamp);
+            tag.setDistributedSystemId(dsid);
+            clientEvent.setVersionTag(tag);
+          }
+          handleMessageRetry(region, clientEvent);
+          // Destroy the entry
+          try {
+            AuthorizeRequest authzRequest = servConn.getAuthzRequest();
+            if (authzRequest != null) {
+              DestroyOperationContext destroyContext =
+                  authzRequest.destroyAuthorize(regionName, key, callbackArg);
+              callbackArg = destroyContext.getCallbackArg();
+            }
+            region.basicBridgeDestroy(key, callbackArg, servConn.getProxyID(), false, clientEvent);
+            modification = new Modification(regionName, key);
+            stats.incDestroyRequest();
+          } catch (EntryNotFoundException e) {
+            logger.info(LocalizedMessage.create(
+                LocalizedStrings.ProcessBatch_0_DURING_BATCH_DESTROY_NO_ENTRY_WAS_FOUND_FOR_KEY_1,
+                new Object[] {servConn.getName(), key}));
+            // throw new Exception(e);
+          }
+        }
+        break;
+      case 3: // Update Time-stamp for a RegionEntry
+
+        try {
+          // Region name
+          regionNamePart = msg.getPart(partNumber + 2);
+          regionName = regionNamePart.getString();
+
+          // Retrieve the event id from the message parts
+          eventIdPart = msg.getPart(partNumber + 3);
+          eventId = (EventID) eventIdPart.getObject();
+
+          // Retrieve the key from the message parts
+          keyPart = msg.getPart(partNumber + 4);
+          key = keyPart.getStringOrObject();
+
+          // Retrieve the callbackArg from the message parts if necessary
+          index = partNumber + 5;
+          callbackArgExistsPart = msg.getPart(index++);
+
+          byte[] partBytes = (byte[]) callbackArgExistsPart.getObject();
+          callbackArgExists = partBytes[0] == 0x01;
+
+          if (callbackArgExists) {
+            callbackArgPart = msg.getPart(index++);
+            callbackArg = callbackArgPart.getObject();
+          }
+
+        } catch (Exception e) {
+          logger.warn(LocalizedMessage.create(
+              LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_VERSION_REQUEST_1_CONTAINING_2_EVENTS,
+              new Object[] {servConn.getName(), Integer.valueOf(batchId),
+                  Integer.valueOf(numberOfEvents)}),
+              e);
+          throw e;
+        }
+
+        versionTimeStamp = msg.getPart(index++).getLong();
+        if (logger.isDebugEnabled()) {
+          logger.debug(
+              "{}: Processing batch update-version request {} on {} for region {} key {} value {} callbackArg {}",
+              servConn.getName(), batchId, servConn.getSocketString(), regionName, key, valuePart,
+              callbackArg);
+        }
+        // Process the update time-stamp request
+        if (key == null || regionName == null) {
+          StringId message =
+              LocalizedStrings.ProcessBatch_0_CAUGHT_EXCEPTION_PROCESSING_BATCH_UPDATE_VERSION_REQUEST_1_CONTAINING_2_EVENTS;
+
+          Object[] messageArgs = new Object[] {servConn.getName(), Integer.valueOf(batchId),
+              Integer.valueOf(numberOfEvents)};
+          String s = message.toLocalizedString(messageArgs);
+          logger.warn(s);
+          throw new Exception(s);
+
+        } else {
+          region = (LocalRegion) crHelper.getRegion(regionName);
+
+          if (region == null) {
+            handleRegionNull(servConn, regionName, batchId);
+          } else {
+
+            clientEvent = new EventIDHolder(eventId);
+
+            if (versionTimeStamp > 0) {
+              VersionTag tag = VersionTag.create(region.getVersionMember());
+              tag.setIsGatewayTag(true);
+              tag.setVersionTimeStamp(versionTimeStamp);
+              tag.setDistributedSystemId(dsid);
+              clientEvent.setVersionTag(tag);
+            }
+
+            // Update the version tag
+            try {
+
+              region.basicBridgeUpdateVersionStamp(key, callbackArg, servConn.getProxyID(), false,
+                  clientEvent);
+
+            } catch (EntryNotFoundException e) {
+              logger.info(LocalizedMessage.create(
+                  LocalizedStrings.ProcessBatch_0_DURING_BATCH_UPDATE_VERSION_NO_ENTRY_WAS_FOUND_FOR_KEY_1,
+                  new Object[] {servConn.getName(), key}));
+              // throw new Exception(e);
+            }
+          }
+        }
+
+        break;
+      default:
+        logger.fatal(LocalizedMessage.create(
+            LocalizedStrings.Processbatch_0_UNKNOWN_ACTION_TYPE_1_FOR_BATCH_FROM_2, new Object[] {
+                servConn.getName(), Integer.valueOf(actionType), servConn.getSocketString()}));
+        stats.incUnknowsOperationsReceived();
+    }
+    return modification;
+  }
+
+  /**
+   * Applies the events of the batch starting at the given part in parallel, each thread applying in
+   * order the events of the keys it is given, once the PDX types the batch starts with have been
+   * applied. Returns the exceptions the events failed with, by event, for the caller to handle them
+   * in order. Like when the events are applied in order, a thread stops at the first exception
+   * unless the batch removes the events that failed, but the other threads may go on.
+   */
+  private Exception[] applyEventsInParallel(final Message msg, final ServerConnection servConn,
+      int partNumber, final int batchId, final int numberOfEvents, final int dsid,
+      final boolean removeOnException) throws InterruptedException {
+    final Exception[] failures = new Exception[numberOfEvents];
+    final Modification[] modifications = new Modification[numberOfEvents];
+    final int[] firstParts = new int[numberOfEvents];
+    final int[] actionTypes = new int[numberOfEvents];
+    final AtomicBoolean stopped = new AtomicBoolean();
+    List<Integer> pdxEvents = new ArrayList<Integer>();
+    List<List<Integer>> eventsByThread = new ArrayList<List<Integer>>(BATCH_APPLY_THREADS);
+    for (int i = 0; i < BATCH_APPLY_THREADS; i++) {
+      eventsByThread.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < numberOfEvents; i++) {
+      firstParts[i] = partNumber;
+      actionTypes[i] = msg.getPart(partNumber).getInt();
+      if (isPdxEvent(msg, partNumber)) {
+        pdxEvents.add(i);
+      } else {
+        eventsByThread.get(getThreadIndex(msg, partNumber)).add(i);
+      }
+      partNumber += getNumberOfEventParts(msg, partNumber, actionTypes[i]);
+    }
+
+    class EventApplier implements Runnable {
+      private final List<Integer> events;
+
+      EventApplier(List<Integer> events) {
+        this.events = events;
+      }
+
+      public void run() {
+        for (int i : this.events) {
+          if (stopped.get()) {
+            return;
+          }
+          try {
+            modifications[i] = applyEvent(msg, servConn, firstParts[i], actionTypes[i], batchId,
+                numberOfEvents, dsid);
+          } catch (Exception e) {
+            failures[i] = e;
+            if (e instanceof CancelException || e instanceof InterruptedException
+                || e.getCause() instanceof PdxRegistryMismatchException) {
+              stopped.set(true);
+            }
+            if (!removeOnException) {
+              return;
+            }
+          }
+        }
+      }
+    }
+
+    EventApplier pdxApplier = new EventApplier(pdxEvents);
+    pdxApplier.run();
+    for (int i : pdxEvents) {
+      if (failures[i] != null && !removeOnException) {
+        recordLastModification(servConn, modifications);
+        return failures;
+      }
+    }
+
+    List<Future<?>> futures = new ArrayList<Future<?>>(BATCH_APPLY_THREADS - 1);
+    for (int i = 1; i < BATCH_APPLY_THREADS; i++) {
+      if (!eventsByThread.get(i).isEmpty()) {
+        futures.add(getBatchApplyPool(servConn).submit(new EventApplier(eventsByThread.get(i))));
+      }
+    }
+    new EventApplier(eventsByThread.get(0)).run();
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (ExecutionException e) {
+        // the appliers catch all the exceptions of the events
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw new InternalGemFireError(e.getCause());
+      }
+    }
+    recordLastModification(servConn, modifications);
+    return failures;
+  }
+
+  /**
+   * Records in the connection the last modification of the batch, as applying the events in order
+   * on the thread of the connection does.
+   */
+  private static void recordLastModification(ServerConnection servConn,
+      Modification[] modifications) {
+    for (int i = modifications.length - 1; i >= 0; i--) {
+      if (modifications[i] != null) {
+        modifications[i].record(servConn);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the thread applying the event starting at the given part, from its region
+   * and key, so that the events of a key are applied in order.
+   */
+  private static int getThreadIndex(Message msg, int partNumber) {
+    try {
+      int hashCode = msg.getPart(partNumber + 2).getString().hashCode() * 31
+          + msg.getPart(partNumber + 4).getStringOrObject().hashCode();
+      return (hashCode & Integer.MAX_VALUE) % BATCH_APPLY_THREADS;
+    } catch (Exception e) {
+      // the event fails the same way when applied
+      return 0;
+    }
+  }
+
+  private static ExecutorService getBatchApplyPool(ServerConnection servConn) {
+    return servConn.getAcceptor().getBatchApplyPool(
+        Math.max(BATCH_APPLY_THREADS - 1, Runtime.getRuntime().availableProcessors()));
+  }
+
+  private static boolean isPdxEvent(Message msg, int partNumber) {
+    return PeerTypeRegistration.REGION_FULL_PATH.equals(msg.getPart(partNumber + 2).getString());
+  }
+
+  /**
+   * Returns the number of parts of the event starting at the given part.
+   */
+  private static int getNumberOfEventParts(Message msg, int partNumber, int actionType) {
+    switch (actionType) {
+      case 0: // Create
+      case 1: // Update
+        return msg.getPart(partNumber + 6).getSerializedForm()[0] == 0x01 ? 9 : 8;
+      case 2: // Destroy
+      case 3: // Update Time-stamp for a RegionEntry
+        return msg.getPart(partNumber + 5).getSerializedForm()[0] == 0x01 ? 8 : 7;
+      default:
+        return 0;
+    }
+  }
+
   private void writeReply(Message msg, ServerConnection servConn, int batchId, int numberOfEvents)
       throws IOException {
     Message replyMsg = servConn.getResponseMessage();
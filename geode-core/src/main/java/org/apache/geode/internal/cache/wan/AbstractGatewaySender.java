@@ -189,6 +189,75 @@ public abstract class AbstractGatewaySender implements GatewaySender, Distributi
   public static final int QUEUE_SIZE_THRESHOLD =
       Integer.getInteger("GatewaySender.QUEUE_SIZE_THRESHOLD", 5000).intValue();
 
+  /**
+   * The number of batches a dispatcher sends to the remote site before waiting for the first of
+   * them to be acknowledged. Default is 0, which does not limit the batches in flight.
+   */
+  public static int MAX_BATCHES_IN_FLIGHT =
+      Integer.getInteger("GatewaySender.MAX_BATCHES_IN_FLIGHT", 0).intValue();
+
+  /**
+   * Whether the senders request the remote sites to accept compressed batches when connecting to
+   * them. Default is false.
+   */
+  public static final boolean BATCH_COMPRESSION =
+      Boolean.getBoolean("GatewaySender.BATCH_COMPRESSION");
+
+  /**
+   * Whether the dispatchers adapt the size and time interval of their batches to their load,
+   * starting from the configured ones. Default is false.
+   */
+  public static final boolean ADAPTIVE_BATCHING =
+      Boolean.getBoolean("GatewaySender.ADAPTIVE_BATCHING");
+
+  /**
+   * The largest batch size of adaptive batching. Default is 0, which is 8 times the configured
+   * batch size.
+   */
+  public static final int ADAPTIVE_BATCHING_MAX_BATCH_SIZE =
+      Integer.getInteger("GatewaySender.ADAPTIVE_BATCHING_MAX_BATCH_SIZE", 0).intValue();
+
+  /**
+   * The largest size of the values of a batch of adaptive batching. Default is 8MB.
+   */
+  public static final long ADAPTIVE_BATCHING_MAX_BATCH_BYTES =
+      Long.getLong("GatewaySender.ADAPTIVE_BATCHING_MAX_BATCH_BYTES", 8 * 1024 * 1024).longValue();
+
+  /**
+   * The longest time to acknowledge batches, in milliseconds, with which adaptive batching still
+   * grows the batches. Default is 1000.
+   */
+  public static final int ADAPTIVE_BATCHING_TARGET_ACK_TIME =
+      Integer.getInteger("GatewaySender.ADAPTIVE_BATCHING_TARGET_ACK_TIME", 1000).intValue();
+
+  /**
+   * Whether the senders coalesce the events of a batch on the same key before sending it to the
+   * remote site, instead of conflating its updates if batch conflation is enabled. Default is
+   * false.
+   */
+  public static final boolean COALESCE_BATCHES =
+      Boolean.getBoolean("GatewaySender.COALESCE_BATCHES");
+
+  /**
+   * The number of events each bucket of a parallel sender's queue keeps in memory, the others being
+   * written to disk as they are queued and read from disk as they are dispatched, so that a long
+   * outage of the remote site does not fill the heap. Default is 0, which keeps the events in
+   * memory up to the maximum queue memory.
+   * <p>
+   * When greater than 0, the maximum queue memory of parallel senders is ignored: their queues are
+   * bounded by the number of events in memory, not by the memory these events take.
+   */
+  public static int PARALLEL_QUEUE_MEMORY_WINDOW =
+      Integer.getInteger("GatewaySender.PARALLEL_QUEUE_MEMORY_WINDOW", 0).intValue();
+
+  /**
+   * The number of threads the dispatchers of async event queues invoke their listeners with, each
+   * with the events of some of the keys of a batch. Default is 1, which invokes the listeners with
+   * the whole batch on the dispatcher thread.
+   */
+  public static final int LISTENER_DISPATCH_THREADS =
+      Integer.getInteger("GatewaySender.LISTENER_DISPATCH_THREADS", 1).intValue();
+
   public static int TOKEN_TIMEOUT =
       Integer.getInteger("GatewaySender.TOKEN_TIMEOUT", 15000).intValue();
 
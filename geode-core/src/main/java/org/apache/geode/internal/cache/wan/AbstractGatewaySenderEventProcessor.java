@@ -106,6 +106,12 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
   private Map<Integer, List<GatewaySenderEventImpl>> batchIdToPDXEventsMap =
       Collections.synchronizedMap(new HashMap<Integer, List<GatewaySenderEventImpl>>());
 
+  /*
+   * The ids of the batches sent to the remote site and not acknowledged yet, in the order they were
+   * sent, with the time they were sent at. Guarded by the batchIdToEventsMap.
+   */
+  private final LinkedList<long[]> batchesInFlight = new LinkedList<long[]>();
+
   private List<GatewaySenderEventImpl> pdxSenderEventsList =
       new ArrayList<GatewaySenderEventImpl>();
   private Map<Object, GatewaySenderEventImpl> pdxEventsMap =
@@ -123,6 +129,12 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
    */
   private int batchSize;
 
+  /**
+   * Adapts the batch size, limited by the one above, and the batch time interval to the load of
+   * this processor, if adaptive batching is enabled.
+   */
+  private final AdaptiveBatchSizer batchSizer;
+
   /**
    * @param createThreadGroup
    * @param string
@@ -132,6 +144,16 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
     super(createThreadGroup, string);
     this.sender = (AbstractGatewaySender) sender;
     this.batchSize = sender.getBatchSize();
+    if (AbstractGatewaySender.ADAPTIVE_BATCHING) {
+      int maxBatchSize = AbstractGatewaySender.ADAPTIVE_BATCHING_MAX_BATCH_SIZE > 0
+          ? AbstractGatewaySender.ADAPTIVE_BATCHING_MAX_BATCH_SIZE
+          : 8 * this.batchSize;
+      this.batchSizer = new AdaptiveBatchSizer(this.batchSize, sender.getBatchTimeInterval(),
+          maxBatchSize, AbstractGatewaySender.ADAPTIVE_BATCHING_MAX_BATCH_BYTES,
+          AbstractGatewaySender.ADAPTIVE_BATCHING_TARGET_ACK_TIME);
+    } else {
+      this.batchSizer = null;
+    }
   }
 
   abstract protected void initializeMessageQueue(String id);
@@ -192,6 +214,9 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
   }
 
   protected int getBatchSize() {
+    if (this.batchSizer != null) {
+      return this.batchSizer.getBatchSize();
+    }
     return this.batchSize;
   }
 
@@ -208,6 +233,9 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
           LocalizedStrings.AbstractGatewaySenderEventProcessor_SET_BATCH_SIZE,
           new Object[] {currentBatchSize, this.batchSize}));
     }
+    if (this.batchSizer != null) {
+      this.batchSizer.limitBatchSize(this.batchSize);
+    }
   }
 
   /**
@@ -409,7 +437,7 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
 
         // Peek a batch
         if (isDebugEnabled) {
-          logger.debug("Attempting to peek a batch of {} events", this.batchSize);
+          logger.debug("Attempting to peek a batch of {} events", getBatchSize());
         }
         for (;;) {
           // check before sleeping
@@ -438,6 +466,7 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
               resetLastPeekedEvents();
               resetLastPeekedEvents = false;
             }
+            waitForBatchesInFlight();
 
 
             {
@@ -463,7 +492,12 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
                * Thread.currentThread().interrupt(); } } }
                */
             }
-            events = this.queue.peek(this.batchSize, batchTimeInterval);
+            if (this.batchSizer != null) {
+              events = this.queue.peek(this.batchSizer.getBatchSize(),
+                  this.batchSizer.getBatchTimeInterval());
+            } else {
+              events = this.queue.peek(this.batchSize, batchTimeInterval);
+            }
           } catch (InterruptedException e) {
             interrupted = true;
             this.sender.getCancelCriterion().checkCancelInProgress(e);
@@ -476,6 +510,13 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
           if (events.isEmpty()) {
             continue; // nothing to do!
           }
+          if (this.batchSizer != null) {
+            long numBytes = 0;
+            for (GatewaySenderEventImpl event : events) {
+              numBytes += event.getSerializedValueSize();
+            }
+            this.batchSizer.batchPeeked(events.size(), numBytes, this.queue.size());
+          }
 
           // this list is access by ack reader thread so create new every time. #50220
           filteredList = new ArrayList<GatewaySenderEventImpl>();
@@ -568,10 +609,7 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
           eventsToBeDispatched.clear();
           if (!(this.dispatcher instanceof GatewaySenderEventCallbackDispatcher)) {
             // store the batch before dispatching so it can be retrieved by the ack thread.
-            List<GatewaySenderEventImpl>[] eventsArr = (List<GatewaySenderEventImpl>[]) new List[2];
-            eventsArr[0] = events;
-            eventsArr[1] = filteredList;
-            this.batchIdToEventsMap.put(getBatchId(), eventsArr);
+            addBatchInFlight(events, filteredList);
             // find out PDX event and append it in front of the list
             pdxEventsToBeDispatched = addPDXEvent();
             eventsToBeDispatched.addAll(pdxEventsToBeDispatched);
@@ -594,6 +632,7 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
                 conflatedEventsToBeDispatched);
           }
 
+          long dispatchStart = System.nanoTime();
           boolean success = this.dispatcher.dispatchBatch(conflatedEventsToBeDispatched, false);
           if (success) {
             if (isDebugEnabled) {
@@ -618,6 +657,10 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
           if (success) {
             if (this.dispatcher instanceof GatewaySenderEventCallbackDispatcher) {
               handleSuccessfulBatchDispatch(conflatedEventsToBeDispatched, events);
+              // the listener has processed the batch, which is as good as acknowledged
+              if (this.batchSizer != null) {
+                this.batchSizer.batchAcknowledged(dispatchStart, System.nanoTime());
+              }
             } else {
               incrementBatchId();
             }
@@ -719,8 +762,14 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
 
   private List conflate(List<GatewaySenderEventImpl> events) {
     List<GatewaySenderEventImpl> conflatedEvents = null;
-    // Conflate the batch if necessary
-    if (this.sender.isBatchConflationEnabled() && events.size() > 1) {
+    // Coalesce the batch sent to the remote site if enabled, or conflate it if necessary
+    if (AbstractGatewaySender.COALESCE_BATCHES
+        && !(this.dispatcher instanceof GatewaySenderEventCallbackDispatcher)
+        && events.size() > 1) {
+      conflatedEvents = BatchCoalescer.coalesce(events);
+      this.sender.getStatistics()
+          .incEventsConflatedFromBatches(events.size() - conflatedEvents.size());
+    } else if (this.sender.isBatchConflationEnabled() && events.size() > 1) {
       Map<ConflationKey, GatewaySenderEventImpl> conflatedEventsMap =
           new LinkedHashMap<ConflationKey, GatewaySenderEventImpl>();
       conflatedEvents = new ArrayList<GatewaySenderEventImpl>();
@@ -852,8 +901,51 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
     }
   }
 
+  /**
+   * Stores the events of the batch with the current batch id until it is acknowledged.
+   * 
+   * @param events the events peeked from the queue
+   * @param filteredList the events actually sent
+   */
+  protected void addBatchInFlight(List<GatewaySenderEventImpl> events,
+      List<GatewaySenderEventImpl> filteredList) {
+    List<GatewaySenderEventImpl>[] eventsArr = (List<GatewaySenderEventImpl>[]) new List[2];
+    eventsArr[0] = events;
+    eventsArr[1] = filteredList;
+    synchronized (this.batchIdToEventsMap) {
+      if (this.batchIdToEventsMap.put(getBatchId(), eventsArr) == null) {
+        final GatewaySenderStats statistics = this.sender.getStatistics();
+        this.batchesInFlight
+            .add(new long[] {getBatchId(), statistics.startTime(), System.nanoTime()});
+        statistics.setBatchesInFlight(this.batchesInFlight.size());
+      }
+    }
+  }
+
+  /**
+   * Waits until fewer than <code>MAX_BATCHES_IN_FLIGHT</code> batches are waiting for their
+   * acknowledgement, unless the batches in flight are about to be sent again.
+   */
+  protected void waitForBatchesInFlight() throws InterruptedException {
+    if (AbstractGatewaySender.MAX_BATCHES_IN_FLIGHT <= 0
+        || this.dispatcher instanceof GatewaySenderEventCallbackDispatcher) {
+      return;
+    }
+    synchronized (this.batchIdToEventsMap) {
+      while (this.batchesInFlight.size() >= AbstractGatewaySender.MAX_BATCHES_IN_FLIGHT
+          && !this.resetLastPeekedEvents && !stopped()) {
+        // the acks are not waited for indefinitely, to notice the processor being stopped
+        this.batchIdToEventsMap.wait(100);
+      }
+    }
+  }
+
   private void resetLastPeekedEvents() {
-    this.batchIdToEventsMap.clear();
+    synchronized (this.batchIdToEventsMap) {
+      this.batchIdToEventsMap.clear();
+      this.batchesInFlight.clear();
+      this.sender.getStatistics().setBatchesInFlight(0);
+    }
     // make sure that when there is problem while receiving ack, pdx gateway
     // sender events isDispatched is set to false so that same events will be
     // dispatched in next batch
@@ -960,7 +1052,31 @@ public abstract class AbstractGatewaySenderEventProcessor extends Thread {
       }
     }
 
-    List<GatewaySenderEventImpl>[] eventsArr = this.batchIdToEventsMap.remove(batchId);
+    List<GatewaySenderEventImpl>[] eventsArr = null;
+    synchronized (this.batchIdToEventsMap) {
+      if (this.batchIdToEventsMap.containsKey(batchId)) {
+        // The events of a batch are removed from the head of the queue, so the acks need to come
+        // in the order the batches were sent. If they don't, send the batches in flight again.
+        long[] oldestBatch = this.batchesInFlight.peek();
+        if (oldestBatch != null && oldestBatch[0] != batchId) {
+          logger.warn("{}: Received ack for batch id {} while the oldest batch in flight is {}",
+              this.sender, batchId, oldestBatch[0]);
+          handleException();
+          return;
+        }
+        eventsArr = this.batchIdToEventsMap.remove(batchId);
+        if (oldestBatch != null) {
+          this.batchesInFlight.poll();
+          final GatewaySenderStats statistics = this.sender.getStatistics();
+          statistics.endBatchAcknowledgement(oldestBatch[1]);
+          if (this.batchSizer != null) {
+            this.batchSizer.batchAcknowledged(oldestBatch[2], System.nanoTime());
+          }
+          statistics.setBatchesInFlight(this.batchesInFlight.size());
+          this.batchIdToEventsMap.notifyAll();
+        }
+      }
+    }
     if (eventsArr != null) {
       List<GatewaySenderEventImpl> filteredEvents = eventsArr[1];
       for (GatewayEventFilter filter : sender.getGatewayEventFilters()) {
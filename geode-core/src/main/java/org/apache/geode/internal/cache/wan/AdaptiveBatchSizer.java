@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.wan;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the size and the time interval of the batches of a gateway sender event processor to its
+ * load, starting from the configured ones:
+ * <ul>
+ * <li>While the queue holds more events than a batch, the batch size grows up to its limit, and the
+ * time interval goes back to the configured one, which full batches do not wait for anyway.
+ * <li>When a batch is sent before being full, because its time interval elapsed, the time interval
+ * shrinks, so that the events of a lightly loaded sender wait less.
+ * <li>While the batches take longer to be acknowledged than targeted, the batch size shrinks and
+ * the time interval grows, so that the remote site gets fewer events at a time.
+ * <li>When the values of a batch take more bytes than the limit, the batch size shrinks to what
+ * would have fit.
+ * </ul>
+ * The acknowledgement time is a moving average, so that a single slow batch does not shrink the
+ * batches, and batches sent before the batch size shrank cannot shrink it again.
+ */
+class AdaptiveBatchSizer {
+
+  /** The shortest time interval, in milliseconds */
+  static final int MIN_BATCH_TIME_INTERVAL = 5;
+
+  private final int maxBatchTimeInterval;
+
+  private final long maxBatchBytes;
+
+  private final long targetAckTime;
+
+  private int maxBatchSize;
+
+  private int batchSize;
+
+  private int batchTimeInterval;
+
+  /** The moving average of the acknowledgement time, in nanoseconds */
+  private long averageAckTime;
+
+  /** When the batch size last shrank because of the acknowledgement time */
+  private long shrunkAt;
+
+  /**
+   * @param batchSize the configured batch size
+   * @param batchTimeInterval the configured time interval, which is also the longest one
+   * @param maxBatchSize the largest batch size
+   * @param maxBatchBytes the largest size of the values of a batch
+   * @param targetAckTime the longest acknowledgement time the batch size grows with, in
+   *        milliseconds
+   */
+  AdaptiveBatchSizer(int batchSize, int batchTimeInterval, int maxBatchSize, long maxBatchBytes,
+      long targetAckTime) {
+    this.maxBatchSize = Math.max(batchSize, maxBatchSize);
+    this.batchSize = batchSize;
+    this.maxBatchTimeInterval = Math.max(MIN_BATCH_TIME_INTERVAL, batchTimeInterval);
+    this.batchTimeInterval = this.maxBatchTimeInterval;
+    this.maxBatchBytes = maxBatchBytes;
+    this.targetAckTime = TimeUnit.MILLISECONDS.toNanos(targetAckTime);
+    this.shrunkAt = System.nanoTime();
+  }
+
+  synchronized int getBatchSize() {
+    return this.batchSize;
+  }
+
+  synchronized int getBatchTimeInterval() {
+    return this.batchTimeInterval;
+  }
+
+  /**
+   * Lowers the largest batch size, like when a batch was too large to be sent.
+   */
+  synchronized void limitBatchSize(int maxBatchSize) {
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.batchSize = Math.min(this.batchSize, this.maxBatchSize);
+  }
+
+  /**
+   * Adapts to the batch peeked from the queue.
+   *
+   * @param numEvents the number of events of the batch
+   * @param numBytes the size of the values of the events of the batch
+   * @param queueSize the number of events in the queue, including the batch
+   */
+  synchronized void batchPeeked(int numEvents, long numBytes, int queueSize) {
+    if (numBytes > this.maxBatchBytes && numEvents > 1) {
+      this.batchSize = (int) Math.max(1, numEvents * this.maxBatchBytes / numBytes);
+    } else if (numEvents >= this.batchSize && queueSize - numEvents >= this.batchSize) {
+      if (this.averageAckTime <= this.targetAckTime) {
+        this.batchSize = (int) Math.min(this.maxBatchSize, this.batchSize * 2L);
+      }
+      this.batchTimeInterval = this.maxBatchTimeInterval;
+    } else if (numEvents < this.batchSize && this.averageAckTime <= this.targetAckTime) {
+      this.batchTimeInterval = Math.max(MIN_BATCH_TIME_INTERVAL, this.batchTimeInterval / 2);
+    }
+  }
+
+  /**
+   * Adapts to the time it took to acknowledge a batch.
+   *
+   * @param sentAt when the batch was sent, from {@link System#nanoTime}
+   * @param ackedAt when the batch was acknowledged, from {@link System#nanoTime}
+   */
+  synchronized void batchAcknowledged(long sentAt, long ackedAt) {
+    long ackTime = ackedAt - sentAt;
+    if (this.averageAckTime == 0) {
+      this.averageAckTime = ackTime;
+    } else {
+      this.averageAckTime += (ackTime - this.averageAckTime) / 8;
+    }
+    if (this.averageAckTime > this.targetAckTime && sentAt - this.shrunkAt > 0) {
+      this.batchSize = Math.max(1, this.batchSize / 2);
+      this.batchTimeInterval = Math.min(this.maxBatchTimeInterval, this.batchTimeInterval * 2);
+      this.shrunkAt = ackedAt;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.wan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces the events of a batch that operate on the same key, so that the remote site gets the
+ * result of the operations on a key rather than each of them:
+ * <ul>
+ * <li>An update or a destroy replaces the create or update before it, since an update puts the
+ * entry whether or not it exists.
+ * <li>A destroy drops the create before it, or the update that replaced it, along with itself,
+ * since the remote site never had the entry, unless the create may already have been sent.
+ * <li>Any other operation, like an invalidate, is kept along with the events before it.
+ * </ul>
+ * The events kept stay in the order of the batch, so the events of distinct keys are sent in the
+ * same order, and each key ends up in the state its last event left it in.
+ */
+class BatchCoalescer {
+
+  private BatchCoalescer() {}
+
+  /**
+   * Returns the events of the given batch that are still needed once coalesced, in order.
+   */
+  static List<GatewaySenderEventImpl> coalesce(List<GatewaySenderEventImpl> events) {
+    GatewaySenderEventImpl[] kept = events.toArray(new GatewaySenderEventImpl[events.size()]);
+    // the index in kept of the create or update each key was last left by, and whether the key
+    // was created by this batch
+    Map<RegionKey, int[]> lastEvents = new HashMap<RegionKey, int[]>();
+    int numDropped = 0;
+    for (int i = 0; i < kept.length; i++) {
+      GatewaySenderEventImpl event = kept[i];
+      if (event.getKeyToConflate() == null || event.getRegionToConflate() == null) {
+        continue;
+      }
+      RegionKey key = new RegionKey(event.getRegionToConflate(), event.getKeyToConflate());
+      int[] last = lastEvents.remove(key);
+      boolean created = event.isCreate() && !event.getPossibleDuplicate();
+      if (last != null && (event.isUpdate() || event.isDestroy())) {
+        kept[last[0]] = null;
+        numDropped++;
+        if (event.isDestroy() && last[1] == 1) {
+          kept[i] = null;
+          numDropped++;
+          continue;
+        }
+        created = last[1] == 1;
+      }
+      if (event.isCreate() || event.isUpdate()) {
+        lastEvents.put(key, new int[] {i, created ? 1 : 0});
+      }
+    }
+
+    if (numDropped == 0) {
+      return events;
+    }
+    List<GatewaySenderEventImpl> coalesced =
+        new ArrayList<GatewaySenderEventImpl>(kept.length - numDropped);
+    for (GatewaySenderEventImpl event : kept) {
+      if (event != null) {
+        coalesced.add(event);
+      }
+    }
+    return coalesced;
+  }
+
+  private static class RegionKey {
+
+    private final String regionPath;
+
+    private final Object key;
+
+    RegionKey(String regionPath, Object key) {
+      this.regionPath = regionPath;
+      this.key = key;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * this.regionPath.hashCode() + this.key.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof RegionKey)) {
+        return false;
+      }
+      RegionKey that = (RegionKey) obj;
+      return this.regionPath.equals(that.regionPath) && this.key.equals(that.key);
+    }
+  }
+}
@@ -56,6 +56,12 @@ public class GatewayReceiverStats extends CacheServerStats {
   /** Name of the unprocessed events added by primary statistic */
   private static final String EXCEPTIONS_OCCURED = "exceptionsOccured";
 
+  /** Name of the batches decompressed statistic */
+  private static final String BATCHES_DECOMPRESSED = "batchesDecompressed";
+
+  /** Name of the batch decompression time statistic */
+  private static final String BATCH_DECOMPRESSION_TIME = "batchDecompressionTime";
+
   // /** Id of the events queued statistic */
   // private int failoverBatchesReceivedId;
 
@@ -86,6 +92,12 @@ public class GatewayReceiverStats extends CacheServerStats {
   /** Id of the unprocessed events added by primary statistic */
   private int exceptionsOccuredId;
 
+  /** Id of the batches decompressed statistic */
+  private int batchesDecompressedId;
+
+  /** Id of the batch decompression time statistic */
+  private int batchDecompressionTimeId;
+
   // ///////////////////// Constructors ///////////////////////
 
   public static GatewayReceiverStats createGatewayReceiverStats(String ownerName) {
@@ -110,7 +122,12 @@ public class GatewayReceiverStats extends CacheServerStats {
         f.createIntCounter(UNKNOWN_OPERATIONS_RECEIVED,
             "total number of unknown operations received by this GatewayReceiver", "operations"),
         f.createIntCounter(EXCEPTIONS_OCCURED,
-            "number of exceptions occured while porcessing the batches", "operations")};
+            "number of exceptions occured while porcessing the batches", "operations"),
+        f.createIntCounter(BATCHES_DECOMPRESSED,
+            "number of compressed batches received by this GatewayReceiver", "operations"),
+        f.createLongCounter(BATCH_DECOMPRESSION_TIME,
+            "total time spent decompressing the batches received by this GatewayReceiver",
+            "nanoseconds")};
     return new GatewayReceiverStats(f, ownerName, typeName, descriptors);
 
   }
@@ -129,6 +146,8 @@ public class GatewayReceiverStats extends CacheServerStats {
     destroyRequestId = statType.nameToId(DESTROY_REQUESTS);
     unknowsOperationsReceivedId = statType.nameToId(UNKNOWN_OPERATIONS_RECEIVED);
     exceptionsOccuredId = statType.nameToId(EXCEPTIONS_OCCURED);
+    batchesDecompressedId = statType.nameToId(BATCHES_DECOMPRESSED);
+    batchDecompressionTimeId = statType.nameToId(BATCH_DECOMPRESSION_TIME);
   }
 
   // /////////////////// Instance Methods /////////////////////
@@ -243,6 +262,22 @@ public class GatewayReceiverStats extends CacheServerStats {
     return this.stats.getInt(exceptionsOccuredId);
   }
 
+  /**
+   * Increments the number of batches decompressed by 1 and the decompression time.
+   */
+  public void endBatchDecompression(long start) {
+    this.stats.incInt(batchesDecompressedId, 1);
+    this.stats.incLong(batchDecompressionTimeId, startTime() - start);
+  }
+
+  public int getBatchesDecompressed() {
+    return this.stats.getInt(batchesDecompressedId);
+  }
+
+  public long getBatchDecompressionTime() {
+    return this.stats.getLong(batchDecompressionTimeId);
+  }
+
   /**
    * Returns the current time (ns).
    * 
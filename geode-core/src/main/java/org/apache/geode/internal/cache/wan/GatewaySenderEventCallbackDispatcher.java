@@ -18,6 +18,12 @@ package org.apache.geode.internal.cache.wan;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.Logger;
 
@@ -25,6 +31,7 @@ import org.apache.geode.CancelException;
 import org.apache.geode.cache.asyncqueue.AsyncEventListener;
 import org.apache.geode.internal.i18n.LocalizedStrings;
 import org.apache.geode.internal.logging.LogService;
+import org.apache.geode.internal.logging.LoggingThreadGroup;
 import org.apache.geode.internal.logging.log4j.LocalizedMessage;
 import org.apache.geode.i18n.StringId;
 
@@ -56,8 +63,26 @@ public class GatewaySenderEventCallbackDispatcher implements GatewaySenderEventD
    */
   private final Object eventLock = new Object();
 
+  /**
+   * The number of threads the listeners are invoked with, each with the events of some of the keys
+   * of a batch.
+   */
+  private final int dispatchThreads;
+
+  /**
+   * The threads invoking the listeners with the sub-batches the dispatcher thread does not process,
+   * created with the first batch split.
+   */
+  private ExecutorService dispatchExecutor;
+
   public GatewaySenderEventCallbackDispatcher(AbstractGatewaySenderEventProcessor eventProcessor) {
+    this(eventProcessor, AbstractGatewaySender.LISTENER_DISPATCH_THREADS);
+  }
+
+  GatewaySenderEventCallbackDispatcher(AbstractGatewaySenderEventProcessor eventProcessor,
+      int dispatchThreads) {
     this.eventProcessor = eventProcessor;
+    this.dispatchThreads = dispatchThreads;
     initializeEventListeners();
   }
 
@@ -150,10 +175,14 @@ public class GatewaySenderEventCallbackDispatcher implements GatewaySenderEventD
     int batchId = this.eventProcessor.getBatchId();
     boolean successAll = true;
     try {
-      for (AsyncEventListener listener : this.eventListeners) {
-        boolean successOne = listener.processEvents(events);
-        if (!successOne) {
-          successAll = false;
+      if (this.dispatchThreads > 1 && events.size() > 1) {
+        successAll = dispatchSubBatches(events);
+      } else {
+        for (AsyncEventListener listener : this.eventListeners) {
+          boolean successOne = listener.processEvents(events);
+          if (!successOne) {
+            successAll = false;
+          }
         }
       }
     } catch (Exception e) {
@@ -168,6 +197,124 @@ public class GatewaySenderEventCallbackDispatcher implements GatewaySenderEventD
     return successAll;
   }
 
+  /**
+   * Splits the batch by key, and invokes the listeners with the sub-batches in parallel, the first
+   * one on the dispatcher thread. The events of a key are all in the same sub-batch, in the order
+   * of the batch. Returns once all the sub-batches are processed, so that the batch is only
+   * acknowledged, or dispatched again, once the listeners are done with all its events.
+   */
+  private boolean dispatchSubBatches(List events) throws Exception {
+    final GatewaySenderStats statistics = this.eventProcessor.getSender().getStatistics();
+    long start = statistics.startTime();
+    List<List> subBatches = splitBatch(events, this.dispatchThreads);
+    statistics.endBatchSplit(start, subBatches.size());
+
+    List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(subBatches.size() - 1);
+    if (subBatches.size() > 1) {
+      ExecutorService executor = getDispatchExecutor();
+      for (final List subBatch : subBatches.subList(1, subBatches.size())) {
+        futures.add(executor.submit(() -> processSubBatch(subBatch, statistics)));
+      }
+    }
+
+    boolean success = true;
+    Exception failure = null;
+    try {
+      success = processSubBatch(subBatches.get(0), statistics);
+    } catch (Exception e) {
+      failure = e;
+    }
+    // the other sub-batches are waited for even after a failure, so that they are not processed
+    // again while the batch is dispatched again
+    long waitStart = statistics.startTime();
+    try {
+      for (Future<Boolean> future : futures) {
+        try {
+          if (!future.get()) {
+            success = false;
+          }
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          if (failure == null) {
+            failure = (Exception) cause;
+          }
+        }
+      }
+    } finally {
+      statistics.endSubBatchWait(waitStart);
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return success;
+  }
+
+  private boolean processSubBatch(List subBatch, GatewaySenderStats statistics) {
+    long start = statistics.startTime();
+    try {
+      boolean success = true;
+      for (AsyncEventListener listener : this.eventListeners) {
+        if (!listener.processEvents(subBatch)) {
+          success = false;
+        }
+      }
+      return success;
+    } finally {
+      statistics.endSubBatch(start);
+    }
+  }
+
+  /**
+   * Splits the batch into at most <code>numSubBatches</code> sub-batches, by the hash of the region
+   * and the key of the events. The sub-batches without events are left out.
+   */
+  static List<List> splitBatch(List events, int numSubBatches) {
+    List<List> subBatches = new ArrayList<List>(numSubBatches);
+    for (int i = 0; i < numSubBatches; i++) {
+      subBatches.add(new ArrayList());
+    }
+    for (Object event : events) {
+      int index = 0;
+      if (event instanceof GatewaySenderEventImpl) {
+        GatewaySenderEventImpl gatewayEvent = (GatewaySenderEventImpl) event;
+        Object key = gatewayEvent.getKeyToConflate();
+        int hash = 31 * String.valueOf(gatewayEvent.getRegionPath()).hashCode()
+            + (key == null ? 0 : key.hashCode());
+        index = (hash & Integer.MAX_VALUE) % numSubBatches;
+      }
+      subBatches.get(index).add(event);
+    }
+    for (int i = numSubBatches - 1; i >= 0; i--) {
+      if (subBatches.get(i).isEmpty()) {
+        subBatches.remove(i);
+      }
+    }
+    return subBatches;
+  }
+
+  private synchronized ExecutorService getDispatchExecutor() {
+    if (this.dispatchExecutor == null) {
+      final LoggingThreadGroup loggingThreadGroup = LoggingThreadGroup
+          .createThreadGroup("AsyncEventQueue Listener Dispatch Logger Group", logger);
+      final String senderId = this.eventProcessor.getSender().getId();
+      final AtomicInteger threadNumber = new AtomicInteger();
+      final ThreadFactory threadFactory = new ThreadFactory() {
+        public Thread newThread(final Runnable task) {
+          final Thread thread =
+              new Thread(loggingThreadGroup, task, "AsyncEventQueue Listener Dispatch Thread "
+                  + threadNumber.incrementAndGet() + " for " + senderId);
+          thread.setDaemon(true);
+          return thread;
+        }
+      };
+      this.dispatchExecutor = Executors.newFixedThreadPool(this.dispatchThreads - 1, threadFactory);
+    }
+    return this.dispatchExecutor;
+  }
+
   @Override
   public boolean isRemoteDispatcher() {
     return false;
@@ -179,8 +326,10 @@ public class GatewaySenderEventCallbackDispatcher implements GatewaySenderEventD
   }
 
   @Override
-  public void stop() {
-    // no op
-
+  public synchronized void stop() {
+    if (this.dispatchExecutor != null) {
+      this.dispatchExecutor.shutdown();
+      this.dispatchExecutor = null;
+    }
   }
 }
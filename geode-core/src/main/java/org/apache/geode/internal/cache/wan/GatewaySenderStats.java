@@ -89,6 +89,29 @@ public class GatewaySenderStats {
   protected static final String LOAD_BALANCES_IN_PROGRESS = "loadBalancesInProgress";
   protected static final String LOAD_BALANCE_TIME = "loadBalanceTime";
 
+  /** Name of the batches in flight statistic */
+  protected static final String BATCHES_IN_FLIGHT = "batchesInFlight";
+  /** Name of the batches acknowledged statistic */
+  protected static final String BATCHES_ACKNOWLEDGED = "batchesAcknowledged";
+  /** Name of the batch acknowledgement time statistic */
+  protected static final String BATCH_ACKNOWLEDGEMENT_TIME = "batchAcknowledgementTime";
+  /** Name of the batches compressed statistic */
+  protected static final String BATCHES_COMPRESSED = "batchesCompressed";
+  /** Name of the bytes of the batches before compression statistic */
+  protected static final String BATCH_BYTES_BEFORE_COMPRESSION = "batchBytesBeforeCompression";
+  /** Name of the bytes of the batches after compression statistic */
+  protected static final String BATCH_BYTES_AFTER_COMPRESSION = "batchBytesAfterCompression";
+  /** Name of the batch compression time statistic */
+  protected static final String BATCH_COMPRESSION_TIME = "batchCompressionTime";
+  /** Name of the sub-batches dispatched statistic */
+  protected static final String SUB_BATCHES_DISPATCHED = "subBatchesDispatched";
+  /** Name of the batch split time statistic */
+  protected static final String BATCH_SPLIT_TIME = "batchSplitTime";
+  /** Name of the sub-batch dispatch time statistic */
+  protected static final String SUB_BATCH_DISPATCH_TIME = "subBatchDispatchTime";
+  /** Name of the sub-batch wait time statistic */
+  protected static final String SUB_BATCH_WAIT_TIME = "subBatchWaitTime";
+
   /** Id of the events queued statistic */
   protected static int eventsReceivedId;
   /** Id of the events queued statistic */
@@ -140,6 +163,28 @@ public class GatewaySenderStats {
   protected static int loadBalancesInProgressId;
   /** Id of load balance time */
   protected static int loadBalanceTimeId;
+  /** Id of the batches in flight statistic */
+  protected static int batchesInFlightId;
+  /** Id of the batches acknowledged statistic */
+  protected static int batchesAcknowledgedId;
+  /** Id of the batch acknowledgement time statistic */
+  protected static int batchAcknowledgementTimeId;
+  /** Id of the batches compressed statistic */
+  protected static int batchesCompressedId;
+  /** Id of the bytes of the batches before compression statistic */
+  protected static int batchBytesBeforeCompressionId;
+  /** Id of the bytes of the batches after compression statistic */
+  protected static int batchBytesAfterCompressionId;
+  /** Id of the batch compression time statistic */
+  protected static int batchCompressionTimeId;
+  /** Id of the sub-batches dispatched statistic */
+  protected static int subBatchesDispatchedId;
+  /** Id of the batch split time statistic */
+  protected static int batchSplitTimeId;
+  /** Id of the sub-batch dispatch time statistic */
+  protected static int subBatchDispatchTimeId;
+  /** Id of the sub-batch wait time statistic */
+  protected static int subBatchWaitTimeId;
 
   /**
    * Static initializer to create and initialize the <code>StatisticsType</code>
@@ -213,6 +258,33 @@ public class GatewaySenderStats {
             f.createIntGauge(LOAD_BALANCES_IN_PROGRESS, "Number of load balances in progress",
                 "operations"),
             f.createLongCounter(LOAD_BALANCE_TIME, "Total time spent load balancing this sender",
+                "nanoseconds"),
+            f.createIntGauge(BATCHES_IN_FLIGHT,
+                "Number of batches sent to the remote site and not acknowledged yet.",
+                "operations"),
+            f.createIntCounter(BATCHES_ACKNOWLEDGED,
+                "Number of batches acknowledged by the remote site.", "operations"),
+            f.createLongCounter(BATCH_ACKNOWLEDGEMENT_TIME,
+                "Total time between sending batches and receiving their acknowledgement.",
+                "nanoseconds"),
+            f.createIntCounter(BATCHES_COMPRESSED,
+                "Number of batches compressed before being sent to the remote site.", "operations"),
+            f.createLongCounter(BATCH_BYTES_BEFORE_COMPRESSION,
+                "Total size of the events of the batches compressed, before compression.", "bytes"),
+            f.createLongCounter(BATCH_BYTES_AFTER_COMPRESSION,
+                "Total size of the events of the batches compressed, after compression.", "bytes"),
+            f.createLongCounter(BATCH_COMPRESSION_TIME, "Total time spent compressing batches.",
+                "nanoseconds"),
+            f.createIntCounter(SUB_BATCHES_DISPATCHED,
+                "Number of sub-batches of keys dispatched to the listeners in parallel.",
+                "operations"),
+            f.createLongCounter(BATCH_SPLIT_TIME, "Total time spent splitting batches by key.",
+                "nanoseconds"),
+            f.createLongCounter(SUB_BATCH_DISPATCH_TIME,
+                "Total time the listeners spent processing sub-batches, summed over the threads.",
+                "nanoseconds"),
+            f.createLongCounter(SUB_BATCH_WAIT_TIME,
+                "Total time the dispatchers waited for the other sub-batches of their batches.",
                 "nanoseconds"),});
 
     // Initialize id fields
@@ -243,6 +315,17 @@ public class GatewaySenderStats {
     loadBalancesCompletedId = type.nameToId(LOAD_BALANCES_COMPLETED);
     loadBalancesInProgressId = type.nameToId(LOAD_BALANCES_IN_PROGRESS);
     loadBalanceTimeId = type.nameToId(LOAD_BALANCE_TIME);
+    batchesInFlightId = type.nameToId(BATCHES_IN_FLIGHT);
+    batchesAcknowledgedId = type.nameToId(BATCHES_ACKNOWLEDGED);
+    batchAcknowledgementTimeId = type.nameToId(BATCH_ACKNOWLEDGEMENT_TIME);
+    batchesCompressedId = type.nameToId(BATCHES_COMPRESSED);
+    batchBytesBeforeCompressionId = type.nameToId(BATCH_BYTES_BEFORE_COMPRESSION);
+    batchBytesAfterCompressionId = type.nameToId(BATCH_BYTES_AFTER_COMPRESSION);
+    batchCompressionTimeId = type.nameToId(BATCH_COMPRESSION_TIME);
+    subBatchesDispatchedId = type.nameToId(SUB_BATCHES_DISPATCHED);
+    batchSplitTimeId = type.nameToId(BATCH_SPLIT_TIME);
+    subBatchDispatchTimeId = type.nameToId(SUB_BATCH_DISPATCH_TIME);
+    subBatchWaitTimeId = type.nameToId(SUB_BATCH_WAIT_TIME);
   }
 
   ////////////////////// Instance Fields //////////////////////
@@ -729,6 +812,174 @@ public class GatewaySenderStats {
     this.stats.incLong(eventQueueTimeId, elapsed);
   }
 
+  /**
+   * Sets the "batchesInFlight" stat.
+   * 
+   * @param batches The number of batches sent and not acknowledged yet
+   */
+  public void setBatchesInFlight(int batches) {
+    this.stats.setInt(batchesInFlightId, batches);
+  }
+
+  /**
+   * Returns the current value of the "batchesInFlight" stat.
+   * 
+   * @return the current value of the "batchesInFlight" stat
+   */
+  public int getBatchesInFlight() {
+    return this.stats.getInt(batchesInFlightId);
+  }
+
+  /**
+   * Returns the current value of the "batchesAcknowledged" stat.
+   * 
+   * @return the current value of the "batchesAcknowledged" stat
+   */
+  public int getBatchesAcknowledged() {
+    return this.stats.getInt(batchesAcknowledgedId);
+  }
+
+  /**
+   * Returns the current value of the "batchAcknowledgementTime" stat.
+   * 
+   * @return the current value of the "batchAcknowledgementTime" stat
+   */
+  public long getBatchAcknowledgementTime() {
+    return this.stats.getLong(batchAcknowledgementTimeId);
+  }
+
+  /**
+   * Increments the "batchesAcknowledged" and "batchAcknowledgementTime" stats.
+   * 
+   * @param start The time the batch was sent (which is decremented from the current time to
+   *        determine the acknowledgement time).
+   */
+  public void endBatchAcknowledgement(long start) {
+    long ts = DistributionStats.getStatTime();
+    this.stats.incInt(batchesAcknowledgedId, 1);
+    this.stats.incLong(batchAcknowledgementTimeId, ts - start);
+  }
+
+  /**
+   * Returns the current value of the "batchesCompressed" stat.
+   * 
+   * @return the current value of the "batchesCompressed" stat
+   */
+  public int getBatchesCompressed() {
+    return this.stats.getInt(batchesCompressedId);
+  }
+
+  /**
+   * Returns the current value of the "batchBytesBeforeCompression" stat.
+   * 
+   * @return the current value of the "batchBytesBeforeCompression" stat
+   */
+  public long getBatchBytesBeforeCompression() {
+    return this.stats.getLong(batchBytesBeforeCompressionId);
+  }
+
+  /**
+   * Returns the current value of the "batchBytesAfterCompression" stat.
+   * 
+   * @return the current value of the "batchBytesAfterCompression" stat
+   */
+  public long getBatchBytesAfterCompression() {
+    return this.stats.getLong(batchBytesAfterCompressionId);
+  }
+
+  /**
+   * Returns the current value of the "batchCompressionTime" stat.
+   * 
+   * @return the current value of the "batchCompressionTime" stat
+   */
+  public long getBatchCompressionTime() {
+    return this.stats.getLong(batchCompressionTimeId);
+  }
+
+  /**
+   * Increments the "batchesCompressed", "batchBytesBeforeCompression", "batchBytesAfterCompression"
+   * and "batchCompressionTime" stats.
+   * 
+   * @param start The time the compression started (which is decremented from the current time to
+   *        determine the compression time).
+   * @param bytesBefore The size of the events of the batch before compression
+   * @param bytesAfter The size of the events of the batch after compression
+   */
+  public void endBatchCompression(long start, int bytesBefore, int bytesAfter) {
+    long ts = DistributionStats.getStatTime();
+    this.stats.incInt(batchesCompressedId, 1);
+    this.stats.incLong(batchBytesBeforeCompressionId, bytesBefore);
+    this.stats.incLong(batchBytesAfterCompressionId, bytesAfter);
+    this.stats.incLong(batchCompressionTimeId, ts - start);
+  }
+
+  /**
+   * Returns the current value of the "subBatchesDispatched" stat.
+   * 
+   * @return the current value of the "subBatchesDispatched" stat
+   */
+  public int getSubBatchesDispatched() {
+    return this.stats.getInt(subBatchesDispatchedId);
+  }
+
+  /**
+   * Returns the current value of the "batchSplitTime" stat.
+   * 
+   * @return the current value of the "batchSplitTime" stat
+   */
+  public long getBatchSplitTime() {
+    return this.stats.getLong(batchSplitTimeId);
+  }
+
+  /**
+   * Returns the current value of the "subBatchDispatchTime" stat.
+   * 
+   * @return the current value of the "subBatchDispatchTime" stat
+   */
+  public long getSubBatchDispatchTime() {
+    return this.stats.getLong(subBatchDispatchTimeId);
+  }
+
+  /**
+   * Returns the current value of the "subBatchWaitTime" stat.
+   * 
+   * @return the current value of the "subBatchWaitTime" stat
+   */
+  public long getSubBatchWaitTime() {
+    return this.stats.getLong(subBatchWaitTimeId);
+  }
+
+  /**
+   * Increments the "subBatchesDispatched" and "batchSplitTime" stats.
+   * 
+   * @param start The time the split started (which is decremented from the current time to
+   *        determine the split time).
+   * @param subBatches The number of sub-batches the batch was split into
+   */
+  public void endBatchSplit(long start, int subBatches) {
+    long ts = DistributionStats.getStatTime();
+    this.stats.incInt(subBatchesDispatchedId, subBatches);
+    this.stats.incLong(batchSplitTimeId, ts - start);
+  }
+
+  /**
+   * Increments the "subBatchDispatchTime" stat.
+   * 
+   * @param start The time the listeners started processing the sub-batch
+   */
+  public void endSubBatch(long start) {
+    this.stats.incLong(subBatchDispatchTimeId, DistributionStats.getStatTime() - start);
+  }
+
+  /**
+   * Increments the "subBatchWaitTime" stat.
+   * 
+   * @param start The time the dispatcher started waiting for the other sub-batches
+   */
+  public void endSubBatchWait(long start) {
+    this.stats.incLong(subBatchWaitTimeId, DistributionStats.getStatTime() - start);
+  }
+
   public long startLoadBalance() {
     stats.incInt(loadBalancesInProgressId, 1);
     return CachePerfStats.getStatTime();
@@ -354,8 +354,7 @@ public class ParallelGatewaySenderQueue implements RegionQueue {
         }
 
         // allow for no overflow directory
-        EvictionAttributes ea = EvictionAttributes.createLIFOMemoryAttributes(
-            sender.getMaximumQueueMemory(), EvictionAction.OVERFLOW_TO_DISK);
+        EvictionAttributes ea = createEvictionAttributes(sender);
 
         fact.setEvictionAttributes(ea);
         fact.setPartitionAttributes(pfact.create());
@@ -461,6 +460,22 @@ public class ParallelGatewaySenderQueue implements RegionQueue {
     return "";
   }
 
+  /**
+   * Returns the eviction attributes of the shadow PRs: the newest events overflow to disk, so that
+   * the oldest ones, which are dispatched first, stay in memory. With a memory window, each bucket
+   * keeps that many events in memory, whatever the maximum queue memory, so the events queued
+   * during a long outage are written to disk as they are queued, and read from disk in order as
+   * they are peeked.
+   */
+  private static EvictionAttributes createEvictionAttributes(AbstractGatewaySender sender) {
+    if (AbstractGatewaySender.PARALLEL_QUEUE_MEMORY_WINDOW > 0) {
+      return EvictionAttributes.createLIFOEntryAttributes(
+          AbstractGatewaySender.PARALLEL_QUEUE_MEMORY_WINDOW, EvictionAction.OVERFLOW_TO_DISK);
+    }
+    return EvictionAttributes.createLIFOMemoryAttributes(sender.getMaximumQueueMemory(),
+        EvictionAction.OVERFLOW_TO_DISK);
+  }
+
   public void addShadowPartitionedRegionForUserPR(PartitionedRegion userPR) {
     if (logger.isDebugEnabled()) {
       logger.debug("{} addShadowPartitionedRegionForUserPR: Attempting to create queue region: {}",
@@ -532,8 +547,7 @@ public class ParallelGatewaySenderQueue implements RegionQueue {
         }
 
         // allow for no overflow directory
-        EvictionAttributes ea = EvictionAttributes.createLIFOMemoryAttributes(
-            sender.getMaximumQueueMemory(), EvictionAction.OVERFLOW_TO_DISK);
+        EvictionAttributes ea = createEvictionAttributes(sender);
 
         fact.setEvictionAttributes(ea);
         fact.setPartitionAttributes(pfact.create());
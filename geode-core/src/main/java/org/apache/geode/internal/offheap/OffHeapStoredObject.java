@@ -19,8 +19,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 
 import org.apache.geode.cache.Region;
+import org.apache.geode.internal.ByteBufferWriter;
 import org.apache.geode.internal.DSCODE;
-import org.apache.geode.internal.HeapDataOutputStream;
 import org.apache.geode.internal.InternalDataSerializer;
 import org.apache.geode.internal.cache.BytesAndBitsForCompactor;
 import org.apache.geode.internal.cache.EntryBits;
@@ -283,16 +283,17 @@ public class OffHeapStoredObject extends AbstractStoredObject
 
   @Override
   public void sendTo(DataOutput out) throws IOException {
-    if (!this.isCompressed() && out instanceof HeapDataOutputStream) {
+    if (!this.isCompressed() && out instanceof ByteBufferWriter) {
       ByteBuffer bb = createDirectByteBuffer();
       if (bb != null) {
-        HeapDataOutputStream hdos = (HeapDataOutputStream) out;
+        // streams such as MsgStreamer send the off-heap bytes without copying them
+        ByteBufferWriter writer = (ByteBufferWriter) out;
         if (this.isSerialized()) {
-          hdos.write(bb);
+          writer.write(bb);
         } else {
-          hdos.writeByte(DSCODE.BYTE_ARRAY);
-          InternalDataSerializer.writeArrayLength(bb.remaining(), hdos);
-          hdos.write(bb);
+          out.writeByte(DSCODE.BYTE_ARRAY);
+          InternalDataSerializer.writeArrayLength(bb.remaining(), out);
+          writer.write(bb);
         }
         return;
       }
@@ -302,12 +303,11 @@ public class OffHeapStoredObject extends AbstractStoredObject
 
   @Override
   public void sendAsByteArray(DataOutput out) throws IOException {
-    if (!isCompressed() && out instanceof HeapDataOutputStream) {
+    if (!isCompressed() && out instanceof ByteBufferWriter) {
       ByteBuffer bb = createDirectByteBuffer();
       if (bb != null) {
-        HeapDataOutputStream hdos = (HeapDataOutputStream) out;
-        InternalDataSerializer.writeArrayLength(bb.remaining(), hdos);
-        hdos.write(bb);
+        InternalDataSerializer.writeArrayLength(bb.remaining(), out);
+        ((ByteBufferWriter) out).write(bb);
         return;
       }
     }
@@ -60,7 +60,7 @@ import static org.apache.geode.distributed.ConfigurationProperties.*;
  * 
  */
 
-public class Connection implements Runnable {
+public class Connection implements Runnable, ConnectionEventLoop.Handler {
   private static final Logger logger = LogService.getLogger();
 
   private static final int INITIAL_CAPACITY =
@@ -90,6 +90,12 @@ public class Connection implements Runnable {
   /** counter to give connections a unique id */
   private static AtomicLong idCounter = new AtomicLong(1);
 
+  /**
+   * the prefix of the names of the event loop threads that multiplex shared connections, which must
+   * not be used to process messages inline
+   */
+  public static final String EVENT_LOOP_THREAD_NAME_PREFIX = "P2P event loop";
+
   /** string used as the reason for initiating suspect processing */
   public static final String INITIATING_SUSPECT_PROCESSING =
       "member unexpectedly shut down shared, unordered connection";
@@ -307,6 +313,12 @@ public class Connection implements Runnable {
   /** message reader thread */
   private volatile Thread readerThread;
 
+  /**
+   * the event loop registration of the socket channel, once a shared connection is handed over to
+   * an event loop of the connection table after its handshake
+   */
+  private volatile ConnectionEventLoop.Registration eventLoopRegistration;
+
   // /**
   // * When a thread owns the outLock and is writing to the socket, it must
   // * be placed in this variable so that it can be interrupted should the
@@ -1193,8 +1205,10 @@ public class Connection implements Runnable {
           LocalizedStrings.Connection_CONNECTION_FAILED_CONSTRUCTION_FOR_PEER_0
               .toLocalizedString(remoteAddr));
     }
-    if (preserveOrder && BATCH_SENDS) {
+    if (!conn.registerWithEventLoop() && preserveOrder && BATCH_SENDS) {
       conn.createBatchSendBuffer();
+    } else if (preserveOrder && MessageCoalescer.COALESCE_MESSAGES) {
+      conn.createCoalescer();
     }
     conn.finishedConnecting = true;
     return conn;
@@ -1478,6 +1492,35 @@ public class Connection implements Runnable {
     if (this.batchFlusher != null) {
       this.batchFlusher.close();
     }
+    if (this.coalescer != null) {
+      this.coalescer.close();
+    }
+  }
+
+  /**
+   * Coalesces the small messages sent on this shared, ordered connection when p2p.coalesceMessages
+   * is set. Unlike batch sends, only the messages that are not waited for are delayed, by
+   * p2p.coalesceFlushMicros at most.
+   */
+  private MessageCoalescer coalescer;
+
+  private void createCoalescer() {
+    final ThreadGroup group =
+        LoggingThreadGroup.createThreadGroup("P2P Message Coalescer Threads", logger);
+    this.coalescer = new MessageCoalescer(new MessageCoalescer.Writer() {
+      public void write(ByteBuffer buffer) throws IOException {
+        writeBuffer(buffer, null);
+      }
+
+      public void flushFailed(Exception e) {
+        logger.fatal(LocalizedMessage
+            .create(LocalizedStrings.Connection_EXCEPTION_FLUSHING_BATCH_SEND_BUFFER_0, e));
+        readerShuttingDown = true;
+        requestClose(LocalizedStrings.Connection_EXCEPTION_FLUSHING_BATCH_SEND_BUFFER_0
+            .toLocalizedString(e));
+      }
+    }, this.owner.getConduit().stats, group, "P2P Message Coalescer for " + this.remoteAddr);
+    this.coalescer.start();
   }
 
   /**
@@ -1609,6 +1652,11 @@ public class Connection implements Runnable {
         nioLengthSet = false;
       } // synchronized
 
+      ConnectionEventLoop.Registration registration = this.eventLoopRegistration;
+      if (registration != null) {
+        registration.cancel();
+      }
+
       // moved the call to notifyHandshakeWaiter out of the above
       // synchronized block to fix bug #42159
       // Make sure anyone waiting for a handshake stops waiting
@@ -1732,19 +1780,21 @@ public class Connection implements Runnable {
       if (logger.isDebugEnabled()) {
         logger.debug("Stopping {} for {}", p2pReaderName(), remoteAddr);
       }
-      initiateSuspicionIfSharedUnordered();
-      if (this.isReceiver) {
-        if (!this.sharedResource) {
-          this.owner.owner.stats.incThreadOwnedReceivers(-1L, dominoCount.get());
+      if (this.isReceiver && this.eventLoopRegistration != null) {
+        // an event loop reads the messages of the connection from now on, with its buffer
+        if (logger.isDebugEnabled()) {
+          logger.debug("{} handed {} over to an event loop", p2pReaderName(), this);
         }
-        asyncClose(false);
-        this.owner.removeAndCloseThreadOwnedSockets();
-      }
-      ByteBuffer tmp = this.nioInputBuffer;
-      if (tmp != null) {
-        this.nioInputBuffer = null;
-        final DMStats stats = this.owner.getConduit().stats;
-        Buffers.releaseReceiveBuffer(tmp, stats);
+      } else {
+        initiateSuspicionIfSharedUnordered();
+        if (this.isReceiver) {
+          if (!this.sharedResource) {
+            this.owner.owner.stats.incThreadOwnedReceivers(-1L, dominoCount.get());
+          }
+          asyncClose(false);
+          this.owner.removeAndCloseThreadOwnedSockets();
+        }
+        releaseInputBuffer();
       }
       // make sure that if the reader thread exits we notify a thread waiting
       // for the handshake.
@@ -1875,6 +1925,9 @@ public class Connection implements Runnable {
             // Once we have read the handshake the reader can go away
             break;
           }
+          if (this.isReceiver && this.handshakeRead && registerWithEventLoop()) {
+            break;
+          }
         } catch (CancelException e) {
           if (logger.isDebugEnabled()) {
             logger.debug("{} Terminated <{}> due to cancellation", p2pReaderName(), this, e);
@@ -1946,6 +1999,118 @@ public class Connection implements Runnable {
     }
   }
 
+  /**
+   * Hands a shared connection over to an event loop of the connection table once its handshake is
+   * done, if the table has any. The event loop reads the messages of a receiver and writes what the
+   * socket buffer of a sender cannot take right away.
+   *
+   * @return true if the connection was handed over
+   */
+  private boolean registerWithEventLoop() {
+    if (!this.sharedResource || !useNIO()) {
+      return false;
+    }
+    ConnectionEventLoop eventLoop = this.owner.getEventLoop();
+    if (eventLoop == null) {
+      return false;
+    }
+    try {
+      this.eventLoopRegistration =
+          eventLoop.register(getSocket().getChannel(), this, this.isReceiver);
+      return true;
+    } catch (IOException e) {
+      // keep using the socket in blocking mode; the reader or sender will notice it if it is closed
+      if (logger.isDebugEnabled()) {
+        logger.debug("Unable to hand {} over to an event loop", this, e);
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Reads what is available from the channel of this connection and dispatches the messages it
+   * completes, on behalf of an event loop.
+   *
+   * @return false if the connection is closing
+   */
+  public boolean readAvailable(SocketChannel channel) {
+    try {
+      int amt = channel.read(getNIOBuffer());
+      if (amt < 0) {
+        this.readerShuttingDown = true;
+        closeFromEventLoop(
+            LocalizedStrings.Connection_SOCKETCHANNEL_READ_RETURNED_EOF.toLocalizedString());
+        return false;
+      }
+      if (amt > 0) {
+        processNIOBuffer();
+      }
+      return this.connected && !this.stopped;
+    } catch (CancelException e) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("{} Terminated <{}> due to cancellation", p2pReaderName(), this, e);
+      }
+      this.readerShuttingDown = true;
+      closeFromEventLoop(
+          LocalizedStrings.Connection_CACHECLOSED_IN_CHANNEL_READ_0.toLocalizedString(e));
+    } catch (ClosedChannelException e) {
+      this.readerShuttingDown = true;
+      closeFromEventLoop(LocalizedStrings.Connection_CLOSEDCHANNELEXCEPTION_IN_CHANNEL_READ_0
+          .toLocalizedString(e));
+    } catch (IOException e) {
+      if (logger.isDebugEnabled() && !isSocketClosed() && !isIgnorableIOException(e)) {
+        logger.debug("{} io exception for {}", p2pReaderName(), this, e);
+      }
+      this.readerShuttingDown = true;
+      closeFromEventLoop(
+          LocalizedStrings.Connection_IOEXCEPTION_IN_CHANNEL_READ_0.toLocalizedString(e));
+    } catch (Exception e) {
+      if (!stopped && !isSocketClosed()
+          && !this.owner.getConduit().getCancelCriterion().isCancelInProgress()) {
+        logger.fatal(LocalizedMessage
+            .create(LocalizedStrings.Connection_0_EXCEPTION_IN_CHANNEL_READ, p2pReaderName()), e);
+      }
+      this.readerShuttingDown = true;
+      closeFromEventLoop(
+          LocalizedStrings.Connection_0_EXCEPTION_IN_CHANNEL_READ.toLocalizedString(e));
+    }
+    return false;
+  }
+
+  /** an event loop failed writing the bytes queued for this connection */
+  public void writeFailed(IOException e) {
+    if (logger.isDebugEnabled() && !isIgnorableIOException(e)) {
+      logger.debug("Event loop write failed for {}", this, e);
+    }
+    closeFromEventLoop("SocketChannel.write failed: " + e);
+  }
+
+  /** the event loop of this connection no longer reads from nor writes to its channel */
+  public void removedFromEventLoop() {
+    if (this.isReceiver) {
+      initiateSuspicionIfSharedUnordered();
+      asyncClose(false);
+      releaseInputBuffer();
+    }
+  }
+
+  private void closeFromEventLoop(String reason) {
+    try {
+      requestClose(reason);
+    } catch (Exception ignore) {
+      // shutting down
+    }
+  }
+
+  private void releaseInputBuffer() {
+    ByteBuffer tmp = this.nioInputBuffer;
+    if (tmp != null) {
+      this.nioInputBuffer = null;
+      final DMStats stats = this.owner.getConduit().stats;
+      Buffers.releaseReceiveBuffer(tmp, stats);
+    }
+  }
+
   /**
    * initiate suspect processing if a shared/ordered connection is lost and we're not shutting down
    */
@@ -2566,10 +2731,12 @@ public class Connection implements Runnable {
    * sends a serialized message to the other end of this connection. This is used by the
    * DirectChannel in GemFire when the message is going to be sent to multiple recipients.
    * 
+   * @param coalesce whether the message may wait for other messages to be written with it, if this
+   *        connection coalesces messages
    * @throws ConnectionException if the conduit has stopped
    */
   public void sendPreserialized(ByteBuffer buffer, boolean cacheContentChanges,
-      DistributionMessage msg) throws IOException, ConnectionException {
+      DistributionMessage msg, boolean coalesce) throws IOException, ConnectionException {
     if (!connected) {
       throw new ConnectionException(
           LocalizedStrings.Connection_NOT_CONNECTED_TO_0.toLocalizedString(this.remoteAddr));
@@ -2586,26 +2753,86 @@ public class Connection implements Runnable {
     }
     this.socketInUse = true;
     try {
-      if (useNIO()) {
-        SocketChannel channel = getSocket().getChannel();
-        nioWriteFully(channel, buffer, false, msg);
+      if (this.coalescer != null) {
+        this.coalescer.send(buffer, coalesce && msg == null);
       } else {
-        if (buffer.hasArray()) {
-          this.output.write(buffer.array(), buffer.arrayOffset(),
-              buffer.limit() - buffer.position());
-        } else {
-          byte[] bytesToWrite = getBytesToWrite(buffer);
-          synchronized (outLock) {
-            try {
-              // this.writerThread = Thread.currentThread();
-              this.output.write(bytesToWrite);
-              this.output.flush();
-            } finally {
-              // this.writerThread = null;
-            }
+        writeBuffer(buffer, msg);
+      }
+      if (cacheContentChanges) {
+        messagesSent++;
+      }
+    } finally {
+      accessed();
+      this.socketInUse = origSocketInUse;
+      synchronized (stateLock) {
+        this.connectionState = originalState;
+      }
+    }
+  }
+
+  /** Writes the remaining bytes of the buffer to the socket of this connection */
+  private void writeBuffer(ByteBuffer buffer, DistributionMessage msg) throws IOException {
+    ConnectionEventLoop.Registration registration = this.eventLoopRegistration;
+    if (registration != null) {
+      registration.send(buffer, this.owner.getConduit().getCancelCriterion());
+    } else if (useNIO()) {
+      SocketChannel channel = getSocket().getChannel();
+      nioWriteFully(channel, buffer, false, msg);
+    } else {
+      if (buffer.hasArray()) {
+        this.output.write(buffer.array(), buffer.arrayOffset(), buffer.limit() - buffer.position());
+      } else {
+        byte[] bytesToWrite = getBytesToWrite(buffer);
+        synchronized (outLock) {
+          try {
+            // this.writerThread = Thread.currentThread();
+            this.output.write(bytesToWrite);
+            this.output.flush();
+          } finally {
+            // this.writerThread = null;
           }
         }
       }
+    }
+  }
+
+  /**
+   * Sends a message, or a chunk of one, whose bytes are held by several buffers. When they can be
+   * written to the socket channel by the calling thread they are sent with gathering writes,
+   * without being copied into a single buffer first. Otherwise, for instance when the connection
+   * uses old IO, batches its sends or queues them asynchronously, they are copied into one buffer
+   * sent by {@link #sendPreserialized(ByteBuffer, boolean, DistributionMessage, boolean)}. The
+   * positions of the buffers are not reset once they have been sent. The bytes are too many to be
+   * coalesced with other messages.
+   */
+  public void sendPreserialized(ByteBuffer[] buffers, boolean cacheContentChanges,
+      DistributionMessage msg) throws IOException, ConnectionException {
+    if (!connected) {
+      throw new ConnectionException(
+          LocalizedStrings.Connection_NOT_CONNECTED_TO_0.toLocalizedString(this.remoteAddr));
+    }
+    final ConnectionEventLoop.Registration registration = this.eventLoopRegistration;
+    if (this.batchFlusher != null
+        || (registration == null && (!useNIO() || !useSyncWrites(false)))) {
+      sendPreserialized(copyToSingleBuffer(buffers), cacheContentChanges, msg, false);
+      return;
+    }
+    final boolean origSocketInUse = this.socketInUse;
+    byte originalState = -1;
+    synchronized (stateLock) {
+      originalState = this.connectionState;
+      this.connectionState = STATE_SENDING;
+    }
+    this.socketInUse = true;
+    try {
+      if (this.coalescer != null) {
+        this.coalescer.flushBuffered();
+      }
+      if (registration != null) {
+        registration.send(buffers, this.owner.getConduit().getCancelCriterion());
+      } else {
+        nioWriteFully(getSocket().getChannel(), buffers, msg);
+      }
       if (cacheContentChanges) {
         messagesSent++;
       }
@@ -2618,6 +2845,20 @@ public class Connection implements Runnable {
     }
   }
 
+  /** Returns a heap buffer holding the bytes remaining in the given buffers */
+  private static ByteBuffer copyToSingleBuffer(ByteBuffer[] buffers) {
+    int size = 0;
+    for (ByteBuffer bb : buffers) {
+      size += bb.remaining();
+    }
+    ByteBuffer result = ByteBuffer.allocate(size);
+    for (ByteBuffer bb : buffers) {
+      result.put(bb);
+    }
+    result.flip();
+    return result;
+  }
+
   /**
    * If <code>use</code> is true then "claim" the connection for our use. If <code>use</code> is
    * false then "release" the connection. Fixes bug 37657.
@@ -3384,6 +3625,43 @@ public class Connection implements Runnable {
     }
   }
 
+  /**
+   * Writes the bytes of the given buffers to the channel with gathering writes. Only used when
+   * {@link #useSyncWrites} is true, the bytes being queued if asynchronous queuing has started in
+   * the meantime.
+   */
+  private final void nioWriteFully(SocketChannel channel, ByteBuffer[] buffers,
+      DistributionMessage msg) throws IOException, ConnectionException {
+    final DMStats stats = this.owner.getConduit().stats;
+    if (!this.sharedResource) {
+      stats.incTOSentMsg();
+    }
+    long remaining = 0;
+    for (ByteBuffer bb : buffers) {
+      remaining += bb.remaining();
+    }
+    long startLock = stats.startSocketLock();
+    synchronized (this.outLock) {
+      stats.endSocketLock(startLock);
+      if (this.asyncQueuingInProgress) {
+        if (addToQueue(copyToSingleBuffer(buffers), msg, false)) {
+          return;
+        }
+        // fall through
+      }
+      do {
+        long amtWritten = 0;
+        long start = stats.startSocketWrite(true);
+        try {
+          amtWritten = channel.write(buffers);
+        } finally {
+          stats.endSocketWrite(true, start, (int) amtWritten, 0);
+        }
+        remaining -= amtWritten;
+      } while (remaining > 0);
+    } // synchronized
+  }
+
   /** gets the buffer for receiving message length bytes */
   protected ByteBuffer getNIOBuffer() {
     final DMStats stats = this.owner.getConduit().stats;
@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.logging.log4j.Logger;
+
+import org.apache.geode.CancelCriterion;
+import org.apache.geode.SystemFailure;
+import org.apache.geode.distributed.internal.DMStats;
+import org.apache.geode.internal.logging.LogService;
+
+/**
+ * A selector thread multiplexing the socket channels of many peer connections, as an alternative to
+ * a reader thread per connection. The loop reads what is available from the channels registered for
+ * reading and hands it to their {@link Handler}, which dispatches the messages it completes to the
+ * executors of the distribution manager. It also drains the outbound queue of each channel, where
+ * the bytes that a socket buffer could not take right away are queued by the sending threads.
+ *
+ * Sending threads write to the channel directly as long as nothing is queued for it, so that the
+ * loop is only involved once the socket buffer is full. They wait for the queue to drain once the
+ * bytes queued for a channel exceed the maximum given to the loop.
+ */
+class ConnectionEventLoop implements Runnable {
+  private static final Logger logger = LogService.getLogger();
+
+  /** The time a sending thread waits at most for a full outbound queue before checking again */
+  private static final long QUEUE_WAIT_MS = 100;
+
+  /** The connection a channel is registered for */
+  interface Handler {
+    /**
+     * Reads what is available from the channel and processes it. Returns false if the channel is to
+     * be removed from the loop.
+     */
+    boolean readAvailable(SocketChannel channel);
+
+    /** Invoked by the loop when a write of queued bytes failed */
+    void writeFailed(IOException e);
+
+    /** Invoked by the loop once the channel is no longer registered with it */
+    void removedFromEventLoop();
+  }
+
+  private final Selector selector;
+
+  private final Thread thread;
+
+  /** Changes to the registrations of the loop, which are done by the loop thread */
+  private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+
+  private final long maxQueuedBytes;
+
+  private final DMStats stats;
+
+  private volatile boolean stopped;
+
+  /**
+   * @param group the thread group of the loop thread
+   * @param name the name of the loop thread, following
+   *        {@link Connection#EVENT_LOOP_THREAD_NAME_PREFIX}
+   * @param maxQueuedBytes the number of bytes queued for a channel past which senders wait
+   * @param stats the statistics the socket writes are recorded in
+   */
+  ConnectionEventLoop(ThreadGroup group, String name, long maxQueuedBytes, DMStats stats)
+      throws IOException {
+    this.selector = Selector.open();
+    this.maxQueuedBytes = maxQueuedBytes;
+    this.stats = stats;
+    this.thread = new Thread(group, this, Connection.EVENT_LOOP_THREAD_NAME_PREFIX + " " + name);
+    this.thread.setDaemon(true);
+  }
+
+  void start() {
+    this.thread.start();
+  }
+
+  /**
+   * Stops the loop. The channels still registered are removed from the loop, which notifies their
+   * handlers, but they are not closed.
+   */
+  void stop() {
+    this.stopped = true;
+    this.selector.wakeup();
+  }
+
+  boolean isStopped() {
+    return this.stopped;
+  }
+
+  /**
+   * Registers a connected channel with the loop, switching it to non-blocking mode. The channel
+   * must no longer be used by blocking reads or writes.
+   *
+   * @param read whether the loop is to read from the channel, or only to write to it
+   */
+  Registration register(SocketChannel channel, Handler handler, boolean read) throws IOException {
+    channel.configureBlocking(false);
+    final Registration registration = new Registration(channel, handler, read);
+    execute(new Runnable() {
+      public void run() {
+        registration.addToSelector();
+      }
+    });
+    return registration;
+  }
+
+  private void execute(Runnable task) {
+    this.pendingTasks.add(task);
+    if (this.stopped) {
+      // the loop will not run the task
+      runPendingTasks();
+    } else {
+      this.selector.wakeup();
+    }
+  }
+
+  private void runPendingTasks() {
+    Runnable task;
+    while ((task = this.pendingTasks.poll()) != null) {
+      task.run();
+    }
+  }
+
+  public void run() {
+    Connection.makeReaderThread();
+    ConnectionTable.threadWantsSharedResources();
+    try {
+      while (!this.stopped) {
+        runPendingTasks();
+        this.selector.select();
+        for (Iterator<SelectionKey> it = this.selector.selectedKeys().iterator(); it.hasNext();) {
+          SelectionKey key = it.next();
+          it.remove();
+          ((Registration) key.attachment()).process(key);
+        }
+      }
+    } catch (ClosedSelectorException ignore) {
+      // stopped
+    } catch (IOException e) {
+      if (!this.stopped) {
+        logger.fatal("{} failed selecting channels", Thread.currentThread().getName(), e);
+      }
+    } finally {
+      this.stopped = true;
+      try {
+        for (SelectionKey key : this.selector.keys()) {
+          ((Registration) key.attachment()).cancel();
+        }
+      } catch (ClosedSelectorException ignore) {
+      }
+      runPendingTasks();
+      try {
+        this.selector.close();
+      } catch (IOException ignore) {
+      }
+    }
+  }
+
+  /**
+   * A channel registered with the loop, along with the bytes queued for it. Sending threads and the
+   * loop thread synchronize on the registration to access the queue and the channel.
+   */
+  final class Registration {
+    private final SocketChannel channel;
+
+    private final Handler handler;
+
+    private final boolean read;
+
+    private final ArrayDeque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+
+    /** The number of bytes in the outbound queue, guarded by this */
+    private long queuedBytes;
+
+    /** Set once the registration is cancelled, guarded by this */
+    private boolean cancelled;
+
+    /** The key of the channel, used by the loop thread only */
+    private SelectionKey key;
+
+    Registration(SocketChannel channel, Handler handler, boolean read) {
+      this.channel = channel;
+      this.handler = handler;
+      this.read = read;
+    }
+
+    /**
+     * Sends the bytes remaining in the buffer, writing them to the channel right away as long as
+     * nothing is queued for it and queuing the rest. The buffer may be reused once this returns.
+     * Waits while the bytes queued for the channel exceed the maximum of the loop.
+     *
+     * @throws ClosedChannelException if the registration was cancelled
+     */
+    void send(ByteBuffer buffer, CancelCriterion stopper) throws IOException {
+      send(new ByteBuffer[] {buffer}, stopper);
+    }
+
+    /**
+     * Sends the bytes remaining in the buffers, in order, with gathering writes.
+     *
+     * @see #send(ByteBuffer, CancelCriterion)
+     */
+    void send(ByteBuffer[] buffers, CancelCriterion stopper) throws IOException {
+      long remaining = 0;
+      for (ByteBuffer bb : buffers) {
+        remaining += bb.remaining();
+      }
+      boolean interrupted = false;
+      try {
+        synchronized (this) {
+          while (!this.cancelled && this.queuedBytes > 0
+              && this.queuedBytes + remaining > maxQueuedBytes) {
+            stopper.checkCancelInProgress(null);
+            try {
+              wait(QUEUE_WAIT_MS);
+            } catch (InterruptedException e) {
+              interrupted = true;
+              stopper.checkCancelInProgress(e);
+            }
+          }
+          if (this.cancelled) {
+            throw new ClosedChannelException();
+          }
+          if (this.outbound.isEmpty()) {
+            long amtWritten;
+            do {
+              long start = stats.startSocketWrite(true);
+              amtWritten = this.channel.write(buffers);
+              stats.endSocketWrite(true, start, (int) amtWritten, 0);
+              remaining -= amtWritten;
+            } while (amtWritten > 0 && remaining > 0);
+            if (remaining == 0) {
+              return;
+            }
+          }
+          ByteBuffer queued = ByteBuffer.allocate((int) remaining);
+          for (ByteBuffer bb : buffers) {
+            queued.put(bb);
+          }
+          queued.flip();
+          this.outbound.add(queued);
+          this.queuedBytes += remaining;
+          if (this.outbound.size() == 1) {
+            execute(new Runnable() {
+              public void run() {
+                updateInterest();
+              }
+            });
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+
+    /** Returns the number of bytes queued for the channel */
+    synchronized long getQueuedBytes() {
+      return this.queuedBytes;
+    }
+
+    /**
+     * Removes the channel from the loop, discarding the bytes queued for it. The handler is
+     * notified by the loop thread.
+     */
+    void cancel() {
+      synchronized (this) {
+        if (this.cancelled) {
+          return;
+        }
+        this.cancelled = true;
+        this.outbound.clear();
+        this.queuedBytes = 0;
+        notifyAll();
+      }
+      execute(new Runnable() {
+        public void run() {
+          removeFromSelector();
+        }
+      });
+    }
+
+    private void addToSelector() {
+      synchronized (this) {
+        if (this.cancelled) {
+          return;
+        }
+      }
+      if (stopped) {
+        cancel();
+        return;
+      }
+      try {
+        this.key = this.channel.register(selector, 0, this);
+        updateInterest();
+      } catch (ClosedChannelException e) {
+        cancel();
+      } catch (ClosedSelectorException e) {
+        cancel();
+      }
+    }
+
+    private void removeFromSelector() {
+      if (this.key != null) {
+        this.key.cancel();
+      }
+      try {
+        this.handler.removedFromEventLoop();
+      } catch (RuntimeException e) {
+        logger.warn("Exception removing {} from {}", this.handler, thread.getName(), e);
+      }
+    }
+
+    private void updateInterest() {
+      SelectionKey k = this.key;
+      if (k == null || !k.isValid()) {
+        return;
+      }
+      int ops = this.read ? SelectionKey.OP_READ : 0;
+      synchronized (this) {
+        if (!this.outbound.isEmpty()) {
+          ops |= SelectionKey.OP_WRITE;
+        }
+      }
+      k.interestOps(ops);
+    }
+
+    /** Writes the queued bytes the socket buffer takes */
+    private void flush() throws IOException {
+      synchronized (this) {
+        while (!this.outbound.isEmpty()) {
+          ByteBuffer head = this.outbound.peek();
+          long start = stats.startSocketWrite(false);
+          int amtWritten = this.channel.write(head);
+          stats.endSocketWrite(false, start, amtWritten, 0);
+          this.queuedBytes -= amtWritten;
+          if (head.hasRemaining()) {
+            break;
+          }
+          this.outbound.poll();
+        }
+        notifyAll();
+      }
+      updateInterest();
+    }
+
+    private void process(SelectionKey k) {
+      try {
+        if (k.isWritable()) {
+          try {
+            flush();
+          } catch (IOException e) {
+            this.handler.writeFailed(e);
+            cancel();
+            return;
+          }
+        }
+        if (k.isValid() && k.isReadable() && !this.handler.readAvailable(this.channel)) {
+          cancel();
+        }
+      } catch (CancelledKeyException ignore) {
+        // the channel was closed
+        cancel();
+      } catch (VirtualMachineError err) {
+        SystemFailure.initiateFailure(err);
+        // If this ever returns, rethrow the error. We're poisoned
+        // now, so don't let this thread continue.
+        throw err;
+      } catch (Throwable t) {
+        // Whenever you catch Error or Throwable, you must also
+        // catch VirtualMachineError (see above). However, there is
+        // _still_ a possibility that you are dealing with a cascading
+        // error condition, so you also need to check to see if the JVM
+        // is still usable:
+        SystemFailure.checkFailure();
+        logger.fatal("{} failed processing {}", thread.getName(), this.handler, t);
+        cancel();
+      }
+    }
+  }
+}
@@ -35,6 +35,7 @@ import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.logging.log4j.Logger;
@@ -154,6 +155,30 @@ public class ConnectionTable {
 
   private final SocketCloser socketCloser;
 
+  /**
+   * Whether the shared peer connections are multiplexed over a few event loop threads rather than
+   * each having a reader thread, in which case threads do not own connections. Requires NIO.
+   */
+  static final boolean USE_EVENT_LOOPS = Boolean.getBoolean("p2p.useEventLoops");
+
+  /** The number of event loop threads. Defaults to half the processors, between 1 and 4. */
+  private static final int EVENT_LOOP_THREADS = Integer.getInteger("p2p.eventLoopThreads",
+      Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2))).intValue();
+
+  /**
+   * The number of bytes that may be queued for a peer connection before its senders wait for an
+   * event loop to write them. Defaults to 8 megabytes.
+   */
+  private static final long EVENT_LOOP_MAX_QUEUED_BYTES =
+      Long.getLong("p2p.eventLoopMaxQueuedBytes", 8 * 1024 * 1024).longValue();
+
+  /**
+   * The event loops reading and writing the shared connections, or null if they are not used
+   */
+  private final ConnectionEventLoop[] eventLoops;
+
+  private final AtomicInteger nextEventLoop = new AtomicInteger();
+
   /**
    * The most recent instance to be created
    * 
@@ -185,6 +210,10 @@ public class ConnectionTable {
    * Returns true if calling thread owns its own communication resources.
    */
   boolean threadOwnsResources() {
+    if (usesEventLoops()) {
+      // all the threads share the connections multiplexed by the event loops
+      return false;
+    }
     DM d = getDM();
     if (d != null) {
       return d.getSystem().threadOwnsResources() && !AlertAppender.isThreadAlerting();
@@ -226,6 +255,7 @@ public class ConnectionTable {
     this.threadConnectionMap = new ConcurrentHashMap();
     this.p2pReaderThreadPool = createThreadPoolForIO(c.getDM().getSystem().isShareSockets());
     this.socketCloser = new SocketCloser();
+    this.eventLoops = USE_EVENT_LOOPS ? createEventLoops() : null;
     /*
      * NOMUX: if (TCPConduit.useNIO) { inputMuxManager = new InputMuxManager(this);
      * inputMuxManager.start(c.logger); }
@@ -260,6 +290,44 @@ public class ConnectionTable {
     return executor;
   }
 
+  private ConnectionEventLoop[] createEventLoops() throws IOException {
+    final ThreadGroup group = LoggingThreadGroup.createThreadGroup("P2P Event Loops", logger);
+    ConnectionEventLoop[] loops = new ConnectionEventLoop[EVENT_LOOP_THREADS];
+    try {
+      for (int i = 0; i < loops.length; i++) {
+        loops[i] = new ConnectionEventLoop(group, String.valueOf(i), EVENT_LOOP_MAX_QUEUED_BYTES,
+            this.owner.stats);
+      }
+    } catch (IOException e) {
+      for (int i = 0; i < loops.length && loops[i] != null; i++) {
+        loops[i].stop();
+      }
+      throw e;
+    }
+    for (int i = 0; i < loops.length; i++) {
+      loops[i].start();
+    }
+    logger.info("Multiplexing shared peer connections over {} event loop threads", loops.length);
+    return loops;
+  }
+
+  /**
+   * Returns the event loop to hand the next shared connection over to, or null if event loops are
+   * not used or this table is closed
+   */
+  ConnectionEventLoop getEventLoop() {
+    if (!usesEventLoops() || this.closed) {
+      return null;
+    }
+    return this.eventLoops[(this.nextEventLoop.getAndIncrement() & Integer.MAX_VALUE)
+        % this.eventLoops.length];
+  }
+
+  /** Returns true if the shared connections are handed over to event loops */
+  boolean usesEventLoops() {
+    return this.eventLoops != null && this.owner.useNIO();
+  }
+
   /** conduit sends connected() after establishing the server socket */
   // protected void connected() {
   // /* NOMUX: if (TCPConduit.useNIO) {
@@ -774,6 +842,11 @@ public class ConnectionTable {
       }
     }
     closeReceivers(false);
+    if (this.eventLoops != null) {
+      for (int i = 0; i < this.eventLoops.length; i++) {
+        this.eventLoops[i].stop();
+      }
+    }
 
     Map m = (Map) this.threadOrderedConnMap.get();
     if (m != null) {
@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.geode.SystemFailure;
+import org.apache.geode.distributed.internal.DMStats;
+
+/**
+ * Coalesces the small messages sent on a shared, ordered peer connection, so that the messages sent
+ * to a member within a short time of each other are written to its socket at once. Each message
+ * keeps its own frame; the frames are copied one after the other into a buffer, which is written
+ * when it is full, when a message that is waited for is sent, or once the first message it holds
+ * has waited for the flush deadline. The deadline is kept by a flusher thread.
+ *
+ * All writes to the connection go through the coalescer once it exists, so that the messages keep
+ * the order they were sent in.
+ */
+class MessageCoalescer implements Runnable {
+
+  /** Whether the messages sent on shared, ordered connections are coalesced */
+  static final boolean COALESCE_MESSAGES = Boolean.getBoolean("p2p.coalesceMessages");
+
+  /** The time, in microseconds, a message waits at most for others to be written with it */
+  static final long FLUSH_DEADLINE_MICROS =
+      Long.getLong("p2p.coalesceFlushMicros", 100).longValue();
+
+  /** The size of the buffer the messages are coalesced in */
+  static final int BUFFER_SIZE = Integer.getInteger("p2p.coalesceBufferSize", 64 * 1024).intValue();
+
+  /** Where the coalesced messages are written to */
+  interface Writer {
+    /** Writes all the remaining bytes of the buffer to the connection */
+    void write(ByteBuffer buffer) throws IOException;
+
+    /** Invoked when the flusher thread failed to write the coalesced messages */
+    void flushFailed(Exception e);
+  }
+
+  private final Writer writer;
+
+  private final DMStats stats;
+
+  private final long flushDeadlineNanos;
+
+  /** Messages larger than this are not worth copying and are written as they are */
+  private final int maxMessageSize;
+
+  private final ByteBuffer buffer;
+
+  /** Guards the buffer, and is held while it is written so that writes keep their order */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /** Signals the flusher thread that the buffer holds messages, or that it is time to stop */
+  private final Condition messagesAdded = this.lock.newCondition();
+
+  /** The number of messages in the buffer */
+  private int messages;
+
+  /** The sum of the times the messages in the buffer were added at, to compute their delays */
+  private long addTimes;
+
+  /** The time the buffer is to be written at, valid when it holds messages */
+  private long deadline;
+
+  private boolean closed;
+
+  private final Thread flusher;
+
+  /**
+   * @param group the thread group of the flusher thread
+   * @param name the name of the flusher thread
+   * @param stats the statistics the coalesced writes are recorded in
+   */
+  MessageCoalescer(Writer writer, DMStats stats, ThreadGroup group, String name) {
+    this(writer, stats, group, name, BUFFER_SIZE, FLUSH_DEADLINE_MICROS);
+  }
+
+  MessageCoalescer(Writer writer, DMStats stats, ThreadGroup group, String name, int bufferSize,
+      long flushDeadlineMicros) {
+    this.writer = writer;
+    this.stats = stats;
+    this.buffer = TCPConduit.useDirectBuffers ? ByteBuffer.allocateDirect(bufferSize)
+        : ByteBuffer.allocate(bufferSize);
+    this.maxMessageSize = bufferSize / 4;
+    this.flushDeadlineNanos = TimeUnit.MICROSECONDS.toNanos(flushDeadlineMicros);
+    this.flusher = new Thread(group, this, name);
+    this.flusher.setDaemon(true);
+  }
+
+  void start() {
+    this.flusher.start();
+  }
+
+  /**
+   * Sends the remaining bytes of the buffer, which hold one or more framed messages. They are
+   * copied, so the buffer may be reused once this method returns.
+   *
+   * @param coalesce true if the bytes may wait for other messages; false if they are written before
+   *        this method returns, along with the messages sent before them
+   */
+  void send(ByteBuffer src, boolean coalesce) throws IOException {
+    final int size = src.remaining();
+    this.lock.lock();
+    try {
+      if (this.closed) {
+        this.writer.write(src);
+        return;
+      }
+      if (size <= this.maxMessageSize) {
+        if (size > this.buffer.remaining()) {
+          flush();
+        }
+        add(src);
+        if (!coalesce) {
+          flush();
+        }
+      } else {
+        flush();
+        this.writer.write(src);
+      }
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /**
+   * Writes the messages waiting in the buffer, so that the bytes written to the connection next
+   * follow them.
+   */
+  void flushBuffered() throws IOException {
+    this.lock.lock();
+    try {
+      flush();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  /** Stops the flusher thread. The messages still buffered are not written. */
+  void close() {
+    this.lock.lock();
+    try {
+      this.closed = true;
+      this.buffer.clear();
+      this.messages = 0;
+      this.messagesAdded.signal();
+    } finally {
+      this.lock.unlock();
+    }
+  }
+
+  private void add(ByteBuffer src) {
+    final long now = System.nanoTime();
+    if (this.messages == 0) {
+      this.deadline = now + this.flushDeadlineNanos;
+      this.messagesAdded.signal();
+    }
+    this.buffer.put(src);
+    this.messages++;
+    this.addTimes += now;
+  }
+
+  /** Writes the buffered messages; the caller holds the lock */
+  private void flush() throws IOException {
+    if (this.messages == 0) {
+      return;
+    }
+    final int count = this.messages;
+    final long delay = count * System.nanoTime() - this.addTimes;
+    this.messages = 0;
+    this.addTimes = 0;
+    this.buffer.flip();
+    try {
+      this.writer.write(this.buffer);
+    } finally {
+      this.buffer.clear();
+    }
+    this.stats.incCoalescedMessages(count, delay);
+  }
+
+  public void run() {
+    this.lock.lock();
+    try {
+      while (!this.closed) {
+        if (this.messages == 0) {
+          this.messagesAdded.await();
+          continue;
+        }
+        long remaining = this.deadline - System.nanoTime();
+        if (remaining > 0) {
+          this.messagesAdded.awaitNanos(remaining);
+          continue;
+        }
+        try {
+          flush();
+        } catch (Exception e) {
+          this.writer.flushFailed(e);
+        }
+      }
+    } catch (InterruptedException e) {
+      // time for this thread to shut down
+    } catch (VirtualMachineError err) {
+      SystemFailure.initiateFailure(err);
+      throw err;
+    } finally {
+      this.lock.unlock();
+    }
+  }
+}
@@ -43,8 +43,8 @@ import java.util.List;
  * 
  */
 
-public class MsgStreamer extends OutputStream
-    implements ObjToByteArraySerializer, BaseMsgStreamer, ByteBufferWriter {
+public class MsgStreamer extends OutputStream implements ObjToByteArraySerializer, BaseMsgStreamer,
+    ByteBufferWriter, ByteArrayReferencingOutput {
 
   private static final Logger logger = LogService.getLogger();
 
@@ -85,6 +85,13 @@ public class MsgStreamer extends OutputStream
   private long serStartTime;
   private final boolean directReply;
 
+  /**
+   * True if the message may wait for other messages to be written with it, on connections that
+   * coalesce messages. Messages with a reply processor are written right away, as they are waited
+   * for.
+   */
+  private final boolean coalesce;
+
   /**
    * Called to free up resources used by this streamer after the streamer has produced its message.
    */
@@ -92,6 +99,7 @@ public class MsgStreamer extends OutputStream
     MsgIdGenerator.release(this.msgId);
     this.buffer.clear();
     this.overflowBuf = null;
+    clearGatherBuffers();
     Buffers.releaseSenderBuffer(this.buffer, this.stats);
   }
 
@@ -127,6 +135,7 @@ public class MsgStreamer extends OutputStream
     this.buffer.position(Connection.MSG_HEADER_BYTES);
     this.msgId = MsgIdGenerator.NO_MSG_ID;
     this.directReply = directReply;
+    this.coalesce = !directReply && msg.getProcessorId() == 0;
     startSerialization();
   }
 
@@ -274,6 +283,88 @@ public class MsgStreamer extends OutputStream
   private int overflowMode = 0;
   private HeapDataOutputStream overflowBuf = null;
 
+  /**
+   * The number of bytes from which the buffers written to this streamer are sent from where they
+   * are rather than copied into its buffer. The bytes of already serialized values, such as those
+   * of a CachedDeserializable or of an off-heap StoredObject, are written as buffers (see
+   * {@link InternalDataSerializer#writeImmutableByteArray}) and then written to the socket along
+   * with the buffer of the streamer by gathering writes.
+   */
+  private static final int MIN_TO_REFERENCE =
+      Integer.getInteger("p2p.minBytesToReference", 16 * 1024).intValue();
+
+  /**
+   * The buffers the chunk being prepared is sent from, in order, once byte arrays or buffers have
+   * been referenced by it: slices of the buffer of this streamer and the referenced bytes. Empty as
+   * long as nothing was referenced.
+   */
+  private final ArrayList<ByteBuffer> gatherBuffers = new ArrayList<ByteBuffer>();
+
+  /** The position up to which the buffer of this streamer has been sliced into gatherBuffers */
+  private int gatheredPosition = 0;
+
+  /** The number of referenced bytes in gatherBuffers */
+  private int referencedBytes = 0;
+
+  /**
+   * True if the byte arrays written to this streamer may be referenced rather than copied. Off by
+   * default, as the callers of write(byte[], int, int) may reuse their array once it returns.
+   */
+  private boolean doNotCopy = false;
+
+  /**
+   * Sets whether the byte arrays written to this streamer may be referenced rather than copied, and
+   * returns the previous setting. Only turn this on while writing arrays which are not modified
+   * until the message is sent. Like {@link HeapDataOutputStream#setDoNotCopy}, this is turned off
+   * while serializing with an ObjectOutputStream, which reuses its internal byte array. Byte
+   * buffers are referenced either way, as {@link ByteBufferWriter} allows.
+   */
+  @Override
+  public boolean setDoNotCopy(boolean v) {
+    boolean result = this.doNotCopy;
+    this.doNotCopy = v;
+    return result;
+  }
+
+  /**
+   * Adds the remaining bytes of the given buffer to the chunk being prepared without copying them,
+   * if there are enough of them for it to be worth it. Returns false if they have to be copied.
+   */
+  private boolean reference(ByteBuffer bb) {
+    int len = bb.remaining();
+    if (len < MIN_TO_REFERENCE || isOverflowMode()) {
+      // while in overflow mode the size of the value being serialized is taken from the buffer
+      return false;
+    }
+    if ((long) this.referencedBytes + len + this.buffer.capacity()
+        - Connection.MSG_HEADER_BYTES > Connection.MAX_MSG_SIZE) {
+      // the chunk could no longer be sent as one message
+      return false;
+    }
+    addBufferSlice(this.buffer.position());
+    this.gatherBuffers.add(bb.slice());
+    bb.position(bb.limit());
+    this.referencedBytes += len;
+    return true;
+  }
+
+  /** Adds the bytes of the buffer from gatheredPosition to the given position to gatherBuffers */
+  private void addBufferSlice(int position) {
+    if (position > this.gatheredPosition) {
+      ByteBuffer slice = this.buffer.duplicate();
+      slice.limit(position);
+      slice.position(this.gatheredPosition);
+      this.gatherBuffers.add(slice.slice());
+      this.gatheredPosition = position;
+    }
+  }
+
+  private void clearGatherBuffers() {
+    this.gatherBuffers.clear();
+    this.gatheredPosition = 0;
+    this.referencedBytes = 0;
+  }
+
   private boolean isOverflowMode() {
     return this.overflowMode > 0;
   }
@@ -299,8 +390,13 @@ public class MsgStreamer extends OutputStream
     }
     this.buffer.flip();
     setMessageHeader();
-    final int serializedBytes = this.buffer.limit();
+    final int serializedBytes = this.buffer.limit() + this.referencedBytes;
     this.flushedBytes += serializedBytes;
+    ByteBuffer[] buffers = null;
+    if (this.referencedBytes > 0) {
+      addBufferSlice(this.buffer.limit());
+      buffers = this.gatherBuffers.toArray(new ByteBuffer[this.gatherBuffers.size()]);
+    }
     DistributionMessage conflationMsg = null;
     if (this.normalMsg) {
       // we can't conflate chunked messages; this fixes bug 36633
@@ -310,8 +406,14 @@ public class MsgStreamer extends OutputStream
     for (Iterator it = this.cons.iterator(); it.hasNext();) {
       Connection con = (Connection) it.next();
       try {
-        con.sendPreserialized(this.buffer,
-            lastFlushForMessage && this.msg.containsRegionContentChange(), conflationMsg);
+        if (buffers != null) {
+          con.sendPreserialized(buffers,
+              lastFlushForMessage && this.msg.containsRegionContentChange(), conflationMsg);
+        } else {
+          con.sendPreserialized(this.buffer,
+              lastFlushForMessage && this.msg.containsRegionContentChange(), conflationMsg,
+              this.coalesce);
+        }
       } catch (IOException ex) {
         it.remove();
         if (this.ce == null)
@@ -327,9 +429,16 @@ public class MsgStreamer extends OutputStream
         con.closeForReconnect(
             LocalizedStrings.MsgStreamer_CLOSING_DUE_TO_0.toLocalizedString("ConnectionException"));
       }
-      this.buffer.rewind();
+      if (buffers != null) {
+        for (ByteBuffer bb : buffers) {
+          bb.rewind();
+        }
+      } else {
+        this.buffer.rewind();
+      }
     }
     startSerialization();
+    clearGatherBuffers();
     this.buffer.clear();
     this.buffer.position(Connection.MSG_HEADER_BYTES);
   }
@@ -362,6 +471,10 @@ public class MsgStreamer extends OutputStream
       this.overflowBuf.write(source, offset, len);
       return;
     }
+    if (this.doNotCopy && len >= MIN_TO_REFERENCE
+        && reference(ByteBuffer.wrap(source, offset, len))) {
+      return;
+    }
     while (len > 0) {
       int remainingSpace = this.buffer.capacity() - this.buffer.position();
       if (remainingSpace == 0) {
@@ -391,6 +504,9 @@ public class MsgStreamer extends OutputStream
       this.overflowBuf.write(bb);
       return;
     }
+    if (reference(bb)) {
+      return;
+    }
     int len = bb.remaining();
     while (len > 0) {
       int remainingSpace = this.buffer.capacity() - this.buffer.position();
@@ -440,8 +556,8 @@ public class MsgStreamer extends OutputStream
       }
     }
 
-    this.buffer.putInt(Connection.MSG_HEADER_SIZE_OFFSET,
-        Connection.calcHdrSize(this.buffer.limit() - Connection.MSG_HEADER_BYTES));
+    this.buffer.putInt(Connection.MSG_HEADER_SIZE_OFFSET, Connection
+        .calcHdrSize(this.buffer.limit() - Connection.MSG_HEADER_BYTES + this.referencedBytes));
     this.buffer.put(Connection.MSG_HEADER_TYPE_OFFSET, (byte) (msgType & 0xff));
     this.buffer.putShort(Connection.MSG_HEADER_ID_OFFSET, this.msgId);
     this.buffer.position(0);
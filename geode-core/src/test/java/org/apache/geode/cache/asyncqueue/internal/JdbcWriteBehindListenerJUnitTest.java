@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.asyncqueue.internal;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import org.apache.geode.cache.Operation;
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.asyncqueue.AsyncEvent;
+import org.apache.geode.internal.datasource.ConfiguredDataSourceProperties;
+import org.apache.geode.internal.datasource.GemFireBasicDataSource;
+import org.apache.geode.internal.statistics.LocalStatisticsFactory;
+import org.apache.geode.pdx.PdxInstance;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+@Category(IntegrationTest.class)
+public class JdbcWriteBehindListenerJUnitTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String url;
+  private GemFireBasicDataSource dataSource;
+  private JdbcWriteBehindStats stats;
+  private JdbcWriteBehindListener listener;
+  private Region region;
+
+  @Before
+  public void setUp() throws Exception {
+    url = "jdbc:derby:" + temporaryFolder.getRoot().getAbsolutePath() + "/db";
+    ConfiguredDataSourceProperties configs = new ConfiguredDataSourceProperties();
+    configs.setJDBCDriver("org.apache.derby.jdbc.EmbeddedDriver");
+    configs.setURL(url + ";create=true");
+    configs.setUser("app");
+    configs.setPassword("app");
+    dataSource = new GemFireBasicDataSource(configs);
+    execute("CREATE TABLE customers (id VARCHAR(10) PRIMARY KEY, name VARCHAR(20), age INT)");
+
+    stats = new JdbcWriteBehindStats(new LocalStatisticsFactory(null), "test");
+    listener = new JdbcWriteBehindListener(dataSource, stats);
+    Properties props = new Properties();
+    props.setProperty(JdbcWriteBehindListener.TABLE_PREFIX + "region", "customers");
+    props.setProperty(JdbcWriteBehindListener.FIELD_PREFIX + "years", "age");
+    props.setProperty(JdbcWriteBehindListener.RETRY_INTERVAL, "0");
+    listener.init(props);
+
+    region = mock(Region.class);
+    when(region.getName()).thenReturn("region");
+    when(region.getFullPath()).thenReturn("/region");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    listener.close();
+    try {
+      ConfiguredDataSourceProperties configs = new ConfiguredDataSourceProperties();
+      configs.setJDBCDriver("org.apache.derby.jdbc.EmbeddedDriver");
+      configs.setURL(url + ";shutdown=true");
+      configs.setUser("app");
+      configs.setPassword("app");
+      new GemFireBasicDataSource(configs).getConnection();
+    } catch (SQLException expected) {
+      // derby reports a shutdown with an exception
+    }
+  }
+
+  @Test
+  public void eventsAreInsertedUpdatedAndDeletedInBatches() throws Exception {
+    assertTrue(listener.processEvents(Arrays.asList(event(Operation.CREATE, "a", row("A", 1)),
+        event(Operation.CREATE, "b", row("B", 2)), event(Operation.CREATE, "c", row("C", 3)))));
+    assertEquals(Arrays.asList("a:A:1", "b:B:2", "c:C:3"), rows());
+    assertEquals(3, stats.getRowsInserted());
+
+    assertTrue(listener.processEvents(Arrays.asList(event(Operation.UPDATE, "a", row("A2", 10)),
+        event(Operation.DESTROY, "b", null), event(Operation.PUTALL_CREATE, "d", row("D", 4)))));
+    assertEquals(Arrays.asList("a:A2:10", "c:C:3", "d:D:4"), rows());
+    assertEquals(4, stats.getRowsInserted());
+    assertEquals(1, stats.getRowsUpdated());
+    assertEquals(1, stats.getRowsDeleted());
+    assertEquals(2, stats.getBatchesWritten());
+  }
+
+  @Test
+  public void onlyTheLastEventOfAKeyIsWritten() throws Exception {
+    assertTrue(listener.processEvents(Arrays.asList(event(Operation.CREATE, "a", row("A", 1)),
+        event(Operation.UPDATE, "a", row("A2", 2)), event(Operation.CREATE, "b", row("B", 1)),
+        event(Operation.DESTROY, "b", null), event(Operation.UPDATE, "a", row("A3", 3)))));
+
+    assertEquals(Arrays.asList("a:A3:3"), rows());
+    assertEquals(3, stats.getEventsCoalesced());
+    assertEquals(1, stats.getRowsInserted());
+    assertEquals(0, stats.getRowsDeleted());
+  }
+
+  @Test
+  public void pdxFieldsAreMappedToColumns() throws Exception {
+    PdxInstance value = mock(PdxInstance.class);
+    when(value.getFieldNames()).thenReturn(Arrays.asList("id", "name", "years"));
+    when(value.getField("id")).thenReturn("ignored");
+    when(value.getField("name")).thenReturn("A");
+    when(value.getField("years")).thenReturn(42);
+
+    assertTrue(listener.processEvents(Arrays.asList(event(Operation.CREATE, "a", value))));
+
+    assertEquals(Arrays.asList("a:A:42"), rows());
+  }
+
+  @Test
+  public void eventsWithoutARowAreSkipped() throws Exception {
+    assertTrue(listener.processEvents(Arrays.asList(event(Operation.INVALIDATE, "a", null),
+        event(Operation.CREATE, "b", "not a row"), event(Operation.CREATE, "c", row("C", 3)))));
+
+    assertEquals(Arrays.asList("c:C:3"), rows());
+    assertEquals(2, stats.getEventsSkipped());
+  }
+
+  @Test
+  public void failedBatchIsRetriedThenLeftInTheQueue() throws Exception {
+    listener = new JdbcWriteBehindListener(dataSource, stats);
+    Properties props = new Properties();
+    props.setProperty(JdbcWriteBehindListener.TABLE_PREFIX + "region", "missing");
+    props.setProperty(JdbcWriteBehindListener.FIELD_PREFIX + "years", "age");
+    props.setProperty(JdbcWriteBehindListener.MAX_RETRIES, "2");
+    props.setProperty(JdbcWriteBehindListener.RETRY_INTERVAL, "0");
+    listener.init(props);
+    List<AsyncEvent> events = Arrays.asList(event(Operation.CREATE, "a", row("A", 1)));
+
+    assertFalse(listener.processEvents(events));
+    assertEquals(2, stats.getBatchRetries());
+    assertEquals(1, stats.getBatchesFailed());
+
+    execute("CREATE TABLE missing (id VARCHAR(10) PRIMARY KEY, name VARCHAR(20), age INT)");
+    assertTrue(listener.processEvents(events));
+    assertEquals(1, stats.getBatchesWritten());
+  }
+
+  @Test
+  public void rowsWithoutColumnsAreOnlyInsertedIfMissing() throws Exception {
+    execute("INSERT INTO customers VALUES ('a', 'A', 1)");
+
+    assertTrue(listener
+        .processEvents(Arrays.asList(event(Operation.UPDATE, "a", new HashMap<String, Object>()),
+            event(Operation.CREATE, "b", new HashMap<String, Object>()))));
+
+    assertEquals(Arrays.asList("a:A:1", "b:null:0"), rows());
+    assertEquals(1, stats.getRowsInserted());
+    assertEquals(1, stats.getBatchesWritten());
+    assertEquals(0, stats.getBatchesFailed());
+  }
+
+  @Test
+  public void rowsAreUpsertedWhenTheDriverDoesNotReturnRowCounts() throws Exception {
+    execute("INSERT INTO customers VALUES ('a', 'A', 1)");
+    listener = new JdbcWriteBehindListener(withoutBatchRowCounts(dataSource), stats);
+    Properties props = new Properties();
+    props.setProperty(JdbcWriteBehindListener.TABLE_PREFIX + "region", "customers");
+    props.setProperty(JdbcWriteBehindListener.FIELD_PREFIX + "years", "age");
+    props.setProperty(JdbcWriteBehindListener.RETRY_INTERVAL, "0");
+    listener.init(props);
+
+    assertTrue(listener.processEvents(Arrays.asList(event(Operation.UPDATE, "a", row("A2", 2)),
+        event(Operation.CREATE, "b", row("B", 1)))));
+
+    assertEquals(Arrays.asList("a:A2:2", "b:B:1"), rows());
+    assertEquals(1, stats.getRowsUpdated());
+    assertEquals(1, stats.getRowsInserted());
+  }
+
+  private AsyncEvent event(Operation operation, Object key, Object value) {
+    AsyncEvent event = mock(AsyncEvent.class);
+    when(event.getRegion()).thenReturn(region);
+    when(event.getOperation()).thenReturn(operation);
+    when(event.getKey()).thenReturn(key);
+    when(event.getDeserializedValue()).thenReturn(value);
+    return event;
+  }
+
+  private Map<String, Object> row(String name, int age) {
+    Map<String, Object> row = new HashMap<>();
+    row.put("name", name);
+    row.put("years", age);
+    return row;
+  }
+
+  /**
+   * Returns a data source whose batches return {@link Statement#SUCCESS_NO_INFO} for each
+   * statement, as some drivers do.
+   */
+  private DataSource withoutBatchRowCounts(final DataSource dataSource) {
+    return (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[] {DataSource.class}, (proxy, method, args) -> {
+          Object result = invoke(dataSource, method, args);
+          if (!method.getName().equals("getConnection")) {
+            return result;
+          }
+          final Connection connection = (Connection) result;
+          return Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Connection.class},
+              (connectionProxy, connectionMethod, connectionArgs) -> {
+                Object statement = invoke(connection, connectionMethod, connectionArgs);
+                if (!connectionMethod.getName().equals("prepareStatement")) {
+                  return statement;
+                }
+                return Proxy.newProxyInstance(getClass().getClassLoader(),
+                    new Class[] {PreparedStatement.class},
+                    (statementProxy, statementMethod, statementArgs) -> {
+                      Object counts = invoke(statement, statementMethod, statementArgs);
+                      if (statementMethod.getName().equals("executeBatch")) {
+                        Arrays.fill((int[]) counts, Statement.SUCCESS_NO_INFO);
+                      }
+                      return counts;
+                    });
+              });
+        });
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private void execute(String sql) throws SQLException {
+    Connection connection = dataSource.getConnection();
+    try {
+      Statement statement = connection.createStatement();
+      statement.execute(sql);
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+
+  private List<String> rows() throws SQLException {
+    List<String> rows = new ArrayList<>();
+    Connection connection = dataSource.getConnection();
+    try {
+      Statement statement = connection.createStatement();
+      ResultSet resultSet =
+          statement.executeQuery("SELECT id, name, age FROM customers ORDER BY id");
+      while (resultSet.next()) {
+        rows.add(resultSet.getString(1) + ":" + resultSet.getString(2) + ":" + resultSet.getInt(3));
+      }
+      statement.close();
+    } finally {
+      connection.close();
+    }
+    return rows;
+  }
+}
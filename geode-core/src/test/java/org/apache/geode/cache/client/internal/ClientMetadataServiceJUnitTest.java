@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.client.internal;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.Cache;
+import org.apache.geode.distributed.internal.ServerLocation;
+import org.apache.geode.internal.cache.BucketServerLocation66;
+import org.apache.geode.internal.cache.CachePerfStats;
+import org.apache.geode.internal.cache.LocalRegion;
+import org.apache.geode.internal.cache.PartitionedRegionHelper;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class ClientMetadataServiceJUnitTest {
+
+  private static final int TOTAL_NUM_BUCKETS = 4;
+
+  private ClientMetadataService cms;
+  private LocalRegion region;
+  private ClientPartitionAdvisor advisor;
+
+  @Before
+  public void setUp() throws Exception {
+    cms = new ClientMetadataService(mock(Cache.class));
+    region = mock(LocalRegion.class);
+    when(region.getFullPath()).thenReturn("/region");
+    when(region.getCachePerfStats()).thenReturn(mock(CachePerfStats.class));
+    advisor = new ClientPartitionAdvisor(TOTAL_NUM_BUCKETS, null, null, null);
+  }
+
+  @Test
+  public void noMapWithoutMetadata() {
+    assertNull(cms.getServerToFilterMapForBulkOp(Arrays.asList(1, 2, 3), region));
+    assertFalse(cms.isMetadataStable());
+  }
+
+  @Test
+  public void keysAreGroupedByPrimary() {
+    for (int bucketId = 0; bucketId < TOTAL_NUM_BUCKETS; bucketId++) {
+      hostBucket(bucketId, bucketId % 2 == 0 ? 1 : 2, bucketId % 2 == 0 ? 2 : 1);
+    }
+    cms.getClientPRMetadata_TEST_ONLY().put("/region", advisor);
+
+    List<Integer> keys = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7);
+    Map<ServerLocation, HashSet> serverToKeys = cms.getServerToFilterMapForBulkOp(keys, region);
+
+    assertEquals(2, serverToKeys.size());
+    for (Integer key : keys) {
+      int primaryPort = PartitionedRegionHelper.getHashKey(key, TOTAL_NUM_BUCKETS) % 2 == 0 ? 1 : 2;
+      assertTrue(serverToKeys.get(new ServerLocation("host", primaryPort)).contains(key));
+    }
+    assertTrue(cms.isMetadataStable());
+    assertEquals(0, cms.getRefreshTaskCount());
+  }
+
+  @Test
+  public void keysOfBucketsWithoutPrimaryAreNotDropped() {
+    hostBucket(0, 1, 2);
+    cms.getClientPRMetadata_TEST_ONLY().put("/region", advisor);
+
+    List<Integer> keys = Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7);
+    Map<ServerLocation, HashSet> serverToKeys = cms.getServerToFilterMapForBulkOp(keys, region);
+
+    assertNotNull(serverToKeys);
+    HashSet allKeys = new HashSet();
+    for (HashSet serverKeys : serverToKeys.values()) {
+      allKeys.addAll(serverKeys);
+    }
+    assertEquals(new HashSet(keys), allKeys);
+    assertFalse(cms.isMetadataStable());
+  }
+
+  private void hostBucket(int bucketId, int primaryPort, int secondaryPort) {
+    advisor.updateBucketServerLocations(bucketId,
+        Arrays.asList(
+            new BucketServerLocation66(bucketId, primaryPort, "host", true, (byte) 1,
+                new String[0]),
+            new BucketServerLocation66(bucketId, secondaryPort, "host", false, (byte) 1,
+                new String[0])),
+        cms);
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.client.internal;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.apache.geode.cache.client.ServerConnectivityException;
+import org.apache.geode.cache.client.ServerOperationException;
+import org.apache.geode.distributed.internal.ServerLocation;
+import org.apache.geode.internal.Version;
+import org.apache.geode.internal.cache.tier.MessageType;
+import org.apache.geode.internal.cache.tier.sockets.Message;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+@Category(IntegrationTest.class)
+public class MultiplexedConnectionJUnitTest {
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  private ServerSocket serverSocket;
+  private Socket clientSocket;
+  private Socket serverSide;
+  private Connection connection;
+  private MultiplexedConnection multiplexed;
+
+  @Before
+  public void setUp() throws Exception {
+    serverSocket = new ServerSocket(0);
+    clientSocket = new Socket("localhost", serverSocket.getLocalPort());
+    clientSocket.setSoTimeout(30000);
+    serverSide = serverSocket.accept();
+
+    connection = mock(Connection.class);
+    when(connection.getSocket()).thenReturn(clientSocket);
+    when(connection.getInputStream()).thenReturn(clientSocket.getInputStream());
+    when(connection.getOutputStream()).thenReturn(clientSocket.getOutputStream());
+    when(connection.getCommBuffer()).thenReturn(ByteBuffer.allocate(BUFFER_SIZE));
+    when(connection.getEndpoint()).thenReturn(mock(Endpoint.class));
+    when(connection.getServer())
+        .thenReturn(new ServerLocation("localhost", serverSocket.getLocalPort()));
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) throws Exception {
+        when(connection.isDestroyed()).thenReturn(true);
+        clientSocket.close();
+        return null;
+      }
+    }).when(connection).destroy();
+
+    OpExecutorImpl executor = mock(OpExecutorImpl.class);
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        Throwable failure = (Throwable) invocation.getArguments()[0];
+        if (failure instanceof RuntimeException) {
+          throw (RuntimeException) failure;
+        }
+        throw new ServerConnectivityException("failed", failure);
+      }
+    }).when(executor).handleException(any(Throwable.class), any(Connection.class), anyInt(),
+        anyBoolean());
+
+    multiplexed = new MultiplexedConnection(connection, executor, 16, BUFFER_SIZE);
+    multiplexed.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    multiplexed.close(null);
+    serverSide.close();
+    serverSocket.close();
+  }
+
+  @Test
+  public void opsAreOutstandingAtOnceAndGetTheirOwnResponses() throws Exception {
+    List<CompletableFuture<Object>> results = new ArrayList<CompletableFuture<Object>>();
+    for (int i = 0; i < 10; i++) {
+      results.add(multiplexed.execute(new EchoOp(i)));
+    }
+    // the server reads all the messages before it replies to the first one
+    List<Message> requests = readRequests(10);
+    for (Message request : requests) {
+      reply(request);
+    }
+    for (int i = 0; i < 10; i++) {
+      assertEquals(i * 10, results.get(i).get(30, TimeUnit.SECONDS));
+    }
+    verify(connection, never()).destroy();
+  }
+
+  @Test
+  public void errorResponseFailsOnlyItsOp() throws Exception {
+    CompletableFuture<Object> first = multiplexed.execute(new EchoOp(1));
+    CompletableFuture<Object> second = multiplexed.execute(new EchoOp(2));
+    CompletableFuture<Object> third = multiplexed.execute(new EchoOp(3));
+    List<Message> requests = readRequests(3);
+    reply(requests.get(0));
+    replyWithException(requests.get(1));
+    reply(requests.get(2));
+    assertEquals(10, first.get(30, TimeUnit.SECONDS));
+    try {
+      second.get(30, TimeUnit.SECONDS);
+      fail("expected an exception but none was thrown");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof ServerOperationException);
+    }
+    assertEquals(30, third.get(30, TimeUnit.SECONDS));
+    assertFalse(multiplexed.isClosed());
+  }
+
+  @Test
+  public void lostConnectionFailsOutstandingOps() throws Exception {
+    CompletableFuture<Object> first = multiplexed.execute(new EchoOp(1));
+    CompletableFuture<Object> second = multiplexed.execute(new EchoOp(2));
+    readRequests(2);
+    serverSide.close();
+    assertFailed(first);
+    assertFailed(second);
+    assertTrue(multiplexed.isClosed());
+    verify(connection).destroy();
+    assertFailed(multiplexed.execute(new EchoOp(3)));
+  }
+
+  private void assertFailed(CompletableFuture<Object> result) throws Exception {
+    try {
+      result.get(30, TimeUnit.SECONDS);
+      fail("expected an exception but none was thrown");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause().toString(), e.getCause() instanceof ServerConnectivityException);
+    }
+  }
+
+  private List<Message> readRequests(int count) throws Exception {
+    List<Message> result = new ArrayList<Message>();
+    ByteBuffer commBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    for (int i = 0; i < count; i++) {
+      Message request = new Message(1, Version.CURRENT);
+      request.setComms(serverSide, serverSide.getInputStream(), serverSide.getOutputStream(),
+          commBuffer, null);
+      request.recv();
+      result.add(request);
+    }
+    return result;
+  }
+
+  private void reply(Message request) throws Exception {
+    Message reply = new Message(1, Version.CURRENT);
+    reply.setMessageType(MessageType.RESPONSE);
+    reply.setTransactionId(request.getTransactionId());
+    reply.addObjPart(Integer.valueOf(request.getPart(0).getInt() * 10));
+    send(reply);
+  }
+
+  private void replyWithException(Message request) throws Exception {
+    Message reply = new Message(1, Version.CURRENT);
+    reply.setMessageType(MessageType.EXCEPTION);
+    reply.setTransactionId(request.getTransactionId());
+    reply.addObjPart(new IllegalStateException("failed on the server"));
+    send(reply);
+  }
+
+  private void send(Message reply) throws Exception {
+    reply.setComms(serverSide, serverSide.getInputStream(), serverSide.getOutputStream(),
+        ByteBuffer.allocate(BUFFER_SIZE), null);
+    reply.send();
+  }
+
+  /** An op the test server replies to with ten times the int it sends */
+  private static class EchoOp extends AbstractOp {
+    EchoOp(int value) {
+      super(MessageType.PING, 1);
+      getMessage().addIntPart(value);
+    }
+
+    @Override
+    protected Object processResponse(Message msg) throws Exception {
+      return processObjResponse(msg, "echo");
+    }
+
+    @Override
+    protected boolean isErrorResponse(int msgType) {
+      return false;
+    }
+
+    @Override
+    protected boolean participateInTransaction() {
+      return false;
+    }
+
+    @Override
+    protected long startAttempt(ConnectionStats stats) {
+      return 0;
+    }
+
+    @Override
+    protected void endSendAttempt(ConnectionStats stats, long start) {}
+
+    @Override
+    protected void endAttempt(ConnectionStats stats, long start) {}
+  }
+}
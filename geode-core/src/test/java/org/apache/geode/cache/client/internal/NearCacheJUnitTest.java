@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.client.internal;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.apache.geode.cache.Region;
+import org.apache.geode.internal.offheap.MemoryAllocator;
+import org.apache.geode.internal.offheap.MemoryAllocatorImpl;
+import org.apache.geode.internal.offheap.NullOffHeapMemoryStats;
+import org.apache.geode.internal.offheap.NullOutOfOffHeapMemoryListener;
+import org.apache.geode.internal.offheap.SlabImpl;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class NearCacheJUnitTest {
+
+  private Region<String, String> region;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    region = mock(Region.class);
+    when(region.getFullPath()).thenReturn("/region");
+    when(region.get(any())).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        return "value of " + invocation.getArguments()[0];
+      }
+    });
+  }
+
+  @Test
+  public void valueReadOnceIsKept() throws Exception {
+    NearCache<String, String> nearCache = subscribedNearCache(100, 0, null);
+
+    assertEquals("value of a", nearCache.get("a"));
+    assertEquals("value of a", nearCache.get("a"));
+
+    verify(region, times(1)).get("a");
+    assertEquals(1, nearCache.getHits());
+    assertEquals(1, nearCache.getMisses());
+    assertEquals(1, nearCache.size());
+  }
+
+  @Test
+  public void invalidatedValueIsReadAgain() throws Exception {
+    NearCache<String, String> nearCache = subscribedNearCache(100, 0, null);
+    nearCache.get("a");
+    nearCache.get("b");
+
+    nearCache.invalidate("a");
+    nearCache.get("a");
+    nearCache.get("b");
+
+    verify(region, times(2)).get("a");
+    verify(region, times(1)).get("b");
+    assertEquals(1, nearCache.getInvalidations());
+
+    nearCache.invalidateAll();
+    assertEquals(0, nearCache.size());
+  }
+
+  @Test
+  public void valueInvalidatedWhileReadIsNotKept() throws Exception {
+    final NearCache<String, String> nearCache = subscribedNearCache(100, 0, null);
+    when(region.get("a")).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) {
+        nearCache.invalidate("a");
+        return "old value of a";
+      }
+    });
+
+    assertEquals("old value of a", nearCache.get("a"));
+    assertEquals(0, nearCache.size());
+    nearCache.get("a");
+    verify(region, times(2)).get("a");
+  }
+
+  @Test
+  public void nothingIsKeptWithoutSubscription() throws Exception {
+    NearCache<String, String> nearCache = subscribedNearCache(100, 0, null);
+    nearCache.get("a");
+
+    nearCache.setSubscribed(false);
+    assertEquals(0, nearCache.size());
+    nearCache.get("a");
+    nearCache.get("a");
+    verify(region, times(3)).get("a");
+
+    nearCache.setSubscribed(true);
+    nearCache.get("a");
+    nearCache.get("a");
+    verify(region, times(4)).get("a");
+  }
+
+  @Test
+  public void putValueIsKept() throws Exception {
+    NearCache<String, String> nearCache = subscribedNearCache(100, 0, null);
+    nearCache.put("a", "new value");
+
+    verify(region).put("a", "new value");
+    assertEquals("new value", nearCache.get("a"));
+    verify(region, never()).get("a");
+  }
+
+  @Test
+  public void expiredValueIsReadAgain() throws Exception {
+    NearCache<String, String> nearCache =
+        subscribedNearCache(100, TimeUnit.MILLISECONDS.toNanos(10), null);
+    nearCache.get("a");
+    Thread.sleep(50);
+
+    nearCache.get("a");
+    verify(region, times(2)).get("a");
+  }
+
+  @Test
+  public void keysReadOftenAreNotEvictedByKeysReadOnce() throws Exception {
+    NearCache<String, String> nearCache = subscribedNearCache(100, 0, null);
+    for (int i = 0; i < 5; i++) {
+      for (int key = 0; key < 50; key++) {
+        nearCache.get("often" + key);
+      }
+    }
+    for (int key = 0; key < 1000; key++) {
+      nearCache.get("once" + key);
+    }
+
+    assertEquals(100, nearCache.size());
+    assertEquals(950, nearCache.getEvictions());
+    // the frequencies are estimates, so a few of the keys read often may have been evicted
+    long hits = nearCache.getHits();
+    for (int key = 0; key < 50; key++) {
+      nearCache.get("often" + key);
+    }
+    assertTrue(nearCache.getHits() - hits >= 45);
+  }
+
+  @Test
+  public void valuesAreKeptOffHeap() throws Exception {
+    MemoryAllocator store =
+        MemoryAllocatorImpl.createForUnitTest(new NullOutOfOffHeapMemoryListener(),
+            new NullOffHeapMemoryStats(), new SlabImpl[] {new SlabImpl(1024 * 1024)});
+    try {
+      NearCache<String, String> nearCache = subscribedNearCache(10, 0, store);
+      for (int key = 0; key < 20; key++) {
+        nearCache.get("a long key to have a value too large to be encoded in an address " + key);
+      }
+      String key = "a long key to have a value too large to be encoded in an address 19";
+      assertEquals("value of " + key, nearCache.get(key));
+      assertEquals(1, nearCache.getHits());
+      assertTrue(store.getUsedMemory() > 0);
+
+      nearCache.close();
+      assertEquals(0, store.getUsedMemory());
+    } finally {
+      MemoryAllocatorImpl.freeOffHeapMemory();
+    }
+  }
+
+  private NearCache<String, String> subscribedNearCache(int maxEntries, long timeToLiveNanos,
+      MemoryAllocator store) {
+    NearCache<String, String> nearCache =
+        new NearCache<String, String>(region, maxEntries, timeToLiveNanos, store);
+    nearCache.setSubscribed(true);
+    return nearCache;
+  }
+}
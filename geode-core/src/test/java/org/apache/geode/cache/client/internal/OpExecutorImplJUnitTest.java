@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 
 import org.junit.Before;
@@ -712,6 +713,11 @@ public class OpExecutorImplJUnitTest {
       return null;
     }
 
+    @Override
+    public ConcurrentMap<String, NearCache> getNearCaches() {
+      return null;
+    }
+
     @Override
     public InternalPool getPool() {
       return null;
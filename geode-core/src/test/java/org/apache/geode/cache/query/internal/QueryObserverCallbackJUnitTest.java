@@ -437,5 +437,7 @@ public class QueryObserverCallbackJUnitTest {
 
     }
 
+    public void indexSizeEstimated(Index index, int operator, Object key, int sizeEstimate) {}
+
   }
 }
@@ -202,4 +202,47 @@ public class AggregatorJUnitTest {
     assertEquals(1, ((Integer) min.terminate()).intValue());
   }
 
+  @Test
+  public void testAvgCombiner() throws Exception {
+    AvgCombiner combiner = new AvgCombiner();
+    Object[] val1 = new Object[] {new Integer(7), new Double(43)};
+    Object[] val2 = new Object[] {new Integer(5), new Double(273.86)};
+    combiner.accumulate(val1);
+    combiner.accumulate(val2);
+    Object[] arr = (Object[]) combiner.terminate();
+    assertEquals(12, ((Integer) arr[0]).intValue());
+    assertEquals(43 + 273.86f, ((Number) arr[1]).floatValue(), 0);
+
+    AvgPRQueryNode apqn = new AvgPRQueryNode();
+    apqn.accumulate(arr);
+    apqn.accumulate(new Object[] {new Integer(3), new Double(10)});
+    float expected = (43 + 273.86f + 10) / 15.0f;
+    assertEquals(expected, ((Number) apqn.terminate()).floatValue(), 0);
+  }
+
+  @Test
+  public void testDistinctCombiner() throws Exception {
+    DistinctCombiner combiner = new DistinctCombiner();
+
+    Set<Integer> set1 = new HashSet<Integer>();
+    set1.add(1);
+    set1.add(2);
+    set1.add(3);
+
+    Set<Integer> set2 = new HashSet<Integer>();
+    set2.add(3);
+    set2.add(4);
+    set2.add(5);
+
+    combiner.accumulate(set1);
+    combiner.accumulate(set2);
+    Set combined = (Set) combiner.terminate();
+    assertEquals(5, combined.size());
+
+    CountDistinctPRQueryNode cdpr = new CountDistinctPRQueryNode();
+    cdpr.accumulate(combined);
+    cdpr.accumulate(set2);
+    assertEquals(5, ((Number) cdpr.terminate()).intValue());
+  }
+
 }
@@ -19,23 +19,34 @@ package org.apache.geode.cache.query.internal.index;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
+import org.apache.geode.cache.AttributesFactory;
 import org.apache.geode.cache.Cache;
+import org.apache.geode.cache.DataPolicy;
 import org.apache.geode.cache.Region;
 import org.apache.geode.cache.query.CacheUtils;
 import org.apache.geode.cache.query.Index;
 import org.apache.geode.cache.query.IndexType;
 import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.SelectResults;
 import org.apache.geode.cache.query.data.Portfolio;
+import org.apache.geode.cache.query.internal.ExecutionContext;
 import org.apache.geode.distributed.internal.DistributionConfig;
+import org.apache.geode.internal.cache.LocalRegion;
 import org.apache.geode.test.dunit.ThreadUtils;
 import org.apache.geode.test.dunit.Wait;
 import org.apache.geode.test.dunit.WaitCriterion;
@@ -69,6 +80,7 @@ public class AsynchIndexMaintenanceJUnitTest {
 
   @After
   public void tearDown() throws Exception {
+    IndexManager.testHook = null;
     CacheUtils.closeCache();
   }
 
@@ -252,4 +264,274 @@ public class AsynchIndexMaintenanceJUnitTest {
     assertFalse(exceptionOccured);
   }
 
+  @Test
+  public void testQueryDoesNotUseIndexWithPendingUpdates() throws Exception {
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceThreshold", "-1");
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceQueryWait", "100");
+    final Index ri;
+    try {
+      ri = qs.createIndex("statusIndex", IndexType.FUNCTIONAL, "p.ID", "/portfolio p");
+    } finally {
+      System.getProperties()
+          .remove(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceQueryWait");
+    }
+    final IndexManager.IndexUpdaterThread updater =
+        ((LocalRegion) region).getIndexManager().getUpdaterThread();
+
+    // Hold the index updates until the queries have run
+    final CountDownLatch updatesHeld = new CountDownLatch(1);
+    final CountDownLatch releaseUpdates = new CountDownLatch(1);
+    IndexManager.testHook = new IndexManager.TestHook() {
+      public void hook(int spot) {
+        if (spot == 6 && Thread.currentThread() == updater) {
+          updatesHeld.countDown();
+          try {
+            releaseUpdates.await(30, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    };
+    for (int i = 0; i < 10; ++i) {
+      region.put("" + (i + 1), new Portfolio(i + 1));
+    }
+    assertTrue(updatesHeld.await(30, TimeUnit.SECONDS));
+    assertFalse(updater.isDone());
+    assertTrue(((AbstractIndex) ri).internalIndexStats.getPendingUpdates() > 0);
+
+    SelectResults results =
+        (SelectResults) qs.newQuery("select * from /portfolio p where p.ID = 5").execute();
+    assertEquals(1, results.size());
+    results = (SelectResults) qs.newQuery("select * from /portfolio p where p.ID > 2").execute();
+    assertEquals(8, results.size());
+    assertEquals(0, ri.getStatistics().getTotalUses());
+
+    releaseUpdates.countDown();
+    WaitCriterion ev = new WaitCriterion() {
+      public boolean done() {
+        return updater.isDone();
+      }
+
+      public String description() {
+        return "the index updates were never applied";
+      }
+    };
+    Wait.waitForCriterion(ev, 10 * 1000, 200, true);
+    assertEquals(0, ((AbstractIndex) ri).internalIndexStats.getPendingUpdates());
+    assertEquals(10, getIndexSize(ri));
+
+    results = (SelectResults) qs.newQuery("select * from /portfolio p where p.ID > 2").execute();
+    assertEquals(8, results.size());
+    assertEquals(1, ri.getStatistics().getTotalUses());
+  }
+
+  @Test
+  public void testIndexLookupsWaitOnceForPendingUpdatesWithAnyExecutionContext() throws Exception {
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceThreshold", "-1");
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceQueryWait", "2000");
+    try {
+      qs.createIndex("statusIndex", IndexType.FUNCTIONAL, "p.ID", "/portfolio p");
+    } finally {
+      System.getProperties()
+          .remove(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceQueryWait");
+    }
+    final IndexManager.IndexUpdaterThread updater =
+        ((LocalRegion) region).getIndexManager().getUpdaterThread();
+    final CountDownLatch updatesHeld = new CountDownLatch(1);
+    final CountDownLatch releaseUpdates = new CountDownLatch(1);
+    IndexManager.testHook = holdUpdates(updater, updatesHeld, releaseUpdates, null);
+    try {
+      for (int i = 0; i < 10; ++i) {
+        region.put("" + (i + 1), new Portfolio(i + 1));
+      }
+      assertTrue(updatesHeld.await(30, TimeUnit.SECONDS));
+
+      // A plain ExecutionContext caches nothing, yet only the first lookup waits
+      IndexManager indexManager = ((LocalRegion) region).getIndexManager();
+      ExecutionContext context = new ExecutionContext(null, CacheUtils.getCache());
+      long start = System.currentTimeMillis();
+      assertNull(indexManager.getIndex(IndexType.FUNCTIONAL, null, null, context));
+      assertNull(indexManager.getIndex(IndexType.FUNCTIONAL, null, null, context));
+      long elapsed = System.currentTimeMillis() - start;
+      assertTrue("the lookups waited for " + elapsed + " ms", elapsed < 4000);
+    } finally {
+      releaseUpdates.countDown();
+    }
+    waitForUpdates(updater);
+  }
+
+  @Test
+  public void testQueryUsesStaleIndexByDefault() throws Exception {
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceThreshold", "-1");
+    final Index ri = qs.createIndex("statusIndex", IndexType.FUNCTIONAL, "p.ID", "/portfolio p");
+    final IndexManager.IndexUpdaterThread updater =
+        ((LocalRegion) region).getIndexManager().getUpdaterThread();
+    final CountDownLatch updatesHeld = new CountDownLatch(1);
+    final CountDownLatch releaseUpdates = new CountDownLatch(1);
+    IndexManager.testHook = holdUpdates(updater, updatesHeld, releaseUpdates, null);
+    try {
+      for (int i = 0; i < 10; ++i) {
+        region.put("" + (i + 1), new Portfolio(i + 1));
+      }
+      assertTrue(updatesHeld.await(30, TimeUnit.SECONDS));
+
+      // The query does not wait for the pending updates, so it misses the new entries
+      SelectResults results =
+          (SelectResults) qs.newQuery("select * from /portfolio p where p.ID = 5").execute();
+      assertEquals(0, results.size());
+      assertEquals(1, ri.getStatistics().getTotalUses());
+    } finally {
+      releaseUpdates.countDown();
+    }
+    waitForUpdates(updater);
+    assertEquals(10, getIndexSize(ri));
+  }
+
+  @Test
+  public void testFullQueueAppliesUpdatesSynchronously() throws Exception {
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceThreshold", "5");
+    final Index ri = qs.createIndex("statusIndex", IndexType.FUNCTIONAL, "p.ID", "/portfolio p");
+    final IndexManager.IndexUpdaterThread updater =
+        ((LocalRegion) region).getIndexManager().getUpdaterThread();
+    final CountDownLatch updatesHeld = new CountDownLatch(1);
+    final CountDownLatch releaseUpdates = new CountDownLatch(1);
+    IndexManager.testHook = holdUpdates(updater, updatesHeld, releaseUpdates, null);
+    try {
+      region.put("1", new Portfolio(1));
+      assertTrue(updatesHeld.await(30, TimeUnit.SECONDS));
+
+      // The writers are not held by the full queue
+      Thread writer = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 1; i < 20; ++i) {
+            region.put("" + (i + 1), new Portfolio(i + 1));
+          }
+        }
+      });
+      writer.start();
+      ThreadUtils.join(writer, 30 * 1000);
+      assertFalse(writer.isAlive());
+      assertEquals(5, updater.getQueueSize());
+      assertEquals(14, ((AbstractIndex) ri).internalIndexStats.getSynchronousUpdates());
+      assertEquals(14, getIndexSize(ri));
+    } finally {
+      releaseUpdates.countDown();
+    }
+    waitForUpdates(updater);
+    assertEquals(20, getIndexSize(ri));
+    SelectResults results =
+        (SelectResults) qs.newQuery("select * from /portfolio p where p.ID > 0").execute();
+    assertEquals(20, results.size());
+  }
+
+  @Test
+  public void testSynchronousUpdateSupersedesTheQueuedUpdatesOfTheEntry() throws Exception {
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceThreshold", "2");
+    // A destroyed entry of a replicated region is kept as a tombstone, and created again by a put
+    AttributesFactory factory = new AttributesFactory();
+    factory.setDataPolicy(DataPolicy.REPLICATE);
+    factory.setIndexMaintenanceSynchronous(false);
+    region = CacheUtils.getCache().createRegion("replicated", factory.create());
+    final Index ri = qs.createIndex("statusIndex", IndexType.FUNCTIONAL, "p.ID", "/replicated p");
+    final IndexManager.IndexUpdaterThread updater =
+        ((LocalRegion) region).getIndexManager().getUpdaterThread();
+    final CountDownLatch updatesHeld = new CountDownLatch(1);
+    final CountDownLatch releaseUpdates = new CountDownLatch(1);
+    IndexManager.testHook = holdUpdates(updater, updatesHeld, releaseUpdates, null);
+    try {
+      region.put("0", new Portfolio(0));
+      assertTrue(updatesHeld.await(30, TimeUnit.SECONDS));
+      // queued
+      region.put("1", new Portfolio(1));
+      region.destroy("1");
+      // applied synchronously, after the queued create and destroy of the same entry
+      region.put("1", new Portfolio(1));
+      assertEquals(1, ((AbstractIndex) ri).internalIndexStats.getSynchronousUpdates());
+    } finally {
+      releaseUpdates.countDown();
+    }
+    waitForUpdates(updater);
+    SelectResults results =
+        (SelectResults) qs.newQuery("select * from /replicated p where p.ID = 1").execute();
+    assertEquals(1, results.size());
+  }
+
+  @Test
+  public void testUpdatesAreAppliedInBatches() throws Exception {
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceThreshold", "-1");
+    System.getProperties()
+        .put(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceBatchSize", "4");
+    final Index ri;
+    try {
+      ri = qs.createIndex("statusIndex", IndexType.FUNCTIONAL, "p.ID", "/portfolio p");
+    } finally {
+      System.getProperties()
+          .remove(DistributionConfig.GEMFIRE_PREFIX + "AsynchIndexMaintenanceBatchSize");
+    }
+    final IndexManager.IndexUpdaterThread updater =
+        ((LocalRegion) region).getIndexManager().getUpdaterThread();
+    final CountDownLatch updatesHeld = new CountDownLatch(1);
+    final CountDownLatch releaseUpdates = new CountDownLatch(1);
+    // The number of queued updates when each update is applied
+    final List<Integer> queueSizes = Collections.synchronizedList(new ArrayList<Integer>());
+    IndexManager.testHook = holdUpdates(updater, updatesHeld, releaseUpdates, queueSizes);
+    try {
+      region.put("1", new Portfolio(1));
+      assertTrue(updatesHeld.await(30, TimeUnit.SECONDS));
+      for (int i = 1; i < 11; ++i) {
+        region.put("" + (i + 1), new Portfolio(i + 1));
+      }
+    } finally {
+      releaseUpdates.countDown();
+    }
+    waitForUpdates(updater);
+    assertEquals(11, getIndexSize(ri));
+    assertEquals(Arrays.asList(0, 6, 6, 6, 6, 2, 2, 2, 2, 0, 0), queueSizes);
+  }
+
+  /**
+   * Returns a hook holding the first update the updater applies until released, and recording the
+   * size of its queue when it applies each update.
+   */
+  private IndexManager.TestHook holdUpdates(final IndexManager.IndexUpdaterThread updater,
+      final CountDownLatch updatesHeld, final CountDownLatch releaseUpdates,
+      final List<Integer> queueSizes) {
+    return new IndexManager.TestHook() {
+      public void hook(int spot) {
+        if (spot == 6 && Thread.currentThread() == updater) {
+          if (queueSizes != null) {
+            queueSizes.add(updater.getQueueSize());
+          }
+          updatesHeld.countDown();
+          try {
+            releaseUpdates.await(30, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    };
+  }
+
+  private void waitForUpdates(final IndexManager.IndexUpdaterThread updater) {
+    WaitCriterion ev = new WaitCriterion() {
+      public boolean done() {
+        return updater.isDone();
+      }
+
+      public String description() {
+        return "the index updates were never applied";
+      }
+    };
+    Wait.waitForCriterion(ev, 10 * 1000, 200, true);
+  }
 }
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal.index;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.RegionShortcut;
+import org.apache.geode.cache.query.CacheUtils;
+import org.apache.geode.cache.query.Index;
+import org.apache.geode.cache.query.IndexInvalidException;
+import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.SelectResults;
+import org.apache.geode.cache.query.data.Portfolio;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+@Category(IntegrationTest.class)
+public class CompositeIndexQueryIntegrationTest {
+
+  private static final String[] QUERIES =
+      new String[] {"select * from /portfolios p where p.status = 'active' and p.ID > 10",
+          "select * from /portfolios p where p.ID >= 10 and p.status = 'active' and p.ID < 40",
+          "select * from /portfolios p where p.status = 'inactive' and p.ID <= 41 and p.ID > 20",
+          "select * from /portfolios p where p.status = 'active' and p.ID = 24",
+          "select * from /portfolios p where p.status = 'active' and p.ID < 8",
+          "select * from /portfolios p where 'active' = p.status and 30 < p.ID",
+          "select * from /portfolios p where p.status = $1 and p.ID > $2",
+          "select * from /portfolios p where p.status = 'active' and p.ID > 10 and p.pkid <> '12'",
+          "select * from /portfolios p where p.status = 'active' and p.pkid = '12'",
+          "select * from /portfolios p where p.status = 'closed' and p.ID > 0"};
+
+  private QueryService qs;
+
+  @Before
+  public void setUp() throws Exception {
+    CacheUtils.startCache();
+    qs = CacheUtils.getQueryService();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CacheUtils.closeCache();
+  }
+
+  @Test
+  public void queriesOnAReplicatedRegionReturnTheSameResultsAsWithoutIndex() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    verifyQueriesUseTheCompositeIndex(region);
+  }
+
+  @Test
+  public void queriesOnAPartitionedRegionReturnTheSameResultsAsWithoutIndex() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.PARTITION).create("portfolios");
+    verifyQueriesUseTheCompositeIndex(region);
+  }
+
+  @Test
+  public void conditionsOnlyOnTheLeadingExpressionsUseTheCompositeIndex() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    populate(region);
+    String[] queries = new String[] {
+        "select * from /portfolios p where p.status = 'active' and p.ID > 10 and p.ID < 30",
+        "select * from /portfolios p where p.status = 'active' and p.ID = 24",
+        "select * from /portfolios p where p.status = 'inactive' and p.ID >= 41"};
+    Set[] expected = executeQueries(queries);
+    Index index = qs.createIndex("statusIdPk", "p.status, p.ID, p.pkid", "/portfolios p");
+    assertTrue(index instanceof CompactRangeIndex);
+    assertArrayEquals(expected, executeQueries(queries));
+    assertEquals(queries.length, index.getStatistics().getTotalUses());
+  }
+
+  @Test
+  public void conditionsNotOnTheLeadingExpressionDoNotUseTheCompositeIndex() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    populate(region);
+    String query = "select * from /portfolios p where p.ID > 10 and p.pkid = '12'";
+    Set[] expected = executeQueries(new String[] {query});
+    Index index = qs.createIndex("statusIdPk", "p.status, p.ID, p.pkid", "/portfolios p");
+    assertArrayEquals(expected, executeQueries(new String[] {query}));
+    assertEquals(0, index.getStatistics().getTotalUses());
+  }
+
+  @Test
+  public void indexIsMaintainedOnUpdatesAndDestroys() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    Index index = qs.createIndex("statusId", "p.status, p.ID", "/portfolios p");
+    populate(region);
+    for (int i = 0; i < 10; i++) {
+      Portfolio p = new Portfolio(i);
+      p.status = "closed";
+      region.put("KEY-" + i, p);
+    }
+    region.destroy("KEY-12");
+    Set[] expected = executeQueries(QUERIES);
+    qs.removeIndex(index);
+    assertArrayEquals(expected, executeQueries(QUERIES));
+  }
+
+  @Test(expected = IndexInvalidException.class)
+  public void aliasInACompositeIndexedExpressionIsInvalid() throws Exception {
+    CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    qs.createIndex("statusId", "p.status as s, p.ID", "/portfolios p");
+  }
+
+  private void verifyQueriesUseTheCompositeIndex(Region region) throws Exception {
+    populate(region);
+    Set[] expected = executeQueries(QUERIES);
+    Index statusIndex = qs.createIndex("status", "p.status", "/portfolios p");
+    Index index = qs.createIndex("statusId", "p.status, p.ID", "/portfolios p");
+    assertArrayEquals(expected, executeQueries(QUERIES));
+    // the composite index is preferred to the index on the status alone
+    assertTrue(index.getStatistics().getTotalUses() > 0);
+    assertTrue(index.getStatistics().getTotalUses() >= statusIndex.getStatistics().getTotalUses());
+    qs.removeIndex(statusIndex);
+    assertArrayEquals(expected, executeQueries(QUERIES));
+  }
+
+  private void populate(Region region) {
+    for (int i = 0; i < 50; i++) {
+      Portfolio p = new Portfolio(i);
+      if (i % 7 == 0) {
+        p.status = null;
+      }
+      region.put("KEY-" + i, p);
+    }
+  }
+
+  private Set[] executeQueries(String[] queries) throws Exception {
+    Set[] results = new Set[queries.length];
+    for (int i = 0; i < queries.length; i++) {
+      SelectResults rs =
+          (SelectResults) qs.newQuery(queries[i]).execute(new Object[] {"inactive", 15});
+      results[i] = new HashSet(rs.asList());
+      assertEquals(rs.size(), results[i].size());
+    }
+    return results;
+  }
+}
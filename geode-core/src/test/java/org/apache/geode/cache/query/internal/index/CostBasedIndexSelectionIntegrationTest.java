@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal.index;
+
+import static org.junit.Assert.*;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.RegionShortcut;
+import org.apache.geode.cache.query.CacheUtils;
+import org.apache.geode.cache.query.Index;
+import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.SelectResults;
+import org.apache.geode.cache.query.data.Portfolio;
+import org.apache.geode.cache.query.internal.DefaultQuery;
+import org.apache.geode.cache.query.internal.IndexTrackingQueryObserver;
+import org.apache.geode.cache.query.internal.QueryObserverHolder;
+import org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes;
+import org.apache.geode.test.dunit.Wait;
+import org.apache.geode.test.dunit.WaitCriterion;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+@Category(IntegrationTest.class)
+public class CostBasedIndexSelectionIntegrationTest {
+
+  private static final int NUM_ENTRIES = 1000;
+
+  private QueryService qs;
+
+  @Before
+  public void setUp() throws Exception {
+    IndexManager.COST_BASED_INDEX_SELECTION = true;
+    CacheUtils.startCache();
+    qs = CacheUtils.getQueryService();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    QueryObserverHolder.reset();
+    CacheUtils.closeCache();
+    IndexManager.COST_BASED_INDEX_SELECTION = false;
+  }
+
+  @Test
+  public void selectiveRangeIsPreferredToUnselectiveEqualityOnAReplicatedRegion() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    verifySelectiveRangeIsPreferred(region);
+  }
+
+  @Test
+  public void selectiveRangeIsPreferredToUnselectiveEqualityOnAPartitionedRegion()
+      throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.PARTITION).create("portfolios");
+    verifySelectiveRangeIsPreferred(region);
+  }
+
+  @Test
+  public void selectiveEqualityIsStillPreferredToUnselectiveRange() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    populate(region);
+    Index pkIndex = qs.createIndex("pkIndex", "p.pkid", "/portfolios p");
+    Index idIndex = qs.createIndex("idIndex", "p.ID", "/portfolios p");
+    waitForKeyHistograms(pkIndex, idIndex);
+    SelectResults results = (SelectResults) qs
+        .newQuery("select * from /portfolios p where p.pkid = '500' and p.ID > 10").execute();
+    assertEquals(1, results.size());
+    assertEquals(1, pkIndex.getStatistics().getTotalUses());
+    assertEquals(0, idIndex.getStatistics().getTotalUses());
+  }
+
+  @Test
+  public void rangeOnStringKeysIsEstimated() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    populate(region);
+    Index statusIndex = qs.createIndex("statusIndex", "p.status", "/portfolios p");
+    Index pkIndex = qs.createIndex("pkIndex", "p.pkid", "/portfolios p");
+    waitForKeyHistograms(statusIndex, pkIndex);
+    // pkid are the strings of the IDs, of which few are greater than '997'
+    SelectResults results = (SelectResults) qs
+        .newQuery("select * from /portfolios p where p.status = 'active' and p.pkid > '997'")
+        .execute();
+    assertEquals(1, results.size());
+    assertEquals(0, statusIndex.getStatistics().getTotalUses());
+    assertEquals(1, pkIndex.getStatistics().getTotalUses());
+  }
+
+  @Test
+  public void traceShowsTheSizeEstimatesOfTheLookupsConsidered() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    populate(region);
+    Index statusIndex = qs.createIndex("statusIndex", "p.status", "/portfolios p");
+    Index idIndex = qs.createIndex("idIndex", "p.ID", "/portfolios p");
+    waitForKeyHistograms(statusIndex, idIndex);
+    IndexTrackingQueryObserver observer = new IndexTrackingQueryObserver();
+    QueryObserverHolder.setInstance(observer);
+    String query = "select * from /portfolios p where p.status = 'active' and p.ID < 10";
+    qs.newQuery(query).execute();
+    Map<String, Long> estimates = observer.getIndexSizeEstimates();
+    assertEquals(Long.valueOf(NUM_ENTRIES / 2), estimates.get("statusIndex(= active)"));
+    assertTrue(estimates.get("idIndex(< 10)") <= 11);
+    String traceMessage = DefaultQuery.getLogMessage(observer, 0L, 5, query);
+    assertTrue(traceMessage, traceMessage.contains(" indexSizeEstimates:"));
+    assertTrue(traceMessage, traceMessage.contains("statusIndex(= active)=" + NUM_ENTRIES / 2));
+    assertTrue(observer.getIndexSizeEstimates().isEmpty());
+  }
+
+  @Test
+  public void equalityIsPreferredWhenCostBasedSelectionIsOff() throws Exception {
+    IndexManager.COST_BASED_INDEX_SELECTION = false;
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    populate(region);
+    Index statusIndex = qs.createIndex("statusIndex", "p.status", "/portfolios p");
+    Index idIndex = qs.createIndex("idIndex", "p.ID", "/portfolios p");
+    SelectResults results = (SelectResults) qs
+        .newQuery("select * from /portfolios p where p.status = 'active' and p.ID < 10").execute();
+    assertEquals(5, results.size());
+    assertEquals(1, statusIndex.getStatistics().getTotalUses());
+    assertEquals(0, idIndex.getStatistics().getTotalUses());
+  }
+
+  @Test
+  public void keyHistogramIsBuiltInTheBackground() throws Exception {
+    Region region =
+        CacheUtils.getCache().createRegionFactory(RegionShortcut.REPLICATE).create("portfolios");
+    populate(region);
+    AbstractIndex idIndex = (AbstractIndex) qs.createIndex("idIndex", "p.ID", "/portfolios p");
+    // Hold the background thread so that the histogram cannot be built
+    final CountDownLatch building = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    IndexKeyHistogram.buildInBackground(new Runnable() {
+      public void run() {
+        building.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    building.await();
+    try {
+      // Without a histogram the estimate is left to the previous rules, and the query does not
+      // wait for the histogram
+      assertEquals(-1, idIndex.getRangeSizeEstimate(10, OQLLexerTokenTypes.TOK_LT));
+      SelectResults results =
+          (SelectResults) qs.newQuery("select * from /portfolios p where p.ID < 10").execute();
+      assertEquals(10, results.size());
+      assertNull(idIndex.getKeyHistogram());
+    } finally {
+      release.countDown();
+    }
+    waitForKeyHistograms(idIndex);
+    assertTrue(idIndex.getRangeSizeEstimate(10, OQLLexerTokenTypes.TOK_LT) <= 11);
+  }
+
+  private void waitForKeyHistograms(final Index... indexes) {
+    for (final Index index : indexes) {
+      if (index instanceof PartitionedIndex) {
+        for (Object bucketIndex : ((PartitionedIndex) index).getBucketIndexes()) {
+          waitForKeyHistograms((Index) bucketIndex);
+        }
+        continue;
+      }
+      final AbstractIndex abstractIndex = (AbstractIndex) index;
+      Wait.waitForCriterion(new WaitCriterion() {
+        public boolean done() {
+          IndexKeyHistogram histogram = abstractIndex.getKeyHistogram();
+          return histogram != null
+              && !histogram.isStale(abstractIndex.getStatistics().getNumUpdates());
+        }
+
+        public String description() {
+          return "key histogram of " + index.getName() + " to be built";
+        }
+      }, 30000, 10, true);
+    }
+  }
+
+  private void verifySelectiveRangeIsPreferred(Region region) throws Exception {
+    populate(region);
+    Index statusIndex = qs.createIndex("statusIndex", "p.status", "/portfolios p");
+    Index idIndex = qs.createIndex("idIndex", "p.ID", "/portfolios p");
+    waitForKeyHistograms(statusIndex, idIndex);
+    String[] queries =
+        new String[] {"select * from /portfolios p where p.status = 'active' and p.ID < 10",
+            "select * from /portfolios p where p.status = 'active' and p.ID >= 990",
+            "select * from /portfolios p where p.status = 'active' and p.ID > 980 and p.ID < 990"};
+    int[] expectedSizes = new int[] {5, 5, 4};
+    for (int i = 0; i < queries.length; i++) {
+      SelectResults results = (SelectResults) qs.newQuery(queries[i]).execute();
+      assertEquals(queries[i], expectedSizes[i], results.size());
+    }
+    assertEquals(0, statusIndex.getStatistics().getTotalUses());
+    assertTrue(idIndex.getStatistics().getTotalUses() >= queries.length);
+  }
+
+  private void populate(Region region) {
+    for (int i = 0; i < NUM_ENTRIES; i++) {
+      region.put("KEY-" + i, new Portfolio(i));
+    }
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal.index;
+
+import static org.apache.geode.cache.query.internal.parse.OQLLexerTokenTypes.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.internal.types.TypeUtils;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class IndexKeyHistogramJUnitTest {
+
+  @Test
+  public void estimatesOfUniformNumericKeysAreClose() {
+    IndexKeyHistogram histogram = build(10000, 0);
+    assertEquals(10000, histogram.getNumValues());
+    assertEquals(10000, histogram.getNumKeys());
+    assertTrue(histogram.getNumBuckets() <= IndexKeyHistogram.NUM_BUCKETS + 1);
+    assertEstimate(100, histogram.estimate(TOK_LT, 100, 10000), 0.05);
+    assertEstimate(101, histogram.estimate(TOK_LE, 100, 10000), 0.05);
+    assertEstimate(9899, histogram.estimate(TOK_GT, 100, 10000), 0.05);
+    assertEstimate(5000, histogram.estimate(TOK_GE, 5000, 10000), 0.05);
+    assertEquals(0, histogram.estimate(TOK_LT, -5, 10000));
+    assertEquals(10000, histogram.estimate(TOK_LT, 20000, 10000));
+    // keys of another numeric type are compared by value
+    assertEstimate(100, histogram.estimate(TOK_LT, 100L, 10000), 0.05);
+  }
+
+  @Test
+  public void estimatesOfSkewedKeysFollowTheDistribution() {
+    IndexKeyHistogram.Builder builder = newBuilder(10000);
+    // most values have a key of 0, the others are spread up to a million
+    builder.add(0, 9000);
+    for (int i = 1; i <= 1000; i++) {
+      builder.add(i * 1000, 1);
+    }
+    IndexKeyHistogram histogram = builder.build();
+    assertEquals(9000, histogram.estimate(TOK_LE, 0, 10000));
+    assertEquals(1000, histogram.estimate(TOK_GT, 0, 10000));
+    assertEstimate(100, histogram.estimate(TOK_GT, 900000, 10000), 0.1);
+  }
+
+  @Test
+  public void estimatesOfStringKeys() {
+    IndexKeyHistogram.Builder builder = newBuilder(26 * 100);
+    for (char c = 'a'; c <= 'z'; c++) {
+      for (int i = 0; i < 100; i++) {
+        builder.add(String.valueOf(c), 1);
+      }
+    }
+    IndexKeyHistogram histogram = builder.build();
+    assertEquals(26, histogram.getNumKeys());
+    assertEquals(100, histogram.estimate(TOK_LT, "b", 2600));
+    assertEquals(200, histogram.estimate(TOK_GE, "y", 2600));
+    assertEstimate(2400, histogram.estimate(TOK_GT, "bb", 2600), 0.05);
+  }
+
+  @Test
+  public void nullAndUndefinedKeysAreLeftOut() {
+    IndexKeyHistogram.Builder builder = newBuilder(12);
+    builder.add(IndexManager.NULL, 1);
+    builder.add(QueryService.UNDEFINED, 1);
+    for (int i = 0; i < 10; i++) {
+      builder.add(i, 1);
+    }
+    IndexKeyHistogram histogram = builder.build();
+    assertEquals(10, histogram.getNumValues());
+    assertEquals(5, histogram.estimate(TOK_LT, 5, 12));
+  }
+
+  @Test
+  public void estimatesAreScaledByTheGrowthOfTheIndex() {
+    IndexKeyHistogram histogram = build(1000, 0);
+    assertEquals(100, histogram.estimate(TOK_LT, 100, 1000));
+    assertEstimate(200, histogram.estimate(TOK_LT, 100, 2000), 0.01);
+  }
+
+  @Test
+  public void histogramIsStaleAfterEnoughUpdates() {
+    IndexKeyHistogram histogram = build(1000, 50);
+    assertFalse(histogram.isStale(50));
+    assertFalse(histogram.isStale(250));
+    assertTrue(histogram.isStale(251));
+    assertTrue(build(10, 0).isStale(IndexKeyHistogram.MIN_UPDATES_FOR_REBUILD + 1));
+  }
+
+  @Test
+  public void emptyHistogramEstimatesNothing() {
+    IndexKeyHistogram histogram = newBuilder(0).build();
+    assertEquals(0, histogram.getNumValues());
+    assertEquals(0, histogram.estimate(TOK_GT, 1, 0));
+  }
+
+  @Test(expected = ClassCastException.class)
+  public void keysOfAnotherTypeCannotBeEstimated() {
+    build(100, 0).estimate(TOK_GT, "a", 100);
+  }
+
+  private IndexKeyHistogram build(int numKeys, long numUpdates) {
+    IndexKeyHistogram.Builder builder = new IndexKeyHistogram.Builder(
+        TypeUtils.getExtendedNumericComparator(), numKeys, numUpdates);
+    for (int i = 0; i < numKeys; i++) {
+      builder.add(i, 1);
+    }
+    return builder.build();
+  }
+
+  private IndexKeyHistogram.Builder newBuilder(long numValues) {
+    return new IndexKeyHistogram.Builder(TypeUtils.getExtendedNumericComparator(), numValues, 0);
+  }
+
+  private void assertEstimate(int expected, int actual, double tolerance) {
+    assertTrue("expected about " + expected + " but was " + actual,
+        Math.abs(expected - actual) <= Math.max(1, expected * tolerance));
+  }
+}
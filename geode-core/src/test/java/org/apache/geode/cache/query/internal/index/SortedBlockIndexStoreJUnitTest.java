@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.cache.query.internal.index;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.query.QueryService;
+import org.apache.geode.cache.query.internal.index.AbstractIndex.InternalIndexStatistics;
+import org.apache.geode.cache.query.internal.index.IndexStore.IndexStoreEntry;
+import org.apache.geode.internal.cache.GemFireCacheImpl;
+import org.apache.geode.internal.cache.LocalRegion;
+import org.apache.geode.internal.cache.RegionEntry;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class SortedBlockIndexStoreJUnitTest {
+
+  Region region;
+  GemFireCacheImpl cache;
+  InternalIndexStatistics mockStats;
+  SortedBlockIndexStore store;
+  RegionEntry[] mockEntries;
+  int numMockEntries = 100;
+  GemFireCacheImpl actualInstance;
+
+  @Before
+  public void setup() {
+    region = mock(LocalRegion.class);
+    cache = mock(GemFireCacheImpl.class);
+    actualInstance = GemFireCacheImpl.setInstanceForTests(cache);
+    mockStats = mock(AbstractIndex.InternalIndexStatistics.class);
+
+    // small blocks so that the tests span many blocks
+    store = new SortedBlockIndexStore(region, mockStats, 4);
+    store.setIndexOnValues(true);
+    mockEntries = new RegionEntry[numMockEntries];
+    IntStream.range(0, numMockEntries).forEach(i -> {
+      mockEntries[i] = createRegionEntry(i, new Object());
+    });
+  }
+
+  @After
+  public void teardown() {
+    GemFireCacheImpl.setInstanceForTests(actualInstance);
+  }
+
+  @Test
+  public void testIteratorReturnsMappingsInKeyOrderAcrossBlocks() throws Exception {
+    for (int i = numMockEntries - 1; i >= 0; i--) {
+      store.addMapping(i, mockEntries[i]);
+    }
+    assertTrue(store.getNumBlocks() > 1);
+    assertEquals(numMockEntries, store.size());
+    assertEquals(range(0, numMockEntries), keysIterated(store.iterator(null)));
+    assertEquals(reverse(range(0, numMockEntries)), keysIterated(store.descendingIterator(null)));
+  }
+
+  @Test
+  public void testRangeIteratorsAcrossBlocks() throws Exception {
+    addMockedEntries(numMockEntries);
+    assertEquals(range(10, 61), keysIterated(store.iterator(10, true, 60, true, null)));
+    assertEquals(range(11, 60), keysIterated(store.iterator(10, false, 60, false, null)));
+    assertEquals(range(0, 60), keysIterated(store.iterator(null, true, 60, false, null)));
+    assertEquals(range(90, 100), keysIterated(store.iterator(90, true, null)));
+    assertEquals(reverse(range(11, 61)),
+        keysIterated(store.descendingIterator(10, false, 60, true, null)));
+    assertEquals(reverse(range(0, 60)),
+        keysIterated(store.descendingIterator(null, true, 60, false, null)));
+    assertEquals(reverse(range(91, 100)), keysIterated(store.descendingIterator(90, false, null)));
+  }
+
+  @Test
+  public void testGetReturnsAllEntriesOfAKeySpanningManyBlocks() throws Exception {
+    IntStream.range(0, numMockEntries).forEach(i -> {
+      try {
+        store.addMapping(i % 3, mockEntries[i]);
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+    });
+    assertEquals(3, store.size());
+    assertEquals(34, numObjectsIterated(store.get(0)));
+    assertEquals(33, numObjectsIterated(store.get(1)));
+    assertEquals(33, store.size(2));
+    assertEquals(0, store.size(3));
+    assertEquals(numMockEntries, numObjectsIterated(store.iterator(null)));
+  }
+
+  @Test
+  public void testAddingTheSameMappingTwiceIsIgnored() throws Exception {
+    store.addMapping(1, mockEntries[0]);
+    store.addMapping(1, mockEntries[0]);
+    assertEquals(1, store.size(1));
+    verify(mockStats, times(1)).incNumValues(1);
+  }
+
+  @Test
+  public void testUndefinedAndKeysToRemoveAreSkippedUnlessAskedFor() throws Exception {
+    addMockedEntries(10);
+    store.addMapping(QueryService.UNDEFINED, mockEntries[10]);
+    store.addMapping(QueryService.UNDEFINED, mockEntries[11]);
+    assertEquals(2, numObjectsIterated(store.get(QueryService.UNDEFINED)));
+    assertEquals(10, numObjectsIterated(store.iterator(null)));
+
+    Set keysToRemove = new HashSet();
+    keysToRemove.add(3);
+    keysToRemove.add(5);
+    assertEquals(8, numObjectsIterated(store.iterator(keysToRemove)));
+    assertEquals(2, keysToRemove.size());
+    assertEquals(8, numObjectsIterated(store.descendingIterator(keysToRemove)));
+  }
+
+  @Test
+  public void testUpdateMovesTheMapping() throws Exception {
+    addMockedEntries(10);
+    RegionEntry entry = mockEntries[3];
+    store.updateMapping(42, 3, entry, new Object());
+    assertEquals(0, store.size(3));
+    assertEquals(1, store.size(42));
+    assertEquals(10, store.size());
+    assertEquals(10, numObjectsIterated(store.iterator(null)));
+  }
+
+  @Test
+  public void testRemoveMappingMaintainsKeyCountAndMergesBlocks() throws Exception {
+    IntStream.range(0, numMockEntries).forEach(i -> {
+      try {
+        store.addMapping(i / 2, mockEntries[i]);
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+    });
+    assertEquals(numMockEntries / 2, store.size());
+    int blocksBefore = store.getNumBlocks();
+    for (int i = 0; i < numMockEntries; i += 2) {
+      store.removeMapping(i / 2, mockEntries[i]);
+    }
+    assertEquals(numMockEntries / 2, store.size());
+    for (int i = 1; i < numMockEntries; i += 2) {
+      store.removeMapping(i / 2, mockEntries[i]);
+      assertEquals(numMockEntries / 2 - (i + 1) / 2, store.size());
+    }
+    assertEquals(0, numObjectsIterated(store.iterator(null)));
+    assertTrue(store.getNumBlocks() < blocksBefore);
+  }
+
+  @Test
+  public void testCorrectlyRemovesEntryProvidedTheWrongKey() throws Exception {
+    store.addMapping("1", mockEntries[0]);
+    store.addMapping("2", mockEntries[1]);
+    store.removeMapping("1", mockEntries[1]);
+    assertEquals(1, numObjectsIterated(store.iterator(null)));
+    assertEquals(1, store.size("1"));
+  }
+
+  @Test
+  public void testRandomUpdatesMatchASortedMap() throws Exception {
+    Random random = new Random(7);
+    TreeMap<Integer, Set<RegionEntry>> expected = new TreeMap<Integer, Set<RegionEntry>>();
+    Integer[] keys = new Integer[numMockEntries];
+    for (int round = 0; round < 5000; round++) {
+      int i = random.nextInt(numMockEntries);
+      if (keys[i] != null && random.nextBoolean()) {
+        store.removeMapping(keys[i], mockEntries[i]);
+        remove(expected, keys[i], mockEntries[i]);
+        keys[i] = null;
+      } else {
+        Integer key = random.nextInt(20);
+        store.updateMapping(key, keys[i], mockEntries[i], new Object());
+        if (keys[i] != null) {
+          remove(expected, keys[i], mockEntries[i]);
+        }
+        expected.computeIfAbsent(key, k -> new HashSet<RegionEntry>()).add(mockEntries[i]);
+        keys[i] = key;
+      }
+      assertEquals(expected.size(), store.size());
+    }
+    List<Object> expectedKeys = new ArrayList<Object>();
+    for (Integer key : expected.keySet()) {
+      assertEquals(expected.get(key).size(), store.size(key));
+      for (int j = 0; j < expected.get(key).size(); j++) {
+        expectedKeys.add(key);
+      }
+    }
+    assertEquals(expectedKeys, keysIterated(store.iterator(null)));
+  }
+
+  @Test
+  public void testIteratorSeesMappingsThatWereNotModifiedWhileIterating() throws Exception {
+    addMockedEntries(numMockEntries);
+    Iterator<IndexStoreEntry> iterator = store.iterator(null);
+    List<Object> seen = new ArrayList<Object>();
+    for (int i = 0; i < 10; i++) {
+      assertTrue(iterator.hasNext());
+      seen.add(iterator.next().getDeserializedKey());
+    }
+    // split and merge the blocks around and after the current position
+    for (int i = 20; i < 60; i++) {
+      store.removeMapping(i, mockEntries[i]);
+    }
+    for (int i = 0; i < 10; i++) {
+      store.addMapping(5, createRegionEntry(5, new Object()));
+    }
+    while (iterator.hasNext()) {
+      seen.add(iterator.next().getDeserializedKey());
+    }
+    List<Object> expected = range(0, 20);
+    expected.addAll(range(60, 100));
+    assertEquals(expected, seen);
+  }
+
+  @Test
+  public void testClear() throws Exception {
+    addMockedEntries(numMockEntries);
+    store.clear();
+    assertEquals(0, store.size());
+    assertEquals(1, store.getNumBlocks());
+    assertEquals(0, numObjectsIterated(store.iterator(null)));
+  }
+
+  private void remove(TreeMap<Integer, Set<RegionEntry>> map, Integer key, RegionEntry entry) {
+    Set<RegionEntry> entries = map.get(key);
+    entries.remove(entry);
+    if (entries.isEmpty()) {
+      map.remove(key);
+    }
+  }
+
+  private List<Object> range(int from, int to) {
+    List<Object> list = new ArrayList<Object>();
+    for (int i = from; i < to; i++) {
+      list.add(i);
+    }
+    return list;
+  }
+
+  private List<Object> reverse(List<Object> list) {
+    List<Object> reversed = new ArrayList<Object>();
+    for (int i = list.size() - 1; i >= 0; i--) {
+      reversed.add(list.get(i));
+    }
+    return reversed;
+  }
+
+  private List<Object> keysIterated(Iterator<IndexStoreEntry> iterator) {
+    List<Object> keys = new ArrayList<Object>();
+    while (iterator.hasNext()) {
+      keys.add(iterator.next().getDeserializedKey());
+    }
+    return keys;
+  }
+
+  private int numObjectsIterated(Iterator iterator) {
+    int count = 0;
+    while (iterator.hasNext()) {
+      iterator.next();
+      count++;
+    }
+    return count;
+  }
+
+  private void addMockedEntries(int numEntriesToAdd) {
+    IntStream.range(0, numEntriesToAdd).forEach(i -> {
+      try {
+        store.addMapping(mockEntries[i].getKey(), mockEntries[i]);
+      } catch (Exception e) {
+        throw new AssertionError(e);
+      }
+    });
+  }
+
+  private RegionEntry createRegionEntry(Object key, Object value) {
+    RegionEntry mockEntry = mock(RegionEntry.class);
+    when(mockEntry.getValue(any())).thenReturn(value);
+    when(mockEntry.getKey()).thenReturn(key);
+    return mockEntry;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.distributed.internal;
+
+import static org.apache.geode.distributed.ConfigurationProperties.*;
+import static org.junit.Assert.*;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.distributed.DistributedSystem;
+import org.apache.geode.distributed.internal.membership.InternalDistributedMember;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+@Category(IntegrationTest.class)
+public class ReplyProcessor21AsyncWaitJUnitTest {
+
+  private InternalDistributedSystem system;
+  private InternalDistributedMember self;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties props = new Properties();
+    props.setProperty(MCAST_PORT, "0");
+    props.setProperty(LOCATORS, "");
+    system = (InternalDistributedSystem) DistributedSystem.connect(props);
+    self = system.getDistributedMember();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    system.disconnect();
+  }
+
+  @Test
+  public void futureIsCompletedByTheLastReply() throws Exception {
+    ReplyProcessor21 processor = new TestReplyProcessor(system, self);
+    CompletableFuture<Void> future = processor.waitForRepliesAsync();
+    assertFalse(future.isDone());
+
+    processor.process(reply(processor, null));
+
+    future.get(30, TimeUnit.SECONDS);
+    assertTrue(processor.waitForReplies(0));
+    assertNull(ReplyProcessor21.getProcessor(processor.getProcessorId()));
+  }
+
+  @Test
+  public void exceptionOfReplyIsThrownOnceCompleted() throws Exception {
+    ReplyProcessor21 processor = new TestReplyProcessor(system, self);
+    CompletableFuture<Void> future = processor.waitForRepliesAsync();
+
+    processor.process(reply(processor, new ReplyException(new IllegalStateException("test"))));
+
+    future.get(30, TimeUnit.SECONDS);
+    try {
+      processor.waitForRepliesUninterruptibly();
+      fail("expected ReplyException");
+    } catch (ReplyException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void futureIsCompletedAtOnceWhenReplyCameFirst() throws Exception {
+    ReplyProcessor21 processor = new TestReplyProcessor(system, self);
+    processor.process(reply(processor, null));
+
+    CompletableFuture<Void> future = processor.waitForRepliesAsync();
+    assertTrue(future.isDone());
+    processor.waitForRepliesUninterruptibly();
+  }
+
+  @Test
+  public void departedMemberIsNotWaitedFor() throws Exception {
+    InternalDistributedMember departed =
+        new InternalDistributedMember(self.getInetAddress(), self.getPort() + 1);
+    ReplyProcessor21 processor = new TestReplyProcessor(system, departed);
+
+    CompletableFuture<Void> future = processor.waitForRepliesAsync();
+    future.get(30, TimeUnit.SECONDS);
+    processor.waitForRepliesUninterruptibly();
+  }
+
+  private ReplyMessage reply(ReplyProcessor21 processor, ReplyException exception) {
+    ReplyMessage reply = new ReplyMessage();
+    reply.setProcessorId(processor.getProcessorId());
+    reply.setSender(self);
+    if (exception != null) {
+      reply.setException(exception);
+    }
+    return reply;
+  }
+
+  /** Waits for a reply from the given member, which may be this one */
+  private static class TestReplyProcessor extends ReplyProcessor21 {
+    TestReplyProcessor(InternalDistributedSystem system, InternalDistributedMember member) {
+      super(system, member);
+    }
+
+    @Override
+    protected boolean allowReplyFromSender() {
+      return true;
+    }
+  }
+}
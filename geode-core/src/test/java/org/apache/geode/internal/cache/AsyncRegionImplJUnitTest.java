@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache;
+
+import static org.apache.geode.distributed.ConfigurationProperties.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.AsyncRegion;
+import org.apache.geode.cache.Cache;
+import org.apache.geode.cache.CacheFactory;
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.RegionShortcut;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+@Category(IntegrationTest.class)
+public class AsyncRegionImplJUnitTest {
+
+  private Cache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new CacheFactory().set(MCAST_PORT, "0").set(LOCATORS, "").create();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cache.close();
+  }
+
+  @Test
+  public void operationsOfPartitionedRegionAreCompleted() throws Exception {
+    Region<String, String> region =
+        cache.<String, String>createRegionFactory(RegionShortcut.PARTITION).create("pr");
+    AsyncRegion<String, String> async = AsyncRegion.of(region);
+
+    async.putAsync("a", "1").get(30, TimeUnit.SECONDS);
+    async.putAsync("b", "2").get(30, TimeUnit.SECONDS);
+
+    assertEquals("1", region.get("a"));
+    assertEquals("2", async.getAsync("b").get(30, TimeUnit.SECONDS));
+    assertNull(async.getAsync("c").get(30, TimeUnit.SECONDS));
+    Map<String, String> values =
+        async.getAllAsync(Arrays.asList("a", "b", "c")).get(30, TimeUnit.SECONDS);
+    assertEquals(3, values.size());
+    assertEquals("1", values.get("a"));
+    assertEquals("2", values.get("b"));
+    assertNull(values.get("c"));
+  }
+
+  @Test
+  public void failedOperationCompletesExceptionally() throws Exception {
+    Region<String, String> region =
+        cache.<String, String>createRegionFactory(RegionShortcut.REPLICATE).create("r");
+    AsyncRegion<String, String> async = AsyncRegion.of(region);
+
+    try {
+      async.putAsync("a", null).get(30, TimeUnit.SECONDS);
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+    }
+    try {
+      async.getAsync(null).get(30, TimeUnit.SECONDS);
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+    }
+  }
+}
@@ -1682,4 +1682,31 @@ public class HARegionQueueJUnitTest {
         .until(() -> assertEquals("messageSyncInterval not updated.", updatedMessageSyncInterval,
             HARegionQueue.getMessageSyncInterval()));
   }
+
+  /**
+   * Tests that peekMore peeks the events after those already peeked, and that they are all removed
+   * upon the next remove
+   */
+  @Test
+  public void testPeekMoreIsRemovedWithPeek() throws Exception {
+    HARegionQueue regionqueue = createHARegionQueue("testPeekMoreIsRemovedWithPeek");
+    Conflatable[] cf = new Conflatable[5];
+    for (int i = 0; i < cf.length; i++) {
+      cf[i] = new ConflatableObject("key" + i, "value", new EventID(new byte[] {1}, 1, i), false,
+          "testing");
+      regionqueue.put(cf[i]);
+    }
+
+    assertEquals(cf[0], regionqueue.peek());
+    List more = regionqueue.peekMore(3);
+    assertEquals(3, more.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals(cf[i + 1], more.get(i));
+    }
+    assertEquals(Collections.singletonList(cf[4]), regionqueue.peekMore(3));
+
+    regionqueue.remove();
+    assertEquals(0, regionqueue.size());
+    assertTrue(regionqueue.peekMore(3).isEmpty());
+  }
 }
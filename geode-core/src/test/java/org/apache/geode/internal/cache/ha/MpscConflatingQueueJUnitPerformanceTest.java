@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.ha;
+
+import static org.apache.geode.distributed.ConfigurationProperties.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.Cache;
+import org.apache.geode.cache.CacheFactory;
+import org.apache.geode.internal.cache.Conflatable;
+import org.apache.geode.internal.cache.EventID;
+import org.apache.geode.test.junit.categories.PerformanceTest;
+
+/**
+ * Compares the throughput of a client queue, with concurrent producers and a single dispatcher,
+ * between the blocking {@link HARegionQueue} and the {@link MpscConflatingQueue}.
+ */
+@Category(PerformanceTest.class)
+public class MpscConflatingQueueJUnitPerformanceTest {
+
+  private static final int PRODUCERS = 8;
+
+  private static final int EVENTS_PER_PRODUCER = 50000;
+
+  private static final int KEYS = 1000;
+
+  private static final int BATCH_SIZE = 100;
+
+  private static final int RUNS = 5;
+
+  private Cache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    cache = new CacheFactory().set(MCAST_PORT, "0").create();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    cache.close();
+  }
+
+  @Test
+  public void testHARegionQueue() throws Exception {
+    for (int run = 0; run < RUNS; run++) {
+      final HARegionQueue queue = HARegionQueue.getHARegionQueueInstance("testHARegionQueue" + run,
+          cache, HARegionQueue.BLOCKING_HA_QUEUE, false);
+      run("HARegionQueue", new BenchmarkQueue() {
+        @Override
+        public void put(Conflatable event) throws Exception {
+          queue.put(event);
+        }
+
+        @Override
+        public int dispatch() throws Exception {
+          int dispatched = queue.peek(BATCH_SIZE, 10).size();
+          queue.remove();
+          return dispatched;
+        }
+
+        @Override
+        public int size() {
+          return queue.size();
+        }
+      });
+      queue.destroy();
+    }
+  }
+
+  @Test
+  public void testMpscConflatingQueue() throws Exception {
+    for (int run = 0; run < RUNS; run++) {
+      final MpscConflatingQueue queue = new MpscConflatingQueue();
+      run("MpscConflatingQueue", new BenchmarkQueue() {
+        @Override
+        public void put(Conflatable event) {
+          queue.put(event);
+        }
+
+        @Override
+        public int dispatch() throws Exception {
+          int dispatched = queue.peek(BATCH_SIZE, 10).size();
+          queue.remove();
+          return dispatched;
+        }
+
+        @Override
+        public int size() {
+          return queue.size();
+        }
+      });
+    }
+  }
+
+  private void run(String name, BenchmarkQueue queue) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(PRODUCERS);
+    List<Thread> threads = new ArrayList<>();
+    List<Exception> failures = new ArrayList<>();
+    for (int p = 0; p < PRODUCERS; p++) {
+      final int producer = p;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+            queue.put(new ConflatableObject("key" + (i % KEYS), i,
+                new EventID(new byte[] {1}, producer, i), i % 2 == 0, "region"));
+          }
+        } catch (Exception e) {
+          synchronized (failures) {
+            failures.add(e);
+          }
+        } finally {
+          done.countDown();
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    long dispatched = 0;
+    while (done.getCount() > 0 || queue.size() > 0) {
+      dispatched += queue.dispatch();
+    }
+    long elapsed = System.nanoTime() - begin;
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(failures.toString(), failures.isEmpty());
+
+    long puts = (long) PRODUCERS * EVENTS_PER_PRODUCER;
+    System.out.println(name + ": " + (puts * 1000000000L / elapsed) + " puts/sec, " + dispatched
+        + " events dispatched, " + (puts - dispatched) + " conflated");
+  }
+
+  private interface BenchmarkQueue {
+
+    void put(Conflatable event) throws Exception;
+
+    int dispatch() throws Exception;
+
+    int size();
+  }
+}
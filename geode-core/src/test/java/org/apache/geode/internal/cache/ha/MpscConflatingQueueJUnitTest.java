@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.ha;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.internal.cache.Conflatable;
+import org.apache.geode.internal.cache.EventID;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class MpscConflatingQueueJUnitTest {
+
+  private MpscConflatingQueue queue;
+
+  @Before
+  public void setUp() throws Exception {
+    queue = new MpscConflatingQueue();
+  }
+
+  @Test
+  public void eventsArePeekedInOrderUntilRemoved() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      queue.put(event("key" + i, i, false));
+    }
+    assertEquals(5, queue.size());
+
+    assertEquals(values(0, 1, 2), values(queue.peek(3)));
+    assertEquals(values(0, 1, 2), values(queue.peek(3)));
+    queue.remove();
+    assertEquals(2, queue.size());
+
+    assertEquals(values(3, 4), values(queue.take(10)));
+    assertTrue(queue.isEmpty());
+    assertNull(queue.peek());
+  }
+
+  @Test
+  public void conflatableEventReplacesThePreviousEventOfItsKey() throws Exception {
+    queue.put(event("a", 0, true));
+    queue.put(event("b", 1, true));
+    queue.put(event("a", 2, true));
+    queue.put(event("a", 3, false));
+    queue.put(event("b", 4, true));
+
+    assertEquals(3, queue.size());
+    assertEquals(2, queue.getEventsConflated());
+    assertEquals(values(2, 3, 4), values(queue.take(10)));
+  }
+
+  @Test
+  public void peekedEventConflatedBeforeRemovalIsCountedOnce() throws Exception {
+    queue.put(event("a", 0, true));
+    assertEquals(values(0), values(queue.peek(10)));
+
+    queue.put(event("a", 1, true));
+    assertEquals(1, queue.size());
+    queue.remove();
+
+    assertEquals(1, queue.size());
+    assertEquals(values(1), values(queue.take(10)));
+    assertEquals(0, queue.size());
+
+    // the index no longer holds the removed event
+    queue.put(event("a", 2, true));
+    assertEquals(1, queue.getEventsConflated());
+  }
+
+  @Test
+  public void timedPeekWaitsForAPut() throws Exception {
+    assertTrue(queue.peek(10, 10).isEmpty());
+
+    Thread producer = new Thread(() -> {
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.put(event("a", 0, false));
+    });
+    producer.start();
+    assertEquals(values(0), values(queue.peek(10, 60000)));
+    producer.join();
+  }
+
+  @Test
+  public void eventsOfEachProducerAreDispatchedInOrder() throws Exception {
+    int producers = 4;
+    int eventsPerProducer = 10000;
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>();
+    for (int p = 0; p < producers; p++) {
+      int producer = p;
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < eventsPerProducer; i++) {
+          queue.put(event(producer, i, false));
+        }
+      });
+      thread.start();
+      threads.add(thread);
+    }
+    start.countDown();
+
+    Map<Object, Integer> lastValues = new HashMap<>();
+    int dispatched = 0;
+    while (dispatched < producers * eventsPerProducer) {
+      for (Conflatable event : queue.peek(100, 60000)) {
+        Integer last =
+            lastValues.put(event.getKeyToConflate(), (Integer) event.getValueToConflate());
+        assertTrue(last == null || last < (Integer) event.getValueToConflate());
+        dispatched++;
+      }
+      queue.remove();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertTrue(queue.isEmpty());
+  }
+
+  private Conflatable event(Object key, int value, boolean conflate) {
+    return new ConflatableObject(key, value, new EventID(new byte[] {1}, 1, value), conflate,
+        "region");
+  }
+
+  private List<Object> values(Object... values) {
+    List<Object> list = new ArrayList<>();
+    for (Object value : values) {
+      list.add(value);
+    }
+    return list;
+  }
+
+  private List<Object> values(List<Conflatable> events) {
+    List<Object> list = new ArrayList<>();
+    for (Conflatable event : events) {
+      list.add(event.getValueToConflate());
+    }
+    return list;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.ha;
+
+import static org.apache.geode.internal.cache.ha.SharedEventLog.SEGMENT_SIZE;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class SharedEventLogJUnitTest {
+
+  private SharedEventLog<Integer> log;
+
+  @Before
+  public void setUp() throws Exception {
+    log = new SharedEventLog<>();
+  }
+
+  @Test
+  public void cursorsReadTheEventsTheirFilterAccepts() throws Exception {
+    SharedEventLog<Integer>.Cursor all = log.newCursor(event -> true);
+    SharedEventLog<Integer>.Cursor even = log.newCursor(event -> event % 2 == 0);
+    for (int i = 0; i < 6; i++) {
+      log.append(i);
+    }
+
+    assertEquals(Arrays.asList(0, 1, 2), all.peek(3));
+    assertEquals(Arrays.asList(0, 1, 2), all.peek(3));
+    all.remove();
+    assertEquals(Arrays.asList(3, 4, 5), all.peek(10));
+    assertEquals(Arrays.asList(0, 2, 4), even.peek(10));
+    assertEquals(6, even.getLag());
+    even.remove();
+    assertEquals(0, even.getLag());
+    assertTrue(even.peek(10).isEmpty());
+  }
+
+  @Test
+  public void newCursorStartsAtTheEndOfTheLog() throws Exception {
+    SharedEventLog<Integer>.Cursor first = log.newCursor(event -> true);
+    log.append(0);
+    SharedEventLog<Integer>.Cursor second = log.newCursor(event -> true);
+    log.append(1);
+
+    assertEquals(Arrays.asList(0, 1), first.peek(10));
+    assertEquals(Arrays.asList(1), second.peek(10));
+  }
+
+  @Test
+  public void segmentIsReleasedOnceEveryCursorReadPastIt() throws Exception {
+    SharedEventLog<Integer>.Cursor fast = log.newCursor(event -> true);
+    SharedEventLog<Integer>.Cursor slow = log.newCursor(event -> event % 100 == 0);
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 3 * SEGMENT_SIZE; i++) {
+      log.append(i);
+      if (i % 100 == 0) {
+        expected.add(i);
+      }
+    }
+    assertEquals(3 * SEGMENT_SIZE, log.getEventsRetained());
+
+    assertEquals(3 * SEGMENT_SIZE, fast.peek(Integer.MAX_VALUE).size());
+    fast.remove();
+    assertEquals(3 * SEGMENT_SIZE, log.getEventsRetained());
+
+    assertEquals(expected.subList(0, 3), slow.peek(3));
+    slow.remove();
+    // still in the first segment
+    assertEquals(3 * SEGMENT_SIZE, log.getEventsRetained());
+    assertEquals(expected.subList(3, expected.size()), slow.peek(10));
+    slow.remove();
+    assertEquals(SEGMENT_SIZE, log.getEventsRetained());
+  }
+
+  @Test
+  public void closedCursorReleasesTheEventsItDidNotRead() throws Exception {
+    SharedEventLog<Integer>.Cursor cursor = log.newCursor(event -> true);
+    for (int i = 0; i < 2 * SEGMENT_SIZE; i++) {
+      log.append(i);
+    }
+    cursor.close();
+    assertEquals(SEGMENT_SIZE, log.getEventsRetained());
+
+    // the tail is released once full
+    log.append(2 * SEGMENT_SIZE);
+    assertEquals(1, log.getEventsRetained());
+  }
+
+  @Test
+  public void eventsAreReadConcurrentlyWithTheirAppend() throws Exception {
+    SharedEventLog<Integer>.Cursor cursor = log.newCursor(event -> true);
+    int events = 20 * SEGMENT_SIZE;
+    Thread appender = new Thread(() -> {
+      for (int i = 0; i < events; i++) {
+        log.append(i);
+      }
+    });
+    appender.start();
+
+    int next = 0;
+    while (next < events) {
+      for (int event : cursor.peek(100)) {
+        assertEquals(next++, event);
+      }
+      cursor.remove();
+    }
+    appender.join();
+    assertEquals(0, cursor.getLag());
+    assertEquals(SEGMENT_SIZE, log.getEventsRetained());
+  }
+}
@@ -41,6 +41,8 @@ import java.net.BindException;
 import java.net.Socket;
 import java.util.Collections;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
 import static org.apache.geode.distributed.ConfigurationProperties.MCAST_PORT;
 import static org.junit.Assert.*;
@@ -137,4 +139,29 @@ public class AcceptorImplJUnitTest {
     }
   }
 
+  @Test
+  public void batchApplyPoolIsShutDownWhenTheAcceptorIsClosed() throws Exception {
+    AcceptorImpl acceptor =
+        new AcceptorImpl(AvailablePort.getRandomAvailablePort(AvailablePort.SOCKET), null, false,
+            CacheServer.DEFAULT_SOCKET_BUFFER_SIZE, CacheServer.DEFAULT_MAXIMUM_TIME_BETWEEN_PINGS,
+            this.cache, AcceptorImpl.MINIMUM_MAX_CONNECTIONS, CacheServer.DEFAULT_MAX_THREADS,
+            CacheServer.DEFAULT_MAXIMUM_MESSAGE_COUNT, CacheServer.DEFAULT_MESSAGE_TIME_TO_LIVE,
+            null, null, true, Collections.EMPTY_LIST, CacheServer.DEFAULT_TCP_NO_DELAY);
+    ExecutorService pool;
+    try {
+      pool = acceptor.getBatchApplyPool(2);
+      assertSame(pool, acceptor.getBatchApplyPool(2));
+      assertFalse(pool.isShutdown());
+    } finally {
+      acceptor.close();
+    }
+
+    assertTrue(pool.isShutdown());
+    try {
+      acceptor.getBatchApplyPool(2);
+      fail("Expected a RejectedExecutionException once the acceptor is closed");
+    } catch (RejectedExecutionException expected) {
+    }
+  }
+
 }
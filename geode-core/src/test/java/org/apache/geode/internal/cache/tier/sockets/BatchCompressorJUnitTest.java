@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.internal.Version;
+import org.apache.geode.internal.cache.tier.MessageType;
+import org.apache.geode.internal.cache.wan.GatewayReceiverStats;
+import org.apache.geode.internal.cache.wan.GatewaySenderStats;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class BatchCompressorJUnitTest {
+
+  private BatchCompressor sender;
+  private BatchCompressor receiver;
+  private GatewaySenderStats senderStats;
+  private GatewayReceiverStats receiverStats;
+
+  @Before
+  public void setUp() throws Exception {
+    sender = new BatchCompressor();
+    receiver = new BatchCompressor();
+    senderStats = mock(GatewaySenderStats.class);
+    receiverStats = mock(GatewayReceiverStats.class);
+  }
+
+  @Test
+  public void batchesAreDecompressedInOrder() throws Exception {
+    int firstCompressedLength = 0;
+    for (int batchId = 0; batchId < 3; batchId++) {
+      Message batch = createBatch(batchId, 10);
+      sender.compress(batch, 4, senderStats);
+      assertEquals(6, batch.getNumberOfParts());
+      if (batchId == 0) {
+        firstCompressedLength = batch.getPart(5).getLength();
+      } else {
+        // the events of the previous batch are a good dictionary for the next one
+        assertTrue(batch.getPart(5).getLength() < firstCompressedLength / 2);
+      }
+      Message received = sendAndReceive(batch);
+      sender.batchSent();
+
+      receiver.decompress(received, 4, receiverStats);
+      assertBatch(received, batchId, 10);
+    }
+    verify(senderStats, times(3)).endBatchCompression(anyLong(), anyInt(), anyInt());
+    verify(receiverStats, times(3)).endBatchDecompression(anyLong());
+  }
+
+  @Test
+  public void batchNotSentDoesNotChangeTheDictionary() throws Exception {
+    Message batch = createBatch(0, 10);
+    sender.compress(batch, 4, senderStats);
+    sender.batchSent();
+    receiver.decompress(sendAndReceive(batch), 4, receiverStats);
+
+    // a batch too large to be sent is compressed again in smaller batches
+    sender.compress(createBatch(1, 20), 4, senderStats);
+    batch = createBatch(1, 5);
+    sender.compress(batch, 4, senderStats);
+    sender.batchSent();
+
+    Message received = sendAndReceive(batch);
+    receiver.decompress(received, 4, receiverStats);
+    assertBatch(received, 1, 5);
+  }
+
+  @Test
+  public void emptyBatchesAreDecompressed() throws Exception {
+    Message batch = createBatch(0, 0);
+    sender.compress(batch, 4, senderStats);
+    sender.batchSent();
+    Message received = sendAndReceive(batch);
+    receiver.decompress(received, 4, receiverStats);
+    assertBatch(received, 0, 0);
+
+    batch = createBatch(1, 3);
+    sender.compress(batch, 4, senderStats);
+    received = sendAndReceive(batch);
+    receiver.decompress(received, 4, receiverStats);
+    assertBatch(received, 1, 3);
+  }
+
+  @Test(expected = IOException.class)
+  public void batchCompressedWithAnotherDictionaryIsRejected() throws Exception {
+    Message batch = createBatch(0, 10);
+    sender.compress(batch, 4, senderStats);
+    sender.batchSent();
+
+    batch = createBatch(1, 10);
+    sender.compress(batch, 4, senderStats);
+    receiver.decompress(sendAndReceive(batch), 4, receiverStats);
+  }
+
+  private Message createBatch(int batchId, int numberOfEvents) {
+    Message batch = new Message(4 + 3 * numberOfEvents, Version.CURRENT);
+    batch.setMessageType(MessageType.GATEWAY_RECEIVER_COMMAND);
+    batch.addIntPart(numberOfEvents);
+    batch.addIntPart(batchId);
+    batch.addIntPart(1);
+    batch.addBytesPart(new byte[] {1});
+    for (int i = 0; i < numberOfEvents; i++) {
+      batch.addStringPart("/region");
+      batch.addObjPart("key" + (batchId * 100 + i));
+      batch.addRawPart(value(i), false);
+    }
+    return batch;
+  }
+
+  /**
+   * Returns a value which is not like the other values of its batch, but which is found in the
+   * other batches, as if the same entries were updated.
+   */
+  private byte[] value(int i) {
+    byte[] value = new byte[100 + i];
+    new Random(i).nextBytes(value);
+    return value;
+  }
+
+  private void assertBatch(Message batch, int batchId, int numberOfEvents) throws Exception {
+    assertEquals(4 + 3 * numberOfEvents, batch.getNumberOfParts());
+    assertEquals(numberOfEvents, batch.getPart(0).getInt());
+    assertEquals(batchId, batch.getPart(1).getInt());
+    for (int i = 0; i < numberOfEvents; i++) {
+      assertEquals("/region", batch.getPart(4 + 3 * i).getString());
+      assertEquals("key" + (batchId * 100 + i), batch.getPart(5 + 3 * i).getObject());
+      assertArrayEquals(value(i), batch.getPart(6 + 3 * i).getSerializedForm());
+    }
+  }
+
+  private Message sendAndReceive(Message batch) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Socket sendingSocket = mock(Socket.class);
+    when(sendingSocket.getOutputStream()).thenReturn(out);
+    MessageStats stats = mock(MessageStats.class);
+    batch.setComms(mock(ServerConnection.class), sendingSocket, ByteBuffer.allocate(1000), stats);
+    batch.send();
+
+    Socket receivingSocket = mock(Socket.class);
+    when(receivingSocket.getInputStream()).thenReturn(new ByteArrayInputStream(out.toByteArray()));
+    Message received = new Message(1, Version.CURRENT);
+    received.setComms(receivingSocket, ByteBuffer.allocate(1000), stats);
+    received.recv();
+    return received;
+  }
+}
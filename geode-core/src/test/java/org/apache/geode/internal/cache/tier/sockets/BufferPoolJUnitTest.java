@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class BufferPoolJUnitTest {
+
+  private static final int MAX_POOLED_SIZE = 64 * 1024;
+
+  private BufferPool pool;
+
+  @Before
+  public void setUp() throws Exception {
+    pool = new BufferPool(MAX_POOLED_SIZE, 1024 * 1024);
+  }
+
+  @Test
+  public void sizesAreRoundedUpToAPowerOfTwo() {
+    assertEquals(BufferPool.MIN_POOLED_SIZE, pool.acquireHeapBuffer(1, null).capacity());
+    assertEquals(128, pool.acquireHeapBuffer(128, null).capacity());
+    assertEquals(256, pool.acquireHeapBuffer(129, null).capacity());
+    assertEquals(32 * 1024, pool.acquireDirectBuffer(20000, null).capacity());
+    assertEquals(0, BufferPool.sizeClass(128));
+    assertEquals(1, BufferPool.sizeClass(129));
+    assertEquals(9, BufferPool.sizeClass(MAX_POOLED_SIZE));
+  }
+
+  @Test
+  public void releasedBufferIsReused() {
+    ByteBuffer bb = pool.acquireHeapBuffer(1000, null);
+    bb.putInt(7);
+    pool.release(bb);
+    ByteBuffer reused = pool.acquireHeapBuffer(600, null);
+    assertSame(bb, reused);
+    assertEquals(0, reused.position());
+    assertEquals(reused.capacity(), reused.limit());
+    assertNotSame(bb, pool.acquireHeapBuffer(600, null));
+  }
+
+  @Test
+  public void heapAndDirectBuffersArePooledSeparately() {
+    ByteBuffer heap = pool.acquireHeapBuffer(1000, null);
+    pool.release(heap);
+    ByteBuffer direct = pool.acquireDirectBuffer(1000, null);
+    assertTrue(direct.isDirect());
+    pool.release(direct);
+    assertSame(heap, pool.acquireHeapBuffer(1000, null));
+    assertSame(direct, pool.acquireDirectBuffer(1000, null));
+  }
+
+  @Test
+  public void largeBuffersAreNotPooled() {
+    ByteBuffer bb = pool.acquireHeapBuffer(MAX_POOLED_SIZE + 1, null);
+    assertEquals(MAX_POOLED_SIZE + 1, bb.capacity());
+    pool.release(bb);
+    assertNotSame(bb, pool.acquireHeapBuffer(MAX_POOLED_SIZE + 1, null));
+  }
+
+  @Test
+  public void buffersNotAllocatedByThePoolAreNotPooled() {
+    ByteBuffer bb = ByteBuffer.allocate(1000);
+    pool.release(bb);
+    assertNotSame(bb, pool.acquireHeapBuffer(1000, null));
+  }
+
+  @Test
+  public void pooledBytesAreCapped() {
+    pool = new BufferPool(MAX_POOLED_SIZE, 2 * 1024);
+    ByteBuffer first = pool.acquireHeapBuffer(1024, null);
+    ByteBuffer second = pool.acquireHeapBuffer(1024, null);
+    ByteBuffer third = pool.acquireHeapBuffer(1024, null);
+    pool.release(first);
+    pool.release(second);
+    pool.release(third);
+    assertSame(first, pool.acquireHeapBuffer(1024, null));
+    assertSame(second, pool.acquireHeapBuffer(1024, null));
+    assertNotSame(third, pool.acquireHeapBuffer(1024, null));
+  }
+
+  @Test
+  public void hitsAndMissesAreRecorded() {
+    CacheServerStats stats = mock(CacheServerStats.class);
+    pool.release(pool.acquireHeapBuffer(1000, stats));
+    pool.acquireHeapBuffer(1000, stats);
+    verify(stats, times(1)).incBufferPoolMisses();
+    verify(stats, times(1)).incBufferPoolHits();
+  }
+
+  @Test
+  public void trackedBuffersNotReleasedAreReported() {
+    pool.setTrackBuffers(true);
+    ByteBuffer released = pool.acquireHeapBuffer(1000, null);
+    pool.acquireDirectBuffer(1000, null);
+    pool.release(released);
+    assertEquals(1, pool.getUnreleasedBuffers().size());
+    assertTrue(pool.getUnreleasedBuffers().get(0).getMessage().contains("1024 bytes"));
+  }
+
+  @Test
+  public void bufferReleasedTwiceIsRejectedWhenTracked() {
+    pool.setTrackBuffers(true);
+    ByteBuffer bb = pool.acquireHeapBuffer(1000, null);
+    pool.release(bb);
+    try {
+      pool.release(bb);
+      fail("expected an exception but none was thrown");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void bufferAcquiredBeforeTrackingMayBeReleased() {
+    ByteBuffer bb = pool.acquireHeapBuffer(1000, null);
+    pool.setTrackBuffers(true);
+    pool.release(bb);
+    assertTrue(pool.getUnreleasedBuffers().isEmpty());
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import static org.apache.geode.distributed.ConfigurationProperties.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.Cache;
+import org.apache.geode.cache.CacheFactory;
+import org.apache.geode.cache.client.internal.Connection;
+import org.apache.geode.distributed.DistributedSystem;
+import org.apache.geode.distributed.internal.ServerLocation;
+import org.apache.geode.internal.Version;
+import org.apache.geode.internal.cache.GemFireCacheImpl;
+import org.apache.geode.internal.cache.tier.Acceptor;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+/**
+ * Runs the gateway handshake of a sender requesting compressed batches against receivers of the
+ * current and older versions.
+ */
+@Category(IntegrationTest.class)
+public class HandShakeIntegrationTest {
+
+  private static final byte REDUNDANT_SERVER = 1;
+
+  private Cache cache;
+  private DistributedSystem system;
+  private ByteArrayInputStream receivedBytes;
+
+  @Before
+  public void setUp() throws Exception {
+    Properties p = new Properties();
+    p.setProperty(MCAST_PORT, "0");
+    p.setProperty(LOCATORS, "");
+    this.cache = new CacheFactory(p).create();
+    this.system = this.cache.getDistributedSystem();
+    // the receiver replies with the size of the pdx registry, which a loner creates lazily
+    ((GemFireCacheImpl) this.cache).getPdxRegistry().typeMap();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.cache.close();
+  }
+
+  @Test
+  public void compressionIsNegotiatedWithACurrentReceiver() throws Exception {
+    HandShake receiver = receive(request(true));
+    ServerQueueStatus status = greet(reply(receiver), true);
+
+    assertEquals(BatchCompressor.DEFLATE, receiver.getBatchCompression());
+    assertEquals(BatchCompressor.DEFLATE, status.getBatchCompression());
+    assertTrue(status.isRedundant());
+    assertEquals(0, this.receivedBytes.available());
+  }
+
+  @Test
+  public void olderReceiverDoesNotReplyWithTheCompression() throws Exception {
+    // an older receiver ignores the request, and replies as to a sender not requesting compression
+    HandShake receiver = receive(request(false));
+    ServerQueueStatus status = greet(reply(receiver), true);
+
+    assertEquals(BatchCompressor.NONE, status.getBatchCompression());
+    assertTrue(status.isRedundant());
+    assertEquals(0, this.receivedBytes.available());
+  }
+
+  @Test
+  public void receiverDoesNotReplyToAnOlderSender() throws Exception {
+    // older senders never request compression, nor read the reply
+    HandShake receiver = receive(request(false));
+    ServerQueueStatus status = greet(reply(receiver), false);
+
+    assertEquals(BatchCompressor.NONE, receiver.getBatchCompression());
+    assertEquals(BatchCompressor.NONE, status.getBatchCompression());
+    assertTrue(status.isRedundant());
+    assertEquals(0, this.receivedBytes.available());
+  }
+
+  /** Returns the bytes of the handshake of a gateway sender */
+  private byte[] request(boolean batchCompressionRequested) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      createSender(batchCompressionRequested).greet(
+          connection(new ByteArrayInputStream(new byte[0]), out),
+          new ServerLocation("localhost", 1), Acceptor.GATEWAY_TO_GATEWAY);
+      fail("expected the sender to fail reading the missing reply");
+    } catch (EOFException expected) {
+    }
+    return out.toByteArray();
+  }
+
+  /** Reads the given handshake request as the gateway receiver does */
+  private HandShake receive(byte[] request) throws Exception {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(request));
+    // the acceptor reads the communication mode and the version of the sender
+    assertEquals(Acceptor.GATEWAY_TO_GATEWAY, in.readByte());
+    Version senderVersion = Version.fromOrdinal(Version.readOrdinal(in), false);
+    Socket socket = mock(Socket.class);
+    when(socket.getInputStream()).thenReturn(in);
+    when(socket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    return new HandShake(socket, 1000, this.system, senderVersion, Acceptor.GATEWAY_TO_GATEWAY);
+  }
+
+  private byte[] reply(HandShake receiver) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    receiver.accept(out, new ByteArrayInputStream(new byte[0]), REDUNDANT_SERVER, 0,
+        Acceptor.GATEWAY_TO_GATEWAY, null);
+    return out.toByteArray();
+  }
+
+  /** Completes the handshake of a gateway sender with the given reply */
+  private ServerQueueStatus greet(byte[] reply, boolean batchCompressionRequested)
+      throws Exception {
+    this.receivedBytes = new ByteArrayInputStream(reply);
+    return createSender(batchCompressionRequested).greet(
+        connection(this.receivedBytes, new ByteArrayOutputStream()),
+        new ServerLocation("localhost", 1), Acceptor.GATEWAY_TO_GATEWAY);
+  }
+
+  private HandShake createSender(boolean batchCompressionRequested) {
+    HandShake sender =
+        new HandShake(new ClientProxyMembershipID(this.system.getDistributedMember()), this.system);
+    sender.setBatchCompressionRequested(batchCompressionRequested);
+    return sender;
+  }
+
+  private Connection connection(ByteArrayInputStream in, ByteArrayOutputStream out)
+      throws Exception {
+    Socket socket = mock(Socket.class);
+    when(socket.getInputStream()).thenReturn(in);
+    when(socket.getOutputStream()).thenReturn(out);
+    when(socket.getInetAddress()).thenReturn(InetAddress.getLocalHost());
+    when(socket.getPort()).thenReturn(1);
+    final Connection connection = mock(Connection.class);
+    when(connection.getSocket()).thenReturn(socket);
+    // remember the version of the receiver, as the connection does
+    final short[] wanSiteVersion = new short[1];
+    doAnswer(invocation -> {
+      wanSiteVersion[0] = (Short) invocation.getArguments()[0];
+      return null;
+    }).when(connection).setWanSiteVersion(anyShort());
+    when(connection.getWanSiteVersion()).thenAnswer(invocation -> wanSiteVersion[0]);
+    return connection;
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.internal.Version;
+import org.apache.geode.internal.cache.tier.MessageType;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class MessageFramerJUnitTest {
+
+  private BufferPool pool;
+  private byte[] bytes;
+  private int headerLength;
+
+  @Before
+  public void setUp() throws Exception {
+    pool = BufferPool.getPool();
+    pool.setTrackBuffers(true);
+
+    Socket socket = mock(Socket.class);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    when(socket.getOutputStream()).thenReturn(out);
+    Message message = new Message(2, Version.CURRENT);
+    message.setComms(socket, ByteBuffer.allocate(1000), mock(MessageStats.class));
+    message.setMessageType(MessageType.PUT);
+    message.setTransactionId(7);
+    message.addStringPart("region");
+    message.addObjPart("value");
+    message.send();
+    bytes = out.toByteArray();
+    headerLength = message.getHeaderLength();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    pool.setTrackBuffers(false);
+  }
+
+  @Test
+  public void messageIsReceivedOnceComplete() throws Exception {
+    MessageFramer framer = new MessageFramer(headerLength, 1024, pool, null);
+    ScriptedChannel channel = new ScriptedChannel();
+
+    channel.add(Arrays.copyOfRange(bytes, 0, 5));
+    assertFalse(framer.readFrom(channel));
+    channel.add(Arrays.copyOfRange(bytes, 5, headerLength + 3));
+    assertFalse(framer.readFrom(channel));
+    channel.add(Arrays.copyOfRange(bytes, headerLength + 3, bytes.length));
+    assertTrue(framer.readFrom(channel));
+
+    ByteBuffer received = framer.getReceivedBytes();
+    byte[] frame = new byte[received.remaining()];
+    received.get(frame);
+    assertArrayEquals(bytes, frame);
+
+    framer.clear();
+    assertNull(framer.getReceivedBytes());
+    assertEquals(0, pool.getUnreleasedBuffers().size());
+  }
+
+  @Test
+  public void receivedBytesAreReadByMessage() throws Exception {
+    MessageFramer framer = new MessageFramer(headerLength, 1024, pool, null);
+    ScriptedChannel channel = new ScriptedChannel();
+    channel.add(bytes);
+    assertTrue(framer.readFrom(channel));
+
+    Message message = receivingMessage();
+    message.setReceivedBytes(framer.getReceivedBytes());
+    message.recv();
+
+    assertEquals(MessageType.PUT, message.getMessageType());
+    assertEquals(7, message.getTransactionId());
+    assertEquals("region", message.getPart(0).getString());
+    assertEquals("value", message.getPart(1).getObject());
+    framer.clear();
+  }
+
+  @Test
+  public void onlyHeaderOfLargeMessageIsBuffered() throws Exception {
+    MessageFramer framer = new MessageFramer(headerLength, headerLength + 1, pool, null);
+    ScriptedChannel channel = new ScriptedChannel();
+    channel.add(bytes);
+
+    assertTrue(framer.readFrom(channel));
+    assertEquals(headerLength, framer.getReceivedBytes().remaining());
+    assertEquals(bytes.length - headerLength, channel.available());
+    framer.clear();
+    assertEquals(0, pool.getUnreleasedBuffers().size());
+  }
+
+  @Test
+  public void closedChannelThrowsEOFException() throws Exception {
+    MessageFramer framer = new MessageFramer(headerLength, 1024, pool, null);
+    ScriptedChannel channel = new ScriptedChannel();
+    channel.add(Arrays.copyOfRange(bytes, 0, 3));
+    assertFalse(framer.readFrom(channel));
+
+    channel.close();
+    try {
+      framer.readFrom(channel);
+      fail("expected EOFException");
+    } catch (EOFException expected) {
+    }
+    framer.clear();
+    assertEquals(0, pool.getUnreleasedBuffers().size());
+  }
+
+  private Message receivingMessage() throws IOException {
+    Socket socket = mock(Socket.class);
+    when(socket.getChannel()).thenReturn(mock(SocketChannel.class));
+    Message message = new Message(2, Version.CURRENT);
+    message.setComms(socket, ByteBuffer.allocate(1000), mock(MessageStats.class));
+    return message;
+  }
+
+  /**
+   * A non-blocking channel that has the chunks added to it available, one per read, and reaches its
+   * end once closed.
+   */
+  private static class ScriptedChannel implements ReadableByteChannel {
+    private final LinkedList<ByteBuffer> chunks = new LinkedList<ByteBuffer>();
+    private boolean closed;
+
+    void add(byte[] chunk) {
+      chunks.add(ByteBuffer.wrap(chunk));
+    }
+
+    int available() {
+      int result = 0;
+      for (ByteBuffer chunk : chunks) {
+        result += chunk.remaining();
+      }
+      return result;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (chunks.isEmpty()) {
+        return closed ? -1 : 0;
+      }
+      ByteBuffer chunk = chunks.getFirst();
+      int length = Math.min(chunk.remaining(), dst.remaining());
+      ByteBuffer slice = chunk.duplicate();
+      slice.limit(slice.position() + length);
+      dst.put(slice);
+      chunk.position(chunk.position() + length);
+      if (!chunk.hasRemaining()) {
+        chunks.removeFirst();
+      }
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return !closed;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+}
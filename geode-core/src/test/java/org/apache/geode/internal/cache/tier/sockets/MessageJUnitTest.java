@@ -17,14 +17,19 @@ package org.apache.geode.internal.cache.tier.sockets;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
 import org.apache.geode.internal.Version;
+import org.apache.geode.internal.cache.tier.MessageType;
 import org.apache.geode.test.junit.categories.UnitTest;
 
 @Category(UnitTest.class)
@@ -117,6 +122,64 @@ public class MessageJUnitTest {
     verify(mockPart1, times(2)).clear();
   }
 
+  @Test
+  public void pooledPartBuffersAreReleasedOnceSent() throws Exception {
+    BufferPool pool = BufferPool.getPool();
+    pool.setTrackBuffers(true);
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      when(mockSocket.getOutputStream()).thenReturn(out);
+      message.setComms(mockServerConnection, mockSocket, msgBuffer, mockStats);
+      message.setNumberOfParts(1);
+      String[] value = new String[1000];
+      Arrays.fill(value, "a string value that is serialized into several pooled buffers");
+      message.addObjPart(value);
+      assertFalse(pool.getUnreleasedBuffers().isEmpty());
+      message.send();
+      assertTrue(out.size() > 60 * 1000);
+      assertEquals(pool.getUnreleasedBuffers().toString(), 0, pool.getUnreleasedBuffers().size());
+    } finally {
+      pool.setTrackBuffers(false);
+    }
+  }
+
+  @Test
+  public void batchedMessagesAreReceivedInOrder() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    when(mockSocket.getOutputStream()).thenReturn(out);
+    Message first = new Message(2, Version.CURRENT);
+    first.setMessageType(MessageType.LOCAL_UPDATE);
+    first.addStringPart("region");
+    first.addIntPart(1);
+    Message second = new Message(1, Version.CURRENT);
+    second.setMessageType(MessageType.LOCAL_DESTROY);
+    second.addStringPart("key");
+    Message batch = new Message(1 + 2 + 2 + 2 + 1, Version.CURRENT);
+    batch.setMessageType(MessageType.CLIENT_EVENT_BATCH);
+    batch.addIntPart(2);
+    batch.addBatchedMessage(first);
+    batch.addBatchedMessage(second);
+    batch.setComms(mockServerConnection, mockSocket, msgBuffer, mockStats);
+    batch.send();
+
+    Socket receivingSocket = mock(Socket.class);
+    when(receivingSocket.getInputStream()).thenReturn(new ByteArrayInputStream(out.toByteArray()));
+    Message received = new Message(1, Version.CURRENT);
+    received.setComms(receivingSocket, ByteBuffer.allocate(1000), mockStats);
+    received.recv();
+    assertEquals(MessageType.CLIENT_EVENT_BATCH, received.getMessageType());
+
+    List<Message> messages = received.getBatchedMessages();
+    assertEquals(2, messages.size());
+    assertEquals(MessageType.LOCAL_UPDATE, messages.get(0).getMessageType());
+    assertEquals(2, messages.get(0).getNumberOfParts());
+    assertEquals("region", messages.get(0).getPart(0).getString());
+    assertEquals(1, messages.get(0).getPart(1).getInt());
+    assertEquals(MessageType.LOCAL_DESTROY, messages.get(1).getMessageType());
+    assertEquals(1, messages.get(1).getNumberOfParts());
+    assertEquals("key", messages.get(1).getPart(0).getString());
+  }
+
   // TODO many more tests are needed
 
 }
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.tier.sockets.command;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.InOrder;
+
+import org.apache.geode.distributed.internal.DM;
+import org.apache.geode.distributed.internal.InternalDistributedSystem;
+import org.apache.geode.internal.Version;
+import org.apache.geode.internal.cache.EntryEventImpl;
+import org.apache.geode.internal.cache.EventID;
+import org.apache.geode.internal.cache.GemFireCacheImpl;
+import org.apache.geode.internal.cache.LocalRegion;
+import org.apache.geode.internal.cache.tier.CachedRegionHelper;
+import org.apache.geode.internal.cache.tier.MessageType;
+import org.apache.geode.internal.cache.tier.sockets.AcceptorImpl;
+import org.apache.geode.internal.cache.tier.sockets.ClientProxyMembershipID;
+import org.apache.geode.internal.cache.tier.sockets.Message;
+import org.apache.geode.internal.cache.tier.sockets.MessageStats;
+import org.apache.geode.internal.cache.tier.sockets.ServerConnection;
+import org.apache.geode.internal.cache.wan.GatewayReceiverStats;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class GatewayReceiverCommandTest {
+
+  private static final int CREATE = 0;
+  private static final int UPDATE = 1;
+  private static final int DESTROY = 2;
+
+  private int batchApplyThreads;
+  private GatewayReceiverCommand command;
+  private ServerConnection serverConnection;
+  private LocalRegion region;
+  private Message replyMessage;
+  private Message errorResponseMessage;
+  private Message batch;
+  private ExecutorService batchApplyPool;
+
+  @Before
+  public void setUp() throws Exception {
+    batchApplyThreads = GatewayReceiverCommand.BATCH_APPLY_THREADS;
+    command = (GatewayReceiverCommand) GatewayReceiverCommand.getCommand();
+
+    region = mock(LocalRegion.class);
+    when(region.basicBridgeCreate(any(), any(byte[].class), anyBoolean(), any(),
+        any(ClientProxyMembershipID.class), anyBoolean(), any(EntryEventImpl.class), anyBoolean()))
+            .thenReturn(true);
+    when(region.basicBridgePut(any(), any(), any(byte[].class), anyBoolean(), any(),
+        any(ClientProxyMembershipID.class), anyBoolean(), any(EntryEventImpl.class)))
+            .thenReturn(true);
+
+    CachedRegionHelper crHelper = mock(CachedRegionHelper.class);
+    when(crHelper.getRegion("/region")).thenReturn(region);
+    GemFireCacheImpl cache = mock(GemFireCacheImpl.class);
+    InternalDistributedSystem system = mock(InternalDistributedSystem.class);
+    when(system.getDistributionManager()).thenReturn(mock(DM.class));
+    when(cache.getDistributedSystem()).thenReturn(system);
+    when(crHelper.getCache()).thenReturn(cache);
+
+    replyMessage = mock(Message.class);
+    errorResponseMessage = mock(Message.class);
+    serverConnection = mock(ServerConnection.class);
+    when(serverConnection.getCachedRegionHelper()).thenReturn(crHelper);
+    when(serverConnection.getCacheServerStats()).thenReturn(mock(GatewayReceiverStats.class));
+    when(serverConnection.getLatestBatchIdReplied()).thenReturn(-1);
+    when(serverConnection.getResponseMessage()).thenReturn(replyMessage);
+    when(serverConnection.getErrorResponseMessage()).thenReturn(errorResponseMessage);
+    when(serverConnection.getClientVersion()).thenReturn(Version.CURRENT);
+    batchApplyPool = Executors.newFixedThreadPool(4);
+    AcceptorImpl acceptor = mock(AcceptorImpl.class);
+    when(acceptor.getBatchApplyPool(anyInt())).thenReturn(batchApplyPool);
+    when(serverConnection.getAcceptor()).thenReturn(acceptor);
+
+    batch = new Message(4 + 10 * 30, Version.CURRENT);
+    batch.setMessageType(MessageType.GATEWAY_RECEIVER_COMMAND);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    GatewayReceiverCommand.BATCH_APPLY_THREADS = batchApplyThreads;
+    batchApplyPool.shutdownNow();
+  }
+
+  @Test
+  public void eventsAreAppliedInOrder() throws Exception {
+    startBatch(4, false);
+    addEvent(CREATE, "a", "callback");
+    addEvent(DESTROY, "b", null);
+    addEvent(UPDATE, "a", null);
+    addEvent(DESTROY, "a", "callback");
+
+    command.cmdExecute(sendAndReceive(batch), serverConnection, 0);
+
+    InOrder inOrder = inOrder(region);
+    verifyCreate(inOrder, "a");
+    verifyDestroy(inOrder, "b");
+    verifyPut(inOrder, "a");
+    verifyDestroy(inOrder, "a");
+    verify(replyMessage).send(serverConnection);
+  }
+
+  @Test
+  public void eventsOfAKeyAreAppliedInOrderInParallel() throws Exception {
+    GatewayReceiverCommand.BATCH_APPLY_THREADS = 4;
+    startBatch(30, false);
+    for (int action : new int[] {CREATE, UPDATE, DESTROY}) {
+      for (int i = 0; i < 10; i++) {
+        addEvent(action, "key" + i, i % 2 == 0 ? "callback" : null);
+      }
+    }
+
+    command.cmdExecute(sendAndReceive(batch), serverConnection, 0);
+
+    for (int i = 0; i < 10; i++) {
+      InOrder inOrder = inOrder(region);
+      verifyCreate(inOrder, "key" + i);
+      verifyPut(inOrder, "key" + i);
+      verifyDestroy(inOrder, "key" + i);
+    }
+    verify(replyMessage).send(serverConnection);
+  }
+
+  @Test
+  public void modificationIsRecordedByTheThreadOfTheConnection() throws Exception {
+    GatewayReceiverCommand.BATCH_APPLY_THREADS = 4;
+    final List<Thread> recordingThreads = new CopyOnWriteArrayList<>();
+    doAnswer(invocation -> {
+      recordingThreads.add(Thread.currentThread());
+      return null;
+    }).when(serverConnection).setModificationInfo(anyBoolean(), anyString(), any());
+    startBatch(20, false);
+    for (int i = 0; i < 20; i++) {
+      addEvent(CREATE, "key" + i, null);
+    }
+
+    command.cmdExecute(sendAndReceive(batch), serverConnection, 0);
+
+    assertEquals(Collections.singletonList(Thread.currentThread()), recordingThreads);
+    // like when applied in order, the last event of the batch is the one recorded
+    verify(serverConnection).setModificationInfo(true, "/region", "key19");
+    verify(replyMessage).send(serverConnection);
+  }
+
+  @Test
+  public void failedEventStopsTheEventsOfItsKey() throws Exception {
+    GatewayReceiverCommand.BATCH_APPLY_THREADS = 4;
+    when(region.basicBridgePut(eq("a"), any(), any(byte[].class), anyBoolean(), any(),
+        any(ClientProxyMembershipID.class), anyBoolean(), any(EntryEventImpl.class)))
+            .thenReturn(false);
+    startBatch(3, false);
+    addEvent(UPDATE, "a", null);
+    addEvent(CREATE, "b", null);
+    addEvent(DESTROY, "a", null);
+
+    command.cmdExecute(sendAndReceive(batch), serverConnection, 0);
+
+    verify(region, never()).basicBridgeDestroy(any(), any(), any(ClientProxyMembershipID.class),
+        anyBoolean(), any(EntryEventImpl.class));
+    verifyCreate(inOrder(region), "b");
+    verify(errorResponseMessage).send(serverConnection);
+    verify(replyMessage, never()).send(serverConnection);
+  }
+
+  private void startBatch(int numberOfEvents, boolean removeOnException) {
+    batch.addIntPart(numberOfEvents);
+    batch.addIntPart(0);
+    batch.addIntPart(1);
+    batch.addBytesPart(new byte[] {removeOnException ? (byte) 1 : (byte) 0});
+  }
+
+  private void addEvent(int action, String key, Object callbackArg) {
+    batch.addIntPart(action);
+    batch.addBytesPart(new byte[] {0});
+    batch.addStringPart("/region");
+    batch.addObjPart(new EventID(new byte[] {1}, 1, batch.getNumberOfParts()));
+    batch.addStringOrObjPart(key);
+    if (action != DESTROY) {
+      batch.addRawPart(new byte[] {1, 2, 3}, false);
+    }
+    if (callbackArg == null) {
+      batch.addBytesPart(new byte[] {0x00});
+    } else {
+      batch.addBytesPart(new byte[] {0x01});
+      batch.addObjPart(callbackArg);
+    }
+    batch.addLongPart(0);
+  }
+
+  private void verifyCreate(InOrder inOrder, String key) {
+    inOrder.verify(region).basicBridgeCreate(eq(key), any(byte[].class), anyBoolean(), any(),
+        any(ClientProxyMembershipID.class), anyBoolean(), any(EntryEventImpl.class), anyBoolean());
+  }
+
+  private void verifyPut(InOrder inOrder, String key) {
+    inOrder.verify(region).basicBridgePut(eq(key), any(), any(byte[].class), anyBoolean(), any(),
+        any(ClientProxyMembershipID.class), anyBoolean(), any(EntryEventImpl.class));
+  }
+
+  private void verifyDestroy(InOrder inOrder, String key) {
+    inOrder.verify(region).basicBridgeDestroy(eq(key), any(), any(ClientProxyMembershipID.class),
+        anyBoolean(), any(EntryEventImpl.class));
+  }
+
+  private Message sendAndReceive(Message message) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Socket sendingSocket = mock(Socket.class);
+    when(sendingSocket.getOutputStream()).thenReturn(out);
+    MessageStats stats = mock(MessageStats.class);
+    message.setComms(mock(ServerConnection.class), sendingSocket, ByteBuffer.allocate(1000), stats);
+    message.send();
+
+    Socket receivingSocket = mock(Socket.class);
+    when(receivingSocket.getInputStream()).thenReturn(new ByteArrayInputStream(out.toByteArray()));
+    Message received = new Message(1, Version.CURRENT);
+    received.setComms(receivingSocket, ByteBuffer.allocate(1000), stats);
+    received.recv();
+    return received;
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.wan;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.CancelCriterion;
+import org.apache.geode.cache.EntryEvent;
+import org.apache.geode.internal.cache.EnumListenerEvent;
+import org.apache.geode.internal.cache.RegionQueue;
+import org.apache.geode.internal.logging.LoggingThreadGroup;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class AbstractGatewaySenderEventProcessorJUnitTest {
+
+  private int maxBatchesInFlight;
+  private GatewaySenderStats statistics;
+  private RegionQueue queue;
+  private AbstractGatewaySenderEventProcessor processor;
+
+  @Before
+  public void setUp() throws Exception {
+    maxBatchesInFlight = AbstractGatewaySender.MAX_BATCHES_IN_FLIGHT;
+    AbstractGatewaySender.MAX_BATCHES_IN_FLIGHT = 2;
+    statistics = mock(GatewaySenderStats.class);
+    AbstractGatewaySender sender = mock(AbstractGatewaySender.class);
+    when(sender.getStatistics()).thenReturn(statistics);
+    when(sender.getStopper()).thenReturn(mock(CancelCriterion.class));
+    queue = mock(RegionQueue.class);
+    processor = spy(new TestEventProcessor(sender));
+    processor.queue = queue;
+    processor.setIsStopped(false);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    AbstractGatewaySender.MAX_BATCHES_IN_FLIGHT = maxBatchesInFlight;
+  }
+
+  @Test
+  public void waitsWhileMaxBatchesAreInFlight() throws Exception {
+    sendBatch(3);
+    // one batch in flight does not block
+    processor.waitForBatchesInFlight();
+    sendBatch(2);
+    verify(statistics).setBatchesInFlight(2);
+
+    Thread waiter = startWaiter();
+    waiter.join(500);
+    assertTrue(waiter.isAlive());
+
+    processor.handleSuccessBatchAck(0);
+    waiter.join(10000);
+    assertFalse(waiter.isAlive());
+    verify(queue).remove(3);
+    verify(statistics, times(2)).setBatchesInFlight(1);
+    verify(statistics).endBatchAcknowledgement(anyLong());
+  }
+
+  @Test
+  public void acksInOrderReleaseTheBatches() throws Exception {
+    sendBatch(3);
+    sendBatch(2);
+
+    processor.handleSuccessBatchAck(0);
+    processor.handleSuccessBatchAck(1);
+
+    verify(queue).remove(3);
+    verify(queue).remove(2);
+    verify(statistics).setBatchesInFlight(0);
+    assertTrue(processor.getBatchIdToEventsMap().isEmpty());
+    verify(processor, never()).handleException();
+    processor.waitForBatchesInFlight();
+  }
+
+  @Test
+  public void outOfOrderAckMakesTheBatchesBeSentAgain() throws Exception {
+    sendBatch(3);
+    sendBatch(2);
+    Thread waiter = startWaiter();
+
+    processor.handleSuccessBatchAck(1);
+
+    verify(processor).handleException();
+    verify(statistics).incBatchesRedistributed();
+    assertTrue(processor.isConnectionReset());
+    // no events were removed, and the batches in flight are kept until they are sent again
+    verify(queue, never()).remove(anyInt());
+    assertEquals(2, processor.getBatchIdToEventsMap().size());
+    // the processor does not wait for acks of batches it is about to send again
+    waiter.join(10000);
+    assertFalse(waiter.isAlive());
+  }
+
+  @Test
+  public void ackOfUnknownBatchIsIgnored() throws Exception {
+    sendBatch(3);
+
+    processor.handleSuccessBatchAck(5);
+
+    verify(processor, never()).handleException();
+    verify(queue, never()).remove(anyInt());
+    assertEquals(1, processor.getBatchIdToEventsMap().size());
+  }
+
+  @Test
+  public void batchesInFlightAreNotLimitedByDefault() throws Exception {
+    AbstractGatewaySender.MAX_BATCHES_IN_FLIGHT = 0;
+    for (int i = 0; i < 10; i++) {
+      sendBatch(1);
+    }
+    processor.waitForBatchesInFlight();
+    assertEquals(10, processor.getBatchIdToEventsMap().size());
+  }
+
+  /** Stores a batch of the given number of events as the dispatcher does when sending it */
+  private void sendBatch(int size) {
+    GatewaySenderEventImpl[] events = new GatewaySenderEventImpl[size];
+    for (int i = 0; i < size; i++) {
+      events[i] = mock(GatewaySenderEventImpl.class);
+    }
+    List<GatewaySenderEventImpl> batch = Arrays.asList(events);
+    processor.addBatchInFlight(batch, batch);
+    processor.incrementBatchId();
+  }
+
+  private Thread startWaiter() {
+    Thread waiter = new Thread(new Runnable() {
+      public void run() {
+        try {
+          processor.waitForBatchesInFlight();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    waiter.setDaemon(true);
+    waiter.start();
+    return waiter;
+  }
+
+  private static class TestEventProcessor extends AbstractGatewaySenderEventProcessor {
+
+    TestEventProcessor(AbstractGatewaySender sender) {
+      super(LoggingThreadGroup.createThreadGroup("TestEventProcessor"), "TestEventProcessor",
+          sender);
+    }
+
+    @Override
+    protected void initializeMessageQueue(String id) {}
+
+    @Override
+    public void enqueueEvent(EnumListenerEvent operation, EntryEvent event,
+        Object substituteValue) {}
+
+    @Override
+    protected void rebalance() {}
+
+    @Override
+    public void initializeEventDispatcher() {}
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.wan;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class AdaptiveBatchSizerJUnitTest {
+
+  private AdaptiveBatchSizer sizer;
+
+  @Before
+  public void setUp() throws Exception {
+    sizer = new AdaptiveBatchSizer(100, 1000, 400, 1000000, 100);
+  }
+
+  @Test
+  public void batchSizeGrowsUpToItsLimitWithABacklog() {
+    sizer.batchPeeked(100, 1000, 1000);
+    assertEquals(200, sizer.getBatchSize());
+    sizer.batchPeeked(200, 2000, 1000);
+    assertEquals(400, sizer.getBatchSize());
+    sizer.batchPeeked(400, 4000, 1000);
+    assertEquals(400, sizer.getBatchSize());
+    assertEquals(1000, sizer.getBatchTimeInterval());
+  }
+
+  @Test
+  public void batchSizeDoesNotGrowWithoutABacklog() {
+    sizer.batchPeeked(100, 1000, 150);
+    assertEquals(100, sizer.getBatchSize());
+  }
+
+  @Test
+  public void timeIntervalShrinksWithPartialBatches() {
+    sizer.batchPeeked(10, 100, 10);
+    assertEquals(500, sizer.getBatchTimeInterval());
+    for (int i = 0; i < 20; i++) {
+      sizer.batchPeeked(10, 100, 10);
+    }
+    assertEquals(AdaptiveBatchSizer.MIN_BATCH_TIME_INTERVAL, sizer.getBatchTimeInterval());
+
+    // a backlog brings the configured time interval back
+    sizer.batchPeeked(100, 1000, 1000);
+    assertEquals(1000, sizer.getBatchTimeInterval());
+  }
+
+  @Test
+  public void batchSizeShrinksOnceWhileAcknowledgementsAreSlow() {
+    sizer.batchPeeked(100, 1000, 1000);
+    sizer.batchPeeked(200, 2000, 1000);
+    assertEquals(400, sizer.getBatchSize());
+
+    long sentAt = System.nanoTime();
+    long ackedAt = sentAt + TimeUnit.MILLISECONDS.toNanos(500);
+    sizer.batchAcknowledged(sentAt, ackedAt);
+    assertEquals(200, sizer.getBatchSize());
+
+    // batches sent before the batch size shrank do not shrink it again
+    sizer.batchAcknowledged(sentAt + 1, ackedAt + 1);
+    assertEquals(200, sizer.getBatchSize());
+    sizer.batchAcknowledged(ackedAt + 1, ackedAt + TimeUnit.MILLISECONDS.toNanos(500));
+    assertEquals(100, sizer.getBatchSize());
+
+    // nor does the batch size grow while acknowledgements are slow
+    sizer.batchPeeked(100, 1000, 1000);
+    assertEquals(100, sizer.getBatchSize());
+  }
+
+  @Test
+  public void batchSizeShrinksToTheBatchesThatFitTheirBytes() {
+    sizer.batchPeeked(100, 4000000, 1000);
+    assertEquals(25, sizer.getBatchSize());
+  }
+
+  @Test
+  public void batchSizeIsLimitedByTooLargeBatches() {
+    sizer.batchPeeked(100, 1000, 1000);
+    sizer.limitBatchSize(150);
+    assertEquals(150, sizer.getBatchSize());
+    sizer.batchPeeked(150, 1500, 1000);
+    assertEquals(150, sizer.getBatchSize());
+  }
+}
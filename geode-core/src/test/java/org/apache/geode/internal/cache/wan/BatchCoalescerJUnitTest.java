@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.wan;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class BatchCoalescerJUnitTest {
+
+  private static final int CREATE = 0;
+  private static final int UPDATE = 1;
+  private static final int DESTROY = 2;
+  private static final int INVALIDATE = 3;
+
+  @Test
+  public void lastUpdateOfAKeyIsKeptInPlace() {
+    GatewaySenderEventImpl createA = event(CREATE, "/r", "a");
+    GatewaySenderEventImpl updateB = event(UPDATE, "/r", "b");
+    GatewaySenderEventImpl updateA = event(UPDATE, "/r", "a");
+    GatewaySenderEventImpl updateB2 = event(UPDATE, "/r", "b");
+    GatewaySenderEventImpl updateOtherA = event(UPDATE, "/other", "a");
+
+    List<GatewaySenderEventImpl> coalesced =
+        BatchCoalescer.coalesce(Arrays.asList(createA, updateB, updateA, updateB2, updateOtherA));
+
+    assertEquals(Arrays.asList(updateA, updateB2, updateOtherA), coalesced);
+  }
+
+  @Test
+  public void createAndDestroyOfAKeyAreDropped() {
+    GatewaySenderEventImpl createA = event(CREATE, "/r", "a");
+    GatewaySenderEventImpl updateA = event(UPDATE, "/r", "a");
+    GatewaySenderEventImpl updateB = event(UPDATE, "/r", "b");
+    GatewaySenderEventImpl destroyA = event(DESTROY, "/r", "a");
+    GatewaySenderEventImpl createA2 = event(CREATE, "/r", "a");
+
+    List<GatewaySenderEventImpl> coalesced =
+        BatchCoalescer.coalesce(Arrays.asList(createA, updateB, destroyA, createA2));
+    assertEquals(Arrays.asList(updateB, createA2), coalesced);
+
+    // the update has replaced the create, which a destroy still drops
+    coalesced = BatchCoalescer.coalesce(Arrays.asList(createA, updateA, updateB, destroyA));
+    assertEquals(Arrays.asList(updateB), coalesced);
+  }
+
+  @Test
+  public void destroyIsKeptAfterACreateThatMayHaveBeenSent() {
+    GatewaySenderEventImpl createA = event(CREATE, "/r", "a");
+    when(createA.getPossibleDuplicate()).thenReturn(true);
+    GatewaySenderEventImpl destroyA = event(DESTROY, "/r", "a");
+
+    GatewaySenderEventImpl updateA = event(UPDATE, "/r", "a");
+
+    assertEquals(Collections.singletonList(destroyA),
+        BatchCoalescer.coalesce(Arrays.asList(createA, destroyA)));
+    assertEquals(Collections.singletonList(destroyA),
+        BatchCoalescer.coalesce(Arrays.asList(createA, updateA, destroyA)));
+  }
+
+  @Test
+  public void otherOperationsAreNotCoalesced() {
+    GatewaySenderEventImpl updateA = event(UPDATE, "/r", "a");
+    GatewaySenderEventImpl invalidateA = event(INVALIDATE, "/r", "a");
+    GatewaySenderEventImpl updateA2 = event(UPDATE, "/r", "a");
+    GatewaySenderEventImpl destroyA = event(DESTROY, "/r", "a");
+    GatewaySenderEventImpl destroyA2 = event(DESTROY, "/r", "a");
+    List<GatewaySenderEventImpl> events = Arrays.asList(updateA, invalidateA, destroyA, destroyA2);
+
+    assertSame(events, BatchCoalescer.coalesce(events));
+    assertEquals(Arrays.asList(updateA, invalidateA, destroyA),
+        BatchCoalescer.coalesce(Arrays.asList(updateA, invalidateA, updateA2, destroyA)));
+  }
+
+  private GatewaySenderEventImpl event(int action, String regionPath, Object key) {
+    GatewaySenderEventImpl event = mock(GatewaySenderEventImpl.class);
+    when(event.getRegionToConflate()).thenReturn(regionPath);
+    when(event.getKeyToConflate()).thenReturn(key);
+    when(event.isCreate()).thenReturn(action == CREATE);
+    when(event.isUpdate()).thenReturn(action == UPDATE);
+    when(event.isDestroy()).thenReturn(action == DESTROY);
+    return event;
+  }
+}
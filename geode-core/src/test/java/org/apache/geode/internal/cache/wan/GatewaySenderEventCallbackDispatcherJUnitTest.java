@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.wan;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.cache.asyncqueue.AsyncEvent;
+import org.apache.geode.cache.asyncqueue.AsyncEventListener;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class GatewaySenderEventCallbackDispatcherJUnitTest {
+
+  private AbstractGatewaySenderEventProcessor processor;
+  private GatewaySenderStats stats;
+  private RecordingListener listener;
+  private GatewaySenderEventCallbackDispatcher dispatcher;
+
+  @Before
+  public void setUp() throws Exception {
+    listener = new RecordingListener();
+    stats = mock(GatewaySenderStats.class);
+    AbstractGatewaySender sender = mock(AbstractGatewaySender.class);
+    when(sender.getAsyncEventListeners())
+        .thenReturn(Collections.<AsyncEventListener>singletonList(listener));
+    when(sender.getStatistics()).thenReturn(stats);
+    when(sender.getId()).thenReturn("queue");
+    processor = mock(AbstractGatewaySenderEventProcessor.class);
+    when(processor.getSender()).thenReturn(sender);
+    dispatcher = new GatewaySenderEventCallbackDispatcher(processor, 4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    dispatcher.stop();
+  }
+
+  @Test
+  public void eventsOfAKeyAreInTheSameSubBatchInOrder() {
+    List<GatewaySenderEventImpl> events = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      events.add(event("/r", "key" + (i % 10), i));
+    }
+
+    List<List> subBatches = GatewaySenderEventCallbackDispatcher.splitBatch(events, 4);
+
+    assertTrue(subBatches.size() > 1 && subBatches.size() <= 4);
+    int total = 0;
+    for (List subBatch : subBatches) {
+      assertFalse(subBatch.isEmpty());
+      total += subBatch.size();
+      for (int i = 0; i < 10; i++) {
+        assertOrdered(subBatch, "key" + i);
+      }
+    }
+    assertEquals(40, total);
+    for (int i = 0; i < 10; i++) {
+      assertEquals(1, subBatchesWithKey(subBatches, "key" + i));
+    }
+  }
+
+  @Test
+  public void equalKeysAreInTheSameSubBatch() {
+    List<GatewaySenderEventImpl> events = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      events.add(event("/r", new Key(i % 10), i));
+    }
+    events.add(event("/r", null, 40));
+    events.add(event("/r", null, 41));
+
+    List<List> subBatches = GatewaySenderEventCallbackDispatcher.splitBatch(events, 4);
+
+    for (int i = 0; i < 10; i++) {
+      assertEquals(1, subBatchesWithKey(subBatches, new Key(i)));
+    }
+    int subBatchesWithNullKey = 0;
+    for (List subBatch : subBatches) {
+      for (Object event : subBatch) {
+        if (((GatewaySenderEventImpl) event).getKeyToConflate() == null) {
+          subBatchesWithNullKey++;
+          break;
+        }
+      }
+    }
+    assertEquals(1, subBatchesWithNullKey);
+  }
+
+  @Test
+  public void subBatchesAreProcessedConcurrently() throws Exception {
+    List<GatewaySenderEventImpl> events = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      events.add(event("/r", "key" + (i % 10), i));
+    }
+    int numSubBatches = GatewaySenderEventCallbackDispatcher.splitBatch(events, 4).size();
+    // every sub-batch waits for the others to start
+    listener.started = new CountDownLatch(numSubBatches);
+
+    assertTrue(dispatcher.dispatchBatch(events));
+
+    assertEquals(numSubBatches, listener.subBatches.size());
+    verify(stats).endBatchSplit(anyLong(), eq(numSubBatches));
+    verify(stats, times(numSubBatches)).endSubBatch(anyLong());
+    verify(stats).endSubBatchWait(anyLong());
+  }
+
+  @Test
+  public void batchFailsOnceAllItsSubBatchesAreProcessed() throws Exception {
+    List<GatewaySenderEventImpl> events = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      events.add(event("/r", "key" + (i % 10), i));
+    }
+    int numSubBatches = GatewaySenderEventCallbackDispatcher.splitBatch(events, 4).size();
+    listener.failedKey = "key3";
+
+    assertFalse(dispatcher.dispatchBatch(events));
+    assertEquals(numSubBatches, listener.subBatches.size());
+
+    listener.subBatches.clear();
+    listener.failedKey = null;
+    listener.exceptionKey = "key5";
+    try {
+      dispatcher.dispatchBatch(events);
+      fail("Expected GatewaySenderException");
+    } catch (GatewaySenderException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    }
+    assertEquals(numSubBatches, listener.subBatches.size());
+  }
+
+  @Test
+  public void singleThreadDispatchesTheWholeBatch() throws Exception {
+    dispatcher = new GatewaySenderEventCallbackDispatcher(processor, 1);
+    List<GatewaySenderEventImpl> events =
+        Arrays.asList(event("/r", "a", 0), event("/r", "b", 1), event("/r", "c", 2));
+
+    assertTrue(dispatcher.dispatchBatch(events));
+
+    assertEquals(Collections.singletonList(events), listener.subBatches);
+    verify(stats, never()).endBatchSplit(anyLong(), anyInt());
+  }
+
+  private GatewaySenderEventImpl event(String regionPath, Object key, int sequence) {
+    GatewaySenderEventImpl event = mock(GatewaySenderEventImpl.class);
+    when(event.getRegionPath()).thenReturn(regionPath);
+    when(event.getKeyToConflate()).thenReturn(key);
+    when(event.getKey()).thenReturn(key);
+    when(event.getShadowKey()).thenReturn((long) sequence);
+    return event;
+  }
+
+  private void assertOrdered(List subBatch, Object key) {
+    long last = -1;
+    for (Object event : subBatch) {
+      GatewaySenderEventImpl gatewayEvent = (GatewaySenderEventImpl) event;
+      if (key.equals(gatewayEvent.getKeyToConflate())) {
+        assertTrue(gatewayEvent.getShadowKey() > last);
+        last = gatewayEvent.getShadowKey();
+      }
+    }
+  }
+
+  private int subBatchesWithKey(List<List> subBatches, Object key) {
+    int count = 0;
+    for (List subBatch : subBatches) {
+      for (Object event : subBatch) {
+        if (key.equals(((GatewaySenderEventImpl) event).getKeyToConflate())) {
+          count++;
+          break;
+        }
+      }
+    }
+    return count;
+  }
+
+  /** A key whose equal instances have different string forms */
+  private static class Key {
+
+    private final int id;
+
+    Key(int id) {
+      this.id = id;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof Key && ((Key) other).id == this.id;
+    }
+
+    @Override
+    public int hashCode() {
+      return this.id;
+    }
+
+    @Override
+    public String toString() {
+      return "Key@" + System.identityHashCode(this);
+    }
+  }
+
+  private static class RecordingListener implements AsyncEventListener {
+
+    final List<List> subBatches = Collections.synchronizedList(new ArrayList<List>());
+
+    volatile CountDownLatch started;
+
+    volatile Object failedKey;
+
+    volatile Object exceptionKey;
+
+    @Override
+    public boolean processEvents(List<AsyncEvent> events) {
+      subBatches.add(new ArrayList<>(events));
+      CountDownLatch started = this.started;
+      if (started != null) {
+        started.countDown();
+        try {
+          assertTrue(started.await(60, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+      for (AsyncEvent event : events) {
+        if (event.getKey().equals(exceptionKey)) {
+          throw new IllegalStateException("failed " + event.getKey());
+        }
+        if (event.getKey().equals(failedKey)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.cache.wan.parallel;
+
+import static org.apache.geode.distributed.ConfigurationProperties.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import org.apache.geode.cache.AttributesFactory;
+import org.apache.geode.cache.Cache;
+import org.apache.geode.cache.CacheFactory;
+import org.apache.geode.cache.DataPolicy;
+import org.apache.geode.cache.EvictionAction;
+import org.apache.geode.cache.EvictionAlgorithm;
+import org.apache.geode.cache.EvictionAttributes;
+import org.apache.geode.cache.PartitionAttributesFactory;
+import org.apache.geode.cache.Region;
+import org.apache.geode.cache.asyncqueue.AsyncEvent;
+import org.apache.geode.cache.asyncqueue.AsyncEventListener;
+import org.apache.geode.cache.asyncqueue.AsyncEventQueue;
+import org.apache.geode.cache.asyncqueue.internal.AsyncEventQueueImpl;
+import org.apache.geode.internal.cache.BucketRegion;
+import org.apache.geode.internal.cache.DiskRegion;
+import org.apache.geode.internal.cache.GemFireCacheImpl;
+import org.apache.geode.internal.cache.PartitionedRegion;
+import org.apache.geode.internal.cache.wan.AbstractGatewaySender;
+import org.apache.geode.test.junit.categories.IntegrationTest;
+
+/**
+ * Queues the events of a partitioned region in a parallel async event queue that is not
+ * dispatching, and checks where the shadow partitioned region keeps them.
+ */
+@Category(IntegrationTest.class)
+public class ParallelGatewaySenderQueueIntegrationTest {
+
+  private static final String QUEUE_ID = "queue";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private int memoryWindow;
+  private Cache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    this.memoryWindow = AbstractGatewaySender.PARALLEL_QUEUE_MEMORY_WINDOW;
+    Properties p = new Properties();
+    p.setProperty(MCAST_PORT, "0");
+    p.setProperty(LOCATORS, "");
+    this.cache = new CacheFactory(p).create();
+    this.cache.createDiskStoreFactory()
+        .setDiskDirs(new File[] {this.temporaryFolder.newFolder("diskStore")}).create("diskStore");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    AbstractGatewaySender.PARALLEL_QUEUE_MEMORY_WINDOW = this.memoryWindow;
+    this.cache.close();
+  }
+
+  @Test
+  public void eventsPastTheMemoryWindowOverflowToDisk() throws Exception {
+    AbstractGatewaySender.PARALLEL_QUEUE_MEMORY_WINDOW = 10;
+    Region region = createRegionWithPausedQueue();
+
+    for (int i = 0; i < 50; i++) {
+      region.put(i, "value" + i);
+    }
+    // overflowed values are removed from memory once the disk store writes them
+    this.cache.findDiskStore("diskStore").flush();
+
+    PartitionedRegion shadowPR = getShadowPR();
+    EvictionAttributes ea = shadowPR.getAttributes().getEvictionAttributes();
+    assertEquals(EvictionAlgorithm.LIFO_ENTRY, ea.getAlgorithm());
+    assertEquals(EvictionAction.OVERFLOW_TO_DISK, ea.getAction());
+    assertEquals(10, ea.getMaximum());
+
+    BucketRegion bucket = shadowPR.getDataStore().getLocalBucketById(0);
+    assertEquals(50, bucket.size());
+    assertEquals(40, bucket.getEvictions());
+    DiskRegion diskRegion = bucket.getDiskRegion();
+    assertEquals(10, diskRegion.getNumEntriesInVM());
+    assertEquals(40, diskRegion.getNumOverflowOnDisk());
+
+    // the oldest events, which are dispatched first, are the ones kept in memory
+    List<Long> keys = new ArrayList<>(bucket.keySet());
+    Collections.sort(keys);
+    for (int i = 0; i < keys.size(); i++) {
+      assertEquals(i < 10, bucket.getValueInVM(keys.get(i)) != null);
+    }
+  }
+
+  @Test
+  public void eventsAreBoundedByTheMaximumQueueMemoryByDefault() throws Exception {
+    AbstractGatewaySender.PARALLEL_QUEUE_MEMORY_WINDOW = 0;
+    Region region = createRegionWithPausedQueue();
+
+    for (int i = 0; i < 50; i++) {
+      region.put(i, "value" + i);
+    }
+
+    PartitionedRegion shadowPR = getShadowPR();
+    EvictionAttributes ea = shadowPR.getAttributes().getEvictionAttributes();
+    assertEquals(EvictionAlgorithm.LIFO_MEMORY, ea.getAlgorithm());
+    assertEquals(EvictionAction.OVERFLOW_TO_DISK, ea.getAction());
+    assertEquals(1, ea.getMaximum());
+
+    BucketRegion bucket = shadowPR.getDataStore().getLocalBucketById(0);
+    assertEquals(50, bucket.size());
+    assertEquals(0, bucket.getEvictions());
+    DiskRegion diskRegion = bucket.getDiskRegion();
+    assertEquals(50, diskRegion.getNumEntriesInVM());
+    assertEquals(0, diskRegion.getNumOverflowOnDisk());
+  }
+
+  /**
+   * Creates a single bucket partitioned region whose events are queued in a paused parallel queue
+   * with a maximum queue memory of 1 megabyte
+   */
+  private Region createRegionWithPausedQueue() {
+    AsyncEventQueue queue =
+        this.cache.createAsyncEventQueueFactory().setParallel(true).setMaximumQueueMemory(1)
+            .setDiskStoreName("diskStore").create(QUEUE_ID, new AsyncEventListener() {
+              public boolean processEvents(List<AsyncEvent> events) {
+                return false;
+              }
+
+              public void close() {}
+            });
+    ((AsyncEventQueueImpl) queue).getSender().pause();
+
+    AttributesFactory factory = new AttributesFactory();
+    factory.setDataPolicy(DataPolicy.PARTITION);
+    factory.setPartitionAttributes(new PartitionAttributesFactory().setTotalNumBuckets(1).create());
+    factory.addAsyncEventQueueId(QUEUE_ID);
+    return this.cache.createRegion("region", factory.create());
+  }
+
+  private PartitionedRegion getShadowPR() {
+    String senderId = AsyncEventQueueImpl.getSenderIdFromAsyncEventQueueId(QUEUE_ID);
+    return (PartitionedRegion) ((GemFireCacheImpl) this.cache)
+        .getRegionByPath(Region.SEPARATOR + senderId + ParallelGatewaySenderQueue.QSTRING);
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.tcp;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.CancelCriterion;
+import org.apache.geode.distributed.internal.LonerDistributionManager;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class ConnectionEventLoopJUnitTest {
+
+  private static final int MAX_QUEUED_BYTES = 64 * 1024;
+
+  private ConnectionEventLoop eventLoop;
+  private ServerSocketChannel serverChannel;
+  private SocketChannel clientChannel;
+  private SocketChannel acceptedChannel;
+
+  @Before
+  public void setUp() throws Exception {
+    eventLoop = new ConnectionEventLoop(Thread.currentThread().getThreadGroup(), "test",
+        MAX_QUEUED_BYTES, new LonerDistributionManager.DummyDMStats());
+    eventLoop.start();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    clientChannel = SocketChannel.open();
+    clientChannel.socket().setTcpNoDelay(true);
+    clientChannel.socket().setSendBufferSize(8 * 1024);
+    clientChannel.connect(serverChannel.socket().getLocalSocketAddress());
+    acceptedChannel = serverChannel.accept();
+    acceptedChannel.socket().setReceiveBufferSize(8 * 1024);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    eventLoop.stop();
+    clientChannel.close();
+    acceptedChannel.close();
+    serverChannel.close();
+  }
+
+  @Test
+  public void bytesTheSocketCannotTakeAreQueuedAndWrittenInOrder() throws Exception {
+    final int numSends = 64;
+    final int sendSize = 8 * 1024;
+    ConnectionEventLoop.Registration registration =
+        eventLoop.register(clientChannel, new TestHandler(), false);
+    ReaderThread reader =
+        new ReaderThread(acceptedChannel.socket().getInputStream(), numSends * sendSize);
+    ByteBuffer buffer = ByteBuffer.allocate(sendSize);
+    long maxQueuedBytes = 0;
+    for (int i = 0; i < numSends; i++) {
+      // the buffer is reused, as senders do
+      buffer.clear();
+      while (buffer.hasRemaining()) {
+        buffer.put((byte) i);
+      }
+      buffer.flip();
+      registration.send(buffer, new TestCancelCriterion());
+      assertFalse(buffer.hasRemaining());
+      maxQueuedBytes = Math.max(maxQueuedBytes, registration.getQueuedBytes());
+      if (maxQueuedBytes > 0 && reader.getState() == Thread.State.NEW) {
+        // the socket buffers are full, so let the queue drain before the sender has to wait
+        reader.start();
+      }
+    }
+    assertTrue(maxQueuedBytes > 0);
+    reader.join(30000);
+    assertTrue(maxQueuedBytes <= MAX_QUEUED_BYTES + sendSize);
+    byte[] received = reader.getBytes();
+    assertEquals(numSends * sendSize, received.length);
+    for (int i = 0; i < received.length; i++) {
+      assertEquals("byte " + i, (byte) (i / sendSize), received[i]);
+    }
+    assertEquals(0, registration.getQueuedBytes());
+  }
+
+  @Test
+  public void readsAreHandedToTheHandlerUntilTheChannelIsClosed() throws Exception {
+    TestHandler handler = new TestHandler();
+    eventLoop.register(acceptedChannel, handler, true);
+    clientChannel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+    clientChannel.write(ByteBuffer.wrap(new byte[] {4, 5}));
+    clientChannel.close();
+    assertTrue(handler.removed.await(30, TimeUnit.SECONDS));
+    assertArrayEquals(new byte[] {1, 2, 3, 4, 5}, handler.received.toByteArray());
+  }
+
+  @Test
+  public void sendFailsOnceTheRegistrationIsCancelled() throws Exception {
+    TestHandler handler = new TestHandler();
+    ConnectionEventLoop.Registration registration =
+        eventLoop.register(clientChannel, handler, false);
+    registration.cancel();
+    assertTrue(handler.removed.await(30, TimeUnit.SECONDS));
+    try {
+      registration.send(ByteBuffer.wrap(new byte[] {1}), new TestCancelCriterion());
+      fail("expected ClosedChannelException");
+    } catch (ClosedChannelException expected) {
+    }
+  }
+
+  @Test
+  public void stoppingTheLoopRemovesTheChannels() throws Exception {
+    TestHandler handler = new TestHandler();
+    eventLoop.register(acceptedChannel, handler, true);
+    eventLoop.stop();
+    assertTrue(handler.removed.await(30, TimeUnit.SECONDS));
+    assertTrue(eventLoop.isStopped());
+  }
+
+  private static class TestHandler implements ConnectionEventLoop.Handler {
+    final ByteArrayOutputStream received = new ByteArrayOutputStream();
+    final CountDownLatch removed = new CountDownLatch(1);
+
+    public boolean readAvailable(SocketChannel channel) {
+      ByteBuffer buffer = ByteBuffer.allocate(16);
+      try {
+        int amt = channel.read(buffer);
+        if (amt < 0) {
+          return false;
+        }
+        received.write(buffer.array(), 0, amt);
+        return true;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+
+    public void writeFailed(IOException e) {}
+
+    public void removedFromEventLoop() {
+      removed.countDown();
+    }
+  }
+
+  private static class TestCancelCriterion extends CancelCriterion {
+    @Override
+    public String cancelInProgress() {
+      return null;
+    }
+
+    @Override
+    public RuntimeException generateCancelledException(Throwable e) {
+      return null;
+    }
+  }
+
+  private static class ReaderThread extends Thread {
+    private final InputStream input;
+    private final byte[] bytes;
+    private int numRead;
+
+    ReaderThread(InputStream input, int size) {
+      this.input = input;
+      this.bytes = new byte[size];
+      setDaemon(true);
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (numRead < bytes.length) {
+          int amt = input.read(bytes, numRead, bytes.length - numRead);
+          if (amt < 0) {
+            break;
+          }
+          numRead += amt;
+        }
+      } catch (IOException ignore) {
+      }
+    }
+
+    byte[] getBytes() {
+      byte[] result = new byte[numRead];
+      System.arraycopy(bytes, 0, result, 0, numRead);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.tcp;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.geode.distributed.internal.DMStats;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class MessageCoalescerJUnitTest {
+
+  private static final int BUFFER_SIZE = 1024;
+
+  private TestWriter writer;
+  private DMStats stats;
+  private MessageCoalescer coalescer;
+
+  @Before
+  public void setUp() throws Exception {
+    writer = new TestWriter();
+    stats = mock(DMStats.class);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (coalescer != null) {
+      coalescer.close();
+    }
+  }
+
+  @Test
+  public void messagesAreWrittenTogetherOnceTheDeadlineIsReached() throws Exception {
+    coalescer = createCoalescer(TimeUnit.MILLISECONDS.toMicros(200));
+    coalescer.send(message(1, 10), true);
+    coalescer.send(message(2, 20), true);
+    coalescer.send(message(3, 30), true);
+    assertEquals(0, writer.getWrites().size());
+    List<byte[]> writes = writer.awaitWrites(1);
+    assertEquals(1, writes.size());
+    assertBytesEqual(concat(message(1, 10), message(2, 20), message(3, 30)), writes.get(0));
+    verify(stats).incCoalescedMessages(eq(3), anyLong());
+  }
+
+  @Test
+  public void messageThatIsWaitedForIsWrittenWithThePendingOnes() throws Exception {
+    coalescer = createCoalescer(TimeUnit.SECONDS.toMicros(60));
+    coalescer.send(message(1, 10), true);
+    coalescer.send(message(2, 20), false);
+    List<byte[]> writes = writer.getWrites();
+    assertEquals(1, writes.size());
+    assertBytesEqual(concat(message(1, 10), message(2, 20)), writes.get(0));
+    verify(stats).incCoalescedMessages(eq(2), anyLong());
+  }
+
+  @Test
+  public void largeMessageIsWrittenAfterThePendingOnes() throws Exception {
+    coalescer = createCoalescer(TimeUnit.SECONDS.toMicros(60));
+    coalescer.send(message(1, 10), true);
+    coalescer.send(message(2, BUFFER_SIZE), true);
+    List<byte[]> writes = writer.getWrites();
+    assertEquals(2, writes.size());
+    assertBytesEqual(message(1, 10), writes.get(0));
+    assertBytesEqual(message(2, BUFFER_SIZE), writes.get(1));
+  }
+
+  @Test
+  public void fullBufferIsWrittenBeforeAddingMore() throws Exception {
+    coalescer = createCoalescer(TimeUnit.SECONDS.toMicros(60));
+    int size = BUFFER_SIZE / 4;
+    for (int i = 0; i < 5; i++) {
+      coalescer.send(message(i, size), true);
+    }
+    List<byte[]> writes = writer.getWrites();
+    assertEquals(1, writes.size());
+    assertBytesEqual(concat(message(0, size), message(1, size), message(2, size), message(3, size)),
+        writes.get(0));
+    coalescer.flushBuffered();
+    writes = writer.getWrites();
+    assertEquals(2, writes.size());
+    assertBytesEqual(message(4, size), writes.get(1));
+  }
+
+  private MessageCoalescer createCoalescer(long flushDeadlineMicros) {
+    MessageCoalescer result = new MessageCoalescer(writer, stats,
+        Thread.currentThread().getThreadGroup(), "test", BUFFER_SIZE, flushDeadlineMicros);
+    result.start();
+    return result;
+  }
+
+  private static ByteBuffer message(int value, int size) {
+    ByteBuffer message = ByteBuffer.allocate(size);
+    while (message.hasRemaining()) {
+      message.put((byte) value);
+    }
+    message.flip();
+    return message;
+  }
+
+  private static ByteBuffer concat(ByteBuffer... buffers) {
+    ByteBuffer result = ByteBuffer.allocate(BUFFER_SIZE * buffers.length);
+    for (ByteBuffer bb : buffers) {
+      result.put(bb);
+    }
+    result.flip();
+    return result;
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private static void assertBytesEqual(ByteBuffer expected, byte[] actual) {
+    assertArrayEquals(toBytes(expected), actual);
+  }
+
+  private static class TestWriter implements MessageCoalescer.Writer {
+    private final List<byte[]> writes = new ArrayList<byte[]>();
+
+    public synchronized void write(ByteBuffer buffer) throws IOException {
+      writes.add(toBytes(buffer));
+      notifyAll();
+    }
+
+    public void flushFailed(Exception e) {
+      fail("unexpected " + e);
+    }
+
+    synchronized List<byte[]> getWrites() {
+      return new ArrayList<byte[]>(writes);
+    }
+
+    synchronized List<byte[]> awaitWrites(int count) throws InterruptedException {
+      long end = System.currentTimeMillis() + 30000;
+      while (writes.size() < count && System.currentTimeMillis() < end) {
+        wait(100);
+      }
+      return new ArrayList<byte[]>(writes);
+    }
+  }
+}
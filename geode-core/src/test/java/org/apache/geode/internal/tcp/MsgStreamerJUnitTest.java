@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license
+ * agreements. See the NOTICE file distributed with this work for additional information regarding
+ * copyright ownership. The ASF licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License. You may obtain a
+ * copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.geode.internal.tcp;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.apache.geode.DataSerializer;
+import org.apache.geode.distributed.internal.DistributionManager;
+import org.apache.geode.distributed.internal.DistributionMessage;
+import org.apache.geode.distributed.internal.LonerDistributionManager;
+import org.apache.geode.internal.HeapDataOutputStream;
+import org.apache.geode.internal.InternalDataSerializer;
+import org.apache.geode.internal.Version;
+import org.apache.geode.test.junit.categories.UnitTest;
+
+@Category(UnitTest.class)
+public class MsgStreamerJUnitTest {
+
+  private static final int SEND_BUFFER_SIZE = 32 * 1024;
+
+  private Connection connection;
+  private List<byte[]> sentChunks;
+  private List<ByteBuffer> gatheredBuffers;
+
+  @Before
+  public void setUp() throws Exception {
+    sentChunks = new ArrayList<byte[]>();
+    gatheredBuffers = new ArrayList<ByteBuffer>();
+    connection = mock(Connection.class);
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        ByteBuffer buffer = (ByteBuffer) invocation.getArguments()[0];
+        sentChunks.add(toBytes(new ByteBuffer[] {buffer}));
+        return null;
+      }
+    }).when(connection).sendPreserialized(any(ByteBuffer.class), anyBoolean(),
+        any(DistributionMessage.class), anyBoolean());
+    doAnswer(new Answer<Void>() {
+      public Void answer(InvocationOnMock invocation) {
+        ByteBuffer[] buffers = (ByteBuffer[]) invocation.getArguments()[0];
+        Collections.addAll(gatheredBuffers, buffers);
+        sentChunks.add(toBytes(buffers));
+        return null;
+      }
+    }).when(connection).sendPreserialized(any(ByteBuffer[].class), anyBoolean(),
+        any(DistributionMessage.class));
+  }
+
+  @Test
+  public void largeImmutableByteArrayIsSentWithoutBeingCopied() throws Exception {
+    byte[] value = createValue(100 * 1024);
+    ValueMessage msg = new ValueMessage(value, null);
+    msg.immutableValue = true;
+    send(msg);
+    assertEquals(1, sentChunks.size());
+    assertSame(value, findReferencedArray());
+    assertArrayEquals(serialize(msg), payloadOf(sentChunks.get(0)));
+  }
+
+  @Test
+  public void offHeapBytesAreSentWithoutBeingCopied() throws Exception {
+    ByteBuffer value = ByteBuffer.allocateDirect(100 * 1024);
+    value.put(createValue(value.capacity()));
+    value.flip();
+    ValueMessage msg = new ValueMessage(null, value);
+    send(msg);
+    assertEquals(1, sentChunks.size());
+    boolean referenced = false;
+    for (ByteBuffer bb : gatheredBuffers) {
+      referenced |= bb.isDirect() && bb.capacity() == value.capacity();
+    }
+    assertTrue(referenced);
+    assertArrayEquals(serialize(new ValueMessage(null, value)), payloadOf(sentChunks.get(0)));
+  }
+
+  @Test
+  public void smallByteArrayIsCopied() throws Exception {
+    ValueMessage msg = new ValueMessage(createValue(100), null);
+    send(msg);
+    assertEquals(1, sentChunks.size());
+    assertTrue(gatheredBuffers.isEmpty());
+    assertArrayEquals(serialize(msg), payloadOf(sentChunks.get(0)));
+  }
+
+  @Test
+  public void messageWithoutReplyProcessorMayBeCoalesced() throws Exception {
+    send(new ValueMessage(createValue(100), null));
+    verify(connection).sendPreserialized(any(ByteBuffer.class), anyBoolean(),
+        any(DistributionMessage.class), eq(true));
+  }
+
+  @Test
+  public void messageWithReplyProcessorIsNotCoalesced() throws Exception {
+    ValueMessage msg = new ValueMessage(createValue(100), null);
+    msg.processorId = 7;
+    send(msg);
+    verify(connection).sendPreserialized(any(ByteBuffer.class), anyBoolean(),
+        any(DistributionMessage.class), eq(false));
+  }
+
+  @Test
+  public void largeByteArrayIsCopiedByDefault() throws Exception {
+    ValueMessage msg = new ValueMessage(createValue(100 * 1024), null);
+    send(msg);
+    assertNull(findReferencedArray());
+    // the copied bytes do not fit in one chunk
+    assertTrue(sentChunks.size() > 1);
+  }
+
+  @Test
+  public void largeByteArrayIsReferencedWhileDoNotCopyIsOn() throws Exception {
+    byte[] value = createValue(100 * 1024);
+    MsgStreamer streamer = createStreamer(new ValueMessage(value, null));
+    assertFalse(streamer.setDoNotCopy(true));
+    streamer.writeMessage();
+    assertSame(value, findReferencedArray());
+    assertEquals(1, sentChunks.size());
+  }
+
+  @Test
+  public void largeByteArrayReusedBetweenWritesIsSentAsWritten() throws Exception {
+    ReusedArrayMessage msg = new ReusedArrayMessage(40 * 1024);
+    send(msg);
+    assertNull(findReferencedArray());
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    for (byte[] chunk : sentChunks) {
+      ByteBuffer bb = ByteBuffer.wrap(chunk);
+      int size = bb.getInt(Connection.MSG_HEADER_SIZE_OFFSET) & Connection.MAX_MSG_SIZE;
+      payload.write(chunk, Connection.MSG_HEADER_BYTES, size);
+    }
+    assertArrayEquals(serialize(new ReusedArrayMessage(40 * 1024)), payload.toByteArray());
+  }
+
+  private void send(DistributionMessage msg) throws IOException {
+    createStreamer(msg).writeMessage();
+  }
+
+  private MsgStreamer createStreamer(DistributionMessage msg) {
+    List<Connection> cons = new ArrayList<Connection>();
+    cons.add(connection);
+    return new MsgStreamer(cons, msg, false, new LonerDistributionManager.DummyDMStats(),
+        SEND_BUFFER_SIZE);
+  }
+
+  private byte[] findReferencedArray() {
+    for (ByteBuffer bb : gatheredBuffers) {
+      if (bb.hasArray() && bb.array().length != SEND_BUFFER_SIZE) {
+        return bb.array();
+      }
+    }
+    return null;
+  }
+
+  /** Returns the bytes of a message sent in one chunk, checking its header */
+  private byte[] payloadOf(byte[] chunk) {
+    ByteBuffer bb = ByteBuffer.wrap(chunk);
+    int size = bb.getInt(Connection.MSG_HEADER_SIZE_OFFSET) & Connection.MAX_MSG_SIZE;
+    assertEquals(chunk.length - Connection.MSG_HEADER_BYTES, size);
+    assertEquals(Connection.NORMAL_MSG_TYPE, bb.get(Connection.MSG_HEADER_TYPE_OFFSET));
+    byte[] payload = new byte[size];
+    System.arraycopy(chunk, Connection.MSG_HEADER_BYTES, payload, 0, size);
+    return payload;
+  }
+
+  private static byte[] serialize(DistributionMessage msg) throws IOException {
+    HeapDataOutputStream hdos = new HeapDataOutputStream(Version.CURRENT);
+    InternalDataSerializer.writeDSFID(msg, hdos);
+    return hdos.toByteArray();
+  }
+
+  private static byte[] toBytes(ByteBuffer[] buffers) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (ByteBuffer bb : buffers) {
+      ByteBuffer dup = bb.duplicate();
+      byte[] bytes = new byte[dup.remaining()];
+      dup.get(bytes);
+      out.write(bytes, 0, bytes.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] createValue(int size) {
+    byte[] value = new byte[size];
+    for (int i = 0; i < size; i++) {
+      value[i] = (byte) i;
+    }
+    return value;
+  }
+
+  /** A message carrying either a byte array or the bytes of a buffer, like off-heap values */
+  public static class ValueMessage extends DistributionMessage {
+    private final byte[] value;
+    private final ByteBuffer offHeapValue;
+    int processorId;
+    boolean immutableValue;
+
+    ValueMessage(byte[] value, ByteBuffer offHeapValue) {
+      this.value = value;
+      this.offHeapValue = offHeapValue;
+    }
+
+    @Override
+    public int getProcessorType() {
+      return DistributionManager.SERIAL_EXECUTOR;
+    }
+
+    @Override
+    protected void process(DistributionManager dm) {}
+
+    @Override
+    public int getProcessorId() {
+      return this.processorId;
+    }
+
+    public int getDSFID() {
+      return NO_FIXED_ID;
+    }
+
+    @Override
+    public void toData(DataOutput out) throws IOException {
+      super.toData(out);
+      if (this.value != null && this.immutableValue) {
+        InternalDataSerializer.writeImmutableByteArray(this.value, out);
+      } else if (this.value != null) {
+        DataSerializer.writeByteArray(this.value, out);
+      } else {
+        InternalDataSerializer.writeArrayLength(this.offHeapValue.remaining(), out);
+        if (out instanceof MsgStreamer) {
+          ((MsgStreamer) out).write(this.offHeapValue.duplicate());
+        } else {
+          ((HeapDataOutputStream) out).write(this.offHeapValue.duplicate());
+        }
+      }
+    }
+  }
+
+  /** A message writing the same array twice, changing it in between, like a reused buffer */
+  public static class ReusedArrayMessage extends DistributionMessage {
+    private final int size;
+
+    ReusedArrayMessage(int size) {
+      this.size = size;
+    }
+
+    @Override
+    public int getProcessorType() {
+      return DistributionManager.SERIAL_EXECUTOR;
+    }
+
+    @Override
+    protected void process(DistributionManager dm) {}
+
+    public int getDSFID() {
+      return NO_FIXED_ID;
+    }
+
+    @Override
+    public void toData(DataOutput out) throws IOException {
+      super.toData(out);
+      byte[] buffer = createValue(this.size);
+      out.write(buffer);
+      Arrays.fill(buffer, (byte) 7);
+      out.write(buffer);
+    }
+  }
+}
@@ -15,10 +15,12 @@
 package org.apache.geode.cache.client.internal;
 
 import org.apache.geode.InternalGemFireError;
+import org.apache.geode.SerializationException;
 import org.apache.geode.cache.client.ServerOperationException;
 import org.apache.geode.internal.Version;
 import org.apache.geode.internal.cache.EventID;
 import org.apache.geode.internal.cache.tier.MessageType;
+import org.apache.geode.internal.cache.tier.sockets.BatchCompressor;
 import org.apache.geode.internal.cache.tier.sockets.ChunkedMessage;
 import org.apache.geode.internal.cache.tier.sockets.Message;
 import org.apache.geode.internal.cache.tier.sockets.Part;
@@ -26,9 +28,11 @@ import org.apache.geode.internal.cache.wan.BatchException70;
 import org.apache.geode.internal.cache.wan.GatewaySenderEventImpl;
 import org.apache.geode.internal.cache.wan.GatewaySenderEventRemoteDispatcher;
 import org.apache.geode.internal.cache.wan.GatewaySenderEventRemoteDispatcher.GatewayAck;
+import org.apache.geode.internal.cache.wan.GatewaySenderStats;
 import org.apache.geode.internal.i18n.LocalizedStrings;
 import org.apache.geode.internal.logging.LogService;
 
+import java.io.IOException;
 import java.net.SocketTimeoutException;
 import java.util.Iterator;
 import java.util.List;
@@ -48,18 +52,22 @@ public class GatewaySenderBatchOp {
    * @param pool the pool to use to communicate with the server.
    * @param events list of gateway events
    * @param batchId the ID of this batch
+   * @param compressor the compressor of the batches sent on the connection, or null
+   * @param stats the statistics of the sender
    */
   public static void executeOn(Connection con, ExecutablePool pool, List events, int batchId,
-      boolean isRetry) {
+      boolean isRetry, BatchCompressor compressor, GatewaySenderStats stats) {
     AbstractOp op = null;
     // System.out.println("Version: "+con.getWanSiteVersion());
     // Is this check even needed anymore? It looks like we just create the same exact op impl with
     // the same parameters...
     if (Version.GFE_651.compareTo(con.getWanSiteVersion()) >= 0) {
-      op = new GatewaySenderGFEBatchOpImpl(events, batchId, con.getDistributedSystemId(), isRetry);
+      op = new GatewaySenderGFEBatchOpImpl(events, batchId, con.getDistributedSystemId(), isRetry,
+          compressor, stats);
     } else {
       // Default should create a batch of server version (ACCEPTOR.VERSION)
-      op = new GatewaySenderGFEBatchOpImpl(events, batchId, con.getDistributedSystemId(), isRetry);
+      op = new GatewaySenderGFEBatchOpImpl(events, batchId, con.getDistributedSystemId(), isRetry,
+          compressor, stats);
     }
     pool.executeOn(con, op, true/* timeoutFatal */);
   }
@@ -76,11 +84,15 @@ public class GatewaySenderBatchOp {
 
   static class GatewaySenderGFEBatchOpImpl extends AbstractOp {
 
+    private final BatchCompressor compressor;
+
     /**
      * @throws org.apache.geode.SerializationException if serialization fails
      */
-    public GatewaySenderGFEBatchOpImpl(List events, int batchId, int dsId, boolean isRetry) {
+    public GatewaySenderGFEBatchOpImpl(List events, int batchId, int dsId, boolean isRetry,
+        BatchCompressor compressor, GatewaySenderStats stats) {
       super(MessageType.GATEWAY_RECEIVER_COMMAND, calcPartCount(events));
+      this.compressor = compressor;
       boolean removeFromQueueOnException = true;
       if (isRetry) {
         getMessage().setIsRetry();
@@ -130,10 +142,18 @@ public class GatewaySenderBatchOp {
           getMessage().addLongPart(event.getVersionTimeStamp());
         }
       }
+      if (compressor != null) {
+        try {
+          compressor.compress(getMessage(), 4, stats);
+        } catch (IOException e) {
+          throw new SerializationException("Could not compress the batch " + batchId, e);
+        }
+      }
     }
 
     public GatewaySenderGFEBatchOpImpl() {
       super(MessageType.GATEWAY_RECEIVER_COMMAND, 0);
+      this.compressor = null;
     }
 
     @Override
@@ -148,6 +168,9 @@ public class GatewaySenderBatchOp {
         try {
           attemptSend(cnx);
           this.failed = false;
+          if (this.compressor != null) {
+            this.compressor.batchSent();
+          }
         } finally {
           endSendAttempt(cnx.getStats(), start);
         }
@@ -18,6 +18,8 @@ import java.util.List;
 
 import org.apache.geode.cache.query.SelectResults;
 import org.apache.geode.distributed.internal.ServerLocation;
+import org.apache.geode.internal.cache.tier.sockets.BatchCompressor;
+import org.apache.geode.internal.cache.wan.GatewaySenderStats;
 
 /**
  * Used to send operations from a sender to a receiver.
@@ -29,8 +31,9 @@ public class SenderProxy extends ServerProxy {
     super(pool);
   }
 
-  public void dispatchBatch_NewWAN(Connection con, List events, int batchId, boolean isRetry) {
-    GatewaySenderBatchOp.executeOn(con, this.pool, events, batchId, isRetry);
+  public void dispatchBatch_NewWAN(Connection con, List events, int batchId, boolean isRetry,
+      BatchCompressor compressor, GatewaySenderStats stats) {
+    GatewaySenderBatchOp.executeOn(con, this.pool, events, batchId, isRetry, compressor, stats);
   }
 
   public Object receiveAckFromReceiver(Connection con) {
@@ -22,7 +22,9 @@ import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.geode.GemFireIOException;
+import org.apache.geode.internal.cache.tier.sockets.BatchCompressor;
 import org.apache.geode.internal.cache.tier.sockets.MessageTooLargeException;
+import org.apache.geode.internal.cache.tier.sockets.ServerQueueStatus;
 import org.apache.logging.log4j.Logger;
 
 import org.apache.geode.CancelException;
@@ -70,6 +72,14 @@ public class GatewaySenderEventRemoteDispatcher implements GatewaySenderEventDis
    */
   private int failedConnectCount = 0;
 
+  /**
+   * Compresses the batches sent on the connection whose handshake returned
+   * {@link #batchCompressorStatus}. Only used by the dispatching thread.
+   */
+  private BatchCompressor batchCompressor;
+
+  private ServerQueueStatus batchCompressorStatus;
+
   public GatewaySenderEventRemoteDispatcher(AbstractGatewaySenderEventProcessor eventProcessor) {
     this.processor = eventProcessor;
     this.sender = eventProcessor.getSender();
@@ -215,7 +225,8 @@ public class GatewaySenderEventRemoteDispatcher implements GatewaySenderEventDis
       this.connectionLifeCycleLock.readLock().lock();
       try {
         if (connection != null) {
-          sp.dispatchBatch_NewWAN(connection, events, currentBatchId, isRetry);
+          sp.dispatchBatch_NewWAN(connection, events, currentBatchId, isRetry,
+              getBatchCompressor(connection), statistics);
           if (logger.isDebugEnabled()) {
             logger.debug(
                 "{} : Dispatched batch (id={}) of {} events, queue size: {} on connection {}",
@@ -292,6 +303,26 @@ public class GatewaySenderEventRemoteDispatcher implements GatewaySenderEventDis
     }
   }
 
+  /**
+   * Returns the compressor of the batches sent on the given connection, or null if the remote site
+   * did not accept compressed batches. Each new connection gets a new compressor, since the
+   * dictionary of a batch is the end of the previous batch of the connection.
+   */
+  private BatchCompressor getBatchCompressor(Connection con) {
+    ServerQueueStatus status = con.getQueueStatus();
+    if (status.getBatchCompression() == BatchCompressor.NONE) {
+      return null;
+    }
+    if (this.batchCompressorStatus != status) {
+      if (this.batchCompressor != null) {
+        this.batchCompressor.close();
+      }
+      this.batchCompressor = new BatchCompressor();
+      this.batchCompressorStatus = status;
+    }
+    return this.batchCompressor;
+  }
+
   /**
    * Acquires or adds a new <code>Connection</code> to the corresponding <code>Gateway</code>
    *